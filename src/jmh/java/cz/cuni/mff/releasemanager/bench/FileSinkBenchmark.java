@@ -0,0 +1,153 @@
+package cz.cuni.mff.releasemanager.bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cz.cuni.mff.releasemanager.download.FileSink;
+import cz.cuni.mff.releasemanager.utils.FileUtils;
+
+/**
+ * Compares writing a downloaded file the original way, with {@code Files.copy} from an {@code InputStream},
+ * with a {@link FileSink} subscribed to the body, preallocating the file and forcing it once at the end.
+ * The body is delivered in 16 KB buffers, as the HTTP client delivers it. Every operation writes a whole file,
+ * so the files are large and the mode is a single shot. {@code filesCopyAndForce} pays for the same
+ * durability as the sink, which the original way did not.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class FileSinkBenchmark {
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    @Param({"1024", "4096"})
+    public int sizeMb;
+
+    private final byte[] chunk = new byte[CHUNK_SIZE];
+    private Path dir;
+    private Path file;
+
+    @Setup
+    public void setUp() throws IOException {
+        new Random(1).nextBytes(chunk);
+        dir = Files.createTempDirectory("file_sink_benchmark");
+        file = dir.resolve("asset");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * @return The size of the file in bytes.
+     */
+    private long size() {
+        return sizeMb * 1024L * 1024;
+    }
+
+    @Benchmark
+    public long filesCopy() throws IOException {
+        return Files.copy(new ChunkInputStream(chunk, size()), file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @Benchmark
+    public long filesCopyAndForce() throws IOException {
+        long written = Files.copy(new ChunkInputStream(chunk, size()), file, StandardCopyOption.REPLACE_EXISTING);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.force(false);
+        }
+        return written;
+    }
+
+    @Benchmark
+    public long fileSink() throws Exception {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            FileSink.preallocate(channel, size());
+            FileSink sink = new FileSink(channel, 0);
+            sink.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            for (long remaining = size(); remaining > 0; remaining -= CHUNK_SIZE) {
+                sink.onNext(List.of(ByteBuffer.wrap(chunk, 0, (int) Math.min(CHUNK_SIZE, remaining))));
+            }
+            sink.onComplete();
+            long written = sink.getBody().toCompletableFuture().get();
+            channel.force(false);
+            return written;
+        }
+    }
+
+    /**
+     * A stream repeating a chunk up to the given length, without holding the whole file in memory.
+     */
+    private static final class ChunkInputStream extends InputStream {
+        private final byte[] chunk;
+        private long remaining;
+
+        /**
+         * @param chunk The repeated content.
+         * @param length The length of the stream.
+         */
+        ChunkInputStream(byte[] chunk, long length) {
+            this.chunk = chunk;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (remaining == 0) {
+                return -1;
+            }
+            // at most one chunk per read, like a socket delivers it
+            int read = (int) Math.min(Math.min(length, chunk.length), remaining);
+            System.arraycopy(chunk, 0, buffer, offset, read);
+            remaining -= read;
+            return read;
+        }
+    }
+}
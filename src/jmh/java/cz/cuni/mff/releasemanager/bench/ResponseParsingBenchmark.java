@@ -0,0 +1,103 @@
+package cz.cuni.mff.releasemanager.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import cz.cuni.mff.releasemanager.types.Release;
+import cz.cuni.mff.releasemanager.types.SearchResult;
+import cz.cuni.mff.releasemanager.utils.JsonUtils;
+
+/**
+ * Compares parsing Github API responses the original way, from a buffered string with a new
+ * {@code ObjectMapper} per response, with the shared readers of {@link JsonUtils} reading from a stream.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseParsingBenchmark {
+
+    private byte[] release;
+    private byte[] searchResult;
+
+    /**
+     * Builds a release with long release notes and many assets with uploader objects,
+     * and a search result with repositories carrying the usual owner and metadata fields.
+     */
+    @Setup
+    public void setUp() {
+        StringBuilder json = new StringBuilder("{\"url\": \"https://api.github.com/repos/o/r/releases/1\",")
+            .append("\"name\": \"v1.0.0\", \"body\": \"")
+            .append("* Fixed a bug in the release notes renderer\\n".repeat(500))
+            .append("\", \"author\": ").append(user()).append(", \"assets\": [");
+        for (int i = 0; i < 40; i++) {
+            json.append(i == 0 ? "" : ",")
+                .append("{\"url\": \"https://api.github.com/repos/o/r/releases/assets/").append(i).append("\",")
+                .append("\"name\": \"app-").append(i).append("-x86_64.AppImage\",")
+                .append("\"browser_download_url\": \"https://github.com/o/r/releases/download/v1/app-").append(i)
+                .append("-x86_64.AppImage\", \"size\": 123456789, \"download_count\": 42,")
+                .append("\"uploader\": ").append(user()).append("}");
+        }
+        release = json.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+
+        json = new StringBuilder("{\"total_count\": 5, \"incomplete_results\": false, \"items\": [");
+        for (int i = 0; i < 5; i++) {
+            json.append(i == 0 ? "" : ",")
+                .append("{\"full_name\": \"o/repo").append(i).append("\", \"description\": \"Repository ").append(i)
+                .append("\", \"owner\": ").append(user()).append(", \"topics\": [\"a\", \"b\", \"c\"],")
+                .append("\"license\": {\"key\": \"mit\", \"name\": \"MIT License\"}, \"stargazers_count\": 1000}");
+        }
+        searchResult = json.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return JSON of a Github user object as embedded in API responses.
+     */
+    private static String user() {
+        StringBuilder user = new StringBuilder("{\"login\": \"octocat\", \"id\": 1, \"type\": \"User\"");
+        for (String field : new String[] {"avatar_url", "html_url", "followers_url", "following_url", "gists_url",
+                "starred_url", "subscriptions_url", "organizations_url", "repos_url", "events_url"}) {
+            user.append(", \"").append(field).append("\": \"https://api.github.com/users/octocat/").append(field).append('"');
+        }
+        return user.append('}').toString();
+    }
+
+    @Benchmark
+    public Release releaseFromStringWithNewMapper() throws IOException {
+        String json = new String(release, StandardCharsets.UTF_8);
+        return new ObjectMapper().readValue(json, Release.class);
+    }
+
+    @Benchmark
+    public Release releaseFromStreamWithSharedReader() throws IOException {
+        return JsonUtils.RELEASE_READER.readValue(new ByteArrayInputStream(release));
+    }
+
+    @Benchmark
+    public SearchResult searchResultFromStringWithNewMapper() throws IOException {
+        String json = new String(searchResult, StandardCharsets.UTF_8);
+        return new ObjectMapper().readValue(json, SearchResult.class);
+    }
+
+    @Benchmark
+    public SearchResult searchResultFromStreamWithSharedReader() throws IOException {
+        return JsonUtils.SEARCH_RESULT_READER.readValue(new ByteArrayInputStream(searchResult));
+    }
+}
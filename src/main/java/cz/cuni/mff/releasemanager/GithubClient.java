@@ -1,74 +1,410 @@
 package cz.cuni.mff.releasemanager;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.net.ConnectException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpHeaders;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import cz.cuni.mff.releasemanager.archive.ArchiveFormat;
+import cz.cuni.mff.releasemanager.archive.Archives;
+import cz.cuni.mff.releasemanager.cache.AssetStore;
+import cz.cuni.mff.releasemanager.cache.RepoIndex;
+import cz.cuni.mff.releasemanager.cache.ResponseCache;
+import cz.cuni.mff.releasemanager.cache.SearchCache;
+import cz.cuni.mff.releasemanager.download.Checksums;
+import cz.cuni.mff.releasemanager.download.DownloadManager;
+import cz.cuni.mff.releasemanager.download.Downloader;
+import cz.cuni.mff.releasemanager.download.StagingArea;
+import cz.cuni.mff.releasemanager.download.ZsyncControl;
+import cz.cuni.mff.releasemanager.download.ZsyncDelta;
+import cz.cuni.mff.releasemanager.http.CircuitBreaker;
+import cz.cuni.mff.releasemanager.http.HttpStatusException;
+import cz.cuni.mff.releasemanager.http.RateLimiter;
+import cz.cuni.mff.releasemanager.http.RateLimiter.Priority;
+import cz.cuni.mff.releasemanager.http.RetryPolicy;
+import cz.cuni.mff.releasemanager.http.TokenPool;
+import cz.cuni.mff.releasemanager.http.TokenPool.Token;
+import cz.cuni.mff.releasemanager.platform.AssetRanker;
 import cz.cuni.mff.releasemanager.platform.Platform;
 import cz.cuni.mff.releasemanager.platform.PlatformHandler;
 import cz.cuni.mff.releasemanager.types.Asset;
+import cz.cuni.mff.releasemanager.types.CacheEntry;
+import cz.cuni.mff.releasemanager.types.DownloadStats;
+import cz.cuni.mff.releasemanager.types.DownloadedAsset;
 import cz.cuni.mff.releasemanager.types.Release;
+import cz.cuni.mff.releasemanager.types.Repo;
 import cz.cuni.mff.releasemanager.types.SearchResult;
+import cz.cuni.mff.releasemanager.types.Settings;
 import cz.cuni.mff.releasemanager.utils.FileUtils;
+import cz.cuni.mff.releasemanager.utils.JsonUtils;
 
 /**
  * This class is responsible for interacting with the Github API.
  * It provides methods to search for repositories, get the latest release assets,
  * and install those assets.
+ *
+ * <p>Every operation is available as an asynchronous method returning a {@link CompletableFuture},
+ * built on {@link HttpClient#sendAsync}. The work between the requests, such as parsing the responses,
+ * runs on virtual threads, so many operations can be started at once without blocking platform threads.
+ * The synchronous methods wait for the asynchronous ones and report failures on the standard output.</p>
  */
 public class GithubClient {
 
     private static final String API_URL = "https://api.github.com";
+    private static final String GRAPHQL_URL = API_URL + "/graphql";
+    // hosts the tokens are sent to, never to the storage hosts asset downloads are redirected to
+    private static final Set<String> GITHUB_HOSTS = Set.of("api.github.com", "github.com");
+    // number of repositories looked up by a single GraphQL query
+    private static final int GRAPHQL_BATCH_SIZE = 50;
     private static final String ACCEPT_JSON_HEADER = "application/vnd.github.v3+json";
     private static final String ACCEPT_STREAM_HEADER = "application/octet-stream";
-    private static final String RESULT_COUNT = "5";
+    // the maximum number of repositories per page of a search Github allows
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final Pattern NEXT_LINK = Pattern.compile("<([^>]+)>;\\s*rel=\"next\"");
+    private static final String RESPONSE_CACHE_DIR = "responses";
+    private static final String RATE_LIMIT_FILE = "ratelimit.json";
+    private static final String SEARCH_CACHE_FILE = "search.json";
+    private static final String REPO_INDEX_FILE = "repos.json";
+    // checksum files list a few assets, anything larger is not a checksum file
+    private static final int MAX_CHECKSUM_FILE_SIZE = 1024 * 1024;
+    private static final int MAX_ZSYNC_FILE_SIZE = 32 * 1024 * 1024;
+    private static final String ZSYNC_SUFFIX = ".zsync";
+    // when a cached copy exists, a slow network is not waited for longer than this
+    private static final Duration REVALIDATE_TIMEOUT = Duration.ofSeconds(5);
+    private final ExecutorService executor;
     private final HttpClient client;
     private final PlatformHandler platformHandler;
+    private final ResponseCache responseCache;
+    private final SearchCache searchCache;
+    private final RepoIndex repoIndex;
+    private final AssetStore assetStore;
+    private final StagingArea stagingArea;
+    private final AssetRanker assetRanker;
+    private final Downloader downloader;
+    private final RateLimiter rateLimiter;
+    private final RetryPolicy retryPolicy;
+    private final CircuitBreaker circuitBreaker;
+    private final TokenPool tokenPool;
+    private boolean offline;
 
     /**
      * Constructor for GithubClient.
-     * Initializes the HttpClient and PlatformHandler.
+     * Initializes the HttpClient running on virtual threads, PlatformHandler, the response and search caches,
+     * the local repository index, the asset store, the staging area for downloads, the asset ranker
+     * for the current platform, the download manager
+     * sharing the bandwidth and the connections among the downloads, the rate limiter,
+     * the tokens and the retry policy and circuit breaker configured in the settings.
+     * Downloads use a client that does not follow redirects by itself, so that the downloader
+     * can drop the token when it is redirected to another host.
      */
     public GithubClient() {
+        executor = Executors.newVirtualThreadPerTaskExecutor();
         client = HttpClient.newBuilder()
             .followRedirects(HttpClient.Redirect.ALWAYS)
             .version(HttpClient.Version.HTTP_2)
             .connectTimeout(java.time.Duration.ofSeconds(30))
+            .executor(executor)
             .build();
         platformHandler = Platform.getPlatformHandler();
+        responseCache = new ResponseCache(platformHandler.getCacheDirLocation().resolve(RESPONSE_CACHE_DIR));
+        Settings settings = platformHandler.loadSettings();
+        downloader = new Downloader(HttpClient.newBuilder()
+            .followRedirects(HttpClient.Redirect.NEVER)
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(java.time.Duration.ofSeconds(30))
+            .executor(executor)
+            .build(), DownloadManager.of(settings));
+        rateLimiter = new RateLimiter(platformHandler.getCacheDirLocation().resolve(RATE_LIMIT_FILE));
+        retryPolicy = RetryPolicy.of(settings);
+        circuitBreaker = CircuitBreaker.of(settings);
+        searchCache = new SearchCache(platformHandler.getCacheDirLocation().resolve(SEARCH_CACHE_FILE),
+            Duration.ofSeconds(settings.searchCacheTtlSeconds()));
+        repoIndex = new RepoIndex(platformHandler.getCacheDirLocation().resolve(REPO_INDEX_FILE));
+        assetStore = AssetStore.of(settings, platformHandler.getCacheDirLocation());
+        stagingArea = new StagingArea(platformHandler.getStagingDirLocation());
+        assetRanker = AssetRanker.forCurrentPlatform();
+        tokenPool = TokenPool.of(settings);
+    }
+
+    /**
+     * Sets the offline mode. In offline mode API requests are answered only from the response cache.
+     * @param offline true to avoid any network requests to the Github API.
+     */
+    public void setOffline(boolean offline) {
+        this.offline = offline;
     }
 
     /**
-     * Searches for repositories by name using the Github API.
+     * @return The throughput and the number of bytes of the downloads so far and the connections in use.
+     */
+    public DownloadStats downloadStats() {
+        return downloader.manager().stats();
+    }
+
+    /**
+     * Searches the repositories seen in earlier search results and installed releases,
+     * without sending any request.
      * @param name The name of the repository to search for.
-     * @return An Optional containing the SearchResult if found, otherwise empty.
+     * @param limit The maximum number of repositories returned.
+     * @return The known repositories matching the name.
      */
-    public Optional<SearchResult> searchRepoByName(String name) {
-        String url = API_URL + "/search/repositories?q=" + name + "&per_page=" + RESULT_COUNT;
-        try {
-            var jsonResponse = request(URI.create(url));
-            if (!jsonResponse.isPresent()) {
-                return Optional.empty();
+    public List<Repo> searchKnownRepos(String name, int limit) {
+        return repoIndex.search(name, limit);
+    }
+
+    /**
+     * Adds the repositories to the local repository index.
+     * @param repos The repositories, e.g. of the installed releases.
+     */
+    public void indexRepos(Collection<Repo> repos) {
+        repoIndex.add(repos);
+    }
+
+    /**
+     * Searches for repositories by name and returns all matching repositories as a lazy stream.
+     * The first page is requested at once, unless a recent result of the search is cached.
+     * The following page, found in the {@code Link} header, is requested in the background when half
+     * of the current page has been consumed, so pages the consumer never approaches are not requested.
+     * Closing the stream cancels the prefetch.
+     * @param name The name of the repository to search for.
+     * @param pageSize The number of repositories per page, usually the number the caller expects to read.
+     * @return The stream of matching repositories. A failed request is thrown
+     * as an UncheckedIOException by the terminal operation.
+     */
+    public Stream<Repo> searchRepos(String name, int pageSize) {
+        int perPage = Math.clamp(pageSize, 1, MAX_PAGE_SIZE);
+        Optional<SearchResult> cached = searchCache.get(name);
+        CompletableFuture<SearchPage> firstPage;
+        if (cached.isPresent() && (cached.get().isComplete() || cached.get().items().size() >= perPage)) {
+            List<Repo> items = cached.get().items();
+            firstPage = CompletableFuture.completedFuture(new SearchPage(items,
+                cached.get().isComplete() ? null : searchPage(name, items.size(), 2)));
+        } else {
+            firstPage = fetchSearchPageAsync(searchPage(name, perPage, 1), name);
+        }
+        SearchPages pages = new SearchPages(firstPage);
+        return StreamSupport.stream(pages, false).onClose(pages::cancel);
+    }
+
+    /**
+     * @param name The name of the repository to search for.
+     * @param perPage The number of repositories per page.
+     * @param page The number of the page, starting at 1.
+     * @return The URI of the page of the search.
+     */
+    private static URI searchPage(String name, int perPage, int page) {
+        return URI.create(API_URL + "/search/repositories?q=" + name + "&per_page=" + perPage
+            + (page > 1 ? "&page=" + page : ""));
+    }
+
+    /**
+     * Requests a page of search results and adds its repositories to the local index.
+     * @param uri The URI of the page.
+     * @param query The query to store the first page in the search cache under, or null for the following pages.
+     * @return A future of the page.
+     */
+    private CompletableFuture<SearchPage> fetchSearchPageAsync(URI uri, String query) {
+        AtomicReference<String> link = new AtomicReference<>();
+        return requestAsync(uri, Priority.INTERACTIVE, link::set)
+            .thenApplyAsync(unchecked(jsonResponse -> {
+                if (jsonResponse.isEmpty()) {
+                    return new SearchPage(List.of(), null);
+                }
+                try (InputStream json = jsonResponse.get()) {
+                    SearchResult searchResult = getSearchResult(json);
+                    if (searchResult == null || searchResult.items() == null) {
+                        return new SearchPage(List.of(), null);
+                    }
+                    List<Repo> items = searchResult.items();
+                    if (query != null) {
+                        searchCache.put(query, searchResult);
+                    }
+                    repoIndex.add(items);
+                    return new SearchPage(items, nextPage(link.get()));
+                }
+            }), executor);
+    }
+
+    /**
+     * @param link The value of the {@code Link} header, or null.
+     * @return The URI of the next page, or null if this is the last page.
+     */
+    static URI nextPage(String link) {
+        if (link == null) {
+            return null;
+        }
+        Matcher matcher = NEXT_LINK.matcher(link);
+        return matcher.find() ? URI.create(matcher.group(1)) : null;
+    }
+
+    /**
+     * Stream copying everything read from a streamed archive to a file, so that the archive can be stored
+     * without being downloaded or read again.
+     */
+    private static final class CopyingInputStream extends FilterInputStream {
+        private final OutputStream copy;
+
+        /**
+         * @param body The body of the response, not closed by this stream.
+         * @param copy The stream of the file receiving the copy.
+         */
+        CopyingInputStream(InputStream body, OutputStream copy) {
+            super(body);
+            this.copy = copy;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int read = read(single, 0, 1);
+            return read == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                copy.write(buffer, offset, read);
             }
-            String json = jsonResponse.get();
-            SearchResult searchResult = getSearchResult(json);
-            return Optional.ofNullable(searchResult);
+            return read;
+        }
 
-        } catch (IOException | InterruptedException ex) {
-            System.out.println(ex.getMessage());
-            return Optional.empty();
+        @Override
+        public long skip(long n) throws IOException {
+            // skipped bytes are part of the archive as well
+            if (n <= 0) {
+                return 0;
+            }
+            byte[] buffer = new byte[(int) Math.min(n, 8192)];
+            long skipped = 0;
+            while (skipped < n) {
+                int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+                if (read < 0) {
+                    break;
+                }
+                skipped += read;
+            }
+            return skipped;
+        }
+
+        @Override
+        public void close() {
+            // the body belongs to the downloader
+        }
+    }
+
+    /**
+     * A page of search results.
+     * @param items The repositories on the page.
+     * @param next The URI of the next page, or null if this is the last page.
+     */
+    private record SearchPage(List<Repo> items, URI next) {}
+
+    /**
+     * Spliterator walking the pages of a search, keeping at most one page requested ahead.
+     */
+    private class SearchPages extends Spliterators.AbstractSpliterator<Repo> {
+        private CompletableFuture<SearchPage> current;
+        private CompletableFuture<SearchPage> prefetched;
+        private List<Repo> items;
+        private URI next;
+        private int position;
+
+        /**
+         * @param firstPage The future of the first page.
+         */
+        SearchPages(CompletableFuture<SearchPage> firstPage) {
+            super(Long.MAX_VALUE, ORDERED | NONNULL);
+            current = firstPage;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Repo> action) {
+            while (items == null || position == items.size()) {
+                if (items != null) {
+                    if (next == null) {
+                        return false;
+                    }
+                    current = prefetched != null ? prefetched : fetchSearchPageAsync(next, null);
+                    prefetched = null;
+                }
+                SearchPage page = join(current);
+                items = page.items();
+                next = page.next();
+                position = 0;
+                if (items.isEmpty()) {
+                    return false;
+                }
+            }
+            if (prefetched == null && next != null && position >= items.size() / 2) {
+                prefetched = fetchSearchPageAsync(next, null);
+            }
+            action.accept(items.get(position++));
+            return true;
+        }
+
+        /**
+         * Cancels the page requested ahead when the consumer stops.
+         */
+        void cancel() {
+            if (prefetched != null) {
+                prefetched.cancel(true);
+            }
+        }
+
+        /**
+         * Waits for the page.
+         * @param page The future of the page.
+         * @return The page.
+         */
+        private SearchPage join(CompletableFuture<SearchPage> page) {
+            try {
+                return await(page);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UncheckedIOException(new InterruptedIOException("Search interrupted."));
+            }
         }
     }
 
@@ -78,98 +414,849 @@ public class GithubClient {
      * @return A list of Asset objects.
      */
     public List<Asset> getLatestReleaseAssets(String repoFullName) {
+        try {
+            return await(getLatestReleaseAssetsAsync(repoFullName));
+        } catch (IOException | InterruptedException ex) {
+            System.out.println(ex.getMessage());
+            return List.of();
+        }
+    }
+
+    /**
+     * Retrieves the list of latest release assets for a given repository asynchronously.
+     * @param repoFullName The full name of the repository (owner/repo).
+     * @return A future of a list of Asset objects.
+     * The future completes exceptionally with an IOException if the request fails.
+     */
+    public CompletableFuture<List<Asset>> getLatestReleaseAssetsAsync(String repoFullName) {
+        return getLatestReleaseAssetsAsync(repoFullName, Priority.INTERACTIVE);
+    }
+
+    /**
+     * Retrieves the list of latest release assets for a given repository asynchronously.
+     * @param repoFullName The full name of the repository (owner/repo).
+     * @param priority The priority of the request for the rate limiter.
+     * @return A future of a list of Asset objects.
+     */
+    private CompletableFuture<List<Asset>> getLatestReleaseAssetsAsync(String repoFullName, Priority priority) {
         String[] parts = repoFullName.split("/");
         if (parts.length != 2) {
-            return List.of();
+            return CompletableFuture.completedFuture(List.of());
         }
         String owner = parts[0];
         String repo = parts[1];
 
         String url = API_URL + "/repos/" + owner + "/" + repo + "/releases/latest";
-        try {
-            var jsonResponse = request(URI.create(url));
-            if (jsonResponse.isEmpty()) {
-                System.out.println("No releases found for this repository.");
-                return List.of();
-            }
-            String json = jsonResponse.get();
-            List<Asset> assets = findAssets(json);
-            if (assets.isEmpty()) {
-                System.out.println("No suitable asset found for this repository.");
+        return requestAsync(URI.create(url), priority)
+            .thenApplyAsync(unchecked(jsonResponse -> {
+                if (jsonResponse.isEmpty()) {
+                    System.out.println("No releases found for this repository.");
+                    return List.<Asset>of();
+                }
+                List<Asset> assets;
+                try (InputStream json = jsonResponse.get()) {
+                    assets = findAssets(json);
+                }
+                if (assets.isEmpty()) {
+                    System.out.println("No suitable asset found for this repository.");
+                }
+                return assets;
+            }), executor);
+    }
+
+    /**
+     * Retrieves the suitable latest release assets for many repositories at once.
+     * If a token is configured, the releases are fetched with batched GraphQL queries,
+     * otherwise the REST API is queried for every repository concurrently.
+     * The requests have background priority, so they are paced to stay within the rate limit.
+     * @param repoFullNames The full names of the repositories (owner/repo).
+     * @return A map from the repository name to its list of Asset objects.
+     */
+    public Map<String, List<Asset>> getLatestReleaseAssets(List<String> repoFullNames) {
+        return getLatestReleaseAssetsAsync(repoFullNames).join();
+    }
+
+    /**
+     * Retrieves the suitable latest release assets for many repositories at once asynchronously.
+     * The batches of GraphQL queries are sent concurrently. A failed lookup of a repository
+     * results in an empty list for it, so the future does not complete exceptionally.
+     * @param repoFullNames The full names of the repositories (owner/repo).
+     * @return A future of a map from the repository name to its list of Asset objects.
+     */
+    public CompletableFuture<Map<String, List<Asset>>> getLatestReleaseAssetsAsync(List<String> repoFullNames) {
+        if (tokenPool.isEmpty() || offline) {
+            return getLatestReleaseAssetsRestAsync(repoFullNames);
+        }
+        List<CompletableFuture<Map<String, List<Asset>>>> batches = new ArrayList<>();
+        for (int i = 0; i < repoFullNames.size(); i += GRAPHQL_BATCH_SIZE) {
+            List<String> batch = repoFullNames.subList(i, Math.min(repoFullNames.size(), i + GRAPHQL_BATCH_SIZE));
+            batches.add(queryLatestReleasesAsync(batch).exceptionallyCompose(ex -> {
+                System.out.println("Batch lookup failed, falling back to REST: " + unwrap(ex).getMessage());
+                return getLatestReleaseAssetsRestAsync(batch);
+            }));
+        }
+        return CompletableFuture.allOf(batches.toArray(CompletableFuture[]::new)).thenApply(v -> {
+            Map<String, List<Asset>> result = new LinkedHashMap<>();
+            batches.forEach(batch -> result.putAll(batch.join()));
+            return result;
+        });
+    }
+
+    /**
+     * Retrieves the latest release assets for many repositories with concurrent REST requests.
+     * @param repoFullNames The full names of the repositories (owner/repo).
+     * @return A future of a map from the repository name to its list of Asset objects.
+     */
+    private CompletableFuture<Map<String, List<Asset>>> getLatestReleaseAssetsRestAsync(List<String> repoFullNames) {
+        Map<String, CompletableFuture<List<Asset>>> futures = new LinkedHashMap<>();
+        for (String repoFullName : repoFullNames) {
+            futures.put(repoFullName, getLatestReleaseAssetsAsync(repoFullName, Priority.BACKGROUND)
+                .exceptionally(ex -> {
+                    System.out.println(unwrap(ex).getMessage());
+                    return List.of();
+                }));
+        }
+        return CompletableFuture.allOf(futures.values().toArray(CompletableFuture[]::new)).thenApply(v -> {
+            Map<String, List<Asset>> result = new LinkedHashMap<>();
+            futures.forEach((repoFullName, future) -> result.put(repoFullName, future.join()));
+            return result;
+        });
+    }
+
+    /**
+     * Fetches the latest releases of the given repositories in a single GraphQL query.
+     * Every repository gets its own aliased field, the owner and name are passed as variables.
+     * @param repoFullNames The full names of the repositories (owner/repo).
+     * @return A future of a map from the repository name to its list of suitable Asset objects.
+     */
+    private CompletableFuture<Map<String, List<Asset>>> queryLatestReleasesAsync(List<String> repoFullNames) {
+        StringBuilder parameters = new StringBuilder();
+        StringBuilder fields = new StringBuilder();
+        ObjectNode variables = JsonUtils.MAPPER.createObjectNode();
+        for (int i = 0; i < repoFullNames.size(); i++) {
+            String[] parts = repoFullNames.get(i).split("/");
+            if (parts.length != 2) {
+                continue;
             }
-            return assets;
-        } catch (IOException | InterruptedException ex) {
-            System.out.println(ex.getMessage());
-            return List.of();
+            parameters.append("$o").append(i).append(": String!, $n").append(i).append(": String!, ");
+            fields.append("r").append(i).append(": repository(owner: $o").append(i).append(", name: $n").append(i)
+                .append(") { latestRelease { url name databaseId tagName releaseAssets(first: 100) {")
+                .append(" nodes { name downloadUrl size contentType updatedAt } } } } ");
+            variables.put("o" + i, parts[0]);
+            variables.put("n" + i, parts[1]);
         }
+        if (variables.isEmpty()) {
+            return CompletableFuture.completedFuture(new LinkedHashMap<>());
+        }
+        ObjectNode query = JsonUtils.MAPPER.createObjectNode();
+        query.put("query", "query(" + parameters.substring(0, parameters.length() - 2) + ") { " + fields + "}");
+        query.set("variables", variables);
+
+        HttpRequest request = HttpRequest.newBuilder()
+            .uri(URI.create(GRAPHQL_URL))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(query.toString()))
+            .build();
+        return sendAsync(request, Priority.BACKGROUND)
+            .exceptionallyCompose(ex -> CompletableFuture.failedFuture(unwrap(ex) instanceof ConnectException e
+                ? new IOException("Connection error.", e)
+                : unwrap(ex)))
+            .thenApplyAsync(unchecked(response -> {
+                handleResponseCode(response);
+                JsonNode data;
+                try (InputStream json = response.body()) {
+                    data = JsonUtils.MAPPER.readTree(json).path("data");
+                }
+                if (data.isMissingNode() || data.isNull()) {
+                    throw new IOException("GraphQL query returned no data.");
+                }
+                Map<String, List<Asset>> result = new LinkedHashMap<>();
+                for (int i = 0; i < repoFullNames.size(); i++) {
+                    List<Asset> assets = new ArrayList<>();
+                    JsonNode release = data.path("r" + i).path("latestRelease");
+                    for (JsonNode node : release.path("releaseAssets").path("nodes")) {
+                        String downloadUrl = node.path("downloadUrl").asText();
+                        String updatedAt = node.path("updatedAt").asText(null);
+                        assets.add(new Asset(downloadUrl, node.path("name").asText(), downloadUrl, null, null, null,
+                            node.path("size").asLong(), node.path("contentType").asText(null),
+                            updatedAt == null ? null : Instant.parse(updatedAt),
+                            release.path("databaseId").asLong(), release.path("tagName").asText(null)));
+                    }
+                    result.put(repoFullNames.get(i), filterAssets(assets));
+                }
+                return result;
+            }), executor);
     }
 
     /**
      * Installs the asset by downloading it and passing it to the platform handler for installation.
      * @param asset The asset to install.
-     * @return The path to the file for uninstall.
+     * @return The path to the file for uninstall, or null if the download or installation failed.
      */
     public Path installAsset(Asset asset) {
-        InputStream assetStream;
         try {
-            assetStream = getAsset(asset.url());
+            return await(installAssetAsync(asset));
+        } catch (IOException | UncheckedIOException | InterruptedException ex) {
+            System.out.println(ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Installs the asset again, after the installed file changed. The stored content of the asset is hashed
+     * in full first, since the changed file may share it with the asset store.
+     * @param asset The asset to install.
+     * @return The path to the file for uninstall, or null if the download or installation failed.
+     */
+    public Path repairAsset(Asset asset) {
+        Checksums.publishedDigest(asset).or(() -> assetStore.lookup(storeKey(asset))).ifPresent(assetStore::verify);
+        return installAsset(asset);
+    }
+
+    /**
+     * Installs the asset asynchronously by downloading it and passing it to the platform handler for installation.
+     * @param asset The asset to install.
+     * @return A future of the path to the file for uninstall, or of null if the download or installation failed.
+     */
+    public CompletableFuture<Path> installAssetAsync(Asset asset) {
+        return CompletableFuture.supplyAsync(() -> stageAsset(asset, null), executor)
+            .thenApplyAsync(assetPath -> assetPath == null ? null : platformHandler.install(assetPath), executor);
+    }
+
+    /**
+     * Downloads the asset to a local file without installing it.
+     * @param asset The asset to download.
+     * @return The path to the downloaded file, or null if the download or the verification failed.
+     */
+    public Path downloadAsset(Asset asset) {
+        DownloadedAsset download = downloadAsset(asset, null);
+        return download == null ? null : download.file();
+    }
+
+    /**
+     * Downloads the asset to a local file without installing it.
+     * An asset already in the asset store is taken from there without network. If a zsync control file
+     * is published for the asset, only the blocks missing from the previously installed version are downloaded.
+     * The file is verified against the checksum published for the asset, if there is one,
+     * and added to the asset store.
+     * @param asset The asset to download.
+     * @param previous Path to the installed previous version of the asset, or null.
+     * @return The downloaded file with its SHA-256, or null if the download or the verification failed.
+     */
+    public DownloadedAsset downloadAsset(Asset asset, Path previous) {
+        return downloadAsset(asset, previous, storedAsset(asset, storeKey(asset)));
+    }
+
+    /**
+     * Downloads the asset to a local file without installing it, as by {@link #downloadAsset(Asset, Path)}.
+     * @param asset The asset to download.
+     * @param previous Path to the installed previous version of the asset, or null.
+     * @param stored Optional containing the SHA-256 of the content of the asset in the asset store.
+     * @return The downloaded file with its SHA-256, or null if the download or the verification failed.
+     */
+    private DownloadedAsset downloadAsset(Asset asset, Path previous, Optional<String> stored) {
+        Path destination;
+        try {
+            destination = stagingArea.stage(asset.name());
+        } catch (IOException e) {
+            System.out.println("Failed to create download directory: " + e.getMessage());
+            return null;
+        }
+        String storeKey = storeKey(asset);
+        if (stored.isPresent()) {
+            try {
+                System.out.println("Using " + asset.name() + " from the local asset store.");
+                return new DownloadedAsset(assetStore.copyTo(stored.get(), destination).toAbsolutePath(), stored.get());
+            } catch (IOException e) {
+                System.out.println("Failed to take asset from the store: " + e.getMessage());
+            }
+        }
+        String sha256;
+        try {
+            sha256 = downloadDelta(asset, previous, destination);
+            if (sha256 == null) {
+                sha256 = download(assetRequest(asset.url()), destination, asset.size());
+            }
         } catch (IOException | InterruptedException e) {
-            System.out.println("Error retrieving asset: " + e.getMessage());
+            String reason = e instanceof ConnectException ? "Connection error." : e.getMessage();
+            System.out.println("Error retrieving asset: " + reason);
+            if (Downloader.canResume(destination)) {
+                System.out.println("The partial download is kept and will be resumed on the next attempt.");
+            } else {
+                stagingArea.discard(destination);
+            }
             return null;
         }
+        if (!verifyChecksum(asset, sha256)) {
+            stagingArea.discard(destination);
+            return null;
+        }
+        try {
+            assetStore.put(destination, sha256, storeKey);
+        } catch (IOException e) {
+            System.out.println("Failed to add asset to the store: " + e.getMessage());
+        }
+        return new DownloadedAsset(destination.toAbsolutePath(), sha256);
+    }
 
-        final Path assetPath = FileUtils.saveInputStreamToFile(assetStream, asset.name());
-        return platformHandler.install(assetPath);
+    /**
+     * Downloads the asset for installation. A tarball is unpacked into the staging area while it downloads,
+     * unless it is in the asset store already. The archive is written next to the unpacked files as it
+     * streams by and moved into the asset store once it is verified, so it is never read back. Transient
+     * failures are retried like other downloads, but every retry starts the stream over.
+     * Other assets are downloaded as by {@link #downloadAsset(Asset, Path)}.
+     * @param asset The asset to download.
+     * @param previous Path to the installed previous version of the asset, or null.
+     * @return The path to the downloaded file or to the directory the archive was unpacked into,
+     * or null if the download or the verification failed.
+     */
+    public Path stageAsset(Asset asset, Path previous) {
+        Optional<ArchiveFormat> format = ArchiveFormat.of(asset.name()).filter(ArchiveFormat::isStreamable);
+        String storeKey = storeKey(asset);
+        Optional<String> stored = storedAsset(asset, storeKey);
+        if (format.isEmpty() || stored.isPresent()) {
+            DownloadedAsset download = downloadAsset(asset, previous, stored);
+            return download == null ? null : download.file();
+        }
+        Path destination;
+        try {
+            destination = stagingArea.stage(asset.name());
+        } catch (IOException e) {
+            System.out.println("Failed to create download directory: " + e.getMessage());
+            return null;
+        }
+        Path unpacked = destination.resolveSibling(format.get().stem(asset.name()));
+        String sha256;
+        try {
+            // the unpacked files take at least as much room as the archive, which is kept for the store
+            Downloader.checkFreeSpace(destination, 2 * asset.size());
+            HttpRequest request = assetRequest(asset.url());
+            sha256 = retrying(request.uri().getHost(), attempt -> {
+                // a stream cannot be resumed, so the next attempt unpacks the archive from its start again
+                if (attempt > 1) {
+                    FileUtils.deleteDirectory(unpacked);
+                }
+                return downloader.stream(request, body -> {
+                    try (OutputStream archive = Files.newOutputStream(destination)) {
+                        InputStream copying = new CopyingInputStream(body, archive);
+                        Archives.unpack(format.get(), copying, unpacked);
+                        // the archive ends with padding the unpacker does not read
+                        copying.transferTo(OutputStream.nullOutputStream());
+                    }
+                });
+            });
+        } catch (IOException | InterruptedException e) {
+            String reason = e instanceof ConnectException ? "Connection error." : e.getMessage();
+            System.out.println("Error retrieving asset: " + reason);
+            stagingArea.discard(destination);
+            return null;
+        }
+        if (!verifyChecksum(asset, sha256)) {
+            stagingArea.discard(destination);
+            return null;
+        }
+        try {
+            assetStore.put(destination, sha256, storeKey);
+        } catch (IOException e) {
+            System.out.println("Failed to add asset to the store: " + e.getMessage());
+        }
+        try {
+            Files.deleteIfExists(destination);
+        } catch (IOException e) {
+            System.out.println("Failed to remove staged archive: " + e.getMessage());
+        }
+        return unpacked.toAbsolutePath();
+    }
+
+    /**
+     * Assembles the asset from the previous version and the blocks that changed, described by the
+     * zsync control file of the asset.
+     * @param asset The asset to download.
+     * @param previous Path to the installed previous version of the asset, or null.
+     * @param destination Path to the file to write.
+     * @return The lowercase hex SHA-256 of the assembled file, or null if the whole asset has to be downloaded.
+     * @throws InterruptedException
+     */
+    private String downloadDelta(Asset asset, Path previous, Path destination) throws InterruptedException {
+        if (asset.zsyncUrl() == null || previous == null || !Files.isRegularFile(previous)) {
+            return null;
+        }
+        try {
+            byte[] content = downloader.fetch(assetRequest(asset.zsyncUrl()), MAX_ZSYNC_FILE_SIZE);
+            ZsyncControl control = ZsyncControl.parse(content);
+            return new ZsyncDelta(downloader).update(control, previous, assetRequest(asset.url()), destination);
+        } catch (IOException e) {
+            System.out.println("Delta update failed, downloading the whole asset: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @param asset The asset.
+     * @return The URL the asset is stored under in the asset store.
+     */
+    private static String storeKey(Asset asset) {
+        return asset.browserDownloadUrl() != null ? asset.browserDownloadUrl() : asset.url();
+    }
+
+    /**
+     * Finds the content of the asset in the asset store, by the digest Github publishes for it
+     * or by the content last downloaded from its URL.
+     * Content from the URL is not used if it does not match the published digest.
+     * @param asset The asset.
+     * @param storeKey The URL the asset is stored under.
+     * @return Optional containing the SHA-256 of the stored content.
+     */
+    private Optional<String> storedAsset(Asset asset, String storeKey) {
+        Optional<String> digest = Checksums.publishedDigest(asset);
+        Optional<String> stored = digest.isPresent() ? digest : assetStore.lookup(storeKey);
+        return stored.filter(assetStore::contains);
+    }
+
+    /**
+     * Compares the SHA-256 of the downloaded asset with the checksum published for it.
+     * @param asset The downloaded asset.
+     * @param sha256 The SHA-256 computed during the download.
+     * @return false if the asset does not match the published checksum.
+     */
+    private boolean verifyChecksum(Asset asset, String sha256) {
+        Optional<String> expected = expectedChecksum(asset);
+        if (expected.isEmpty()) {
+            System.out.println("No checksum published for " + asset.name() + ", skipping verification.");
+            return true;
+        }
+        if (expected.get().equals(sha256)) {
+            System.out.println("Checksum of " + asset.name() + " verified.");
+            return true;
+        }
+        System.out.println("Checksum mismatch for " + asset.name() + ": expected " + expected.get()
+            + ", got " + sha256 + ".");
+        return false;
+    }
+
+    /**
+     * Looks up the SHA-256 published for the asset, in the asset digest or in a checksum file of the release.
+     * @param asset The asset.
+     * @return Optional containing the published checksum.
+     */
+    private Optional<String> expectedChecksum(Asset asset) {
+        Optional<String> digest = Checksums.publishedDigest(asset);
+        if (digest.isPresent() || asset.checksumUrl() == null) {
+            return digest;
+        }
+        try {
+            byte[] content = downloader.fetch(assetRequest(asset.checksumUrl()), MAX_CHECKSUM_FILE_SIZE);
+            return Checksums.parse(new String(content, StandardCharsets.UTF_8), asset.name());
+        } catch (IOException e) {
+            System.out.println("Failed to download checksum file: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Downloads the asset to a local file asynchronously.
+     * The download itself fetches the ranges of the asset on virtual threads of its own.
+     * @param asset The asset to download.
+     * @return A future of the path to the downloaded file, or of null if the download failed.
+     */
+    public CompletableFuture<Path> downloadAssetAsync(Asset asset) {
+        return CompletableFuture.supplyAsync(() -> downloadAsset(asset), executor);
+    }
+
+    /**
+     * Requests the given URI and returns the response body as a stream.
+     * A cached response is revalidated with a conditional request and served from disk
+     * if the resource has not changed, or if the network is down or does not answer in time.
+     * A new response is stored in the cache while the caller reads it.
+     * @param uri The URI to request.
+     * @param priority The priority of the request for the rate limiter.
+     * @return A future of an Optional containing the stream of the response body, which the caller has to close.
+     */
+    private CompletableFuture<Optional<InputStream>> requestAsync(URI uri, Priority priority) {
+        return requestAsync(uri, priority, null);
     }
 
     /**
-     * Requests the given URI and returns the response body as a string.
+     * Requests the given URI and returns the response body as a stream, passing on the pagination links.
      * @param uri The URI to request.
-     * @return Optional containing the response body as a string.
+     * @param priority The priority of the request for the rate limiter.
+     * @param onLink Receives the {@code Link} header of the response or of the cached response,
+     * or null if the caller does not need it.
+     * @return A future of an Optional containing the stream of the response body, which the caller has to close.
+     */
+    private CompletableFuture<Optional<InputStream>> requestAsync(URI uri, Priority priority, Consumer<String> onLink) {
+        Optional<CacheEntry> cached = responseCache.get(uri);
+        if (offline) {
+            if (cached.isEmpty()) {
+                return CompletableFuture.failedFuture(new IOException("No cached response available in offline mode."));
+            }
+            if (onLink != null) {
+                onLink.accept(cached.get().link());
+            }
+            return CompletableFuture.completedFuture(responseCache.openBody(uri));
+        }
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+            .uri(uri)
+            .header("Accept", ACCEPT_JSON_HEADER);
+        if (cached.isPresent()) {
+            CacheEntry entry = cached.get();
+            if (entry.etag() != null) {
+                builder.header("If-None-Match", entry.etag());
+            }
+            if (entry.lastModified() != null) {
+                builder.header("If-Modified-Since", entry.lastModified());
+            }
+            builder.timeout(REVALIDATE_TIMEOUT);
+        }
+        return sendAsync(builder.build(), priority).handle((response, error) -> {
+            if (error != null) {
+                Throwable cause = unwrap(error);
+                if (cause instanceof IOException && cached.isPresent()) {
+                    System.out.println("Network unavailable, using cached response.");
+                    if (onLink != null) {
+                        onLink.accept(cached.get().link());
+                    }
+                    return responseCache.openBody(uri);
+                }
+                if (cause instanceof ConnectException) {
+                    throw new CompletionException(new IOException("Connection error.", cause));
+                }
+                throw new CompletionException(cause);
+            }
+            try {
+                if (response.statusCode() == 304 && cached.isPresent()) {
+                    response.body().close();
+                    responseCache.touch(cached.get());
+                    if (onLink != null) {
+                        onLink.accept(cached.get().link());
+                    }
+                    return responseCache.openBody(uri);
+                }
+                handleResponseCode(response);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+            if (onLink != null) {
+                onLink.accept(response.headers().firstValue("Link").orElse(null));
+            }
+            return Optional.of(responseCache.store(uri, response.headers(), response.body()));
+        });
+    }
+
+    /**
+     * Downloads the asset, retrying transient failures. Every retry resumes the partial download.
+     * @param request The request for the asset.
+     * @param destination Path to the file to download the asset to.
+     * @param size The size of the asset in bytes published by Github, or 0 if unknown.
+     * @return The lowercase hex SHA-256 of the downloaded file.
      * @throws IOException
      * @throws InterruptedException
      */
-    private Optional<String> request(URI uri) throws IOException, InterruptedException {
-        HttpRequest request = HttpRequest.newBuilder()
-            .uri(uri)
-            .header("Accept", ACCEPT_JSON_HEADER)
-            .build();
-        HttpResponse<String> response;
+    private String download(HttpRequest request, Path destination, long size) throws IOException, InterruptedException {
+        return retrying(request.uri().getHost(), attempt -> downloader.download(request, destination, size));
+    }
+
+    /**
+     * Makes attempts at a transfer from the host until one succeeds, the failure is not transient or
+     * the retries run out. Every attempt is let through by the circuit breaker of the host and its outcome
+     * is recorded there, so a probe of a failing host always closes or opens the breaker again.
+     * @param host The host of the transfer.
+     * @param transfer The transfer, given the number of the attempt, starting at 1.
+     * @return The result of the successful attempt.
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private <T> T retrying(String host, IOFunction<Integer, T> transfer) throws IOException, InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            circuitBreaker.allow(host);
+            try {
+                T result = transfer.apply(attempt);
+                circuitBreaker.recordSuccess(host);
+                return result;
+            } catch (IOException e) {
+                recordFailure(host, e);
+                if (e instanceof Downloader.InsufficientSpaceException || !RetryPolicy.isRetryable(e)
+                        || !retryPolicy.canRetry(attempt)) {
+                    throw e;
+                }
+                Thread.sleep(retryPolicy.backoff(attempt, host, describe(e)));
+            } catch (InterruptedException | RuntimeException e) {
+                circuitBreaker.recordFailure(host);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Records a failed request in the circuit breaker of its host. A request refused by the breaker or
+     * the rate limiter never reached the host and is not recorded. An error status below 500 means that
+     * the host answered, so it counts as a success.
+     * @param host The host of the request.
+     * @param error The failure.
+     */
+    private void recordFailure(String host, Throwable error) {
+        if (error instanceof CircuitBreaker.OpenException || error instanceof RateLimiter.ExhaustedException) {
+            return;
+        }
+        if (error instanceof HttpStatusException status && status.getStatusCode() < 500) {
+            circuitBreaker.recordSuccess(host);
+            return;
+        }
+        circuitBreaker.recordFailure(host);
+    }
+
+    /**
+     * Sends the request asynchronously, retrying transient failures of idempotent requests.
+     * Requests to a host that keeps failing are refused by the circuit breaker without being sent.
+     * @param request The request to send.
+     * @param priority The priority of the request for the rate limiter.
+     * @return A future of the response with the body as a stream.
+     */
+    private CompletableFuture<HttpResponse<InputStream>> sendAsync(HttpRequest request, Priority priority) {
+        return sendAsync(request, priority, 1, false);
+    }
+
+    /**
+     * Makes an attempt to send the request once the circuit breaker and the rate limit allow it.
+     * The request is authenticated with the token with the largest remaining budget.
+     * The budget is recorded from the response. If the request is refused because of the rate limit anyway,
+     * e.g. by the secondary rate limit, it is sent again with the best token then, after waiting for
+     * the reset or {@code Retry-After} if needed, unless that takes too long.
+     * @param request The request to send.
+     * @param priority The priority of the request for the rate limiter.
+     * @param attempt The number of the attempt, starting at 1.
+     * @param rateLimited true if the request was already refused because of the rate limit.
+     * @return A future of the response with the body as a stream.
+     */
+    private CompletableFuture<HttpResponse<InputStream>> sendAsync(HttpRequest request, Priority priority,
+            int attempt, boolean rateLimited) {
+        String host = request.uri().getHost();
+        String resource = RateLimiter.resourceOf(request.uri());
+        Optional<Token> token = tokenPool.select(resource, rateLimiter);
+        String tokenId = token.map(Token::id).orElse(null);
+        HttpRequest authorized = token.map(t -> TokenPool.authorize(request, t)).orElse(request);
+        // the rate limiter may wait or give up, so the breaker lets a probe through only afterwards
+        return CompletableFuture.runAsync(unchecked(() -> {
+                rateLimiter.acquire(resource, tokenId, priority);
+                circuitBreaker.allow(host);
+            }), executor)
+            .thenCompose(v -> client.sendAsync(authorized, HttpResponse.BodyHandlers.ofInputStream()))
+            .handle((response, error) -> {
+                if (error != null) {
+                    return retryFailure(request, priority, attempt, unwrap(error));
+                }
+                rateLimiter.update(resource, tokenId, response.headers());
+                if (!rateLimited && RateLimiter.isRateLimited(response.statusCode(), response.headers())) {
+                    // the host answered, so the resent request is not refused as a second probe
+                    circuitBreaker.recordSuccess(host);
+                    closeQuietly(response.body());
+                    return sendAsync(request, priority, attempt, true);
+                }
+                return retryResponse(request, priority, attempt, response);
+            })
+            .thenCompose(Function.identity());
+    }
+
+    /**
+     * Retries a request that failed with an exception if the failure is transient.
+     * @param request The failed request.
+     * @param priority The priority of the request for the rate limiter.
+     * @param attempt The number of the failed attempt.
+     * @param error The failure.
+     * @return A future of the response of the next attempt, or the failure if the request is not retried.
+     */
+    private CompletableFuture<HttpResponse<InputStream>> retryFailure(HttpRequest request, Priority priority,
+            int attempt, Throwable error) {
+        String host = request.uri().getHost();
+        recordFailure(host, error);
+        if (!(error instanceof IOException e) || !RetryPolicy.isRetryable(e)) {
+            return CompletableFuture.failedFuture(error);
+        }
+        if (!isIdempotent(request) || !retryPolicy.canRetry(attempt)) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return retryLater(request, priority, attempt, retryPolicy.backoff(attempt, host, describe(e)));
+    }
+
+    /**
+     * Retries a request that was answered with a transient server error.
+     * Any other response closes the circuit breaker of the host.
+     * @param request The request.
+     * @param priority The priority of the request for the rate limiter.
+     * @param attempt The number of the attempt.
+     * @param response The response.
+     * @return A future of the response of the next attempt, or the response if the request is not retried.
+     */
+    private CompletableFuture<HttpResponse<InputStream>> retryResponse(HttpRequest request, Priority priority,
+            int attempt, HttpResponse<InputStream> response) {
+        String host = request.uri().getHost();
+        if (!RetryPolicy.isRetryable(response.statusCode())) {
+            circuitBreaker.recordSuccess(host);
+            return CompletableFuture.completedFuture(response);
+        }
+        circuitBreaker.recordFailure(host);
+        if (!isIdempotent(request) || !retryPolicy.canRetry(attempt)) {
+            return CompletableFuture.completedFuture(response);
+        }
+        closeQuietly(response.body());
+        return retryLater(request, priority, attempt,
+            retryPolicy.backoff(attempt, host, "HTTP " + response.statusCode()));
+    }
+
+    /**
+     * Schedules the next attempt of the request without blocking a thread while waiting.
+     * @param request The request.
+     * @param priority The priority of the request for the rate limiter.
+     * @param attempt The number of the failed attempt.
+     * @param delay The delay before the next attempt.
+     * @return A future of the response of the next attempt.
+     */
+    private CompletableFuture<HttpResponse<InputStream>> retryLater(HttpRequest request, Priority priority,
+            int attempt, Duration delay) {
+        Executor delayed = CompletableFuture.delayedExecutor(delay.toMillis(), TimeUnit.MILLISECONDS, executor);
+        return CompletableFuture.runAsync(() -> {}, delayed)
+            .thenCompose(v -> sendAsync(request, priority, attempt + 1, false));
+    }
+
+    /**
+     * @param request The request.
+     * @return true if the request can be safely sent again.
+     */
+    private static boolean isIdempotent(HttpRequest request) {
+        return request.method().equals("GET");
+    }
+
+    /**
+     * @param e The exception a request failed with.
+     * @return A short description of the failure.
+     */
+    private static String describe(IOException e) {
+        if (e instanceof ConnectException) {
+            return "connection error";
+        }
+        return e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+    }
+
+    /**
+     * Closes the body of a response that is not going to be read.
+     * @param body The body of the response.
+     */
+    private static void closeQuietly(InputStream body) {
         try {
-            response = client.send(
-                request,
-                HttpResponse.BodyHandlers.ofString()
-            );
-        } catch (ConnectException e) {
-            throw new IOException("Connection error.", e);
+            body.close();
+        } catch (IOException e) {
+            // the response is discarded anyway
         }
-        handleResponseCode(response);
-        return Optional.of(response.body());
     }
 
     /**
-     * Retrieves the asset from the given URL and returns it as an InputStream.
-     * @param url The URL of the asset.
-     * @return InputStream of the asset.
+     * Waits for the future and unwraps the exception it completed with.
+     * @param future The future.
+     * @return The value of the future.
      * @throws IOException
      * @throws InterruptedException
      */
-    private InputStream getAsset(String url) throws IOException, InterruptedException {
+    private static <T> T await(CompletableFuture<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = unwrap(e);
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (cause instanceof InterruptedException interruptedException) {
+                throw interruptedException;
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * @param error An exception thrown by a future.
+     * @return The original exception without the wrappers added by the future.
+     */
+    private static Throwable unwrap(Throwable error) {
+        while ((error instanceof CompletionException || error instanceof ExecutionException)
+                && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+
+    /**
+     * Function throwing checked exceptions.
+     */
+    @FunctionalInterface
+    private interface IOFunction<T, R> {
+        R apply(T value) throws IOException, InterruptedException;
+    }
+
+    /**
+     * Action throwing checked exceptions.
+     */
+    @FunctionalInterface
+    private interface IOAction {
+        void run() throws IOException, InterruptedException;
+    }
+
+    /**
+     * Adapts the function to a stage of a future, wrapping its checked exceptions.
+     * @param function The function.
+     * @return The function throwing a CompletionException instead.
+     */
+    private static <T, R> Function<T, R> unchecked(IOFunction<T, R> function) {
+        return value -> {
+            try {
+                return function.apply(value);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+        };
+    }
+
+    /**
+     * Adapts the action to a stage of a future, wrapping its checked exceptions.
+     * @param action The action.
+     * @return The action throwing a CompletionException instead.
+     */
+    private static Runnable unchecked(IOAction action) {
+        return () -> {
+            try {
+                action.run();
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+        };
+    }
+
+    /**
+     * Builds the request for downloading the asset from the given URL.
+     * Requests to Github are authenticated with a token, like the API requests.
+     * @param url The URL of the asset.
+     * @return The request for the asset.
+     */
+    private HttpRequest assetRequest(String url) {
         HttpRequest request = HttpRequest.newBuilder()
             .uri(URI.create(url))
             .header("Accept", ACCEPT_STREAM_HEADER)
             .build();
-        HttpResponse<InputStream> response;
-        try {
-            response = client.send(
-                request,
-                HttpResponse.BodyHandlers.ofInputStream()
-            );
-        } catch (ConnectException e) {
-            throw new IOException("Connection error.", e);
+        if (!GITHUB_HOSTS.contains(request.uri().getHost())) {
+            return request;
         }
-        handleResponseCode(response);
-        return response.body();
+        return tokenPool.select(RateLimiter.resourceOf(request.uri()), rateLimiter)
+            .map(token -> TokenPool.authorize(request, token))
+            .orElse(request);
     }
 
     /**
@@ -182,15 +1269,31 @@ public class GithubClient {
         if (statusCode >= 400) {
             switch (statusCode) {
                 case 403 -> {
+                    readBody(response);
                     handleRateLimit(response.headers());
                     throw new IOException("Rate limit exceeded. Try again later.");
                 }
-                case 404 -> throw new IOException("Resource not found: " + response.body());
-                default -> throw new IOException("HTTP Error " + statusCode + ": " + response.body());
+                case 404 -> throw new IOException("Resource not found: " + readBody(response));
+                default -> throw new IOException("HTTP Error " + statusCode + ": " + readBody(response));
             }
         }
     }
 
+    /**
+     * Reads the body of an error response for logging.
+     * @param response The HTTP response.
+     * @return The body as a string.
+     * @throws IOException
+     */
+    private String readBody(HttpResponse<?> response) throws IOException {
+        if (response.body() instanceof InputStream stream) {
+            try (stream) {
+                return new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+            }
+        }
+        return String.valueOf(response.body());
+    }
+
     /**
      * Handles the rate limit response from the Github API. Used for logging.
      * @param headers The HTTP headers from the response.
@@ -204,34 +1307,59 @@ public class GithubClient {
     }
 
     /**
-     * Finds suitable assets in the JSON response from the Github API.
-     * @param json The JSON response.
+     * Finds suitable assets in the JSON response from the Github API, each tagged with the id and tag of its release.
+     * @param json The stream of the JSON response.
      * @return A list of Asset objects.
      * @throws IOException
      */
-    private List<Asset> findAssets(String json) throws IOException {
-        ObjectMapper mapper = new ObjectMapper();
-        Release release = mapper.readValue(json, Release.class);
-        String[] formats = platformHandler.getFormats();
-        // add platform check
-        List<Asset> assets = new ArrayList<>();
-        for (String format : formats) {
-            assets.addAll(release.assets().stream()
-                .filter(a -> a.name().toLowerCase().contains(format))
-                .toList()
-            );
-        }
-        return assets;
+    private List<Asset> findAssets(InputStream json) throws IOException {
+        Release release = JsonUtils.RELEASE_READER.readValue(json);
+        return filterAssets(release.assets().stream()
+            .map(asset -> asset.withRelease(release.id(), release.tagName()))
+            .toList());
+    }
+
+    /**
+     * Selects the assets suitable for the current platform, ranked by the asset ranker.
+     * Checksum files and zsync control files are not suitable, but are attached to the assets they cover.
+     * @param releaseAssets All assets of a release.
+     * @return A list of suitable Asset objects, the best suited first.
+     */
+    private List<Asset> filterAssets(List<Asset> releaseAssets) {
+        List<Asset> candidates = releaseAssets.stream()
+            .filter(a -> !Checksums.isChecksumFile(a.name()) && !a.name().toLowerCase().endsWith(ZSYNC_SUFFIX))
+            .map(a -> Checksums.findChecksumFile(a, releaseAssets).map(sums -> a.withChecksumUrl(sums.url())).orElse(a))
+            .map(a -> findZsyncFile(a, releaseAssets).map(zsync -> a.withZsyncUrl(zsync.url())).orElse(a))
+            .toList();
+        return assetRanker.rank(candidates, platformHandler.getFormats());
+    }
+
+    /**
+     * Picks the asset to install without asking the user.
+     * @param assets The suitable assets of a release.
+     * @return Optional containing the asset clearly suiting the current platform best, empty if the user has to choose.
+     */
+    public Optional<Asset> pickAsset(List<Asset> assets) {
+        return assetRanker.pick(assets, platformHandler.getFormats());
+    }
+
+    /**
+     * @param asset An asset of a release.
+     * @param releaseAssets All assets of the release.
+     * @return Optional containing the zsync control file of the asset.
+     */
+    private static Optional<Asset> findZsyncFile(Asset asset, List<Asset> releaseAssets) {
+        String name = asset.name() + ZSYNC_SUFFIX;
+        return releaseAssets.stream().filter(a -> a.name().equals(name)).findFirst();
     }
 
     /**
-     * Converts the JSON string to a SearchResult object.
-     * @param json The JSON string.
+     * Converts the JSON response to a SearchResult object.
+     * @param json The stream of the JSON response.
      * @return The SearchResult object.
      * @throws IOException
      */
-    private SearchResult getSearchResult(String json) throws IOException {
-        ObjectMapper mapper = new ObjectMapper();
-        return mapper.readValue(json, SearchResult.class);
+    private SearchResult getSearchResult(InputStream json) throws IOException {
+        return JsonUtils.SEARCH_RESULT_READER.readValue(json);
     }
 }
@@ -1,15 +1,38 @@
 package cz.cuni.mff.releasemanager;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
 
+import cz.cuni.mff.releasemanager.appimage.AppImageReader;
 import cz.cuni.mff.releasemanager.cmd.CmdParser;
 import cz.cuni.mff.releasemanager.cmd.Command;
+import cz.cuni.mff.releasemanager.download.Checksums;
+import cz.cuni.mff.releasemanager.download.PrefetchArea;
+import cz.cuni.mff.releasemanager.platform.AssetRanker;
 import cz.cuni.mff.releasemanager.platform.Platform;
 import cz.cuni.mff.releasemanager.platform.PlatformHandler;
+import cz.cuni.mff.releasemanager.types.AppMetadata;
 import cz.cuni.mff.releasemanager.types.Asset;
+import cz.cuni.mff.releasemanager.types.DownloadStats;
+import cz.cuni.mff.releasemanager.types.DownloadedAsset;
+import cz.cuni.mff.releasemanager.types.PrefetchedUpdate;
 import cz.cuni.mff.releasemanager.types.ReleaseInfo;
 import cz.cuni.mff.releasemanager.types.ReleasesList;
 import cz.cuni.mff.releasemanager.types.Repo;
@@ -30,20 +53,25 @@ import cz.cuni.mff.releasemanager.types.Repo;
  *   <li>uninstall</li>
  *   <li>update</li>
  *   <li>list</li>
+ *   <li>verify</li>
  *   <li>help</li>
  * </ul>
  */
 public class ReleaseManager {
+    private static final int DEFAULT_JOBS = 4;
+    private static final int DEFAULT_LIMIT = 5;
     private static ReleaseManager instance;
 
     private final CmdParser cmdParser;
     private final GithubClient githubClient;
     private final PlatformHandler platformHandler;
+    private final PrefetchArea prefetchArea;
 
     private ReleaseManager() {
         cmdParser = new CmdParser();
         githubClient = new GithubClient();
         platformHandler = Platform.getPlatformHandler();
+        prefetchArea = new PrefetchArea(platformHandler.getPrefetchDirLocation());
     }
     /**
      * @return the singleton {@code ReleaseManager} instance
@@ -61,6 +89,7 @@ public class ReleaseManager {
      */
     public void execute(String[] args) {
         Command command = cmdParser.parse(args);
+        githubClient.setOffline(command.hasOption("offline"));
 
         switch (command) {
             case SEARCH -> search(command);
@@ -68,26 +97,74 @@ public class ReleaseManager {
             case UNINSTALL -> uninstall(command);
             case UPDATE -> update(command);
             case LIST -> list();
+            case VERIFY -> verify(command);
             case HELP -> help(command);
         }
     }
     /**
      * Searches for a GitHub repository by name and prints the results.
+     * Known repositories are printed at once, the rest are printed as Github returns them,
+     * up to the number given by the {@code --limit} option.
      *
      * @param command the command containing the search term
      */
     private void search(Command command) {
-        var searchResult = githubClient.searchRepoByName(command.argument);
-        if (searchResult.isEmpty() || searchResult.get().items().isEmpty()) {
+        indexInstalledReleases();
+        int limit = getLimit(command);
+        List<Repo> known = githubClient.searchKnownRepos(command.argument, limit);
+        if (!known.isEmpty()) {
+            System.out.println("Found " + known.size() + " known repositories.");
+            printRepos(known);
+        }
+        int found = 0;
+        try (Stream<Repo> repos = githubClient.searchRepos(command.argument, limit)) {
+            Iterator<Repo> iterator = repos.limit(limit).iterator();
+            while (iterator.hasNext()) {
+                Repo repo = iterator.next();
+                if (known.stream().anyMatch(k -> k.fullName().equalsIgnoreCase(repo.fullName()))) {
+                    continue;
+                }
+                if (found++ == 0) {
+                    System.out.println(known.isEmpty() ? "Found repositories:" : "More repositories on Github:");
+                }
+                printRepos(List.of(repo));
+            }
+        } catch (UncheckedIOException e) {
+            System.out.println(known.isEmpty()
+                ? e.getCause().getMessage()
+                : "Github search failed, showing known repositories only: " + e.getCause().getMessage());
+        }
+        if (known.isEmpty() && found == 0) {
             System.out.println("No results found.");
             return;
         }
-        var items = searchResult.get().items();
-        System.out.println("Found " + items.size() + " repositories.");
-        for (Repo repo : items) {
+        System.out.println("To install a release, use the 'install' command followed by the repository name.");
+    }
+    /**
+     * Prints the names and descriptions of the repositories.
+     *
+     * @param repos the repositories to print
+     */
+    private void printRepos(List<Repo> repos) {
+        for (Repo repo : repos) {
             System.out.println(repo.fullName() + ": " + repo.description());
         }
-        System.out.println("To install a release, use the 'install' command followed by the repository name.");
+    }
+    /**
+     * Adds the repositories of the installed releases to the local repository index,
+     * so that they are found by {@code search} without a network request.
+     */
+    private void indexInstalledReleases() {
+        try {
+            ReleasesList releasesList = platformHandler.loadReleasesList();
+            if (releasesList != null) {
+                githubClient.indexRepos(releasesList.releases().stream()
+                    .map(release -> new Repo(release.repo(), null))
+                    .toList());
+            }
+        } catch (IOException e) {
+            System.out.println("Failed to load installed releases: " + e.getMessage());
+        }
     }
     /**
      * Installs the latest release of a specified GitHub repository.
@@ -115,15 +192,21 @@ public class ReleaseManager {
         }
     }
     /**
-     * Prompts the user to choose a single asset from a list of assets.
+     * Picks the asset clearly suiting the platform best, or prompts the user to choose a single asset
+     * from a list of assets.
      *
-     * @param assets list of available release assets
+     * @param assets list of available release assets, the best suited first
      * @return the selected asset
      */
     private Asset getSingleAsset(List<Asset> assets) {
         if (assets.size() == 1) {
             return assets.get(0);
         }
+        Optional<Asset> picked = githubClient.pickAsset(assets);
+        if (picked.isPresent()) {
+            System.out.println("Selected " + picked.get().name() + " as the best match for this platform.");
+            return picked.get();
+        }
         System.out.println("Multiple assets found. Please select one:");
         for (int i = 0; i < assets.size(); i++) {
             System.out.println((i + 1) + ": " + assets.get(i).name());
@@ -158,7 +241,10 @@ public class ReleaseManager {
             repoFullName,
             Instant.now(),
             installedRelease.toString(),
-            asset
+            asset,
+            installedDigest(installedRelease),
+            installedMetadata(installedRelease),
+            AssetRanker.patternOf(asset.name())
         );
         try {
             platformHandler.addReleaseToList(release);
@@ -167,6 +253,32 @@ public class ReleaseManager {
             System.out.println("Failed to add release to list: " + e.getMessage());
         }
     }
+    /**
+     * Hashes the installed file, so that {@code verify} can later tell whether it changed.
+     *
+     * @param installedRelease the path to the installed asset
+     * @return the SHA-256 of the file, or null if it is not a regular file, such as an application bundle
+     */
+    private String installedDigest(Path installedRelease) {
+        if (!Files.isRegularFile(installedRelease)) {
+            return null;
+        }
+        try {
+            return Checksums.sha256(installedRelease);
+        } catch (IOException e) {
+            System.out.println("Failed to hash installed release: " + e.getMessage());
+            return null;
+        }
+    }
+    /**
+     * Reads the name, version and summary of the installed file if it is an AppImage.
+     *
+     * @param installedRelease the path to the installed asset
+     * @return the metadata, or null if the file is not an AppImage or holds no metadata
+     */
+    private AppMetadata installedMetadata(Path installedRelease) {
+        return AppImageReader.read(installedRelease).orElse(null);
+    }
     /**
      * Uninstalls a previously installed release based on the repository name.
      *
@@ -195,16 +307,30 @@ public class ReleaseManager {
                 .ifPresentOrElse(release -> {
                     platformHandler.uninstall(Path.of(release.uninstallPath()));
                     platformHandler.removeReleaseFromList(release);
+                    prefetchArea.remove(release.repo());
                     System.out.println("Successfully uninstalled.");
                 }, () -> System.out.println("Release " + command.argument + " is not found."));
     }
 
     /**
      * Updates an installed release if a newer version is available.
+     * An update prefetched for the installed release is installed without contacting Github.
      *
      * @param command the command containing the repository name
      */
     private void update(Command command) {
+        if (command.hasOption("prefetch")) {
+            prefetch(command);
+            return;
+        }
+        if (command.hasOption("all")) {
+            updateAll(command);
+            return;
+        }
+        if (command.argument == null) {
+            System.out.println("Please specify the repository name of format 'owner/repo' or use --all.");
+            return;
+        }
         ReleasesList releasesList;
         try {
             releasesList = platformHandler.loadReleasesList();
@@ -221,27 +347,34 @@ public class ReleaseManager {
                 .filter(release -> release.repo().equals(command.argument))
                 .findFirst()
                 .ifPresentOrElse(release -> {
+                    Optional<PrefetchedUpdate> prefetched = prefetchArea.find(release);
+                    if (prefetched.isPresent()) {
+                        installPrefetched(release, prefetched.get());
+                        return;
+                    }
                     List<Asset> assets = githubClient.getLatestReleaseAssets(command.argument);
                     if (assets.isEmpty()) {
                         System.out.println("No asset found.");
                         return;
                     }
-                    Asset newAsset = null;
-                    for (Asset asset : assets) {
-                        if (asset.name().equals(release.asset().name())) {
-                            newAsset = asset;
-                            break;
-                        }
-                    }
+                    Asset newAsset = findMatchingAsset(release, assets);
                     if (newAsset == null) {
                         newAsset = getSingleAsset(assets);
                     }
-                    if (release.asset().url().equals(newAsset.url())) {
+                    if (release.asset().hasSameContentAs(newAsset)) {
                         System.out.println("Already up to date.");
                     }
                     else {
-                        platformHandler.uninstall(Path.of(release.uninstallPath()));
-                        Path installedAsset = githubClient.installAsset(newAsset);
+                        System.out.println("Updating to " + describeDownload(newAsset) + ".");
+                        // the installed version is needed for a delta download, so it is removed afterwards
+                        Path previous = Path.of(release.uninstallPath());
+                        Path download = githubClient.stageAsset(newAsset, previous);
+                        if (download == null) {
+                            System.out.println("Download failed.");
+                            return;
+                        }
+                        platformHandler.uninstall(previous);
+                        Path installedAsset = platformHandler.install(download);
                         if (installedAsset != null) {
                             System.out.println("Successfully updated.");
                             addReleaseToList(command.argument, installedAsset, newAsset);
@@ -253,9 +386,429 @@ public class ReleaseManager {
     }
 
     /**
-     * Lists all installed releases.
+     * Installs a prefetched update in place of the installed release.
+     *
+     * @param release the installed release
+     * @param update the update prefetched for the release
+     */
+    private void installPrefetched(ReleaseInfo release, PrefetchedUpdate update) {
+        platformHandler.uninstall(Path.of(release.uninstallPath()));
+        Path installedAsset = platformHandler.install(Path.of(update.file()));
+        if (installedAsset != null) {
+            System.out.println("Successfully updated from the prefetched asset.");
+            addReleaseToList(release.repo(), installedAsset, update.asset());
+            prefetchArea.remove(release.repo());
+        } else {
+            System.out.println("Installation failed.");
+        }
+    }
+
+    /**
+     * Downloads the updates of the given release, or of all releases with {@code --all}, without installing them.
+     * The verified assets wait in the prefetch area until the next {@code update} installs them without the network.
+     *
+     * @param command the command containing the repository name or the options
+     */
+    private void prefetch(Command command) {
+        ReleasesList releasesList;
+        try {
+            releasesList = platformHandler.loadReleasesList();
+        } catch (IOException e) {
+            System.out.println("Failed to find installed release.");
+            return;
+        }
+        if (releasesList == null) {
+            System.out.println("No releases installed.");
+            return;
+        }
+        List<ReleaseInfo> releases = releasesList.releases().stream()
+            .filter(release -> command.hasOption("all") || release.repo().equals(command.argument))
+            .toList();
+        if (releases.isEmpty()) {
+            System.out.println(command.argument == null
+                ? "Please specify the repository name of format 'owner/repo' or use --all."
+                : "Release " + command.argument + " is not found.");
+            return;
+        }
+        Map<String, List<Asset>> latestAssets = githubClient.getLatestReleaseAssets(
+            releases.stream().map(ReleaseInfo::repo).toList());
+        Semaphore downloads = new Semaphore(getJobs(command));
+        List<Future<PendingUpdate>> pending = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (ReleaseInfo release : releases) {
+                List<Asset> assets = latestAssets.getOrDefault(release.repo(), List.of());
+                pending.add(executor.submit(() -> prepareUpdate(release, assets, downloads, false)));
+            }
+        }
+
+        int prefetched = 0;
+        for (int i = 0; i < releases.size(); i++) {
+            ReleaseInfo release = releases.get(i);
+            PendingUpdate update = getPendingUpdate(pending.get(i), release);
+            if (update == null) {
+                continue;
+            }
+            try {
+                prefetchArea.add(release, update.asset(), update.download(), update.sha256());
+                System.out.println(release.repo() + ": Prefetched " + update.asset().name() + ".");
+                prefetched++;
+            } catch (IOException e) {
+                System.out.println(release.repo() + ": Failed to prefetch update: " + e.getMessage());
+            }
+        }
+        System.out.println("Prefetched " + prefetched + " of " + releases.size() + " releases."
+            + (prefetched > 0 ? " Run 'update' to install them." : ""));
+        printDownloadStats(githubClient.downloadStats());
+    }
+
+    /**
+     * Updates all installed releases.
+     * Prefetched updates are installed without contacting Github. The latest releases of the other entries are
+     * looked up in one batch and the changed assets downloaded concurrently on virtual threads,
+     * with at most {@code --jobs} downloads running at once. The assets are then installed one by one,
+     * since platform installers cannot run in parallel, and the releases list is written once at the end.
+     *
+     * @param command the command containing the options
+     */
+    private void updateAll(Command command) {
+        ReleasesList releasesList;
+        try {
+            releasesList = platformHandler.loadReleasesList();
+        } catch (IOException e) {
+            System.out.println("Failed to find installed release.");
+            return;
+        }
+        if (releasesList == null) {
+            System.out.println("No releases installed.");
+            return;
+        }
+        int jobs = getJobs(command);
+        List<ReleaseInfo> releases = releasesList.releases();
+        Map<String, PrefetchedUpdate> prefetched = new HashMap<>();
+        for (ReleaseInfo release : releases) {
+            prefetchArea.find(release).ifPresent(update -> prefetched.put(release.repo(), update));
+        }
+        List<String> remaining = releases.stream()
+            .map(ReleaseInfo::repo)
+            .filter(repo -> !prefetched.containsKey(repo))
+            .toList();
+        Map<String, List<Asset>> latestAssets = remaining.isEmpty()
+            ? Map.of()
+            : githubClient.getLatestReleaseAssets(remaining);
+        Semaphore downloads = new Semaphore(jobs);
+        List<Future<PendingUpdate>> pending = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (ReleaseInfo release : releases) {
+                PrefetchedUpdate update = prefetched.get(release.repo());
+                if (update != null) {
+                    pending.add(CompletableFuture.completedFuture(new PendingUpdate(update.asset(), Path.of(update.file()), update.sha256())));
+                    continue;
+                }
+                List<Asset> assets = latestAssets.getOrDefault(release.repo(), List.of());
+                pending.add(executor.submit(() -> prepareUpdate(release, assets, downloads, true)));
+            }
+        }
+
+        List<ReleaseInfo> updatedReleases = new ArrayList<>();
+        int updated = 0;
+        for (int i = 0; i < releases.size(); i++) {
+            ReleaseInfo release = releases.get(i);
+            PendingUpdate update = getPendingUpdate(pending.get(i), release);
+            if (update == null) {
+                updatedReleases.add(release);
+                continue;
+            }
+            platformHandler.uninstall(Path.of(release.uninstallPath()));
+            Path installedAsset = platformHandler.install(update.download());
+            if (installedAsset == null) {
+                System.out.println(release.repo() + ": Installation failed.");
+                updatedReleases.add(release);
+                continue;
+            }
+            System.out.println(release.repo() + ": Successfully updated.");
+            updatedReleases.add(new ReleaseInfo(release.repo(), Instant.now(), installedAsset.toString(), update.asset(),
+                installedDigest(installedAsset), installedMetadata(installedAsset),
+                AssetRanker.patternOf(update.asset().name())));
+            updated++;
+            if (prefetched.containsKey(release.repo())) {
+                prefetchArea.remove(release.repo());
+            }
+        }
+        try {
+            platformHandler.saveReleasesList(new ReleasesList(updatedReleases));
+        } catch (IOException e) {
+            System.out.println("Failed to save releases list: " + e.getMessage());
+        }
+
+        System.out.println("Updated " + updated + " of " + releases.size() + " releases.");
+        printDownloadStats(githubClient.downloadStats());
+    }
+
+    /**
+     * Prints the amount of data downloaded and the recent download throughput.
+     *
+     * @param stats the statistics of the downloads, or null if they are not available
+     */
+    private void printDownloadStats(DownloadStats stats) {
+        if (stats == null || stats.totalBytes() == 0) {
+            return;
+        }
+        System.out.printf("Downloaded %.1f MB at %.1f MB/s using up to %d connections.%n",
+            stats.totalBytes() / 1e6, stats.bytesPerSecond() / 1e6, stats.concurrencyLimit());
+    }
+
+    /**
+     * An asset of a newer release, already downloaded and waiting for installation.
+     *
+     * @param asset the new asset
+     * @param download the path to the downloaded asset
+     * @param sha256 the SHA-256 of the downloaded asset, or null for an unpacked archive
+     */
+    private record PendingUpdate(Asset asset, Path download, String sha256) {}
+
+    /**
+     * Compares an installed release with the assets of its latest release and downloads the new asset if it changed.
+     * Runs without user interaction, so a release whose asset cannot be matched unambiguously is skipped.
+     *
+     * @param release the installed release
+     * @param assets the suitable assets of the latest release
+     * @param downloads the semaphore limiting the number of concurrent downloads
+     * @param unpack whether an archive is unpacked while it downloads, prefetched archives are kept as downloaded
+     * @return the downloaded update, or null if there is nothing to install
+     * @throws InterruptedException if interrupted while waiting for a download slot
+     */
+    private PendingUpdate prepareUpdate(ReleaseInfo release, List<Asset> assets, Semaphore downloads, boolean unpack)
+            throws InterruptedException {
+        if (assets.isEmpty()) {
+            System.out.println(release.repo() + ": No asset found.");
+            return null;
+        }
+        Asset newAsset = findMatchingAsset(release, assets);
+        if (newAsset == null) {
+            System.out.println(release.repo() + ": Multiple assets found, use 'update " + release.repo() + "' to select one.");
+            return null;
+        }
+        if (release.asset() != null && release.asset().hasSameContentAs(newAsset)) {
+            System.out.println(release.repo() + ": Already up to date.");
+            return null;
+        }
+        System.out.println(release.repo() + ": Downloading " + describeDownload(newAsset) + ".");
+        downloads.acquire();
+        try {
+            Path previous = Path.of(release.uninstallPath());
+            DownloadedAsset download = unpack
+                ? new DownloadedAsset(githubClient.stageAsset(newAsset, previous), null)
+                : githubClient.downloadAsset(newAsset, previous);
+            if (download == null || download.file() == null) {
+                System.out.println(release.repo() + ": Download failed.");
+                return null;
+            }
+            return new PendingUpdate(newAsset, download.file(), download.sha256());
+        } finally {
+            downloads.release();
+        }
+    }
+
+    /**
+     * Describes an asset about to be downloaded.
+     *
+     * @param asset the asset
+     * @return the name of the asset with its release tag and size, if they are known
+     */
+    private String describeDownload(Asset asset) {
+        StringBuilder description = new StringBuilder(asset.name());
+        if (asset.releaseTag() != null) {
+            description.append(" from ").append(asset.releaseTag());
+        }
+        if (asset.size() > 0) {
+            description.append(String.format(" (%.1f MB)", asset.size() / 1e6));
+        }
+        return description.toString();
+    }
+
+    /**
+     * Finds the asset replacing the installed one.
+     *
+     * @param release the installed release
+     * @param assets list of available release assets
+     * @return the asset with the same name, the only asset matching the pattern remembered for the repository,
+     * the only available asset, or the asset clearly suiting the platform best; null if there is no clear match
+     */
+    private Asset findMatchingAsset(ReleaseInfo release, List<Asset> assets) {
+        if (release.asset() != null) {
+            for (Asset asset : assets) {
+                if (asset.name().equals(release.asset().name())) {
+                    return asset;
+                }
+            }
+        }
+        Optional<Asset> remembered = AssetRanker.findByPattern(release.assetPattern(), assets);
+        if (remembered.isPresent()) {
+            return remembered.get();
+        }
+        if (assets.size() == 1) {
+            return assets.get(0);
+        }
+        return githubClient.pickAsset(assets).orElse(null);
+    }
+
+    /**
+     * Waits for the result of a prepared update.
+     *
+     * @param future the future of the prepared update
+     * @param release the installed release, used for logging
+     * @return the prepared update, or null if it failed
+     */
+    private PendingUpdate getPendingUpdate(Future<PendingUpdate> future, ReleaseInfo release) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            System.out.println(release.repo() + ": Update failed: " + e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    /**
+     * Reads the maximum number of concurrent downloads from the {@code --jobs} option.
+     *
+     * @param command the command containing the options
+     * @return the number of concurrent downloads
+     */
+    private int getJobs(Command command) {
+        try {
+            int jobs = Integer.parseInt(command.getOption("jobs").orElse(String.valueOf(DEFAULT_JOBS)));
+            if (jobs > 0) {
+                return jobs;
+            }
+        } catch (NumberFormatException e) {
+            // fall through to the default
+        }
+        System.out.println("Invalid number of jobs, using " + DEFAULT_JOBS + ".");
+        return DEFAULT_JOBS;
+    }
+
+    /**
+     * Reads the maximum number of search results from the {@code --limit} option.
+     *
+     * @param command the command containing the options
+     * @return the number of search results to print
+     */
+    private int getLimit(Command command) {
+        try {
+            int limit = Integer.parseInt(command.getOption("limit").orElse(String.valueOf(DEFAULT_LIMIT)));
+            if (limit > 0) {
+                return limit;
+            }
+        } catch (NumberFormatException e) {
+            // fall through to the default
+        }
+        System.out.println("Invalid limit, using " + DEFAULT_LIMIT + ".");
+        return DEFAULT_LIMIT;
+    }
+
+    /**
+     * Lists all installed releases with the name, version and summary of the installed AppImages.
+     * The metadata is read once from the installed files, in parallel, and kept in the releases list.
      */
     private void list() {
+        ReleasesList releasesList;
+        try {
+            releasesList = platformHandler.loadReleasesList();
+        } catch (IOException e) {
+            System.out.println("Failed to load releases list.");
+            return;
+        }
+        if (releasesList == null) {
+            System.out.println("No releases installed.");
+            return;
+        }
+        List<ReleaseInfo> releases = readMissingMetadata(releasesList.releases());
+        for (ReleaseInfo release : releases) {
+            System.out.println(describe(release));
+        }
+    }
+
+    /**
+     * Reads the metadata of the installed files not read before, one file per processor,
+     * and saves the releases list if any metadata was found.
+     *
+     * @param releases the installed releases
+     * @return the installed releases with the metadata found
+     */
+    private List<ReleaseInfo> readMissingMetadata(List<ReleaseInfo> releases) {
+        List<Future<AppMetadata>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors())) {
+            for (ReleaseInfo release : releases) {
+                results.add(release.metadata() != null || release.uninstallPath() == null
+                    ? CompletableFuture.completedFuture(null)
+                    : executor.submit(() -> installedMetadata(Path.of(release.uninstallPath()))));
+            }
+        }
+        List<ReleaseInfo> described = new ArrayList<>();
+        boolean found = false;
+        for (int i = 0; i < releases.size(); i++) {
+            AppMetadata metadata = null;
+            try {
+                metadata = results.get(i).get();
+            } catch (ExecutionException e) {
+                // listed without metadata
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            found |= metadata != null;
+            described.add(metadata == null ? releases.get(i) : releases.get(i).withMetadata(metadata));
+        }
+        if (found) {
+            try {
+                platformHandler.saveReleasesList(new ReleasesList(described));
+            } catch (IOException e) {
+                System.out.println("Failed to save releases list: " + e.getMessage());
+            }
+        }
+        return described;
+    }
+
+    /**
+     * Formats an installed release for the list of releases.
+     *
+     * @param release the installed release
+     * @return the repository name followed by the name, version and summary of the application if they are known,
+     * or by the tag of the installed release
+     */
+    private String describe(ReleaseInfo release) {
+        AppMetadata metadata = release.metadata();
+        if (metadata == null) {
+            String tag = release.asset() != null ? release.asset().releaseTag() : null;
+            return tag == null ? release.repo() : release.repo() + ": " + tag;
+        }
+        StringBuilder description = new StringBuilder(release.repo()).append(':');
+        if (metadata.name() != null) {
+            description.append(' ').append(metadata.name());
+        }
+        if (metadata.version() != null) {
+            description.append(' ').append(metadata.version());
+        }
+        if (metadata.summary() != null) {
+            description.append(" - ").append(metadata.summary());
+        }
+        return description.toString();
+    }
+
+    /**
+     * The state of an installed file compared with the digest recorded when it was installed.
+     */
+    private enum Integrity { INTACT, CHANGED, MISSING, UNKNOWN }
+
+    /**
+     * Checks the installed files of all releases against the digests recorded when they were installed.
+     * The files are hashed in parallel, one per processor, through memory mappings.
+     * With {@code --repair}, changed and missing files are reinstalled from the asset store or from Github.
+     *
+     * @param command the command containing the options
+     */
+    private void verify(Command command) {
         ReleasesList releasesList;
         try {
             releasesList = platformHandler.loadReleasesList();
@@ -268,9 +821,115 @@ public class ReleaseManager {
             return;
         }
         List<ReleaseInfo> releases = releasesList.releases();
+        List<Future<Integrity>> results = new ArrayList<>();
+        // hashing is bound by the processors, so it runs on as many platform threads
+        try (ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors())) {
+            for (ReleaseInfo release : releases) {
+                results.add(executor.submit(() -> checkIntegrity(release)));
+            }
+        }
+
+        Map<Integrity, Integer> counts = new EnumMap<>(Integrity.class);
+        List<ReleaseInfo> drifted = new ArrayList<>();
+        for (int i = 0; i < releases.size(); i++) {
+            ReleaseInfo release = releases.get(i);
+            Integrity integrity = getIntegrity(results.get(i), release);
+            counts.merge(integrity, 1, Integer::sum);
+            if (integrity == Integrity.CHANGED) {
+                System.out.println(release.repo() + ": Changed since installation.");
+                drifted.add(release);
+            } else if (integrity == Integrity.MISSING) {
+                System.out.println(release.repo() + ": Installed file is missing.");
+                drifted.add(release);
+            }
+        }
+        System.out.println("Verified " + releases.size() + " releases: "
+            + counts.getOrDefault(Integrity.INTACT, 0) + " intact, "
+            + counts.getOrDefault(Integrity.CHANGED, 0) + " changed, "
+            + counts.getOrDefault(Integrity.MISSING, 0) + " missing, "
+            + counts.getOrDefault(Integrity.UNKNOWN, 0) + " without a recorded digest.");
+        if (drifted.isEmpty()) {
+            return;
+        }
+        if (command.hasOption("repair")) {
+            repair(releases, drifted);
+        } else {
+            System.out.println("Use 'verify --repair' to reinstall them.");
+        }
+    }
+
+    /**
+     * Hashes the installed file of the release and compares it with the recorded digest.
+     *
+     * @param release the installed release
+     * @return the state of the installed file
+     */
+    private Integrity checkIntegrity(ReleaseInfo release) {
+        Path installed = Path.of(release.uninstallPath());
+        if (!Files.exists(installed)) {
+            return Integrity.MISSING;
+        }
+        if (release.sha256() == null || !Files.isRegularFile(installed)) {
+            return Integrity.UNKNOWN;
+        }
+        try {
+            return Checksums.sha256(installed).equals(release.sha256()) ? Integrity.INTACT : Integrity.CHANGED;
+        } catch (IOException e) {
+            System.out.println(release.repo() + ": Failed to read installed file: " + e.getMessage());
+            return Integrity.CHANGED;
+        }
+    }
+
+    /**
+     * Waits for the result of an integrity check.
+     *
+     * @param future the future of the integrity check
+     * @param release the installed release, used for logging
+     * @return the state of the installed file, or {@code UNKNOWN} if the check failed
+     */
+    private Integrity getIntegrity(Future<Integrity> future, ReleaseInfo release) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            System.out.println(release.repo() + ": Verification failed: " + e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return Integrity.UNKNOWN;
+    }
+
+    /**
+     * Reinstalls the installed asset of every drifted release, one by one, and records the new digests.
+     * Assets kept in the asset store are installed without downloading them again.
+     *
+     * @param releases all installed releases
+     * @param drifted the releases whose installed file changed or is missing
+     */
+    private void repair(List<ReleaseInfo> releases, List<ReleaseInfo> drifted) {
+        List<ReleaseInfo> repairedReleases = new ArrayList<>();
+        int repaired = 0;
         for (ReleaseInfo release : releases) {
-            System.out.println(release.repo());
+            if (!drifted.contains(release)) {
+                repairedReleases.add(release);
+                continue;
+            }
+            Path installedAsset = release.asset() == null ? null : githubClient.repairAsset(release.asset());
+            if (installedAsset == null) {
+                System.out.println(release.repo() + ": Repair failed.");
+                repairedReleases.add(release);
+                continue;
+            }
+            System.out.println(release.repo() + ": Reinstalled " + release.asset().name() + ".");
+            repairedReleases.add(new ReleaseInfo(release.repo(), release.installedAt(), installedAsset.toString(),
+                release.asset(), installedDigest(installedAsset), installedMetadata(installedAsset), release.assetPattern()));
+            repaired++;
+        }
+        try {
+            platformHandler.saveReleasesList(new ReleasesList(repairedReleases));
+        } catch (IOException e) {
+            System.out.println("Failed to save releases list: " + e.getMessage());
         }
+        System.out.println("Repaired " + repaired + " of " + drifted.size() + " releases.");
     }
 
     /**
@@ -284,11 +943,16 @@ public class ReleaseManager {
         }
         System.out.println("Usage: java -jar github-releases-manager.jar [command] [options]");
         System.out.println("Commands:");
-        System.out.println("  search [name] - search for a release by name");
+        System.out.println("  search [name] [--limit=N] - search for a release by name, printing up to N results");
         System.out.println("  install [name] - install the latest release by name");
         System.out.println("  uninstall [name] - uninstall the release by name");
         System.out.println("  update [name] - update the installed release by name");
+        System.out.println("  update --all [--jobs=N] - update all installed releases, downloading N assets at once");
+        System.out.println("  update --prefetch [name | --all] - download updates now, to be installed by the next update");
         System.out.println("  list - list all installed releases");
+        System.out.println("  verify [--repair] - check installed releases for changes, reinstalling changed ones");
         System.out.println("  help - display this help message");
+        System.out.println("Options:");
+        System.out.println("  --offline - answer from cached Github responses without network access");
     }
 }
@@ -0,0 +1,209 @@
+package cz.cuni.mff.releasemanager.appimage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import cz.cuni.mff.releasemanager.types.AppMetadata;
+
+/**
+ * Reads the metadata of an AppImage without running or extracting it.
+ *
+ * <p>An AppImage of type 2 is an ELF runtime followed by a squashfs image. The image starts where the
+ * ELF file ends, after its section header table. The file is memory-mapped and only the blocks of the
+ * desktop entry in the root directory and of the AppStream file in {@code usr/share/metainfo} are
+ * decompressed. The name, the version and the summary are taken from the desktop entry,
+ * falling back to the AppStream file, whose first release is the current version.</p>
+ */
+public final class AppImageReader {
+    private static final int ELF_MAGIC = 0x7f454c46;
+    private static final int ELF_HEADER_SIZE = 64;
+    private static final int ELF_32 = 1;
+    private static final int ELF_LITTLE_ENDIAN = 1;
+    // desktop entries and AppStream files are small, anything larger is not read
+    private static final int MAX_METADATA_SIZE = 1024 * 1024;
+    private static final String DESKTOP_SUFFIX = ".desktop";
+    private static final List<String> APPSTREAM_DIRS = List.of("usr/share/metainfo", "usr/share/appdata");
+    private static final List<String> APPSTREAM_SUFFIXES = List.of(".appdata.xml", ".metainfo.xml");
+    private static final String DESKTOP_GROUP = "[Desktop Entry]";
+    private static final Pattern RELEASE_VERSION =
+        Pattern.compile("<release\\b[^>]*?\\bversion\\s*=\\s*[\"']([^\"']+)[\"']");
+
+    private AppImageReader() {
+    }
+
+    /**
+     * Reads the metadata of the AppImage.
+     * @param file Path to the AppImage.
+     * @return Optional containing the metadata, empty if the file is not an AppImage of type 2,
+     * its image is compressed by other means than gzip, or it has no desktop entry nor AppStream file.
+     */
+    public static Optional<AppMetadata> read(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < ELF_HEADER_SIZE) {
+                return Optional.empty();
+            }
+            long offset = imageOffset(channel.map(FileChannel.MapMode.READ_ONLY, 0, ELF_HEADER_SIZE));
+            // a single mapping is limited to 2 GB
+            if (offset <= 0 || offset >= size || size - offset > Integer.MAX_VALUE) {
+                return Optional.empty();
+            }
+            Optional<SquashFs> image = SquashFs.open(channel.map(FileChannel.MapMode.READ_ONLY, offset, size - offset));
+            if (image.isEmpty()) {
+                return Optional.empty();
+            }
+            return metadata(image.get());
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Finds the end of the ELF file, where the runtime of an AppImage places the squashfs image.
+     * @param header The ELF header.
+     * @return The offset of the end of the section header table, or -1 if the file is not an ELF file.
+     */
+    static long imageOffset(ByteBuffer header) {
+        if (header.getInt(0) != ELF_MAGIC) {
+            return -1;
+        }
+        header.order(header.get(5) == ELF_LITTLE_ENDIAN ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+        long sectionHeaders;
+        int entrySize;
+        int entries;
+        if (header.get(4) == ELF_32) {
+            sectionHeaders = Integer.toUnsignedLong(header.getInt(0x20));
+            entrySize = Short.toUnsignedInt(header.getShort(0x2e));
+            entries = Short.toUnsignedInt(header.getShort(0x30));
+        } else {
+            sectionHeaders = header.getLong(0x28);
+            entrySize = Short.toUnsignedInt(header.getShort(0x3a));
+            entries = Short.toUnsignedInt(header.getShort(0x3c));
+        }
+        return sectionHeaders + (long) entrySize * entries;
+    }
+
+    /**
+     * Reads the desktop entry and the AppStream file of the image.
+     * @param image The file system of the AppImage.
+     * @return Optional containing the metadata, empty if the image holds neither file.
+     * @throws IOException if the image is corrupted
+     */
+    static Optional<AppMetadata> metadata(SquashFs image) throws IOException {
+        String name = null;
+        String version = null;
+        String summary = null;
+        for (String entry : image.list("")) {
+            if (!entry.endsWith(DESKTOP_SUFFIX)) {
+                continue;
+            }
+            Optional<byte[]> desktop = image.read(entry, MAX_METADATA_SIZE);
+            if (desktop.isPresent()) {
+                String content = new String(desktop.get(), StandardCharsets.UTF_8);
+                name = desktopValue(content, "Name");
+                version = desktopValue(content, "X-AppImage-Version");
+                summary = desktopValue(content, "Comment");
+                break;
+            }
+        }
+        if (name == null || version == null || summary == null) {
+            Optional<String> appStream = appStream(image);
+            if (appStream.isPresent()) {
+                name = name != null ? name : xmlElement(appStream.get(), "name");
+                version = version != null ? version : releaseVersion(appStream.get());
+                summary = summary != null ? summary : xmlElement(appStream.get(), "summary");
+            }
+        }
+        if (name == null && version == null && summary == null) {
+            return Optional.empty();
+        }
+        return Optional.of(new AppMetadata(name, version, summary));
+    }
+
+    /**
+     * @param image The file system of the AppImage.
+     * @return Optional containing the content of the first AppStream file.
+     * @throws IOException if the image is corrupted
+     */
+    private static Optional<String> appStream(SquashFs image) throws IOException {
+        for (String dir : APPSTREAM_DIRS) {
+            for (String entry : image.list(dir)) {
+                if (APPSTREAM_SUFFIXES.stream().noneMatch(entry::endsWith)) {
+                    continue;
+                }
+                Optional<byte[]> content = image.read(dir + "/" + entry, MAX_METADATA_SIZE);
+                if (content.isPresent()) {
+                    return Optional.of(new String(content.get(), StandardCharsets.UTF_8));
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Reads an unlocalized key of the main group of a desktop entry.
+     * @param content The content of the desktop entry.
+     * @param key The key.
+     * @return The value, or null if the key is missing or empty.
+     */
+    static String desktopValue(String content, String key) {
+        boolean inGroup = false;
+        for (String line : content.split("\\R")) {
+            String trimmed = line.strip();
+            if (trimmed.startsWith("[")) {
+                inGroup = trimmed.equals(DESKTOP_GROUP);
+                continue;
+            }
+            int separator = trimmed.indexOf('=');
+            if (inGroup && separator > 0 && trimmed.substring(0, separator).strip().equals(key)) {
+                String value = trimmed.substring(separator + 1).strip();
+                return value.isEmpty() ? null : value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param content The content of an AppStream file.
+     * @return The version of the first listed release, the newest one, or null if there is none.
+     */
+    static String releaseVersion(String content) {
+        Matcher matcher = RELEASE_VERSION.matcher(content);
+        return matcher.find() ? unescape(matcher.group(1)) : null;
+    }
+
+    /**
+     * @param content The content of an AppStream file.
+     * @param element The name of an element without attributes, so that translations are skipped.
+     * @return The text of the first such element, or null if there is none.
+     */
+    private static String xmlElement(String content, String element) {
+        Matcher matcher = Pattern.compile("<" + element + ">([^<]*)</" + element + ">").matcher(content);
+        if (!matcher.find()) {
+            return null;
+        }
+        String text = unescape(matcher.group(1).strip());
+        return text.isEmpty() ? null : text;
+    }
+
+    /**
+     * @param text XML text.
+     * @return The text with the predefined entities replaced.
+     */
+    private static String unescape(String text) {
+        return text.replace("&lt;", "<")
+            .replace("&gt;", ">")
+            .replace("&quot;", "\"")
+            .replace("&apos;", "'")
+            .replace("&amp;", "&");
+    }
+}
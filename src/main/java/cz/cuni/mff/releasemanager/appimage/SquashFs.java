@@ -0,0 +1,524 @@
+package cz.cuni.mff.releasemanager.appimage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * A read-only view of a squashfs 4.0 file system in a buffer, reading only the blocks a lookup needs.
+ *
+ * <p>Inodes and directory listings are stored in tables of metadata blocks of up to 8 KB, each preceded
+ * by a two byte header with its stored size and a flag for an uncompressed block. An inode is addressed
+ * by the offset of its metadata block from the start of the inode table and its offset in the block.
+ * File content is stored in data blocks listed in the file inode, the tail of a file possibly packed
+ * with other tails into a fragment block. Only gzip compression is supported, the JDK has no decoder
+ * for the others.</p>
+ */
+final class SquashFs {
+    private static final int MAGIC = 0x73717368;
+    private static final int SUPERBLOCK_SIZE = 96;
+    private static final int METADATA_SIZE = 8192;
+    private static final int GZIP = 1;
+    private static final String[] COMPRESSORS = {"none", "gzip", "lzma", "lzo", "xz", "lz4", "zstd"};
+    private static final int BASIC_DIRECTORY = 1;
+    private static final int BASIC_FILE = 2;
+    private static final int BASIC_SYMLINK = 3;
+    private static final int EXTENDED_DIRECTORY = 8;
+    private static final int EXTENDED_FILE = 9;
+    private static final int EXTENDED_SYMLINK = 10;
+    private static final int NO_FRAGMENT = 0xffffffff;
+    private static final int UNCOMPRESSED_METADATA = 0x8000;
+    private static final int UNCOMPRESSED_DATA = 0x1000000;
+    private static final int MAX_SYMLINKS = 8;
+
+    private final ByteBuffer image;
+    private final int blockSize;
+    private final long rootInode;
+    private final long inodeTable;
+    private final long directoryTable;
+    private final long fragmentTable;
+    // decompressed metadata blocks by their position in the image
+    private final Map<Long, byte[]> metadataBlocks = new HashMap<>();
+
+    /**
+     * @param image The file system, with the superblock at position 0.
+     * @param blockSize The size of the data blocks.
+     * @param rootInode The reference of the root directory inode.
+     * @param inodeTable The position of the inode table.
+     * @param directoryTable The position of the directory table.
+     * @param fragmentTable The position of the fragment lookup table.
+     */
+    private SquashFs(ByteBuffer image, int blockSize, long rootInode, long inodeTable, long directoryTable,
+            long fragmentTable) {
+        this.image = image;
+        this.blockSize = blockSize;
+        this.rootInode = rootInode;
+        this.inodeTable = inodeTable;
+        this.directoryTable = directoryTable;
+        this.fragmentTable = fragmentTable;
+    }
+
+    /**
+     * Reads the superblock of the file system.
+     * @param buffer The buffer starting with the superblock.
+     * @return Optional containing the file system, empty if the buffer does not start with a squashfs superblock.
+     * @throws IOException if the file system uses an unsupported version or compression
+     */
+    static Optional<SquashFs> open(ByteBuffer buffer) throws IOException {
+        ByteBuffer image = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        if (image.limit() < SUPERBLOCK_SIZE || image.getInt(0) != MAGIC) {
+            return Optional.empty();
+        }
+        int compressor = Short.toUnsignedInt(image.getShort(20));
+        int major = Short.toUnsignedInt(image.getShort(28));
+        if (major != 4) {
+            throw new IOException("Unsupported squashfs version " + major + ".");
+        }
+        if (compressor != GZIP) {
+            throw new IOException("Unsupported squashfs compression: "
+                + (compressor < COMPRESSORS.length ? COMPRESSORS[compressor] : String.valueOf(compressor)) + ".");
+        }
+        long bytesUsed = image.getLong(40);
+        if (bytesUsed > image.limit()) {
+            throw new IOException("Truncated squashfs image.");
+        }
+        return Optional.of(new SquashFs(image, image.getInt(12), image.getLong(32), image.getLong(64),
+            image.getLong(72), image.getLong(80)));
+    }
+
+    /**
+     * Lists a directory.
+     * @param path The path of the directory, relative to the root, e.g. {@code usr/share/metainfo}.
+     * @return The names of the entries, empty if the directory does not exist.
+     * @throws IOException if the file system is corrupted
+     */
+    List<String> list(String path) throws IOException {
+        Optional<Inode> inode = lookup(path);
+        if (inode.isEmpty() || !inode.get().isDirectory()) {
+            return List.of();
+        }
+        List<String> names = new ArrayList<>();
+        for (Entry entry : entries(inode.get())) {
+            names.add(entry.name());
+        }
+        return names;
+    }
+
+    /**
+     * Reads a regular file, following symbolic links.
+     * @param path The path of the file, relative to the root.
+     * @param maxSize The maximum size of the file.
+     * @return Optional containing the content, empty if the file does not exist, is not a regular file or is too large.
+     * @throws IOException if the file system is corrupted
+     */
+    Optional<byte[]> read(String path, int maxSize) throws IOException {
+        Optional<Inode> inode = lookup(path);
+        if (inode.isEmpty() || !inode.get().isFile() || inode.get().size() > maxSize) {
+            return Optional.empty();
+        }
+        return Optional.of(content(inode.get()));
+    }
+
+    /**
+     * Resolves a path from the root directory, following symbolic links.
+     * @param path The path relative to the root.
+     * @return Optional containing the inode, empty if the path does not exist.
+     * @throws IOException if the file system is corrupted
+     */
+    private Optional<Inode> lookup(String path) throws IOException {
+        List<String> remaining = new ArrayList<>(List.of(path.split("/")));
+        List<Inode> parents = new ArrayList<>();
+        Inode current = inode(rootInode);
+        int symlinks = 0;
+        while (!remaining.isEmpty()) {
+            String name = remaining.remove(0);
+            if (name.isEmpty() || name.equals(".")) {
+                continue;
+            }
+            if (name.equals("..")) {
+                current = parents.isEmpty() ? current : parents.remove(parents.size() - 1);
+                continue;
+            }
+            if (!current.isDirectory()) {
+                return Optional.empty();
+            }
+            Optional<Entry> entry = find(current, name);
+            if (entry.isEmpty()) {
+                return Optional.empty();
+            }
+            Inode next = inode(entry.get().inode());
+            if (next.isSymlink()) {
+                if (++symlinks > MAX_SYMLINKS) {
+                    return Optional.empty();
+                }
+                String target = next.target();
+                if (target.startsWith("/")) {
+                    parents.clear();
+                    current = inode(rootInode);
+                }
+                remaining.addAll(0, List.of(target.split("/")));
+                continue;
+            }
+            parents.add(current);
+            current = next;
+        }
+        return Optional.of(current);
+    }
+
+    /**
+     * @param directory A directory inode.
+     * @param name The name of an entry.
+     * @return Optional containing the entry with the name.
+     * @throws IOException if the file system is corrupted
+     */
+    private Optional<Entry> find(Inode directory, String name) throws IOException {
+        for (Entry entry : entries(directory)) {
+            if (entry.name().equals(name)) {
+                return Optional.of(entry);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Reads the listing of a directory, a sequence of headers each followed by entries whose inodes
+     * lie in the same metadata block.
+     * @param directory A directory inode.
+     * @return The entries of the directory.
+     * @throws IOException if the file system is corrupted
+     */
+    private List<Entry> entries(Inode directory) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        // the stored size counts the implicit "." and ".." entries
+        long size = directory.size() - 3;
+        if (size <= 0) {
+            return entries;
+        }
+        Metadata listing = new Metadata(directoryTable + directory.block(), directory.offset());
+        while (listing.read < size) {
+            int count = listing.readInt() + 1;
+            long inodeBlock = Integer.toUnsignedLong(listing.readInt());
+            listing.readInt();
+            for (int i = 0; i < count && listing.read < size; i++) {
+                int offset = listing.readUnsignedShort();
+                listing.readShort();
+                listing.readUnsignedShort();
+                int nameSize = listing.readUnsignedShort() + 1;
+                String name = new String(listing.readBytes(nameSize), StandardCharsets.UTF_8);
+                entries.add(new Entry(name, inodeBlock << 16 | offset));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Reads an inode.
+     * @param reference The position of the metadata block in the inode table shifted by 16 bits,
+     * with the offset in the block in the low 16 bits.
+     * @return The inode.
+     * @throws IOException if the inode type is not supported
+     */
+    private Inode inode(long reference) throws IOException {
+        Metadata in = new Metadata(inodeTable + (reference >>> 16), (int) (reference & 0xffff));
+        int type = in.readUnsignedShort();
+        in.readBytes(14);
+        switch (type) {
+            case BASIC_DIRECTORY -> {
+                long block = Integer.toUnsignedLong(in.readInt());
+                in.readInt();
+                int size = in.readUnsignedShort();
+                int offset = in.readUnsignedShort();
+                return new Inode(type, block, offset, size, NO_FRAGMENT, null, null);
+            }
+            case EXTENDED_DIRECTORY -> {
+                in.readInt();
+                long size = Integer.toUnsignedLong(in.readInt());
+                long block = Integer.toUnsignedLong(in.readInt());
+                in.readInt();
+                in.readUnsignedShort();
+                int offset = in.readUnsignedShort();
+                return new Inode(type, block, offset, size, NO_FRAGMENT, null, null);
+            }
+            case BASIC_FILE, EXTENDED_FILE -> {
+                long start;
+                long size;
+                int fragment;
+                int fragmentOffset;
+                if (type == BASIC_FILE) {
+                    start = Integer.toUnsignedLong(in.readInt());
+                    fragment = in.readInt();
+                    fragmentOffset = in.readInt();
+                    size = Integer.toUnsignedLong(in.readInt());
+                } else {
+                    start = in.readLong();
+                    size = in.readLong();
+                    in.readLong();
+                    in.readInt();
+                    fragment = in.readInt();
+                    fragmentOffset = in.readInt();
+                    in.readInt();
+                }
+                long blocks = fragment == NO_FRAGMENT ? (size + blockSize - 1) / blockSize : size / blockSize;
+                if (blocks > Integer.MAX_VALUE / 4) {
+                    throw new IOException("Corrupted squashfs file inode.");
+                }
+                int[] blockSizes = new int[(int) blocks];
+                for (int i = 0; i < blockSizes.length; i++) {
+                    blockSizes[i] = in.readInt();
+                }
+                return new Inode(type, start, fragmentOffset, size, fragment, blockSizes, null);
+            }
+            case BASIC_SYMLINK, EXTENDED_SYMLINK -> {
+                in.readInt();
+                int targetSize = in.readInt();
+                if (targetSize < 0 || targetSize > 4096) {
+                    throw new IOException("Corrupted squashfs symlink inode.");
+                }
+                String target = new String(in.readBytes(targetSize), StandardCharsets.UTF_8);
+                return new Inode(type, 0, 0, targetSize, NO_FRAGMENT, null, target);
+            }
+            default -> {
+                return new Inode(type, 0, 0, 0, NO_FRAGMENT, null, null);
+            }
+        }
+    }
+
+    /**
+     * Reads the content of a regular file from its data blocks and its fragment.
+     * @param file A file inode.
+     * @return The content of the file.
+     * @throws IOException if the file system is corrupted
+     */
+    private byte[] content(Inode file) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.size());
+        long position = file.block();
+        for (int stored : file.blockSizes()) {
+            int length = stored & ~UNCOMPRESSED_DATA;
+            int expected = (int) Math.min(blockSize, file.size() - out.size());
+            if (length == 0) {
+                // a sparse block of zeros
+                out.write(new byte[expected]);
+                continue;
+            }
+            out.write(block(position, length, (stored & UNCOMPRESSED_DATA) != 0, blockSize), 0, expected);
+            position += length;
+        }
+        if (file.fragment() != NO_FRAGMENT) {
+            int tail = (int) (file.size() - out.size());
+            byte[] fragment = fragment(file.fragment());
+            if (file.offset() + tail > fragment.length) {
+                throw new IOException("Corrupted squashfs fragment.");
+            }
+            out.write(fragment, file.offset(), tail);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Reads a fragment block holding the tails of several files.
+     * @param index The index of the fragment.
+     * @return The content of the fragment block.
+     * @throws IOException if the file system is corrupted
+     */
+    private byte[] fragment(int index) throws IOException {
+        long pointer = fragmentTable + 8 * (Integer.toUnsignedLong(index) / 512);
+        if (fragmentTable < 0 || pointer + 8 > image.limit()) {
+            throw new IOException("Corrupted squashfs fragment table.");
+        }
+        long lookup = image.getLong((int) pointer);
+        Metadata entry = new Metadata(lookup, (int) (Integer.toUnsignedLong(index) % 512) * 16);
+        long start = entry.readLong();
+        int stored = entry.readInt();
+        return block(start, stored & ~UNCOMPRESSED_DATA, (stored & UNCOMPRESSED_DATA) != 0, blockSize);
+    }
+
+    /**
+     * Reads a block of the image.
+     * @param position The position of the stored block.
+     * @param length The stored size of the block.
+     * @param uncompressed Whether the block is stored uncompressed.
+     * @param maxSize The maximum size of the decompressed block.
+     * @return The content of the block.
+     * @throws IOException if the block lies outside of the image or cannot be decompressed
+     */
+    private byte[] block(long position, int length, boolean uncompressed, int maxSize) throws IOException {
+        if (position < 0 || length < 0 || position + length > image.limit()) {
+            throw new IOException("Corrupted squashfs block reference.");
+        }
+        byte[] stored = new byte[length];
+        image.get((int) position, stored);
+        if (uncompressed) {
+            return stored;
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(stored);
+            byte[] content = new byte[maxSize];
+            int size = 0;
+            while (!inflater.finished() && size < maxSize) {
+                int inflated = inflater.inflate(content, size, maxSize - size);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated squashfs block.");
+                }
+                size += inflated;
+            }
+            return size == maxSize ? content : Arrays.copyOf(content, size);
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupted squashfs block: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * An entry of a directory listing.
+     * @param name The name of the entry.
+     * @param inode The reference of the inode of the entry.
+     */
+    private record Entry(String name, long inode) {}
+
+    /**
+     * The fields of an inode needed to read directories, files and symbolic links.
+     * @param type The inode type.
+     * @param block The position of the listing in the directory table, or of the first data block of a file.
+     * @param offset The offset of the listing in its metadata block, or of the file tail in its fragment.
+     * @param size The size of the listing or the file.
+     * @param fragment The index of the fragment holding the file tail.
+     * @param blockSizes The stored sizes of the data blocks of a file.
+     * @param target The target of a symbolic link.
+     */
+    private record Inode(int type, long block, int offset, long size, int fragment, int[] blockSizes,
+            String target) {
+
+        /**
+         * @return true if the inode is a directory.
+         */
+        boolean isDirectory() {
+            return type == BASIC_DIRECTORY || type == EXTENDED_DIRECTORY;
+        }
+
+        /**
+         * @return true if the inode is a regular file.
+         */
+        boolean isFile() {
+            return type == BASIC_FILE || type == EXTENDED_FILE;
+        }
+
+        /**
+         * @return true if the inode is a symbolic link.
+         */
+        boolean isSymlink() {
+            return type == BASIC_SYMLINK || type == EXTENDED_SYMLINK;
+        }
+    }
+
+    /**
+     * A sequential reader of a metadata table, continuing into the following metadata blocks.
+     */
+    private final class Metadata {
+        private long next;
+        private byte[] block;
+        private int position;
+        private long read;
+
+        /**
+         * @param blockPosition The position of the first metadata block in the image.
+         * @param offset The offset in the decompressed block.
+         * @throws IOException if the block cannot be read
+         */
+        Metadata(long blockPosition, int offset) throws IOException {
+            this.next = blockPosition;
+            load();
+            if (offset > block.length) {
+                throw new IOException("Corrupted squashfs metadata reference.");
+            }
+            this.position = offset;
+        }
+
+        /**
+         * Decompresses the next metadata block, reusing blocks read before.
+         * @throws IOException if the block cannot be read
+         */
+        private void load() throws IOException {
+            if (next < 0 || next + 2 > image.limit()) {
+                throw new IOException("Corrupted squashfs metadata reference.");
+            }
+            long current = next;
+            int header = Short.toUnsignedInt(image.getShort((int) current));
+            int length = header & ~UNCOMPRESSED_METADATA;
+            next = current + 2 + length;
+            byte[] cached = metadataBlocks.get(current);
+            if (cached == null) {
+                cached = block(current + 2, length, (header & UNCOMPRESSED_METADATA) != 0, METADATA_SIZE);
+                metadataBlocks.put(current, cached);
+            }
+            block = cached;
+            position = 0;
+        }
+
+        /**
+         * @param length The number of bytes to read.
+         * @return The bytes.
+         * @throws IOException if the table ends early
+         */
+        byte[] readBytes(int length) throws IOException {
+            byte[] bytes = new byte[length];
+            for (int copied = 0; copied < length; ) {
+                if (position == block.length) {
+                    load();
+                    if (block.length == 0) {
+                        throw new IOException("Empty squashfs metadata block.");
+                    }
+                }
+                int chunk = Math.min(length - copied, block.length - position);
+                System.arraycopy(block, position, bytes, copied, chunk);
+                position += chunk;
+                copied += chunk;
+            }
+            read += length;
+            return bytes;
+        }
+
+        /**
+         * @return The next little-endian 16 bit value, sign-extended.
+         * @throws IOException if the table ends early
+         */
+        short readShort() throws IOException {
+            return ByteBuffer.wrap(readBytes(2)).order(ByteOrder.LITTLE_ENDIAN).getShort();
+        }
+
+        /**
+         * @return The next little-endian unsigned 16 bit value.
+         * @throws IOException if the table ends early
+         */
+        int readUnsignedShort() throws IOException {
+            return Short.toUnsignedInt(readShort());
+        }
+
+        /**
+         * @return The next little-endian 32 bit value.
+         * @throws IOException if the table ends early
+         */
+        int readInt() throws IOException {
+            return ByteBuffer.wrap(readBytes(4)).order(ByteOrder.LITTLE_ENDIAN).getInt();
+        }
+
+        /**
+         * @return The next little-endian 64 bit value.
+         * @throws IOException if the table ends early
+         */
+        long readLong() throws IOException {
+            return ByteBuffer.wrap(readBytes(8)).order(ByteOrder.LITTLE_ENDIAN).getLong();
+        }
+    }
+}
@@ -0,0 +1,5 @@
+/**
+ * This package contains the reader of installed AppImages,
+ * which extracts their metadata from the embedded file system without running them.
+ */
+package cz.cuni.mff.releasemanager.appimage;
@@ -0,0 +1,64 @@
+package cz.cuni.mff.releasemanager.archive;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Archive formats release assets are unpacked from, recognized by the suffix of the asset name.
+ */
+public enum ArchiveFormat {
+    TAR_GZ(List.of(".tar.gz", ".tgz")),
+    TAR_XZ(List.of(".tar.xz", ".txz")),
+    ZIP(List.of(".zip"));
+
+    private final List<String> suffixes;
+
+    ArchiveFormat(List<String> suffixes) {
+        this.suffixes = suffixes;
+    }
+
+    /**
+     * @param fileName The name of an asset.
+     * @return Optional containing the format of the archive, empty if the asset is not an archive.
+     */
+    public static Optional<ArchiveFormat> of(String fileName) {
+        String name = fileName.toLowerCase(Locale.ROOT);
+        for (ArchiveFormat format : values()) {
+            if (format.suffixes.stream().anyMatch(name::endsWith)) {
+                return Optional.of(format);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * @return The suffixes of the asset names in this format.
+     */
+    public List<String> suffixes() {
+        return suffixes;
+    }
+
+    /**
+     * A tarball is read front to back and can be unpacked while it downloads. A zip file is read
+     * from its central directory at the end, so it has to be downloaded first.
+     * @return true if the archive can be unpacked from a stream.
+     */
+    public boolean isStreamable() {
+        return this != ZIP;
+    }
+
+    /**
+     * @param fileName The name of an asset in this format.
+     * @return The name without the archive suffix.
+     */
+    public String stem(String fileName) {
+        String name = fileName.toLowerCase(Locale.ROOT);
+        for (String suffix : suffixes) {
+            if (name.endsWith(suffix)) {
+                return fileName.substring(0, fileName.length() - suffix.length());
+            }
+        }
+        return fileName;
+    }
+}
@@ -0,0 +1,217 @@
+package cz.cuni.mff.releasemanager.archive;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Unpacks archived release assets into a directory.
+ *
+ * <p>A tarball is unpacked from a stream, so it can be unpacked while it downloads. The stream is read ahead
+ * on a thread of its own and gzip is inflated on the caller thread, while xz is decompressed by the
+ * {@code xz} tool in a process of its own, since the JDK has no xz decoder. The download, the decompression
+ * and the writing of the files thus run at the same time, and the written files are flushed to disk by
+ * the kernel in the background. A zip file is unpacked from disk with its entries inflated in parallel.</p>
+ */
+public final class Archives {
+    private static final int READ_AHEAD_CHUNK_SIZE = 256 * 1024;
+    private static final int READ_AHEAD_DEPTH = 16;
+    private static final int INFLATE_BUFFER_SIZE = 64 * 1024;
+    private static final int ELF_MAGIC = 0x7f454c46;
+    // set-id bits and write access of others are never restored
+    private static final int MODE_MASK = 0755;
+    private static final int OWNER_READ_WRITE = 0600;
+
+    private Archives() {
+    }
+
+    /**
+     * Unpacks the archive file into the directory.
+     * @param archive Path to the archive, in a format recognized by its name.
+     * @param dir Path to the directory, created if it does not exist.
+     * @throws IOException if the archive is not recognized or corrupted, or an entry leads outside of the directory
+     * @throws InterruptedException
+     */
+    public static void unpack(Path archive, Path dir) throws IOException, InterruptedException {
+        ArchiveFormat format = ArchiveFormat.of(archive.getFileName().toString())
+            .orElseThrow(() -> new IOException("Not an archive: " + archive.getFileName()));
+        if (format == ArchiveFormat.ZIP) {
+            ZipExtractor.extract(archive, dir);
+            return;
+        }
+        try (InputStream in = Files.newInputStream(archive)) {
+            unpack(format, in, dir);
+        }
+    }
+
+    /**
+     * Unpacks the archive while it is read from the stream. The stream is not closed, and it may hold
+     * bytes after the end of the archive.
+     * @param format The format of the archive, which must be streamable.
+     * @param archive The compressed archive.
+     * @param dir Path to the directory, created if it does not exist.
+     * @throws IOException if the archive is corrupted or truncated, or an entry leads outside of the directory
+     * @throws InterruptedException
+     */
+    public static void unpack(ArchiveFormat format, InputStream archive, Path dir)
+            throws IOException, InterruptedException {
+        switch (format) {
+            case TAR_GZ -> {
+                try (InputStream ahead = new ReadAheadInputStream(archive, READ_AHEAD_CHUNK_SIZE, READ_AHEAD_DEPTH);
+                        InputStream tar = new GZIPInputStream(ahead, INFLATE_BUFFER_SIZE)) {
+                    TarExtractor.extract(tar, dir);
+                }
+            }
+            case TAR_XZ -> unpackXz(archive, dir);
+            case ZIP -> throw new IOException("A zip archive has to be downloaded before it is unpacked");
+        }
+    }
+
+    /**
+     * Decompresses the archive with {@code xz -dc}, fed by a virtual thread while the tar stream is extracted.
+     * @param archive The compressed archive.
+     * @param dir Path to the directory, created if it does not exist.
+     * @throws IOException if {@code xz} is missing or fails, or the tar stream cannot be extracted
+     * @throws InterruptedException
+     */
+    private static void unpackXz(InputStream archive, Path dir) throws IOException, InterruptedException {
+        Process xz;
+        try {
+            xz = new ProcessBuilder("xz", "-dc").redirectError(ProcessBuilder.Redirect.DISCARD).start();
+        } catch (IOException e) {
+            throw new IOException("The xz tool is required to unpack .tar.xz archives: " + e.getMessage());
+        }
+        IOException[] feedFailure = new IOException[1];
+        Thread feeder = Thread.ofVirtual().start(() -> {
+            try (OutputStream in = xz.getOutputStream()) {
+                archive.transferTo(in);
+            } catch (IOException e) {
+                feedFailure[0] = e;
+            }
+        });
+        try (InputStream tar = xz.getInputStream()) {
+            TarExtractor.extract(tar, dir);
+            // xz does not take more input until its output is read
+            tar.transferTo(OutputStream.nullOutputStream());
+        } catch (IOException e) {
+            xz.destroy();
+            feeder.join();
+            // a failed download truncates the input of xz, which is the less telling failure
+            throw feedFailure[0] != null ? feedFailure[0] : e;
+        }
+        feeder.join();
+        int exitCode = xz.waitFor();
+        if (feedFailure[0] != null) {
+            throw feedFailure[0];
+        }
+        if (exitCode != 0) {
+            throw new IOException("xz failed with exit code " + exitCode);
+        }
+    }
+
+    /**
+     * Resolves the name of an entry in the directory.
+     * @param root The real path to the directory.
+     * @param name The name of the entry, leading slashes and {@code ./} are ignored.
+     * @return Path to the entry.
+     * @throws IOException if the entry leads outside of the directory
+     */
+    static Path entryPath(Path root, String name) throws IOException {
+        String relative = name.replace('\\', '/').replaceFirst("^(\\./|/)+", "");
+        Path target = root.resolve(relative).normalize();
+        if (!target.startsWith(root)) {
+            throw new IOException("Archive entry outside of the archive: " + name);
+        }
+        return target;
+    }
+
+    /**
+     * Creates the parent directory of an entry and makes sure no link of an earlier entry led it elsewhere.
+     * @param root The real path to the directory.
+     * @param target Path to the entry.
+     * @throws IOException if the parent lies outside of the directory
+     */
+    static void createParent(Path root, Path target) throws IOException {
+        createDirectories(root, target.getParent());
+    }
+
+    /**
+     * Creates a directory entry one level at a time. Every level is resolved to its real path before anything
+     * is created in it, so a link of an earlier entry cannot lead the directory outside of the root.
+     * @param root The real path to the directory.
+     * @param dir Path to the directory entry, lexically inside of the root.
+     * @throws IOException if the directory lies outside of the root
+     */
+    static void createDirectories(Path root, Path dir) throws IOException {
+        Path current = root;
+        for (Path name : root.relativize(dir)) {
+            if (name.toString().isEmpty()) {
+                continue;
+            }
+            current = current.resolve(name);
+            if (!Files.isDirectory(current)) {
+                Files.createDirectory(current);
+            }
+            requireInside(root, current);
+        }
+    }
+
+    /**
+     * Makes sure that no link of an earlier entry leads the path outside of the directory.
+     * @param root The real path to the directory.
+     * @param path Path to an existing entry.
+     * @throws IOException if the real path of the entry lies outside of the directory
+     */
+    static void requireInside(Path root, Path path) throws IOException {
+        if (!path.toRealPath().startsWith(root)) {
+            throw new IOException("Archive entry outside of the archive: " + root.relativize(path));
+        }
+    }
+
+    /**
+     * Sets the permissions of an extracted file, keeping it readable and writable by the owner.
+     * Nothing is done on file systems without POSIX permissions.
+     * @param file Path to the file.
+     * @param mode The permissions from the archive.
+     * @throws IOException
+     */
+    static void setMode(Path file, int mode) throws IOException {
+        PosixFileAttributeView view = Files.getFileAttributeView(file, PosixFileAttributeView.class);
+        if (view == null) {
+            return;
+        }
+        int bits = (mode & MODE_MASK) | OWNER_READ_WRITE;
+        Set<PosixFilePermission> permissions = EnumSet.noneOf(PosixFilePermission.class);
+        PosixFilePermission[] order = {
+            PosixFilePermission.OTHERS_EXECUTE, PosixFilePermission.OTHERS_WRITE, PosixFilePermission.OTHERS_READ,
+            PosixFilePermission.GROUP_EXECUTE, PosixFilePermission.GROUP_WRITE, PosixFilePermission.GROUP_READ,
+            PosixFilePermission.OWNER_EXECUTE, PosixFilePermission.OWNER_WRITE, PosixFilePermission.OWNER_READ
+        };
+        for (int bit = 0; bit < order.length; bit++) {
+            if ((bits & (1 << bit)) != 0) {
+                permissions.add(order[bit]);
+            }
+        }
+        view.setPermissions(permissions);
+    }
+
+    /**
+     * Recognizes executables by their content, for archives which do not record permissions.
+     * @param head The first bytes of a file.
+     * @return true if the file is an ELF binary or a script with a shebang line.
+     */
+    static boolean isExecutable(byte[] head) {
+        if (head.length >= 4 && ((head[0] & 0xff) << 24 | (head[1] & 0xff) << 16 | (head[2] & 0xff) << 8
+                | (head[3] & 0xff)) == ELF_MAGIC) {
+            return true;
+        }
+        return head.length >= 2 && head[0] == '#' && head[1] == '!';
+    }
+}
@@ -0,0 +1,119 @@
+package cz.cuni.mff.releasemanager.archive;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads a stream ahead of its consumer on a virtual thread of its own.
+ *
+ * <p>Chunks of the source are queued up to a fixed depth, so the source, such as a download, keeps
+ * receiving while the consumer decompresses and writes, and the consumer does not wait for the network
+ * as long as the queue holds data. Closing the stream stops the reader and waits for it, so the source
+ * can be read again by the caller afterwards. The source itself is not closed.</p>
+ */
+final class ReadAheadInputStream extends InputStream {
+    private static final byte[] END = new byte[0];
+
+    private final BlockingQueue<byte[]> chunks;
+    private final Thread reader;
+    private volatile IOException failure;
+    private byte[] current = new byte[0];
+    private int position;
+    private boolean ended;
+
+    /**
+     * Starts reading the source.
+     * @param source The stream to read ahead.
+     * @param chunkSize The maximum size of a queued chunk.
+     * @param depth The maximum number of queued chunks.
+     */
+    ReadAheadInputStream(InputStream source, int chunkSize, int depth) {
+        chunks = new ArrayBlockingQueue<>(depth);
+        reader = Thread.ofVirtual().start(() -> fill(source, chunkSize));
+    }
+
+    /**
+     * Queues the chunks of the source, followed by the end marker.
+     * @param source The stream to read ahead.
+     * @param chunkSize The maximum size of a queued chunk.
+     */
+    private void fill(InputStream source, int chunkSize) {
+        byte[] buffer = new byte[chunkSize];
+        try {
+            int read;
+            while ((read = source.read(buffer)) >= 0) {
+                if (read > 0) {
+                    chunks.put(Arrays.copyOf(buffer, read));
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+        } catch (InterruptedException e) {
+            // closed by the consumer
+            return;
+        }
+        try {
+            chunks.put(END);
+        } catch (InterruptedException e) {
+            // closed by the consumer
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (position == current.length) {
+            if (ended) {
+                return -1;
+            }
+            try {
+                current = chunks.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while reading");
+            }
+            position = 0;
+            if (current == END) {
+                ended = true;
+                if (failure != null) {
+                    throw failure;
+                }
+                return -1;
+            }
+        }
+        int count = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    /**
+     * Stops the reader and waits until it no longer reads the source.
+     * @throws IOException if interrupted while waiting
+     */
+    @Override
+    public void close() throws IOException {
+        reader.interrupt();
+        try {
+            reader.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while closing");
+        }
+        ended = true;
+        current = END;
+        position = 0;
+    }
+}
@@ -0,0 +1,364 @@
+package cz.cuni.mff.releasemanager.archive;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Extracts a tar stream into a directory in a single pass.
+ *
+ * <p>Understands the ustar format with the GNU long name extensions and pax extended headers, which
+ * carry long names, long link targets and sizes over 8 GB. Regular files, directories, symbolic links
+ * and hard links are extracted, other entries such as devices are skipped. Entries and link targets
+ * leading outside of the directory are refused.</p>
+ */
+final class TarExtractor {
+    private static final int BLOCK_SIZE = 512;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // names and pax headers larger than this are not names
+    private static final int MAX_HEADER_DATA = 1024 * 1024;
+    private static final int NAME_OFFSET = 0;
+    private static final int NAME_LENGTH = 100;
+    private static final int MODE_OFFSET = 100;
+    private static final int SIZE_OFFSET = 124;
+    private static final int CHECKSUM_OFFSET = 148;
+    private static final int TYPE_OFFSET = 156;
+    private static final int LINK_OFFSET = 157;
+    private static final int MAGIC_OFFSET = 257;
+    private static final int PREFIX_OFFSET = 345;
+    private static final int PREFIX_LENGTH = 155;
+    private static final byte[] USTAR_MAGIC = "ustar".getBytes(StandardCharsets.US_ASCII);
+
+    private final InputStream in;
+    private final Path root;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    private TarExtractor(InputStream in, Path root) {
+        this.in = in;
+        this.root = root;
+    }
+
+    /**
+     * Extracts the tar stream into the directory. The stream is read up to the end-of-archive marker.
+     * @param tar The uncompressed tar stream.
+     * @param dir Path to the directory, created if it does not exist.
+     * @throws IOException if the archive is corrupted or truncated, or an entry leads outside of the directory
+     */
+    static void extract(InputStream tar, Path dir) throws IOException {
+        new TarExtractor(tar, Files.createDirectories(dir).toRealPath()).extract();
+    }
+
+    /**
+     * Reads the entries up to the end-of-archive marker or the end of the stream.
+     * @throws IOException if the archive is corrupted or truncated, or an entry leads outside of the directory
+     */
+    private void extract() throws IOException {
+        String longName = null;
+        String longLink = null;
+        Map<String, String> pax = Map.of();
+        byte[] header = new byte[BLOCK_SIZE];
+        while (true) {
+            int read = in.readNBytes(header, 0, BLOCK_SIZE);
+            if (read == 0) {
+                return;
+            }
+            if (read < BLOCK_SIZE) {
+                throw new EOFException("Unexpected end of tar archive");
+            }
+            if (isZero(header)) {
+                return;
+            }
+            verifyChecksum(header);
+            long size = pax.containsKey("size") ? parsePaxSize(pax.get("size")) : number(header, SIZE_OFFSET, 12);
+            char type = (char) header[TYPE_OFFSET];
+            switch (type) {
+                case 'L' -> {
+                    longName = text(readData(size));
+                    continue;
+                }
+                case 'K' -> {
+                    longLink = text(readData(size));
+                    continue;
+                }
+                case 'x' -> {
+                    pax = parsePax(readData(size));
+                    continue;
+                }
+                default -> {
+                    // fall through to the entry itself
+                }
+            }
+            String name = pax.getOrDefault("path", longName != null ? longName : name(header));
+            String link = pax.getOrDefault("linkpath", longLink != null ? longLink : string(header, LINK_OFFSET, NAME_LENGTH));
+            longName = null;
+            longLink = null;
+            pax = Map.of();
+            switch (type) {
+                case '0', '\0', '7' -> writeFile(name, size, (int) number(header, MODE_OFFSET, 8));
+                case '5' -> {
+                    Archives.createDirectories(root, Archives.entryPath(root, name));
+                    skip(size);
+                }
+                case '2' -> {
+                    symlink(name, link);
+                    skip(size);
+                }
+                case '1' -> {
+                    hardLink(name, link);
+                    skip(size);
+                }
+                default -> skip(size);
+            }
+        }
+    }
+
+    /**
+     * Writes a regular file entry.
+     * @param name The name of the entry.
+     * @param size The size of the file.
+     * @param mode The permissions of the file.
+     * @throws IOException
+     */
+    private void writeFile(String name, long size, int mode) throws IOException {
+        Path target = Archives.entryPath(root, name);
+        Archives.createParent(root, target);
+        // an earlier entry of the same name may be a link, which must not be written through
+        Files.deleteIfExists(target);
+        try (OutputStream out = Files.newOutputStream(target)) {
+            long remaining = size;
+            while (remaining > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    throw new EOFException("Unexpected end of tar archive in " + name);
+                }
+                out.write(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+        skipPadding(size);
+        Archives.setMode(target, mode);
+    }
+
+    /**
+     * Creates a symbolic link entry. A link pointing outside of the directory is skipped.
+     * @param name The name of the entry.
+     * @param link The target of the link, relative to the directory of the entry.
+     * @throws IOException
+     */
+    private void symlink(String name, String link) throws IOException {
+        Path target = Archives.entryPath(root, name);
+        Path linked = target.getParent().resolve(link).normalize();
+        if (Path.of(link).isAbsolute() || !linked.startsWith(root)) {
+            System.out.println("Skipping link " + name + " to " + link + " outside of the archive.");
+            return;
+        }
+        Archives.createParent(root, target);
+        Files.deleteIfExists(target);
+        Files.createSymbolicLink(target, Path.of(link));
+    }
+
+    /**
+     * Creates a hard link entry to an earlier entry of the archive.
+     * @param name The name of the entry.
+     * @param link The name of the earlier entry.
+     * @throws IOException if the earlier entry is missing or a link leads it outside of the directory
+     */
+    private void hardLink(String name, String link) throws IOException {
+        Path target = Archives.entryPath(root, name);
+        Path existing = Archives.entryPath(root, link);
+        Archives.requireInside(root, existing);
+        Archives.createParent(root, target);
+        Files.deleteIfExists(target);
+        Files.copy(existing, target);
+    }
+
+    /**
+     * @param header The header block.
+     * @return The name of the entry, joined with the ustar prefix.
+     */
+    private static String name(byte[] header) {
+        String name = string(header, NAME_OFFSET, NAME_LENGTH);
+        if (!Arrays.equals(header, MAGIC_OFFSET, MAGIC_OFFSET + USTAR_MAGIC.length, USTAR_MAGIC, 0, USTAR_MAGIC.length)) {
+            return name;
+        }
+        String prefix = string(header, PREFIX_OFFSET, PREFIX_LENGTH);
+        return prefix.isEmpty() ? name : prefix + "/" + name;
+    }
+
+    /**
+     * Compares the checksum of the header with the one it records, computed with the checksum field as spaces.
+     * @param header The header block.
+     * @throws IOException if the checksums differ
+     */
+    private static void verifyChecksum(byte[] header) throws IOException {
+        long sum = 0;
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            boolean inField = i >= CHECKSUM_OFFSET && i < CHECKSUM_OFFSET + 8;
+            sum += inField ? ' ' : header[i] & 0xff;
+        }
+        if (sum != number(header, CHECKSUM_OFFSET, 8)) {
+            throw new IOException("Corrupted tar header");
+        }
+    }
+
+    /**
+     * Parses a numeric field, octal text or a big-endian binary number marked by the high bit of its first byte.
+     * @param header The header block.
+     * @param offset The offset of the field.
+     * @param length The length of the field.
+     * @return The value.
+     * @throws IOException if the field is not a number
+     */
+    private static long number(byte[] header, int offset, int length) throws IOException {
+        if ((header[offset] & 0x80) != 0) {
+            long value = header[offset] & 0x7f;
+            for (int i = offset + 1; i < offset + length; i++) {
+                value = (value << 8) | (header[i] & 0xff);
+            }
+            return value;
+        }
+        String text = string(header, offset, length).strip();
+        try {
+            return text.isEmpty() ? 0 : Long.parseLong(text, 8);
+        } catch (NumberFormatException e) {
+            throw new IOException("Corrupted tar header");
+        }
+    }
+
+    /**
+     * @param header The header block.
+     * @param offset The offset of the field.
+     * @param length The length of the field.
+     * @return The text of the field up to the first NUL.
+     */
+    private static String string(byte[] header, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && header[end] != 0) {
+            end++;
+        }
+        return new String(header, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param data The data of a GNU long name entry.
+     * @return The name up to the first NUL.
+     */
+    private static String text(byte[] data) {
+        return string(data, 0, data.length);
+    }
+
+    /**
+     * Parses the records of a pax extended header, each of the form {@code "<length> <key>=<value>\n"}.
+     * @param data The data of the extended header.
+     * @return The values by their keys.
+     * @throws IOException if a record is malformed
+     */
+    private static Map<String, String> parsePax(byte[] data) throws IOException {
+        Map<String, String> values = new HashMap<>();
+        int position = 0;
+        while (position < data.length) {
+            int space = position;
+            while (space < data.length && data[space] != ' ') {
+                space++;
+            }
+            int length;
+            try {
+                length = Integer.parseInt(new String(data, position, space - position, StandardCharsets.US_ASCII));
+            } catch (NumberFormatException e) {
+                throw new IOException("Corrupted pax header");
+            }
+            if (length <= space - position || position + length > data.length) {
+                throw new IOException("Corrupted pax header");
+            }
+            String record = new String(data, space + 1, position + length - space - 2, StandardCharsets.UTF_8);
+            int separator = record.indexOf('=');
+            if (separator > 0) {
+                values.put(record.substring(0, separator), record.substring(separator + 1));
+            }
+            position += length;
+        }
+        return values;
+    }
+
+    /**
+     * @param size The size from a pax header.
+     * @return The size.
+     * @throws IOException if the size is not a number
+     */
+    private static long parsePaxSize(String size) throws IOException {
+        try {
+            return Long.parseLong(size);
+        } catch (NumberFormatException e) {
+            throw new IOException("Corrupted pax header");
+        }
+    }
+
+    /**
+     * Reads the data of a header entry together with its padding.
+     * @param size The size of the data.
+     * @return The data.
+     * @throws IOException if the data is too large or truncated
+     */
+    private byte[] readData(long size) throws IOException {
+        if (size > MAX_HEADER_DATA) {
+            throw new IOException("Corrupted tar header");
+        }
+        byte[] data = in.readNBytes((int) size);
+        if (data.length < size) {
+            throw new EOFException("Unexpected end of tar archive");
+        }
+        skipPadding(size);
+        return data;
+    }
+
+    /**
+     * Skips the data of an entry together with its padding.
+     * @param size The size of the data.
+     * @throws IOException if the data is truncated
+     */
+    private void skip(long size) throws IOException {
+        skipBytes(size);
+        skipPadding(size);
+    }
+
+    /**
+     * Skips the padding which fills the data of an entry up to whole blocks.
+     * @param size The size of the data.
+     * @throws IOException if the padding is truncated
+     */
+    private void skipPadding(long size) throws IOException {
+        skipBytes((BLOCK_SIZE - size % BLOCK_SIZE) % BLOCK_SIZE);
+    }
+
+    /**
+     * @param count The number of bytes to skip.
+     * @throws IOException if the stream ends before
+     */
+    private void skipBytes(long count) throws IOException {
+        try {
+            in.skipNBytes(count);
+        } catch (EOFException e) {
+            throw new EOFException("Unexpected end of tar archive");
+        }
+    }
+
+    /**
+     * @param block A block of the archive.
+     * @return true if the block holds only zeros, which marks the end of the archive.
+     */
+    private static boolean isZero(byte[] block) {
+        for (byte b : block) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
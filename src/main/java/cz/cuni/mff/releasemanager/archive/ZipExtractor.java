@@ -0,0 +1,110 @@
+package cz.cuni.mff.releasemanager.archive;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Extracts a zip file into a directory, inflating its entries in parallel.
+ *
+ * <p>The directories are created first from the central directory, then the files are inflated on a fixed pool
+ * of platform threads, one per processor, since inflating is bound by the CPU. A zip file does not record
+ * POSIX permissions readable through the JDK, so ELF binaries and scripts are recognized by their content
+ * and made executable.</p>
+ */
+final class ZipExtractor {
+    private static final int EXECUTABLE_MODE = 0755;
+    private static final int FILE_MODE = 0644;
+    private static final int HEAD_SIZE = 4;
+
+    private ZipExtractor() {
+    }
+
+    /**
+     * Extracts the zip file into the directory.
+     * @param archive Path to the zip file.
+     * @param dir Path to the directory, created if it does not exist.
+     * @throws IOException if the zip file is corrupted or an entry leads outside of the directory
+     * @throws InterruptedException
+     */
+    static void extract(Path archive, Path dir) throws IOException, InterruptedException {
+        Path root = Files.createDirectories(dir).toRealPath();
+        try (ZipFile zip = new ZipFile(archive.toFile())) {
+            List<ZipEntry> files = new ArrayList<>();
+            List<Path> targets = new ArrayList<>();
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                Path target = Archives.entryPath(root, entry.getName());
+                if (entry.isDirectory()) {
+                    Archives.createDirectories(root, target);
+                } else {
+                    Archives.createParent(root, target);
+                    files.add(entry);
+                    targets.add(target);
+                }
+            }
+            List<Future<Void>> futures = new ArrayList<>();
+            try (ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors())) {
+                for (int i = 0; i < files.size(); i++) {
+                    ZipEntry entry = files.get(i);
+                    Path target = targets.get(i);
+                    futures.add(executor.submit(() -> {
+                        write(zip, entry, target);
+                        return null;
+                    }));
+                }
+                for (Future<Void> future : futures) {
+                    getWritten(future);
+                }
+            }
+        }
+    }
+
+    /**
+     * Inflates an entry into its file.
+     * @param zip The zip file.
+     * @param entry The entry.
+     * @param target Path to the file.
+     * @throws IOException
+     */
+    private static void write(ZipFile zip, ZipEntry entry, Path target) throws IOException {
+        Files.deleteIfExists(target);
+        boolean executable;
+        try (InputStream in = zip.getInputStream(entry); OutputStream out = Files.newOutputStream(target)) {
+            byte[] head = in.readNBytes(HEAD_SIZE);
+            executable = Archives.isExecutable(head);
+            out.write(head);
+            in.transferTo(out);
+        }
+        Archives.setMode(target, executable ? EXECUTABLE_MODE : FILE_MODE);
+    }
+
+    /**
+     * Waits for an entry to be written.
+     * @param future The future of the written entry.
+     * @throws IOException if the entry could not be written
+     * @throws InterruptedException
+     */
+    private static void getWritten(Future<Void> future) throws IOException, InterruptedException {
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            throw new IOException("Failed to extract entry: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+}
@@ -0,0 +1,5 @@
+/**
+ * This package contains the unpacking of archived release assets,
+ * which extracts tarballs while they download and zip files in parallel.
+ */
+package cz.cuni.mff.releasemanager.archive;
@@ -0,0 +1,384 @@
+package cz.cuni.mff.releasemanager.cache;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermission;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+
+import cz.cuni.mff.releasemanager.download.Checksums;
+import cz.cuni.mff.releasemanager.types.Settings;
+import cz.cuni.mff.releasemanager.types.StoredAsset;
+import cz.cuni.mff.releasemanager.utils.FileUtils;
+import cz.cuni.mff.releasemanager.utils.JsonUtils;
+
+/**
+ * Content-addressed store of downloaded assets.
+ *
+ * <p>Every downloaded asset is linked into the store under its SHA-256, so reinstalling or rolling back
+ * to an asset that was downloaded before needs no network. Files are placed by copy-on-write clones or hard
+ * links where the store and the other file share a file system, so a stored asset takes no extra space, and
+ * copied otherwise. An index maps the download URLs to the hashes of their content, for assets whose digest
+ * Github does not publish.</p>
+ *
+ * <p>Stored files are read-only, since a hard link shares the file with an installation. The size and the
+ * modification time of a file are recorded whenever its content is known to match its hash, and a lookup
+ * hashes the file again only when they changed, so taking an asset from the store costs no more than
+ * linking it. {@link #verify(String)} hashes the file in full.</p>
+ *
+ * <p>The modification time of a stored file marks its last use. When the store grows above its size
+ * limit, the least recently used files are removed. All changes are atomic renames, so several
+ * processes, users or machines may share one store directory.</p>
+ */
+public class AssetStore {
+    private static final String OBJECTS_DIR = "sha256";
+    private static final String INDEX_FILE = "index.json";
+    private static final String STAMPS_FILE = "objects.json";
+    private static final Set<PosixFilePermission> READ_ONLY = Set.of(
+        PosixFilePermission.OWNER_READ,
+        PosixFilePermission.GROUP_READ,
+        PosixFilePermission.OTHERS_READ
+    );
+    private static final String DEFAULT_DIR = "assets";
+
+    private final Path directory;
+    private final long maxBytes;
+    private final Clock clock;
+
+    /**
+     * Creates an asset store in the given directory.
+     * @param directory Path to the store directory, created when the first asset is stored.
+     * @param maxBytes The size above which the least recently used assets are removed.
+     */
+    public AssetStore(Path directory, long maxBytes) {
+        this(directory, maxBytes, Clock.systemUTC());
+    }
+
+    /**
+     * Creates an asset store in the given directory.
+     * @param directory Path to the store directory, created when the first asset is stored.
+     * @param maxBytes The size above which the least recently used assets are removed.
+     * @param clock The clock marking the use of the assets.
+     */
+    AssetStore(Path directory, long maxBytes, Clock clock) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.clock = clock;
+    }
+
+    /**
+     * Creates the asset store configured in the settings.
+     * @param settings The settings of the application.
+     * @param cacheDir The cache directory holding the store unless the settings name another directory.
+     * @return The asset store.
+     */
+    public static AssetStore of(Settings settings, Path cacheDir) {
+        Path directory = settings.assetStoreDir() != null
+            ? Path.of(settings.assetStoreDir())
+            : cacheDir.resolve(DEFAULT_DIR);
+        return new AssetStore(directory, settings.assetStoreMaxMegabytes() * 1024 * 1024);
+    }
+
+    /**
+     * Looks up the hash of the content last downloaded from the given URL.
+     * @param url The download URL of the asset.
+     * @return Optional containing the SHA-256 if the content is still stored.
+     */
+    public synchronized Optional<String> lookup(String url) {
+        return Optional.ofNullable(loadIndex().get(url)).filter(sha256 -> Files.exists(object(sha256)));
+    }
+
+    /**
+     * Checks whether the content with the given hash is stored and intact. The stored file is trusted while
+     * its size and modification time are the recorded ones, otherwise it is verified by {@link #verify(String)}.
+     * @param sha256 The lowercase hex SHA-256 of the content.
+     * @return true if the content is stored.
+     */
+    public boolean contains(String sha256) {
+        synchronized (this) {
+            Path object = object(sha256);
+            if (!Files.exists(object)) {
+                return false;
+            }
+            StoredAsset recorded = loadStamps().get(sha256);
+            try {
+                if (recorded != null && recorded.equals(StoredAsset.of(object))) {
+                    return true;
+                }
+            } catch (IOException e) {
+                // the file is read while it is verified, which reports the failure
+            }
+        }
+        return verify(sha256);
+    }
+
+    /**
+     * Hashes the stored content in full. A stored file whose content no longer matches its hash, e.g. because
+     * an installed hard link was modified, is removed. The file is hashed without locking the store.
+     * @param sha256 The lowercase hex SHA-256 of the content.
+     * @return true if the content is stored and intact.
+     */
+    public boolean verify(String sha256) {
+        Path object = object(sha256);
+        if (!Files.exists(object)) {
+            return false;
+        }
+        try {
+            StoredAsset before = StoredAsset.of(object);
+            if (Checksums.sha256(object).equals(sha256)) {
+                synchronized (this) {
+                    // the file may have changed while it was hashed
+                    if (before.equals(StoredAsset.of(object))) {
+                        Map<String, StoredAsset> stamps = loadStamps();
+                        stamps.put(sha256, before);
+                        saveStamps(stamps);
+                    }
+                }
+                return true;
+            }
+            synchronized (this) {
+                System.out.println("Removing corrupted stored asset " + sha256 + ".");
+                Files.deleteIfExists(object);
+                Map<String, StoredAsset> stamps = loadStamps();
+                stamps.remove(sha256);
+                saveStamps(stamps);
+            }
+        } catch (IOException e) {
+            System.out.println("Failed to read stored asset: " + e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Adds the downloaded file to the store and removes the least recently used files above the size limit.
+     * @param file Path to the downloaded file, which stays in place.
+     * @param sha256 The lowercase hex SHA-256 of the file.
+     * @param url The download URL of the file, or null.
+     * @throws IOException
+     */
+    public synchronized void put(Path file, String sha256, String url) throws IOException {
+        Path object = object(sha256);
+        boolean added = !Files.exists(object);
+        if (added) {
+            Files.createDirectories(object.getParent());
+            Path temp = object.resolveSibling(sha256 + ".tmp" + ProcessHandle.current().pid());
+            Files.deleteIfExists(temp);
+            FileUtils.cloneOrLink(file, temp);
+            makeReadOnly(temp);
+            Files.move(temp, object, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        touch(sha256, added);
+        if (url != null) {
+            Map<String, String> index = loadIndex();
+            index.put(url, sha256);
+            saveIndex(index);
+        }
+        evict(sha256);
+    }
+
+    /**
+     * Places the stored content at the destination, by a clone or a hard link if possible.
+     * @param sha256 The lowercase hex SHA-256 of the content.
+     * @param destination Path to the file to create, replaced if it exists.
+     * @return The destination.
+     * @throws IOException if the content is not stored
+     */
+    public synchronized Path copyTo(String sha256, Path destination) throws IOException {
+        Path object = object(sha256);
+        Files.deleteIfExists(destination);
+        FileUtils.cloneOrLink(object, destination);
+        touch(sha256, false);
+        return destination;
+    }
+
+    /**
+     * @param sha256 The lowercase hex SHA-256 of the content.
+     * @return Path to the stored file, spread over subdirectories by the first two digits.
+     */
+    private Path object(String sha256) {
+        return directory.resolve(OBJECTS_DIR).resolve(sha256.substring(0, 2)).resolve(sha256);
+    }
+
+    /**
+     * Marks the stored file as used now. The new modification time is recorded if the content of the file
+     * was known to match its hash before.
+     * @param sha256 The lowercase hex SHA-256 of the content.
+     * @param verified true if the content is known to match its hash, e.g. because it was just stored.
+     */
+    private void touch(String sha256, boolean verified) {
+        Path object = object(sha256);
+        Map<String, StoredAsset> stamps = loadStamps();
+        try {
+            boolean intact = verified || StoredAsset.of(object).equals(stamps.get(sha256));
+            try {
+                Files.setLastModifiedTime(object, FileTime.from(clock.instant()));
+            } catch (IOException e) {
+                // a file stored by another user may not be ours to touch, it is just evicted earlier
+            }
+            if (intact) {
+                stamps.put(sha256, StoredAsset.of(object));
+            } else {
+                stamps.remove(sha256);
+            }
+            saveStamps(stamps);
+        } catch (IOException e) {
+            System.out.println("Failed to read stored asset: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Removes the write permissions of the stored file, where the file system has POSIX permissions.
+     * @param object Path to the stored file.
+     */
+    private static void makeReadOnly(Path object) {
+        try {
+            Files.setPosixFilePermissions(object, READ_ONLY);
+        } catch (IOException | UnsupportedOperationException e) {
+            // the file is still checked by its size and modification time
+        }
+    }
+
+    /**
+     * Removes the least recently used files until the store fits its size limit.
+     * @param keep The hash of the file just stored, which is never removed.
+     */
+    private void evict(String keep) {
+        Path objects = directory.resolve(OBJECTS_DIR);
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(objects)) {
+            files = walk.filter(path -> Files.isRegularFile(path) && !path.getFileName().toString().contains("."))
+                .sorted(Comparator.comparing(AssetStore::lastModified))
+                .toList();
+        } catch (IOException | UncheckedIOException e) {
+            System.out.println("Failed to list stored assets: " + e.getMessage());
+            return;
+        }
+        long total = files.stream().mapToLong(AssetStore::size).sum();
+        List<String> removed = new ArrayList<>();
+        for (Path file : files) {
+            if (total <= maxBytes) {
+                break;
+            }
+            if (file.getFileName().toString().equals(keep)) {
+                continue;
+            }
+            long size = size(file);
+            try {
+                Files.deleteIfExists(file);
+                total -= size;
+                removed.add(file.getFileName().toString());
+            } catch (IOException e) {
+                System.out.println("Failed to remove stored asset: " + e.getMessage());
+            }
+        }
+        if (!removed.isEmpty()) {
+            Map<String, String> index = loadIndex();
+            index.values().removeAll(removed);
+            saveIndex(index);
+            Map<String, StoredAsset> stamps = loadStamps();
+            stamps.keySet().removeAll(removed);
+            saveStamps(stamps);
+        }
+    }
+
+    /**
+     * @param file Path to a stored file.
+     * @return The modification time of the file, or the epoch if it cannot be read.
+     */
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    /**
+     * @param file Path to a stored file.
+     * @return The size of the file, or 0 if it cannot be read.
+     */
+    private static long size(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @return The index from download URLs to the hashes of their content.
+     */
+    private Map<String, String> loadIndex() {
+        Path indexFile = directory.resolve(INDEX_FILE);
+        if (!Files.exists(indexFile)) {
+            return new HashMap<>();
+        }
+        try {
+            return JsonUtils.MAPPER.readValue(indexFile.toFile(), new TypeReference<HashMap<String, String>>() {});
+        } catch (IOException e) {
+            System.out.println("Ignoring unreadable asset store index: " + e.getMessage());
+            return new HashMap<>();
+        }
+    }
+
+    /**
+     * Persists the index.
+     * @param index The index from download URLs to the hashes of their content.
+     */
+    private void saveIndex(Map<String, String> index) {
+        try {
+            Files.createDirectories(directory);
+            Path temp = Files.createTempFile(directory, INDEX_FILE, ".tmp");
+            JsonUtils.MAPPER.writeValue(temp.toFile(), index);
+            Files.move(temp, directory.resolve(INDEX_FILE), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("Failed to save asset store index: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return The recorded size and modification time of every stored file known to be intact, by its hash.
+     */
+    private Map<String, StoredAsset> loadStamps() {
+        Path stampsFile = directory.resolve(STAMPS_FILE);
+        if (!Files.exists(stampsFile)) {
+            return new HashMap<>();
+        }
+        try {
+            return JsonUtils.MAPPER.readValue(stampsFile.toFile(), new TypeReference<HashMap<String, StoredAsset>>() {});
+        } catch (IOException e) {
+            // every stored file is hashed again instead
+            return new HashMap<>();
+        }
+    }
+
+    /**
+     * Persists the recorded sizes and modification times.
+     * @param stamps The size and modification time of every stored file known to be intact, by its hash.
+     */
+    private void saveStamps(Map<String, StoredAsset> stamps) {
+        try {
+            Files.createDirectories(directory);
+            Path temp = Files.createTempFile(directory, STAMPS_FILE, ".tmp");
+            JsonUtils.MAPPER.writeValue(temp.toFile(), stamps);
+            Files.move(temp, directory.resolve(STAMPS_FILE), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("Failed to save asset store index: " + e.getMessage());
+        }
+    }
+}
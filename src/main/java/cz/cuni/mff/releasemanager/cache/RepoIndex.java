@@ -0,0 +1,225 @@
+package cz.cuni.mff.releasemanager.cache;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+
+import cz.cuni.mff.releasemanager.types.Repo;
+import cz.cuni.mff.releasemanager.utils.JsonUtils;
+
+/**
+ * Local index of the repositories seen in search results and installed releases.
+ *
+ * <p>Every repository is indexed by the trigrams (three consecutive characters) of its lowercase
+ * name and description. A search term of at least three characters only has to be checked against
+ * the repositories that contain all trigrams of the term, found by intersecting their bit sets,
+ * so a search is answered without scanning the whole index and without a network request.
+ * Only the repositories are stored on disk, the trigrams are computed when the index is loaded.</p>
+ */
+public class RepoIndex {
+    private static final int TRIGRAM = 3;
+
+    private final Path file;
+    private List<Repo> repos;
+    private Map<String, Integer> positions;
+    private Map<String, BitSet> trigrams;
+
+    /**
+     * Creates an index stored in the given file.
+     * @param file Path to the file with the indexed repositories, created when the first repository is added.
+     */
+    public RepoIndex(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Adds the repositories to the index, or updates their description.
+     * A missing description does not replace a known one.
+     * @param added The repositories to add.
+     */
+    public synchronized void add(Collection<Repo> added) {
+        load();
+        boolean changed = false;
+        for (Repo repo : added) {
+            if (repo == null || repo.fullName() == null) {
+                continue;
+            }
+            Integer position = positions.get(repo.fullName().toLowerCase(Locale.ROOT));
+            if (position == null) {
+                insert(repo);
+                changed = true;
+            } else if (repo.description() != null && !repo.description().equals(repos.get(position).description())) {
+                unindex(position);
+                repos.set(position, repo);
+                index(position);
+                changed = true;
+            }
+        }
+        if (changed) {
+            save();
+        }
+    }
+
+    /**
+     * Finds the repositories whose name or description contains all terms of the query.
+     * Repositories matching the query by name come first.
+     * @param query The search query.
+     * @param limit The maximum number of repositories returned.
+     * @return The matching repositories.
+     */
+    public synchronized List<Repo> search(String query, int limit) {
+        load();
+        List<String> terms = Arrays.stream(query.toLowerCase(Locale.ROOT).trim().split("\\s+"))
+            .filter(term -> !term.isEmpty())
+            .toList();
+        if (terms.isEmpty()) {
+            return List.of();
+        }
+        BitSet candidates = new BitSet();
+        candidates.set(0, repos.size());
+        for (String term : terms) {
+            for (String trigram : trigrams(term)) {
+                BitSet containing = trigrams.get(trigram);
+                if (containing == null) {
+                    return List.of();
+                }
+                candidates.and(containing);
+            }
+        }
+        List<Repo> found = new ArrayList<>();
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            // the trigrams of a term may be scattered over the text, so the term itself is checked
+            String text = text(repos.get(i));
+            if (terms.stream().allMatch(text::contains)) {
+                found.add(repos.get(i));
+            }
+        }
+        return found.stream()
+            .sorted(Comparator.comparingInt((Repo repo) -> rank(repo, terms)).thenComparing(Repo::fullName))
+            .limit(limit)
+            .toList();
+    }
+
+    /**
+     * @param repo A matching repository.
+     * @param terms The terms of the query.
+     * @return 0 if the repository name equals the query, 1 if the full name contains all terms, otherwise 2.
+     */
+    private static int rank(Repo repo, List<String> terms) {
+        String fullName = repo.fullName().toLowerCase(Locale.ROOT);
+        String name = fullName.substring(fullName.indexOf('/') + 1);
+        if (name.equals(String.join(" ", terms)) || fullName.equals(String.join(" ", terms))) {
+            return 0;
+        }
+        return terms.stream().allMatch(fullName::contains) ? 1 : 2;
+    }
+
+    /**
+     * @param repo A repository.
+     * @return The lowercase text the repository is searched by.
+     */
+    private static String text(Repo repo) {
+        return (repo.fullName() + " " + Objects.requireNonNullElse(repo.description(), ""))
+            .toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @param text A lowercase text.
+     * @return The distinct trigrams of the text, empty if it is shorter than a trigram.
+     */
+    private static Set<String> trigrams(String text) {
+        Set<String> result = new HashSet<>();
+        for (int i = 0; i + TRIGRAM <= text.length(); i++) {
+            result.add(text.substring(i, i + TRIGRAM));
+        }
+        return result;
+    }
+
+    /**
+     * Appends the repository to the index.
+     * @param repo The repository.
+     */
+    private void insert(Repo repo) {
+        repos.add(repo);
+        positions.put(repo.fullName().toLowerCase(Locale.ROOT), repos.size() - 1);
+        index(repos.size() - 1);
+    }
+
+    /**
+     * Adds the repository at the given position to the sets of its trigrams.
+     * @param position The position of the repository.
+     */
+    private void index(int position) {
+        for (String trigram : trigrams(text(repos.get(position)))) {
+            trigrams.computeIfAbsent(trigram, t -> new BitSet()).set(position);
+        }
+    }
+
+    /**
+     * Removes the repository at the given position from the sets of its trigrams.
+     * @param position The position of the repository.
+     */
+    private void unindex(int position) {
+        for (String trigram : trigrams(text(repos.get(position)))) {
+            BitSet containing = trigrams.get(trigram);
+            containing.clear(position);
+            if (containing.isEmpty()) {
+                trigrams.remove(trigram);
+            }
+        }
+    }
+
+    /**
+     * Loads the indexed repositories on first use.
+     */
+    private void load() {
+        if (repos != null) {
+            return;
+        }
+        repos = new ArrayList<>();
+        positions = new HashMap<>();
+        trigrams = new HashMap<>();
+        if (!Files.exists(file)) {
+            return;
+        }
+        try {
+            List<Repo> stored = JsonUtils.MAPPER.readValue(file.toFile(), new TypeReference<List<Repo>>() {});
+            for (Repo repo : stored) {
+                if (repo.fullName() != null && !positions.containsKey(repo.fullName().toLowerCase(Locale.ROOT))) {
+                    insert(repo);
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Ignoring unreadable repository index: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Persists the indexed repositories.
+     */
+    private void save() {
+        try {
+            Files.createDirectories(file.getParent());
+            Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            JsonUtils.MAPPER.writeValue(temp.toFile(), repos);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("Failed to save repository index: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package cz.cuni.mff.releasemanager.cache;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Optional;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import cz.cuni.mff.releasemanager.types.CacheEntry;
+
+/**
+ * On-disk cache of Github API responses keyed by the request URI.
+ * Each response is stored as two files: the body and a {@link CacheEntry} with its validators
+ * ({@code ETag} and {@code Last-Modified}), which are replayed as a conditional request
+ * so an unchanged resource can be served from disk after a {@code 304 Not Modified}.
+ */
+public class ResponseCache {
+    private static final ObjectMapper mapper = new ObjectMapper()
+        .registerModule(new JavaTimeModule());
+    private static final String ENTRY_SUFFIX = ".json";
+    private static final String BODY_SUFFIX = ".body";
+
+    private final Path directory;
+
+    /**
+     * Creates a cache stored in the given directory.
+     * The directory is created lazily when the first response is stored.
+     * @param directory Path to the cache directory.
+     */
+    public ResponseCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Looks up the cached entry for the given URI.
+     * @param uri The requested URI.
+     * @return Optional containing the entry if both the entry and its body are cached.
+     */
+    public Optional<CacheEntry> get(URI uri) {
+        String key = key(uri);
+        Path entryFile = directory.resolve(key + ENTRY_SUFFIX);
+        if (!Files.exists(entryFile) || !Files.exists(directory.resolve(key + BODY_SUFFIX))) {
+            return Optional.empty();
+        }
+        try {
+            CacheEntry entry = mapper.readValue(entryFile.toFile(), CacheEntry.class);
+            return uri.toString().equals(entry.uri()) ? Optional.of(entry) : Optional.empty();
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Opens the cached body for the given URI.
+     * @param uri The requested URI.
+     * @return Optional containing the stream of the body if it is cached.
+     */
+    public Optional<InputStream> openBody(URI uri) {
+        try {
+            return Optional.of(Files.newInputStream(directory.resolve(key(uri) + BODY_SUFFIX)));
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Wraps the body of a response so that it is stored in the cache while it is being read.
+     * The response is committed to the cache when the returned stream is closed after the whole body was read.
+     * Responses without any validator are not stored, since they could never be revalidated.
+     * @param uri The requested URI.
+     * @param headers The headers of the response.
+     * @param body The body of the response.
+     * @return The stream to read the body from.
+     */
+    public InputStream store(URI uri, HttpHeaders headers, InputStream body) {
+        String etag = headers.firstValue("ETag").orElse(null);
+        String lastModified = headers.firstValue("Last-Modified").orElse(null);
+        String link = headers.firstValue("Link").orElse(null);
+        if (etag == null && lastModified == null) {
+            return body;
+        }
+        String key = key(uri);
+        try {
+            Files.createDirectories(directory);
+            Path temp = Files.createTempFile(directory, key, BODY_SUFFIX);
+            return new CachingInputStream(body, temp, () -> {
+                Files.move(temp, directory.resolve(key + BODY_SUFFIX), StandardCopyOption.REPLACE_EXISTING);
+                mapper.writeValue(directory.resolve(key + ENTRY_SUFFIX).toFile(),
+                    new CacheEntry(uri.toString(), etag, lastModified, link, Instant.now()));
+            });
+        } catch (IOException e) {
+            System.out.println("Failed to cache response: " + e.getMessage());
+            return body;
+        }
+    }
+
+    /**
+     * Marks the cached entry as revalidated after a {@code 304 Not Modified} response.
+     * @param entry The entry that was revalidated.
+     */
+    public void touch(CacheEntry entry) {
+        try {
+            mapper.writeValue(directory.resolve(key(URI.create(entry.uri())) + ENTRY_SUFFIX).toFile(),
+                new CacheEntry(entry.uri(), entry.etag(), entry.lastModified(), entry.link(), Instant.now()));
+        } catch (IOException e) {
+            System.out.println("Failed to update cached response: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Action committing a fully read body to the cache.
+     */
+    @FunctionalInterface
+    private interface Commit {
+        void run() throws IOException;
+    }
+
+    /**
+     * Stream copying everything read from the response body to a temporary file.
+     * The file is committed on close if the body was read to the end without errors, otherwise it is deleted.
+     */
+    private static final class CachingInputStream extends FilterInputStream {
+        private final Path temp;
+        private final OutputStream copy;
+        private final Commit commit;
+        private boolean failed;
+        private boolean closed;
+
+        /**
+         * @param body The body of the response.
+         * @param temp Path to the temporary file receiving the copy.
+         * @param commit Action committing the copy to the cache.
+         * @throws IOException
+         */
+        CachingInputStream(InputStream body, Path temp, Commit commit) throws IOException {
+            super(body);
+            this.temp = temp;
+            this.copy = Files.newOutputStream(temp);
+            this.commit = commit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int read = read(single, 0, 1);
+            return read == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read;
+            try {
+                read = super.read(buffer, offset, length);
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+            if (read > 0 && !failed) {
+                try {
+                    copy.write(buffer, offset, read);
+                } catch (IOException e) {
+                    failed = true;
+                }
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                if (!failed) {
+                    // the parser may stop before the trailing whitespace, read the rest for the cache
+                    byte[] buffer = new byte[8192];
+                    while (read(buffer, 0, buffer.length) != -1) {
+                        // copied by read
+                    }
+                }
+            } catch (IOException e) {
+                failed = true;
+            } finally {
+                copy.close();
+                super.close();
+                if (failed) {
+                    Files.deleteIfExists(temp);
+                } else {
+                    try {
+                        commit.run();
+                    } catch (IOException e) {
+                        Files.deleteIfExists(temp);
+                        System.out.println("Failed to cache response: " + e.getMessage());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the file name for the given URI.
+     * @param uri The requested URI.
+     * @return The hex encoded SHA-256 of the URI.
+     */
+    private static String key(URI uri) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(uri.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package cz.cuni.mff.releasemanager.cache;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import cz.cuni.mff.releasemanager.types.Repo;
+import cz.cuni.mff.releasemanager.types.SearchCacheEntry;
+import cz.cuni.mff.releasemanager.types.SearchResult;
+
+/**
+ * On-disk cache of repository search results keyed by the normalized query.
+ *
+ * <p>A result is reused without asking Github until its time to live passes. The least recently used
+ * results are evicted when the cache is full. A query that adds terms to a cached query is answered
+ * from the cached result if it contains all matching repositories, by keeping the repositories whose
+ * name or description contains all terms of the narrower query.</p>
+ */
+public class SearchCache {
+    private static final ObjectMapper mapper = new ObjectMapper()
+        .registerModule(new JavaTimeModule());
+    private static final int DEFAULT_MAX_ENTRIES = 200;
+
+    private final Path file;
+    private final Duration ttl;
+    private final int maxEntries;
+    private final Clock clock;
+    private Map<String, SearchCacheEntry> entries;
+
+    /**
+     * Creates a search cache stored in the given file.
+     * @param file Path to the file with the cached results, created when the first result is stored.
+     * @param ttl How long a result is reused.
+     */
+    public SearchCache(Path file, Duration ttl) {
+        this(file, ttl, DEFAULT_MAX_ENTRIES, Clock.systemUTC());
+    }
+
+    /**
+     * Creates a search cache stored in the given file.
+     * @param file Path to the file with the cached results, created when the first result is stored.
+     * @param ttl How long a result is reused.
+     * @param maxEntries The maximum number of cached results.
+     * @param clock The clock used to expire the results.
+     */
+    SearchCache(Path file, Duration ttl, int maxEntries, Clock clock) {
+        this.file = file;
+        this.ttl = ttl;
+        this.maxEntries = maxEntries;
+        this.clock = clock;
+    }
+
+    /**
+     * Normalizes the query so that queries differing only in case and whitespace share the result.
+     * @param query The search query.
+     * @return The normalized query.
+     */
+    static String normalize(String query) {
+        return String.join(" ", terms(query));
+    }
+
+    /**
+     * Looks up the result of the given query.
+     * @param query The search query.
+     * @return Optional containing the result of the query, or of a broader query filtered to this one.
+     */
+    public synchronized Optional<SearchResult> get(String query) {
+        Map<String, SearchCacheEntry> cached = entries();
+        removeExpired(cached);
+        String key = normalize(query);
+        SearchCacheEntry exact = cached.get(key);
+        if (exact != null) {
+            return Optional.of(exact.result());
+        }
+        List<String> terms = terms(query);
+        if (terms.stream().anyMatch(term -> term.contains(":"))) {
+            // qualifiers such as language:java cannot be checked against the cached repositories
+            return Optional.empty();
+        }
+        SearchCacheEntry broader = null;
+        for (SearchCacheEntry entry : cached.values()) {
+            List<String> entryTerms = terms(entry.query());
+            if (entry.result().isComplete() && terms.containsAll(entryTerms)
+                    && (broader == null || entryTerms.size() > terms(broader.query()).size())) {
+                broader = entry;
+            }
+        }
+        if (broader == null) {
+            return Optional.empty();
+        }
+        // mark the broader result as used
+        cached.get(broader.query());
+        List<Repo> items = broader.result().items().stream()
+            .filter(repo -> matches(repo, terms))
+            .toList();
+        return Optional.of(new SearchResult(items, items.size()));
+    }
+
+    /**
+     * Stores the result of the given query.
+     * @param query The search query.
+     * @param result The result received from Github.
+     */
+    public synchronized void put(String query, SearchResult result) {
+        if (result.items() == null) {
+            return;
+        }
+        Map<String, SearchCacheEntry> cached = entries();
+        String key = normalize(query);
+        cached.remove(key);
+        cached.put(key, new SearchCacheEntry(key, result, clock.instant()));
+        removeExpired(cached);
+        save(cached);
+    }
+
+    /**
+     * Splits the query into lowercase terms.
+     * @param query The search query.
+     * @return The terms of the query.
+     */
+    private static List<String> terms(String query) {
+        return Arrays.stream(query.toLowerCase(Locale.ROOT).trim().split("\\s+"))
+            .filter(term -> !term.isEmpty())
+            .toList();
+    }
+
+    /**
+     * @param repo A repository from a cached result.
+     * @param terms The terms of the query.
+     * @return true if the name or description of the repository contains all terms.
+     */
+    private static boolean matches(Repo repo, List<String> terms) {
+        String text = (repo.fullName() + " " + (repo.description() == null ? "" : repo.description()))
+            .toLowerCase(Locale.ROOT);
+        return terms.stream().allMatch(text::contains);
+    }
+
+    /**
+     * Removes the results older than the time to live.
+     * @param cached The cached results.
+     */
+    private void removeExpired(Map<String, SearchCacheEntry> cached) {
+        Instant oldest = clock.instant().minus(ttl);
+        Iterator<SearchCacheEntry> iterator = cached.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().storedAt().isBefore(oldest)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Loads the cached results on first use.
+     * @return The cached results from the least to the most recently used.
+     */
+    private Map<String, SearchCacheEntry> entries() {
+        if (entries != null) {
+            return entries;
+        }
+        entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SearchCacheEntry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        if (Files.exists(file)) {
+            try {
+                List<SearchCacheEntry> stored = mapper.readValue(file.toFile(), new TypeReference<>() {});
+                stored.forEach(entry -> entries.put(entry.query(), entry));
+            } catch (IOException e) {
+                System.out.println("Ignoring unreadable search cache: " + e.getMessage());
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Persists the cached results in the order of their use.
+     * @param cached The cached results.
+     */
+    private void save(Map<String, SearchCacheEntry> cached) {
+        try {
+            Files.createDirectories(file.getParent());
+            Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            mapper.writeValue(temp.toFile(), new ArrayList<>(cached.values()));
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("Failed to save search cache: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,5 @@
+/**
+ * This package contains the local caches of the Github Release Manager,
+ * which keep data received from Github on disk to avoid repeated network requests.
+ */
+package cz.cuni.mff.releasemanager.cache;
@@ -1,6 +1,9 @@
 package cz.cuni.mff.releasemanager.cmd;
 
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
 
 /**
@@ -9,27 +12,58 @@ import java.util.Scanner;
  */
 public class CmdParser {
 
+    private static final String OPTION_PREFIX = "--";
     private final Scanner scanner = new Scanner(System.in);
 
     /**
      * Parses the command line arguments and returns the corresponding Command.
+     * Arguments starting with {@code --} are treated as options and can appear anywhere.
      *
      * @param args command line arguments
      * @return the parsed Command
      */
     public Command parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        List<String> positional = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith(OPTION_PREFIX) && arg.length() > OPTION_PREFIX.length()) {
+                String option = arg.substring(OPTION_PREFIX.length());
+                int separator = option.indexOf('=');
+                if (separator < 0) {
+                    options.put(option.toLowerCase(), "");
+                } else {
+                    options.put(option.substring(0, separator).toLowerCase(), option.substring(separator + 1));
+                }
+            } else {
+                positional.add(arg);
+            }
+        }
+
         Command defaultCommand = Command.HELP;
         defaultCommand.argument = null;
-        if (args.length > 1) {
-            defaultCommand.argument =  String.join(" ", Arrays.copyOfRange(args, 1, args.length));
+        if (positional.size() > 1) {
+            defaultCommand.argument = String.join(" ", positional.subList(1, positional.size()));
         }
-        if (args.length == 0) {
-            return defaultCommand;
+        if (positional.isEmpty()) {
+            return withOptions(defaultCommand, options);
         }
-        Command command = Command.fromName(args[0]).orElseGet(() -> defaultCommand);
+        Command command = Command.fromName(positional.get(0)).orElseGet(() -> defaultCommand);
         if (command.requiresArgument()) {
-            command.argument = args[1];
+            command.argument = positional.size() > 1 ? positional.get(1) : null;
         }
+        return withOptions(command, options);
+    }
+
+    /**
+     * Replaces the options of the given command.
+     *
+     * @param command the parsed command
+     * @param options the parsed options
+     * @return the command
+     */
+    private Command withOptions(Command command, Map<String, String> options) {
+        command.options.clear();
+        command.options.putAll(options);
         return command;
     }
 
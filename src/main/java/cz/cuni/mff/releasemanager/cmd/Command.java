@@ -1,6 +1,7 @@
 package cz.cuni.mff.releasemanager.cmd;
 
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.function.Function;
@@ -8,7 +9,7 @@ import java.util.stream.Collectors;
 
 /**
  * Enum representing the available commands for the release manager.
- * Each command has a name and an argument count.
+ * Each command has a name, an argument count and a set of parsed {@code --option} flags.
  */
 public enum Command {
     SEARCH("search", 1),
@@ -16,6 +17,7 @@ public enum Command {
     UNINSTALL("uninstall", 1),
     UPDATE("update", 1),
     LIST("list", 0),
+    VERIFY("verify", 0),
     HELP("help", 0);
 
     /**
@@ -31,6 +33,11 @@ public enum Command {
     public final String commandName;
     public String argument;
     public int argNumber;
+    /**
+     * Options given on the command line as {@code --name} or {@code --name=value}.
+     * Flags without a value are stored with an empty string.
+     */
+    public final Map<String, String> options = new HashMap<>();
 
     /**
      * A map of command names to their corresponding Command enum values.
@@ -56,4 +63,22 @@ public enum Command {
     public boolean requiresArgument() {
         return argNumber == 1;
     }
+
+    /**
+     * Checks if the given option was passed on the command line.
+     * @param name the name of the option without the leading dashes
+     * @return true if the option is present, false otherwise
+     */
+    public boolean hasOption(String name) {
+        return options.containsKey(name);
+    }
+
+    /**
+     * Returns the value of the given option.
+     * @param name the name of the option without the leading dashes
+     * @return an Optional containing the value if the option is present
+     */
+    public Optional<String> getOption(String name) {
+        return Optional.ofNullable(options.get(name));
+    }
 }
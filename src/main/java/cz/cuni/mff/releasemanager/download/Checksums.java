@@ -0,0 +1,144 @@
+package cz.cuni.mff.releasemanager.download;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import cz.cuni.mff.releasemanager.types.Asset;
+
+/**
+ * Finds the published SHA-256 checksums of release assets.
+ *
+ * <p>A checksum is taken from the digest Github reports for the asset, or from a checksum file
+ * published in the same release: either a {@code SHA256SUMS} list in the format of {@code sha256sum},
+ * or a file named after the asset with the {@code .sha256} extension.</p>
+ */
+public class Checksums {
+    private static final String SHA256_PREFIX = "sha256:";
+    private static final List<String> SUMS_FILES = List.of("sha256sums", "sha256sums.txt");
+    private static final List<String> ASSET_SUFFIXES = List.of(".sha256", ".sha256sum");
+    // "<hash>  <name>" or "<hash> *<name>" as written by sha256sum, or a bare hash
+    private static final Pattern LINE = Pattern.compile("^([0-9a-fA-F]{64})(?:\\s+\\*?(?:\\./)?(.+?))?\\s*$");
+    // a single mapping is limited to 2 GB, larger files are mapped in parts
+    private static final long MAP_SIZE = 256L * 1024 * 1024;
+
+    private Checksums() {
+    }
+
+    /**
+     * @return A new SHA-256 digest.
+     */
+    public static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Hashes the file through a memory mapping, so the content is read by the page cache
+     * without being copied into a read buffer first.
+     * @param file Path to a file.
+     * @return The lowercase hex SHA-256 of the file.
+     * @throws IOException
+     */
+    public static String sha256(Path file) throws IOException {
+        MessageDigest digest = sha256();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long position = 0; position < size; position += MAP_SIZE) {
+                digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_SIZE, size - position)));
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * @return A new SHA-1 digest, used by zsync control files.
+     */
+    public static MessageDigest sha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param asset An asset of a release.
+     * @return Optional containing the lowercase SHA-256 Github reports for the asset.
+     */
+    public static Optional<String> publishedDigest(Asset asset) {
+        String digest = asset.digest();
+        if (digest == null || !digest.toLowerCase(Locale.ROOT).startsWith(SHA256_PREFIX)) {
+            return Optional.empty();
+        }
+        return Optional.of(digest.substring(SHA256_PREFIX.length()).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Finds the checksum file covering the asset among all assets of its release.
+     * A file for the asset alone is preferred to a list of checksums.
+     * @param asset The asset.
+     * @param releaseAssets All assets of the release.
+     * @return Optional containing the checksum file.
+     */
+    public static Optional<Asset> findChecksumFile(Asset asset, List<Asset> releaseAssets) {
+        for (String suffix : ASSET_SUFFIXES) {
+            String name = asset.name() + suffix;
+            Optional<Asset> own = releaseAssets.stream().filter(a -> a.name().equalsIgnoreCase(name)).findFirst();
+            if (own.isPresent()) {
+                return own;
+            }
+        }
+        return releaseAssets.stream()
+            .filter(a -> SUMS_FILES.contains(a.name().toLowerCase(Locale.ROOT)))
+            .findFirst();
+    }
+
+    /**
+     * @param name The name of an asset.
+     * @return true if the asset is a checksum file, not something to install.
+     */
+    public static boolean isChecksumFile(String name) {
+        String lower = name.toLowerCase(Locale.ROOT);
+        return SUMS_FILES.contains(lower) || ASSET_SUFFIXES.stream().anyMatch(lower::endsWith);
+    }
+
+    /**
+     * Reads the checksum of the asset from the content of a checksum file.
+     * @param content The content of the checksum file.
+     * @param assetName The name of the asset.
+     * @return Optional containing the lowercase SHA-256 of the asset, or of the only file the checksum file lists.
+     */
+    public static Optional<String> parse(String content, String assetName) {
+        String single = null;
+        int entries = 0;
+        for (String line : content.split("\\R")) {
+            Matcher matcher = LINE.matcher(line.strip());
+            if (!matcher.matches()) {
+                continue;
+            }
+            entries++;
+            String hash = matcher.group(1).toLowerCase(Locale.ROOT);
+            String name = matcher.group(2);
+            if (name != null && name.equals(assetName)) {
+                return Optional.of(hash);
+            }
+            if (name == null) {
+                single = hash;
+            }
+        }
+        return entries == 1 && single != null ? Optional.of(single) : Optional.empty();
+    }
+}
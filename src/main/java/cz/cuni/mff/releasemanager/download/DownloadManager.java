@@ -0,0 +1,384 @@
+package cz.cuni.mff.releasemanager.download;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+import cz.cuni.mff.releasemanager.types.DownloadStats;
+import cz.cuni.mff.releasemanager.types.Settings;
+
+/**
+ * Shares the bandwidth and the connections among all downloads.
+ *
+ * <p>The bytes read by all downloads pass a token bucket refilled at the configured rate, holding at most
+ * one second worth of bytes, so downloads never exceed the cap on average. A read taking more tokens than
+ * available waits until the bucket has refilled.</p>
+ *
+ * <p>Every request holds a connection while it downloads. The number of connections is limited per host
+ * and globally by a limit adjusted AIMD-style: each time as many requests finished as the limit allows,
+ * the limit grows by one if the throughput improved since the last increase. A {@code 429} or {@code 5xx}
+ * response, a failed request or a stalled read halves it, so bulk downloads back off when the network
+ * or the server is congested.</p>
+ *
+ * <p>A download written by a {@link FileSink} is watched: when no bytes arrive for the stall timeout,
+ * the watchdog cancels it, so a connection that stops sending fails instead of holding its slot forever.</p>
+ */
+public class DownloadManager {
+    private static final int INITIAL_CONNECTIONS = 4;
+    // a read blocked longer than this counts as a stall
+    private static final long STALL_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+    // the limit grows only when the throughput improved by at least this factor
+    private static final double IMPROVEMENT = 1.05;
+    private static final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(
+        Thread.ofPlatform().name("download-watchdog").daemon().factory());
+
+    private final long bytesPerSecond;
+    private final int maxConnections;
+    private final int maxConnectionsPerHost;
+    private final LongSupplier nanoTime;
+    private final long stallNanos;
+
+    // virtual threads wait for connections, so a lock is used instead of synchronized
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private final Map<String, Integer> hostConnections = new HashMap<>();
+    private int active;
+    private double limit;
+    private int finishedSinceAdjustment;
+    private double throughputAtIncrease;
+
+    private double tokens;
+    private long refilledAt;
+
+    private long totalBytes;
+    private long windowStart;
+    private long windowBytes;
+    private double throughput;
+
+    /**
+     * Creates a download manager.
+     * @param bytesPerSecond The bandwidth cap in bytes per second, 0 for no cap.
+     * @param maxConnections The upper bound of the global connection limit.
+     * @param maxConnectionsPerHost The maximum number of connections to a single host.
+     */
+    public DownloadManager(long bytesPerSecond, int maxConnections, int maxConnectionsPerHost) {
+        this(bytesPerSecond, maxConnections, maxConnectionsPerHost, System::nanoTime);
+    }
+
+    /**
+     * Creates a download manager.
+     * @param bytesPerSecond The bandwidth cap in bytes per second, 0 for no cap.
+     * @param maxConnections The upper bound of the global connection limit.
+     * @param maxConnectionsPerHost The maximum number of connections to a single host.
+     * @param nanoTime The source of the time in nanoseconds.
+     */
+    DownloadManager(long bytesPerSecond, int maxConnections, int maxConnectionsPerHost, LongSupplier nanoTime) {
+        this(bytesPerSecond, maxConnections, maxConnectionsPerHost, nanoTime, STALL_NANOS);
+    }
+
+    /**
+     * Creates a download manager.
+     * @param bytesPerSecond The bandwidth cap in bytes per second, 0 for no cap.
+     * @param maxConnections The upper bound of the global connection limit.
+     * @param maxConnectionsPerHost The maximum number of connections to a single host.
+     * @param nanoTime The source of the time in nanoseconds.
+     * @param stallNanos How long a watched download may receive nothing before it is cancelled.
+     */
+    DownloadManager(long bytesPerSecond, int maxConnections, int maxConnectionsPerHost, LongSupplier nanoTime,
+            long stallNanos) {
+        this.stallNanos = stallNanos;
+        this.bytesPerSecond = Math.max(0, bytesPerSecond);
+        this.maxConnections = Math.max(1, maxConnections);
+        this.maxConnectionsPerHost = Math.max(1, maxConnectionsPerHost);
+        this.nanoTime = nanoTime;
+        this.limit = Math.min(INITIAL_CONNECTIONS, this.maxConnections);
+        this.tokens = this.bytesPerSecond;
+        this.refilledAt = nanoTime.getAsLong();
+        this.windowStart = refilledAt;
+    }
+
+    /**
+     * Creates the download manager configured in the settings.
+     * @param settings The settings of the application.
+     * @return The download manager.
+     */
+    public static DownloadManager of(Settings settings) {
+        return new DownloadManager(settings.maxDownloadKilobytesPerSecond() * 1024,
+            settings.maxDownloadConnections(), settings.maxConnectionsPerHost());
+    }
+
+    /**
+     * @return The upper bound of the global connection limit.
+     */
+    public int maxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * @return How long a watched download may receive nothing before it is cancelled, in nanoseconds.
+     */
+    long stallNanos() {
+        return stallNanos;
+    }
+
+    /**
+     * Waits until a connection to the host is allowed.
+     * @param host The host of the request.
+     * @return The connection, to be closed when the response is read.
+     * @throws InterruptedException
+     */
+    public Connection open(String host) throws InterruptedException {
+        lock.lock();
+        try {
+            while (active >= (int) limit || hostConnections.getOrDefault(host, 0) >= maxConnectionsPerHost) {
+                released.await();
+            }
+            active++;
+            hostConnections.merge(host, 1, Integer::sum);
+            return new Connection(host);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wraps the body of a response so that every read is counted and throttled.
+     * @param stream The body of a response.
+     * @return The metered stream.
+     */
+    public InputStream meter(InputStream stream) {
+        return new MeteredInputStream(stream);
+    }
+
+    /**
+     * Watches a download for stalls. The cancelled download fails with an {@code IOException}, which marks
+     * its connection as congested, so the connection limit is halved when the connection is released.
+     * @param cancel Cancels the download, called at most once, from the watchdog thread.
+     * @return The watch, to be told about every received buffer and closed when the download ends.
+     */
+    Watch watch(Runnable cancel) {
+        return new Watch(cancel);
+    }
+
+    /**
+     * The throughput includes the current window, so downloads shorter than a window report their rate as well.
+     * @return The current throughput, the downloaded bytes and the connections.
+     */
+    public DownloadStats stats() {
+        lock.lock();
+        try {
+            long elapsed = nanoTime.getAsLong() - windowStart;
+            double current = throughput;
+            if (windowBytes > 0 && elapsed > 0) {
+                double rate = windowBytes * 1e9 / elapsed;
+                current = throughput == 0 ? rate : (throughput + rate) / 2;
+            }
+            return new DownloadStats(Math.round(current), totalBytes, active, (int) limit);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records bytes read by a download and waits if they exceed the bandwidth cap.
+     * @param bytes The number of bytes read.
+     * @param readNanos How long the read took.
+     * @throws InterruptedException
+     */
+    void received(int bytes, long readNanos) throws InterruptedException {
+        long wait;
+        lock.lock();
+        try {
+            if (readNanos > STALL_NANOS) {
+                decrease();
+            }
+            long now = nanoTime.getAsLong();
+            totalBytes += bytes;
+            windowBytes += bytes;
+            if (now - windowStart >= WINDOW_NANOS) {
+                double rate = windowBytes * 1e9 / (now - windowStart);
+                throughput = throughput == 0 ? rate : (throughput + rate) / 2;
+                windowStart = now;
+                windowBytes = 0;
+            }
+            wait = reserve(bytes, now);
+        } finally {
+            lock.unlock();
+        }
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    /**
+     * Takes the bytes from the token bucket, going into debt if there are not enough tokens.
+     * @param bytes The number of bytes read.
+     * @param now The current time in nanoseconds.
+     * @return How long to wait in nanoseconds until the debt is repaid.
+     */
+    long reserve(int bytes, long now) {
+        if (bytesPerSecond == 0) {
+            return 0;
+        }
+        tokens = Math.min(bytesPerSecond, tokens + (now - refilledAt) * bytesPerSecond / 1e9);
+        refilledAt = now;
+        tokens -= bytes;
+        return tokens >= 0 ? 0 : (long) (-tokens * 1e9 / bytesPerSecond);
+    }
+
+    /**
+     * Releases a connection and adjusts the connection limit.
+     * @param host The host of the connection.
+     * @param congested Whether the request signalled congestion.
+     */
+    private void release(String host, boolean congested) {
+        lock.lock();
+        try {
+            active--;
+            hostConnections.computeIfPresent(host, (h, count) -> count > 1 ? count - 1 : null);
+            if (congested) {
+                decrease();
+            } else if (++finishedSinceAdjustment >= (int) limit) {
+                finishedSinceAdjustment = 0;
+                if (throughput > throughputAtIncrease * IMPROVEMENT && limit < maxConnections) {
+                    throughputAtIncrease = throughput;
+                    limit++;
+                }
+            }
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Halves the connection limit.
+     */
+    private void decrease() {
+        limit = Math.max(1, Math.floor(limit / 2));
+        finishedSinceAdjustment = 0;
+        throughputAtIncrease = 0;
+    }
+
+    /**
+     * A connection held by a request while it downloads.
+     */
+    public final class Connection implements AutoCloseable {
+        private final String host;
+        private boolean congested;
+        private boolean closed;
+
+        /**
+         * @param host The host of the request.
+         */
+        private Connection(String host) {
+            this.host = host;
+        }
+
+        /**
+         * Marks the request as failed because of congestion, e.g. by a {@code 429} or {@code 5xx} response.
+         */
+        public void congested() {
+            congested = true;
+        }
+
+        /**
+         * Releases the connection; closing it again has no effect.
+         */
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                release(host, congested);
+            }
+        }
+    }
+
+    /**
+     * The watch of a single download, cancelling it when no bytes arrive for the stall timeout.
+     */
+    final class Watch implements AutoCloseable {
+        private final Runnable cancel;
+        private final ScheduledFuture<?> check;
+        private volatile long lastReceived = nanoTime.getAsLong();
+
+        /**
+         * @param cancel Cancels the download.
+         */
+        private Watch(Runnable cancel) {
+            this.cancel = cancel;
+            long period = Math.max(TimeUnit.MILLISECONDS.toNanos(10), stallNanos / 4);
+            this.check = watchdog.scheduleWithFixedDelay(this::check, period, period, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Records that a buffer arrived.
+         */
+        void received() {
+            lastReceived = nanoTime.getAsLong();
+        }
+
+        /**
+         * Cancels the download if it stalled.
+         */
+        private void check() {
+            if (nanoTime.getAsLong() - lastReceived > stallNanos) {
+                close();
+                cancel.run();
+            }
+        }
+
+        /**
+         * Stops watching the download.
+         */
+        @Override
+        public void close() {
+            check.cancel(false);
+        }
+    }
+
+    /**
+     * A response body counting and throttling its reads.
+     */
+    private final class MeteredInputStream extends FilterInputStream {
+
+        /**
+         * @param in The body of a response.
+         */
+        MeteredInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            long start = nanoTime.getAsLong();
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                try {
+                    received(read, nanoTime.getAsLong() - start);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Download interrupted.");
+                }
+            }
+            return read;
+        }
+    }
+}
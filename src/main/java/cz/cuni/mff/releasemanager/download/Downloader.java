@@ -0,0 +1,919 @@
+package cz.cuni.mff.releasemanager.download;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import cz.cuni.mff.releasemanager.download.DownloadManager.Connection;
+import cz.cuni.mff.releasemanager.http.HttpStatusException;
+import cz.cuni.mff.releasemanager.types.ByteRange;
+import cz.cuni.mff.releasemanager.types.DownloadJournal;
+
+/**
+ * Downloads files over HTTP using several connections at once.
+ *
+ * <p>The first request asks only for the first chunk of the file. If the server answers with
+ * {@code 206 Partial Content} and reports the total length in {@code Content-Range}, the file is
+ * preallocated and the remaining bytes are split into ranges which are fetched concurrently and
+ * written at their offsets. If the server ignores the range and answers with {@code 200 OK},
+ * the response is written from the start of the file as a whole.</p>
+ *
+ * <p>All responses are written by a {@link FileSink} straight from the buffers of the HTTP client into the
+ * preallocated file, chosen from the status and the headers of the response before its body arrives, and the
+ * file is forced to disk once, when it is written completely.</p>
+ *
+ * <p>Data is written to a {@code .part} file next to the destination, with a {@link DownloadJournal}
+ * sidecar recording the received ranges. If a download is interrupted, the next download of the same URL
+ * requests only the missing ranges with {@code If-Range}, so a changed resource is downloaded from the start.</p>
+ *
+ * <p>The SHA-256 of the file is computed while it is written. Bytes arriving in file order are hashed
+ * straight from the receive buffer; ranges received ahead of the hashed prefix are read back from the
+ * file (usually still in the page cache) once the prefix reaches them, so the file is never read twice.</p>
+ *
+ * <p>Redirects of the first request are followed by the downloader when the client does not follow them,
+ * dropping the {@code Authorization} header when the redirect leads to another host, such as the storage
+ * Github serves release assets from.</p>
+ */
+public class Downloader {
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final int DEFAULT_CONNECTIONS = 4;
+    // files smaller than this are downloaded by the first request alone
+    private static final long FIRST_CHUNK_SIZE = 8L * 1024 * 1024;
+    private static final long MIN_RANGE_SIZE = 4L * 1024 * 1024;
+    // the journal is rewritten after every this many received bytes
+    private static final long JOURNAL_INTERVAL = 8L * 1024 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String PART_SUFFIX = ".part";
+    private static final String JOURNAL_SUFFIX = ".part.json";
+    private static final int MAX_REDIRECTS = 5;
+    // how long a request may wait for the headers of its response, the body is watched by the download manager
+    private static final Duration RESPONSE_TIMEOUT = Duration.ofSeconds(30);
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+|\\*)");
+
+    private final HttpClient client;
+    private final DownloadManager manager;
+
+    /**
+     * Creates a downloader using the default number of connections without a bandwidth cap.
+     * @param client The HTTP client used for the requests.
+     */
+    public Downloader(HttpClient client) {
+        this(client, DEFAULT_CONNECTIONS);
+    }
+
+    /**
+     * Creates a downloader without a bandwidth cap.
+     * @param client The HTTP client used for the requests.
+     * @param connections The maximum number of concurrent connections.
+     */
+    public Downloader(HttpClient client, int connections) {
+        this(client, new DownloadManager(0, connections, connections));
+    }
+
+    /**
+     * Creates a downloader sharing the bandwidth and the connections through the download manager.
+     * @param client The HTTP client used for the requests.
+     * @param manager The download manager.
+     */
+    public Downloader(HttpClient client, DownloadManager manager) {
+        this.client = client;
+        this.manager = manager;
+    }
+
+    /**
+     * @return The download manager of this downloader.
+     */
+    public DownloadManager manager() {
+        return manager;
+    }
+
+    /**
+     * Signals that a download was not started because the file system has not enough room for it.
+     */
+    public static class InsufficientSpaceException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * @param message The detail message.
+         */
+        public InsufficientSpaceException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Checks that the file system of the destination has room for a file of the given size.
+     * @param destination Path to the file to write, its directory must exist.
+     * @param size The size of the file in bytes, or 0 if unknown.
+     * @throws InsufficientSpaceException if the usable space is smaller than the size
+     * @throws IOException if the file system cannot be queried
+     */
+    public static void checkFreeSpace(Path destination, long size) throws IOException {
+        if (size <= 0) {
+            return;
+        }
+        long usable = Files.getFileStore(destination.toAbsolutePath().getParent()).getUsableSpace();
+        if (usable < size) {
+            throw new InsufficientSpaceException(String.format("Not enough disk space for %s: %.1f MB needed, %.1f MB free.",
+                destination.getFileName(), size / 1e6, usable / 1e6));
+        }
+    }
+
+    /**
+     * Checks whether an interrupted download to the given destination can be resumed.
+     * @param destination Path to the downloaded file.
+     * @return true if a partial file with its journal exists.
+     */
+    public static boolean canResume(Path destination) {
+        return Files.exists(partFile(destination)) && Files.exists(journalFile(destination));
+    }
+
+    /**
+     * @param destination Path to the downloaded file.
+     * @return Path to the {@code .part} file used while downloading.
+     */
+    private static Path partFile(Path destination) {
+        return destination.resolveSibling(destination.getFileName() + PART_SUFFIX);
+    }
+
+    /**
+     * @param destination Path to the downloaded file.
+     * @return Path to the journal of the {@code .part} file.
+     */
+    private static Path journalFile(Path destination) {
+        return destination.resolveSibling(destination.getFileName() + JOURNAL_SUFFIX);
+    }
+
+    /**
+     * Downloads the resource requested by the given request to the destination file,
+     * resuming an interrupted download of the same URL if there is one.
+     * The request is used as a template, its headers are sent with every range request.
+     * @param request The request for the whole resource.
+     * @param destination Path to the file to write, replaced if it exists.
+     * @return The lowercase hex SHA-256 of the downloaded file.
+     * @throws IOException if any of the requests fails, the partial file is kept for resuming
+     * @throws InterruptedException
+     */
+    public String download(HttpRequest request, Path destination) throws IOException, InterruptedException {
+        return download(request, destination, 0);
+    }
+
+    /**
+     * Downloads the resource of a known size to the destination file, as by {@link #download(HttpRequest, Path)},
+     * after checking that the file system has room for it.
+     * @param request The request for the whole resource.
+     * @param destination Path to the file to write, replaced if it exists.
+     * @param size The expected size of the resource in bytes, or 0 if unknown.
+     * @return The lowercase hex SHA-256 of the downloaded file.
+     * @throws InsufficientSpaceException if the file system has not enough room for the resource,
+     * checked before any request is sent
+     * @throws IOException if any of the requests fails, the partial file is kept for resuming
+     * @throws InterruptedException
+     */
+    public String download(HttpRequest request, Path destination, long size) throws IOException, InterruptedException {
+        // a resumable partial file is preallocated to the full size already
+        checkFreeSpace(destination, canResume(destination) ? 0 : size);
+        Connection connection = manager.open(request.uri().getHost());
+        try {
+            return download(request, destination, connection);
+        } catch (IOException e) {
+            throw failed(connection, e);
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * Downloads the resource, releasing the connection of the first request once its response is read.
+     * @param request The request for the whole resource.
+     * @param destination Path to the file to write, replaced if it exists.
+     * @param connection The connection of the first request.
+     * @return The lowercase hex SHA-256 of the downloaded file.
+     * @throws IOException if any of the requests fails, the partial file is kept for resuming
+     * @throws InterruptedException
+     */
+    private String download(HttpRequest request, Path destination, Connection connection)
+            throws IOException, InterruptedException {
+        long startNanos = System.nanoTime();
+        Path part = partFile(destination);
+        Path journalFile = journalFile(destination);
+        DownloadJournal journal = loadJournal(journalFile, part, request);
+        boolean resuming = journal != null;
+        long resumed = resuming ? journal.received().stream().mapToLong(ByteRange::length).sum() : 0;
+        ReceivedRanges received = new ReceivedRanges(resuming ? journal.received() : null);
+        ByteRange first = resuming
+            ? received.missing(journal.size()).get(0)
+            : new ByteRange(0, FIRST_CHUNK_SIZE);
+        long start = first.start();
+        String validator = resuming ? validator(journal.etag(), journal.lastModified()) : null;
+
+        HttpRequest.Builder probe = HttpRequest.newBuilder(request, (name, value) -> true)
+            .header("Range", range(start, Math.min(first.end(), start + FIRST_CHUNK_SIZE) - 1));
+        if (resuming) {
+            System.out.println("Resuming interrupted download of " + destination.getFileName() + ".");
+            probe.header("If-Range", validator);
+        }
+        Transfer transfer = null;
+        String sha256;
+        try (FileChannel channel = resuming
+                ? FileChannel.open(part, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            Probe sink = new Probe(channel, start, request, journalFile, journal, received);
+            HttpResponse<Long> response = sendFollowingRedirects(probe.build(), connection, sink);
+            transfer = sink.transfer;
+            if (sink.failure != null) {
+                throw sink.failure;
+            }
+            int statusCode = response.statusCode();
+            if (statusCode == 200) {
+                // the length is only a hint, the file ends where the body does
+                channel.truncate(response.body());
+                channel.force(false);
+                sha256 = HexFormat.of().formatHex(sink.digest.digest());
+            } else if (statusCode != 206) {
+                throw new HttpStatusException(statusCode, "HTTP Error " + statusCode + " while downloading "
+                    + request.uri());
+            } else if (sink.resized) {
+                // started over once the partial file is closed
+                sha256 = null;
+            } else if (transfer == null) {
+                throw new IOException("Invalid Content-Range in response for " + request.uri());
+            } else {
+                long end = sink.end;
+                long total = transfer.journal.size();
+                if (response.body() != end - start) {
+                    throw new IOException("Incomplete response while downloading " + request.uri());
+                }
+                connection.close();
+                // range requests go straight to the redirect target instead of through the redirect again
+                HttpRequest.Builder template = HttpRequest.newBuilder(response.request(),
+                        (name, value) -> !name.equalsIgnoreCase("Range") && !name.equalsIgnoreCase("If-Range"))
+                    .uri(response.uri());
+                validator = validator(transfer.journal.etag(), transfer.journal.lastModified());
+                if (validator != null) {
+                    template.setHeader("If-Range", validator);
+                }
+                if (total < 0) {
+                    fetchRange(template.build(), channel, new ByteRange(end, -1), transfer);
+                } else {
+                    fetchRanges(template.build(), channel, received.missing(total), transfer);
+                }
+                sha256 = transfer.finishHash(channel);
+                // the ranges are forced to disk together, once the whole file is written
+                channel.force(false);
+            }
+        } catch (IOException | InterruptedException e) {
+            if (transfer != null) {
+                transfer.save();
+            }
+            throw e;
+        }
+        if (sha256 == null) {
+            Files.deleteIfExists(journalFile);
+            Files.deleteIfExists(part);
+            connection.close();
+            return download(request, destination);
+        }
+        complete(part, journalFile, destination);
+        printRate(destination.getFileName().toString(), Files.size(destination) - resumed, startNanos);
+        return sha256;
+    }
+
+    /**
+     * Chooses where the body of the first response of a download is written, from the status and the headers
+     * of the response, before the body arrives. A {@code 200} response is written from the start of the file
+     * and hashed as it arrives, a {@code 206} response at the offset of its {@code Content-Range}, through the
+     * state of the download. Any other body is discarded.
+     */
+    private final class Probe implements HttpResponse.BodyHandler<Long> {
+        private final FileChannel channel;
+        private final long start;
+        private final HttpRequest request;
+        private final Path journalFile;
+        private final DownloadJournal journal;
+        private final ReceivedRanges received;
+        // the outcome, set by the handler before the body arrives
+        private MessageDigest digest;
+        private Transfer transfer;
+        private long end;
+        private boolean resized;
+        private IOException failure;
+
+        /**
+         * @param channel The channel of the partial file.
+         * @param start The offset of the first requested byte.
+         * @param request The request for the whole resource.
+         * @param journalFile Path to the journal.
+         * @param journal The journal of the interrupted download being resumed, or null.
+         * @param received The ranges already received.
+         */
+        Probe(FileChannel channel, long start, HttpRequest request, Path journalFile, DownloadJournal journal,
+                ReceivedRanges received) {
+            this.channel = channel;
+            this.start = start;
+            this.request = request;
+            this.journalFile = journalFile;
+            this.journal = journal;
+            this.received = received;
+        }
+
+        @Override
+        public HttpResponse.BodySubscriber<Long> apply(HttpResponse.ResponseInfo info) {
+            try {
+                if (info.statusCode() == 200) {
+                    if (journal != null) {
+                        System.out.println("The asset changed since the interrupted download, starting over.");
+                        Files.deleteIfExists(journalFile);
+                    }
+                    FileSink.preallocate(channel, info.headers().firstValueAsLong("Content-Length").orElse(0));
+                    digest = Checksums.sha256();
+                    return new FileSink(channel, 0, manager, (offset, data) -> digest.update(data));
+                }
+                Matcher contentRange = CONTENT_RANGE.matcher(info.headers().firstValue("Content-Range").orElse(""));
+                if (info.statusCode() != 206 || !contentRange.matches() || Long.parseLong(contentRange.group(1)) != start) {
+                    return HttpResponse.BodySubscribers.replacing(-1L);
+                }
+                end = Long.parseLong(contentRange.group(2)) + 1;
+                long total = contentRange.group(3).equals("*") ? -1 : Long.parseLong(contentRange.group(3));
+                if (journal != null) {
+                    // the resource changed size, the download starts over
+                    resized = total != journal.size();
+                    if (resized) {
+                        return HttpResponse.BodySubscribers.replacing(-1L);
+                    }
+                    transfer = new Transfer(journalFile, journal, received, true);
+                    return new FileSink(channel, start, manager, listener(channel, transfer));
+                }
+                String etag = info.headers().firstValue("ETag").orElse(null);
+                String lastModified = info.headers().firstValue("Last-Modified").orElse(null);
+                transfer = new Transfer(journalFile, new DownloadJournal(request.uri().toString(), etag, lastModified,
+                    total, List.of()), received, validator(etag, lastModified) != null && total >= 0);
+                FileSink.preallocate(channel, total);
+                return new FileSink(channel, start, manager, listener(channel, transfer));
+            } catch (IOException e) {
+                failure = e;
+                return HttpResponse.BodySubscribers.replacing(-1L);
+            }
+        }
+    }
+
+    /**
+     * Fetches the given ranges of a resource and writes each at its offset, for a file assembled
+     * from a local copy and the ranges missing from it. The ranges after the first are fetched
+     * concurrently from the URI the first request was redirected to.
+     * @param request The request for the whole resource.
+     * @param channel The channel of the file to write.
+     * @param ranges The ranges to fetch, in ascending order.
+     * @throws IOException if the server does not return the requested ranges
+     * @throws InterruptedException
+     */
+    public void fetchRanges(HttpRequest request, FileChannel channel, List<ByteRange> ranges)
+            throws IOException, InterruptedException {
+        if (ranges.isEmpty()) {
+            return;
+        }
+        ByteRange first = ranges.get(0);
+        HttpResponse<Long> response;
+        try (Connection connection = manager.open(request.uri().getHost())) {
+            try {
+                // only the requested range is written, any other body is discarded
+                response = sendFollowingRedirects(HttpRequest.newBuilder(request, (name, value) -> true)
+                    .header("Range", range(first.start(), first.end() - 1))
+                    .build(), connection, info -> isRange(info.statusCode(), info.headers(), first.start())
+                        ? new FileSink(channel, first.start(), manager, null)
+                        : HttpResponse.BodySubscribers.replacing(-1L));
+                if (!isRange(response.statusCode(), response.headers(), first.start())) {
+                    throw new HttpStatusException(response.statusCode(), "Range requests not supported for " + request.uri());
+                }
+                if (response.body() != first.length()) {
+                    throw new IOException("Incomplete range " + first.start() + "-" + first.end());
+                }
+            } catch (IOException e) {
+                throw failed(connection, e);
+            }
+        }
+        HttpRequest template = HttpRequest.newBuilder(response.request(), (name, value) -> !name.equalsIgnoreCase("Range"))
+            .uri(response.uri())
+            .build();
+        fetchRanges(template, channel, ranges.subList(1, ranges.size()), null);
+    }
+
+    /**
+     * Reads a small resource, such as a checksum file, into memory.
+     * Redirects are followed the same way as for downloads.
+     * @param request The request for the resource.
+     * @param maxSize The maximum size of the resource in bytes.
+     * @return The content of the resource.
+     * @throws IOException if the request fails or the resource is larger than the maximum size
+     * @throws InterruptedException
+     */
+    public byte[] fetch(HttpRequest request, int maxSize) throws IOException, InterruptedException {
+        try (Connection connection = manager.open(request.uri().getHost())) {
+            HttpResponse<InputStream> response;
+            try {
+                response = sendFollowingRedirects(request, connection, HttpResponse.BodyHandlers.ofInputStream());
+            } catch (IOException e) {
+                throw failed(connection, e);
+            }
+            try (InputStream body = manager.meter(response.body())) {
+                if (response.statusCode() != 200) {
+                    throw new HttpStatusException(response.statusCode(), "HTTP Error " + response.statusCode()
+                        + " while downloading " + request.uri());
+                }
+                byte[] content = body.readNBytes(maxSize + 1);
+                if (content.length > maxSize) {
+                    throw new IOException("Resource too large: " + request.uri());
+                }
+                return content;
+            }
+        }
+    }
+
+    /**
+     * Receives the body of a streamed download.
+     */
+    @FunctionalInterface
+    public interface BodyConsumer {
+        /**
+         * Reads the body. Bytes left unread are read and hashed by the downloader afterwards.
+         * @param body The body of the response, which must not be closed.
+         * @throws IOException
+         * @throws InterruptedException
+         */
+        void accept(InputStream body) throws IOException, InterruptedException;
+    }
+
+    /**
+     * Downloads the resource over a single connection and hands the body to the consumer while it arrives,
+     * so the resource is never written to disk as a whole. Redirects are followed the same way as for downloads.
+     * A streamed download cannot be resumed.
+     * @param request The request for the whole resource.
+     * @param consumer Reads the body.
+     * @return The lowercase hex SHA-256 of the resource.
+     * @throws IOException if the request or the consumer fails
+     * @throws InterruptedException
+     */
+    public String stream(HttpRequest request, BodyConsumer consumer) throws IOException, InterruptedException {
+        long startNanos = System.nanoTime();
+        try (Connection connection = manager.open(request.uri().getHost())) {
+            HttpResponse<InputStream> response;
+            try {
+                response = sendFollowingRedirects(request, connection, HttpResponse.BodyHandlers.ofInputStream());
+            } catch (IOException e) {
+                throw failed(connection, e);
+            }
+            MessageDigest digest = Checksums.sha256();
+            CountingInputStream counted = new CountingInputStream(manager.meter(response.body()));
+            try (InputStream body = new DigestInputStream(counted, digest)) {
+                if (response.statusCode() != 200) {
+                    throw new HttpStatusException(response.statusCode(), "HTTP Error " + response.statusCode()
+                        + " while downloading " + request.uri());
+                }
+                consumer.accept(body);
+                // archives end with padding the unpacker does not read
+                body.transferTo(OutputStream.nullOutputStream());
+            }
+            printRate(Path.of(request.uri().getPath()).getFileName().toString(), counted.count, startNanos);
+            return HexFormat.of().formatHex(digest.digest());
+        }
+    }
+
+    /**
+     * Sends the request, following redirects the client did not follow.
+     * The {@code Authorization} header is sent only to the host of the original request.
+     * @param request The request.
+     * @param connection The connection held by the request, marked as congested by a {@code 429} or {@code 5xx} response.
+     * @param handler The handler of the final response, the bodies of redirects are discarded.
+     * @return The response of the final request.
+     * @throws IOException if there are too many redirects
+     * @throws InterruptedException
+     */
+    private <T> HttpResponse<T> sendFollowingRedirects(HttpRequest request, Connection connection,
+            HttpResponse.BodyHandler<T> handler) throws IOException, InterruptedException {
+        for (int redirects = 0; ; redirects++) {
+            HttpResponse<T> response = client.send(withTimeout(request),
+                info -> isRedirect(info.statusCode(), info.headers())
+                    ? HttpResponse.BodySubscribers.replacing(null)
+                    : handler.apply(info));
+            if (isCongestion(response.statusCode())) {
+                connection.congested();
+            }
+            if (!isRedirect(response.statusCode(), response.headers())) {
+                return response;
+            }
+            var location = response.headers().firstValue("Location");
+            if (redirects == MAX_REDIRECTS) {
+                throw new IOException("Too many redirects while downloading " + request.uri());
+            }
+            URI target = request.uri().resolve(location.get());
+            boolean sameHost = target.getHost() != null && target.getHost().equalsIgnoreCase(request.uri().getHost());
+            request = HttpRequest.newBuilder(request, (name, value) -> sameHost || !name.equalsIgnoreCase("Authorization"))
+                .uri(target)
+                .build();
+        }
+    }
+
+    /**
+     * @param request The request.
+     * @return The request, with the response timeout unless it has a timeout of its own.
+     */
+    private static HttpRequest withTimeout(HttpRequest request) {
+        return request.timeout().isPresent()
+            ? request
+            : HttpRequest.newBuilder(request, (name, value) -> true).timeout(RESPONSE_TIMEOUT).build();
+    }
+
+    /**
+     * @param statusCode The status code of a response.
+     * @return true if the server is overloaded or rate limits the requests.
+     */
+    private static boolean isCongestion(int statusCode) {
+        return statusCode == 429 || statusCode >= 500;
+    }
+
+    /**
+     * Marks the connection as congested if the request failed because of the network.
+     * @param connection The connection of the failed request.
+     * @param e The failure.
+     * @return The failure, to be rethrown.
+     */
+    private static IOException failed(Connection connection, IOException e) {
+        if (!(e instanceof HttpStatusException)) {
+            connection.congested();
+        }
+        return e;
+    }
+
+    /**
+     * @param statusCode The status code of a response.
+     * @param headers The headers of the response.
+     * @return true if the response redirects to its {@code Location}.
+     */
+    private static boolean isRedirect(int statusCode, HttpHeaders headers) {
+        return (statusCode == 301 || statusCode == 302 || statusCode == 303 || statusCode == 307 || statusCode == 308)
+            && headers.firstValue("Location").isPresent();
+    }
+
+    /**
+     * @param statusCode The status code of a response.
+     * @param headers The headers of the response.
+     * @param start The offset of the first requested byte.
+     * @return true if the response is the part of the resource starting at the offset.
+     */
+    private static boolean isRange(int statusCode, HttpHeaders headers, long start) {
+        Matcher contentRange = CONTENT_RANGE.matcher(headers.firstValue("Content-Range").orElse(""));
+        return statusCode == 206 && contentRange.matches() && Long.parseLong(contentRange.group(1)) == start;
+    }
+
+    /**
+     * Loads the journal of an interrupted download of the same URL.
+     * Journals which cannot be used for resuming are deleted together with their partial file.
+     * @param journalFile Path to the journal.
+     * @param part Path to the partial file.
+     * @param request The request for the whole resource.
+     * @return The journal, or null if the download has to start from the beginning.
+     */
+    private static DownloadJournal loadJournal(Path journalFile, Path part, HttpRequest request) {
+        if (!Files.exists(journalFile)) {
+            return null;
+        }
+        try {
+            DownloadJournal journal = mapper.readValue(journalFile.toFile(), DownloadJournal.class);
+            if (Files.exists(part)
+                    && request.uri().toString().equals(journal.url())
+                    && validator(journal.etag(), journal.lastModified()) != null
+                    && journal.size() > 0
+                    && Files.size(part) == journal.size()
+                    && !new ReceivedRanges(journal.received()).missing(journal.size()).isEmpty()) {
+                return journal;
+            }
+            Files.deleteIfExists(journalFile);
+            Files.deleteIfExists(part);
+        } catch (IOException e) {
+            System.out.println("Ignoring unreadable download journal: " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Prints the size and the throughput of a finished download.
+     * @param name The name of the downloaded file.
+     * @param bytes The number of bytes received by the download, without those of an interrupted earlier attempt.
+     * @param startNanos The value of {@link System#nanoTime()} when the download started.
+     */
+    static void printRate(String name, long bytes, long startNanos) {
+        double seconds = Math.max(System.nanoTime() - startNanos, 1) / 1e9;
+        System.out.printf("Downloaded %.1f MB of %s in %.1f s at %.1f MB/s.%n",
+            bytes / 1e6, name, seconds, bytes / seconds / 1e6);
+    }
+
+    /**
+     * Moves the finished partial file to the destination and removes the journal.
+     * @param part Path to the partial file.
+     * @param journalFile Path to the journal.
+     * @param destination Path to the downloaded file.
+     * @throws IOException
+     */
+    private static void complete(Path part, Path journalFile, Path destination) throws IOException {
+        Files.move(part, destination, StandardCopyOption.REPLACE_EXISTING);
+        Files.deleteIfExists(journalFile);
+    }
+
+    /**
+     * Fetches the given ranges concurrently, splitting them so that all connections are used.
+     * @param template The request template pointing to the resolved URI.
+     * @param channel The channel of the partial file.
+     * @param missing The ranges to fetch.
+     * @param transfer The state of the download, or null if it is not tracked.
+     * @throws IOException if any of the range requests fails
+     * @throws InterruptedException
+     */
+    private void fetchRanges(HttpRequest template, FileChannel channel, List<ByteRange> missing, Transfer transfer)
+            throws IOException, InterruptedException {
+        long remaining = missing.stream().mapToLong(ByteRange::length).sum();
+        int connections = manager.maxConnections();
+        long partSize = Math.max(MIN_RANGE_SIZE, (remaining + connections - 1) / connections);
+        List<ByteRange> parts = new ArrayList<>();
+        for (ByteRange range : missing) {
+            for (long from = range.start(); from < range.end(); from += partSize) {
+                parts.add(new ByteRange(from, Math.min(range.end(), from + partSize)));
+            }
+        }
+        try (ExecutorService executor = Executors.newFixedThreadPool(connections, Thread.ofVirtual().factory())) {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (ByteRange part : parts) {
+                futures.add(executor.submit(() -> {
+                    fetchRange(template, channel, part, transfer);
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    executor.shutdownNow();
+                    if (e.getCause() instanceof IOException ioException) {
+                        throw ioException;
+                    }
+                    throw new IOException("Download failed: " + e.getCause().getMessage(), e.getCause());
+                }
+            }
+        }
+    }
+
+    /**
+     * Fetches a single range and writes it at its offset.
+     * @param template The request template pointing to the resolved URI.
+     * @param channel The channel of the partial file.
+     * @param range The range to fetch, an end of -1 requests the rest of the file.
+     * @param transfer The state of the download, or null if it is not tracked.
+     * @throws IOException if the server does not return the requested range
+     * @throws InterruptedException
+     */
+    private void fetchRange(HttpRequest template, FileChannel channel, ByteRange range, Transfer transfer)
+            throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(template, (name, value) -> true)
+            .header("Range", range.end() < 0 ? "bytes=" + range.start() + "-" : range(range.start(), range.end() - 1))
+            .build();
+        try (Connection connection = manager.open(request.uri().getHost())) {
+            try {
+                // the range is written straight from the buffers of the client, other responses are discarded
+                HttpResponse<Long> response = client.send(withTimeout(request), info -> info.statusCode() == 206
+                    ? new FileSink(channel, range.start(), manager, listener(channel, transfer))
+                    : HttpResponse.BodySubscribers.replacing(-1L));
+                if (isCongestion(response.statusCode())) {
+                    connection.congested();
+                }
+                if (response.statusCode() != 206) {
+                    if (response.statusCode() == 200) {
+                        throw new IOException("The asset changed during the download.");
+                    }
+                    throw new HttpStatusException(response.statusCode(),
+                        "HTTP Error " + response.statusCode() + " for range " + range.start() + "-" + range.end());
+                }
+                long written = response.body();
+                if (range.end() >= 0 && written != range.length()) {
+                    throw new IOException("Incomplete range " + range.start() + "-" + range.end() + ": received "
+                        + written + " bytes");
+                }
+            } catch (IOException e) {
+                throw failed(connection, e);
+            }
+        }
+    }
+
+    /**
+     * @param channel The channel of the partial file.
+     * @param transfer The state of the download, or null if it is not tracked.
+     * @return A listener recording the written data in the state of the download, or null if it is not tracked.
+     */
+    private static FileSink.Listener listener(FileChannel channel, Transfer transfer) {
+        return transfer == null ? null : (start, data) -> transfer.record(channel, start, data);
+    }
+
+    /**
+     * @param start The first byte.
+     * @param end The last byte (inclusive).
+     * @return Value of the {@code Range} header.
+     */
+    private static String range(long start, long end) {
+        return "bytes=" + start + "-" + end;
+    }
+
+    /**
+     * @param etag The {@code ETag} of the resource.
+     * @param lastModified The {@code Last-Modified} date of the resource.
+     * @return Value of the {@code If-Range} header, or null if the resource has no validator.
+     */
+    private static String validator(String etag, String lastModified) {
+        // weak entity tags cannot be used with If-Range
+        if (etag != null && !etag.startsWith("W/")) {
+            return etag;
+        }
+        return lastModified;
+    }
+
+    /**
+     * Input stream counting the bytes read through it.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        /**
+         * @param in The stream to count.
+         */
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = super.read();
+            if (read >= 0) {
+                count++;
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    /**
+     * The state of a running download, periodically written to the journal.
+     */
+    private static final class Transfer {
+        private final Path journalFile;
+        private final DownloadJournal journal;
+        private final ReceivedRanges received;
+        private final boolean resumable;
+        private long unsaved;
+        private final MessageDigest digest = Checksums.sha256();
+        // the bytes before this offset are hashed
+        private long hashed;
+
+        /**
+         * @param journalFile Path to the journal.
+         * @param journal The journal with the metadata of the resource.
+         * @param received The ranges already received.
+         * @param resumable Whether the download can be resumed, otherwise no journal is written.
+         */
+        Transfer(Path journalFile, DownloadJournal journal, ReceivedRanges received, boolean resumable) {
+            this.journalFile = journalFile;
+            this.journal = journal;
+            this.received = received;
+            this.resumable = resumable;
+        }
+
+        /**
+         * Records bytes written to the partial file and hashes them if they continue the hashed prefix.
+         * @param channel The channel of the partial file.
+         * @param start The offset of the first written byte.
+         * @param data The written bytes, from its position to its limit.
+         * @throws IOException if the bytes received ahead cannot be read back
+         */
+        void record(FileChannel channel, long start, ByteBuffer data) throws IOException {
+            int length = data.remaining();
+            received.add(start, start + length);
+            hash(channel, start, data);
+            if (!resumable) {
+                return;
+            }
+            synchronized (this) {
+                unsaved += length;
+                if (unsaved >= JOURNAL_INTERVAL) {
+                    unsaved = 0;
+                    save();
+                }
+            }
+        }
+
+        /**
+         * Hashes the written bytes if they start where the hashed prefix ends,
+         * then the bytes received ahead of them which now continue the prefix.
+         * @param channel The channel of the partial file.
+         * @param start The offset of the first written byte.
+         * @param data The written bytes, from its position to its limit.
+         * @throws IOException
+         */
+        private synchronized void hash(FileChannel channel, long start, ByteBuffer data) throws IOException {
+            if (start != hashed) {
+                return;
+            }
+            hashed += data.remaining();
+            digest.update(data);
+            catchUp(channel);
+        }
+
+        /**
+         * Hashes the received bytes following the hashed prefix, reading them back from the file.
+         * @param channel The channel of the partial file.
+         * @throws IOException
+         */
+        private void catchUp(FileChannel channel) throws IOException {
+            long end = received.contiguousEnd(hashed);
+            if (end <= hashed) {
+                return;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            while (hashed < end) {
+                buffer.clear().limit((int) Math.min(BUFFER_SIZE, end - hashed));
+                int read = channel.read(buffer, hashed);
+                if (read < 0) {
+                    throw new IOException("Unexpected end of the partial file.");
+                }
+                digest.update(buffer.flip());
+                hashed += read;
+            }
+        }
+
+        /**
+         * Hashes the rest of the received file.
+         * @param channel The channel of the partial file.
+         * @return The lowercase hex SHA-256 of the file.
+         * @throws IOException if the file was not received completely
+         */
+        synchronized String finishHash(FileChannel channel) throws IOException {
+            catchUp(channel);
+            if (journal.size() >= 0 && hashed != journal.size()) {
+                throw new IOException("Incomplete download, received " + hashed + " contiguous bytes.");
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        }
+
+        /**
+         * Writes the received ranges to the journal.
+         */
+        synchronized void save() {
+            if (!resumable) {
+                return;
+            }
+            try {
+                mapper.writeValue(journalFile.toFile(), new DownloadJournal(
+                    journal.url(), journal.etag(), journal.lastModified(), journal.size(), received.toList()));
+            } catch (IOException e) {
+                System.out.println("Failed to save download journal: " + e.getMessage());
+            }
+        }
+    }
+}
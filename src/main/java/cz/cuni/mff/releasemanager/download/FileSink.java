@@ -0,0 +1,255 @@
+package cz.cuni.mff.releasemanager.download;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes a response body to a file channel at a given offset.
+ *
+ * <p>The data is gathered in a large direct buffer and written to the channel when the buffer is full, so
+ * the many small buffers the HTTP client delivers cost one system call per megabyte instead of one each,
+ * and the JDK does not copy them into a temporary direct buffer of its own. The direct buffers are pooled
+ * and reused by the following sinks, since allocating direct memory is slow.</p>
+ *
+ * <p>As a {@link HttpResponse.BodySubscriber}, the sink receives the body straight from the client without
+ * an {@code InputStream} in between. Every delivered buffer is counted and throttled by the download manager
+ * before the next one is requested, and a body that stops arriving is cancelled by its watchdog. The sink never forces the data to disk; the channel is forced once
+ * when the whole file is written.</p>
+ */
+public final class FileSink implements HttpResponse.BodySubscriber<Long>, AutoCloseable {
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    // more buffers than connections are not reused
+    private static final int MAX_POOLED_BUFFERS = 16;
+    private static final ConcurrentLinkedQueue<ByteBuffer> pool = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Receives the data of the file as it is written.
+     */
+    @FunctionalInterface
+    interface Listener {
+        /**
+         * @param start The offset of the first written byte.
+         * @param data The written bytes, from its position to its limit, which the listener may consume.
+         * @throws IOException
+         */
+        void written(long start, ByteBuffer data) throws IOException;
+    }
+
+    private final FileChannel channel;
+    private final long position;
+    private final DownloadManager manager;
+    private final Listener listener;
+    private final CompletableFuture<Long> body = new CompletableFuture<>();
+    private ByteBuffer buffer;
+    private long written;
+    private long flushed;
+    private Flow.Subscription subscription;
+    private DownloadManager.Watch watch;
+    private long lastReceived = System.nanoTime();
+
+    /**
+     * Creates a sink writing from the given offset, without throttling and listening.
+     * @param channel The channel of the file, opened for writing.
+     * @param position The offset of the first byte.
+     */
+    public FileSink(FileChannel channel, long position) {
+        this(channel, position, null, null);
+    }
+
+    /**
+     * @param channel The channel of the file, opened for writing.
+     * @param position The offset of the first byte.
+     * @param manager The download manager counting and throttling received buffers, or null.
+     * @param listener Receives the data after it is written, or null.
+     */
+    FileSink(FileChannel channel, long position, DownloadManager manager, Listener listener) {
+        this.channel = channel;
+        this.position = position;
+        this.manager = manager;
+        this.listener = listener;
+    }
+
+    /**
+     * Extends the file to the given size, so that the file system can lay it out at once
+     * and ranges can be written at their offsets in any order.
+     * @param channel The channel of the file, opened for writing.
+     * @param size The size of the file in bytes, nothing is done if it is not positive or the file is larger.
+     * @throws IOException
+     */
+    public static void preallocate(FileChannel channel, long size) throws IOException {
+        if (size > 0 && channel.size() < size) {
+            channel.write(ByteBuffer.allocate(1), size - 1);
+        }
+    }
+
+    /**
+     * Copies the data to the buffer, writing the buffer to the channel whenever it fills up.
+     * @param data The data to write, consumed.
+     * @throws IOException
+     */
+    public void write(ByteBuffer data) throws IOException {
+        if (buffer == null) {
+            buffer = acquire();
+        }
+        while (data.hasRemaining()) {
+            int length = Math.min(buffer.remaining(), data.remaining());
+            buffer.put(data.slice(data.position(), length));
+            data.position(data.position() + length);
+            written += length;
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+        }
+    }
+
+    /**
+     * Writes the buffered data to the channel.
+     * @throws IOException
+     */
+    private void flush() throws IOException {
+        buffer.flip();
+        long start = position + flushed;
+        while (buffer.hasRemaining()) {
+            flushed += channel.write(buffer, position + flushed);
+        }
+        if (listener != null) {
+            listener.written(start, buffer.flip());
+        }
+        buffer.clear();
+    }
+
+    /**
+     * @return The number of bytes written, including the buffered ones.
+     */
+    public long written() {
+        return written;
+    }
+
+    /**
+     * Writes the buffered data to the channel and returns the buffer to the pool.
+     * The channel is left open.
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        if (buffer == null) {
+            return;
+        }
+        try {
+            flush();
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        if (manager != null) {
+            watch = manager.watch(this::stalled);
+        }
+        subscription.request(1);
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> items) {
+        if (watch != null) {
+            watch.received();
+        }
+        try {
+            long now = System.nanoTime();
+            int received = 0;
+            for (ByteBuffer item : items) {
+                received += item.remaining();
+                write(item);
+            }
+            if (manager != null && received > 0) {
+                // the time waited for the data, a long wait means the connection stalled
+                manager.received(received, now - lastReceived);
+            }
+            lastReceived = System.nanoTime();
+            subscription.request(1);
+        } catch (IOException | InterruptedException e) {
+            unwatch();
+            subscription.cancel();
+            release();
+            body.completeExceptionally(e instanceof InterruptedException
+                ? new InterruptedIOException("Download interrupted.")
+                : e);
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        unwatch();
+        release();
+        body.completeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        unwatch();
+        try {
+            close();
+            body.complete(written);
+        } catch (IOException e) {
+            body.completeExceptionally(e);
+        }
+    }
+
+    @Override
+    public CompletionStage<Long> getBody() {
+        return body;
+    }
+
+    /**
+     * Fails the body after nothing arrived for the stall timeout. The buffer is not returned to the pool,
+     * since a late delivery may still be writing to it.
+     */
+    private void stalled() {
+        body.completeExceptionally(new HttpTimeoutException("Download stalled, no data received for "
+            + TimeUnit.NANOSECONDS.toSeconds(manager.stallNanos()) + " s."));
+        subscription.cancel();
+    }
+
+    /**
+     * Stops the watchdog of the body, if it is watched.
+     */
+    private void unwatch() {
+        if (watch != null) {
+            watch.close();
+        }
+    }
+
+    /**
+     * @return A cleared direct buffer from the pool, or a new one.
+     */
+    private static ByteBuffer acquire() {
+        ByteBuffer pooled = pool.poll();
+        return pooled != null ? pooled : ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+    /**
+     * Returns the buffer of the sink to the pool, unless the pool is full.
+     */
+    private void release() {
+        if (buffer == null) {
+            return;
+        }
+        buffer.clear();
+        if (pool.size() < MAX_POOLED_BUFFERS) {
+            pool.offer(buffer);
+        }
+        buffer = null;
+    }
+}
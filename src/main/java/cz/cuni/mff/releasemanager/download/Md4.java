@@ -0,0 +1,94 @@
+package cz.cuni.mff.releasemanager.download;
+
+/**
+ * The MD4 message digest (RFC 1320), used by zsync for the strong checksums of blocks.
+ *
+ * <p>MD4 is broken as a cryptographic hash and the JDK does not provide it. Here it only confirms
+ * that a block of the installed file matches a block of the new file; the assembled file is
+ * verified with SHA-1 and SHA-256.</p>
+ */
+final class Md4 {
+    private static final int[] ROUND2_ORDER = {0, 4, 8, 12, 1, 5, 9, 13, 2, 6, 10, 14, 3, 7, 11, 15};
+    private static final int[] ROUND3_ORDER = {0, 8, 4, 12, 2, 10, 6, 14, 1, 9, 5, 13, 3, 11, 7, 15};
+    private static final int[] ROUND1_SHIFTS = {3, 7, 11, 19};
+    private static final int[] ROUND2_SHIFTS = {3, 5, 9, 13};
+    private static final int[] ROUND3_SHIFTS = {3, 9, 11, 15};
+
+    private Md4() {
+    }
+
+    /**
+     * @param data The buffer holding the message.
+     * @param offset The offset of the message in the buffer.
+     * @param length The length of the message.
+     * @return The 16 byte MD4 digest of the message.
+     */
+    static byte[] digest(byte[] data, int offset, int length) {
+        // the message is followed by 0x80, zeros up to 56 mod 64 and the length in bits
+        int paddedLength = (length + 8) / 64 * 64 + 64;
+        byte[] message = new byte[paddedLength];
+        System.arraycopy(data, offset, message, 0, length);
+        message[length] = (byte) 0x80;
+        long bits = (long) length * 8;
+        for (int i = 0; i < 8; i++) {
+            message[paddedLength - 8 + i] = (byte) (bits >>> (8 * i));
+        }
+
+        int[] state = {0x67452301, 0xefcdab89, 0x98badcfe, 0x10325476};
+        int[] x = new int[16];
+        for (int chunk = 0; chunk < paddedLength; chunk += 64) {
+            for (int i = 0; i < 16; i++) {
+                int p = chunk + 4 * i;
+                x[i] = (message[p] & 0xff) | (message[p + 1] & 0xff) << 8
+                    | (message[p + 2] & 0xff) << 16 | (message[p + 3] & 0xff) << 24;
+            }
+            compress(state, x);
+        }
+
+        byte[] digest = new byte[16];
+        for (int i = 0; i < 16; i++) {
+            digest[i] = (byte) (state[i / 4] >>> (8 * (i % 4)));
+        }
+        return digest;
+    }
+
+    /**
+     * Processes one 64 byte chunk of the message.
+     * @param state The four state words, updated in place.
+     * @param x The chunk as sixteen little-endian words.
+     */
+    private static void compress(int[] state, int[] x) {
+        int a = state[0];
+        int b = state[1];
+        int c = state[2];
+        int d = state[3];
+        for (int i = 0; i < 16; i++) {
+            int f = (b & c) | (~b & d);
+            int t = Integer.rotateLeft(a + f + x[i], ROUND1_SHIFTS[i % 4]);
+            a = d;
+            d = c;
+            c = b;
+            b = t;
+        }
+        for (int i = 0; i < 16; i++) {
+            int g = (b & c) | (b & d) | (c & d);
+            int t = Integer.rotateLeft(a + g + x[ROUND2_ORDER[i]] + 0x5a827999, ROUND2_SHIFTS[i % 4]);
+            a = d;
+            d = c;
+            c = b;
+            b = t;
+        }
+        for (int i = 0; i < 16; i++) {
+            int h = b ^ c ^ d;
+            int t = Integer.rotateLeft(a + h + x[ROUND3_ORDER[i]] + 0x6ed9eba1, ROUND3_SHIFTS[i % 4]);
+            a = d;
+            d = c;
+            c = b;
+            b = t;
+        }
+        state[0] += a;
+        state[1] += b;
+        state[2] += c;
+        state[3] += d;
+    }
+}
@@ -0,0 +1,191 @@
+package cz.cuni.mff.releasemanager.download;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import cz.cuni.mff.releasemanager.types.Asset;
+import cz.cuni.mff.releasemanager.types.PrefetchedUpdate;
+import cz.cuni.mff.releasemanager.types.ReleaseInfo;
+import cz.cuni.mff.releasemanager.types.StoredAsset;
+import cz.cuni.mff.releasemanager.utils.FileUtils;
+
+/**
+ * Directory of updates downloaded ahead of time, so that a later update installs them without the network.
+ *
+ * <p>Every prefetched asset is kept in a directory of its own, and a manifest records for every repository
+ * the asset, its SHA-256, its size and modification time, and the installed release it replaces. An update
+ * whose release was installed, updated or removed since the prefetch is stale and dropped, as is an asset
+ * whose content no longer matches its hash. The asset is hashed again only if its size or modification time
+ * changed, so finding an update does not read it. The directory lies next to the staging area, so a prefetched asset is installed
+ * by a rename as well.</p>
+ */
+public class PrefetchArea {
+    private static final ObjectMapper mapper = new ObjectMapper()
+        .registerModule(new JavaTimeModule());
+    private static final String MANIFEST_FILE = "manifest.json";
+    private static final String PREFIX = "update-";
+
+    private final Path directory;
+
+    /**
+     * Creates a prefetch area in the given directory.
+     * @param directory Path to the prefetch directory, created with the first prefetched update.
+     */
+    public PrefetchArea(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Moves the downloaded asset into the prefetch area, replacing an earlier prefetched update of the release.
+     * @param replaces The installed release the asset updates.
+     * @param asset The asset of the newer release.
+     * @param download Path to the downloaded and verified asset.
+     * @param sha256 The lowercase hex SHA-256 of the asset, computed while it downloaded.
+     * @return The prefetched update.
+     * @throws IOException if the asset cannot be moved
+     */
+    public synchronized PrefetchedUpdate add(ReleaseInfo replaces, Asset asset, Path download, String sha256)
+            throws IOException {
+        Files.createDirectories(directory);
+        Path file = Files.createTempDirectory(directory, PREFIX).resolve(download.getFileName());
+        Files.move(download, file, StandardCopyOption.REPLACE_EXISTING);
+
+        PrefetchedUpdate update = new PrefetchedUpdate(replaces, asset, file.toString(), sha256, Instant.now(),
+            StoredAsset.of(file));
+        Map<String, PrefetchedUpdate> manifest = load();
+        PrefetchedUpdate previous = manifest.put(replaces.repo(), update);
+        save(manifest);
+        if (previous != null) {
+            delete(previous);
+        }
+        return update;
+    }
+
+    /**
+     * Finds the prefetched update of the installed release.
+     * A stale update, or one whose asset is missing or was modified, is removed.
+     * The asset is hashed only if its size or modification time differs from the recorded one.
+     * @param release The installed release.
+     * @return Optional containing the prefetched update whose asset matches its hash.
+     */
+    public synchronized Optional<PrefetchedUpdate> find(ReleaseInfo release) {
+        Map<String, PrefetchedUpdate> manifest = load();
+        PrefetchedUpdate update = manifest.get(release.repo());
+        if (update == null) {
+            return Optional.empty();
+        }
+        if (!update.isFor(release)) {
+            System.out.println(release.repo() + ": Dropping prefetched update of a replaced installation.");
+        } else {
+            Optional<StoredAsset> stamp = stamp(update);
+            if (stamp.isPresent() && stamp.get().equals(update.stamp())) {
+                return Optional.of(update);
+            }
+            if (stamp.isPresent() && isIntact(update)) {
+                PrefetchedUpdate restamped = update.withStamp(stamp.get());
+                manifest.put(release.repo(), restamped);
+                save(manifest);
+                return Optional.of(restamped);
+            }
+            System.out.println(release.repo() + ": Dropping corrupted prefetched update.");
+        }
+        manifest.remove(release.repo());
+        save(manifest);
+        delete(update);
+        return Optional.empty();
+    }
+
+    /**
+     * Removes the prefetched update of the repository, e.g. once it is installed.
+     * @param repo The full name of the repository.
+     */
+    public synchronized void remove(String repo) {
+        Map<String, PrefetchedUpdate> manifest = load();
+        PrefetchedUpdate update = manifest.remove(repo);
+        if (update != null) {
+            save(manifest);
+            delete(update);
+        }
+    }
+
+    /**
+     * @param update A prefetched update.
+     * @return Optional containing the current size and modification time of the asset, empty if it is missing.
+     */
+    private static Optional<StoredAsset> stamp(PrefetchedUpdate update) {
+        try {
+            return Optional.of(StoredAsset.of(Path.of(update.file())));
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * @param update A prefetched update.
+     * @return true if the asset exists and matches its hash.
+     */
+    private static boolean isIntact(PrefetchedUpdate update) {
+        try {
+            return Checksums.sha256(Path.of(update.file())).equals(update.sha256());
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Removes the directory of the prefetched asset.
+     * @param update A prefetched update.
+     */
+    private static void delete(PrefetchedUpdate update) {
+        try {
+            FileUtils.deleteDirectory(Path.of(update.file()).getParent());
+        } catch (IOException e) {
+            System.out.println("Failed to remove prefetched update: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return The prefetched updates by the full names of their repositories.
+     */
+    private Map<String, PrefetchedUpdate> load() {
+        Map<String, PrefetchedUpdate> manifest = new LinkedHashMap<>();
+        Path manifestFile = directory.resolve(MANIFEST_FILE);
+        if (Files.exists(manifestFile)) {
+            try {
+                List<PrefetchedUpdate> stored = mapper.readValue(manifestFile.toFile(), new TypeReference<>() {});
+                stored.forEach(update -> manifest.put(update.replaces().repo(), update));
+            } catch (IOException e) {
+                System.out.println("Ignoring unreadable prefetch manifest: " + e.getMessage());
+            }
+        }
+        return manifest;
+    }
+
+    /**
+     * Persists the manifest.
+     * @param manifest The prefetched updates by the full names of their repositories.
+     */
+    private void save(Map<String, PrefetchedUpdate> manifest) {
+        try {
+            Files.createDirectories(directory);
+            Path temp = Files.createTempFile(directory, MANIFEST_FILE, ".tmp");
+            mapper.writeValue(temp.toFile(), new ArrayList<>(manifest.values()));
+            Files.move(temp, directory.resolve(MANIFEST_FILE), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("Failed to save prefetch manifest: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package cz.cuni.mff.releasemanager.download;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import cz.cuni.mff.releasemanager.types.ByteRange;
+
+/**
+ * Thread-safe set of byte ranges already written to a file.
+ * Adjacent and overlapping ranges are merged, so the set stays small during a download.
+ */
+class ReceivedRanges {
+    // start offset -> end offset (exclusive)
+    private final TreeMap<Long, Long> ranges = new TreeMap<>();
+
+    /**
+     * Creates a set containing the given ranges.
+     * @param received The ranges already received, may be null.
+     */
+    ReceivedRanges(List<ByteRange> received) {
+        if (received != null) {
+            received.forEach(range -> add(range.start(), range.end()));
+        }
+    }
+
+    /**
+     * Adds the range of bytes from start (inclusive) to end (exclusive).
+     * @param start The offset of the first byte.
+     * @param end The offset after the last byte.
+     */
+    synchronized void add(long start, long end) {
+        if (end <= start) {
+            return;
+        }
+        Map.Entry<Long, Long> previous = ranges.floorEntry(start);
+        if (previous != null && previous.getValue() >= start) {
+            start = previous.getKey();
+            end = Math.max(end, previous.getValue());
+        }
+        Map.Entry<Long, Long> next = ranges.ceilingEntry(start);
+        while (next != null && next.getKey() <= end) {
+            end = Math.max(end, next.getValue());
+            ranges.remove(next.getKey());
+            next = ranges.ceilingEntry(start);
+        }
+        ranges.put(start, end);
+    }
+
+    /**
+     * @param size The total size of the file.
+     * @return The ranges of the file which have not been received yet.
+     */
+    synchronized List<ByteRange> missing(long size) {
+        List<ByteRange> missing = new ArrayList<>();
+        long position = 0;
+        for (Map.Entry<Long, Long> range : ranges.entrySet()) {
+            if (range.getKey() > position) {
+                missing.add(new ByteRange(position, Math.min(range.getKey(), size)));
+            }
+            position = Math.max(position, range.getValue());
+        }
+        if (position < size) {
+            missing.add(new ByteRange(position, size));
+        }
+        return missing;
+    }
+
+    /**
+     * @param position An offset in the file.
+     * @return The end of the received range containing the offset, or the offset if it has not been received.
+     */
+    synchronized long contiguousEnd(long position) {
+        Map.Entry<Long, Long> range = ranges.floorEntry(position);
+        return range != null && range.getValue() > position ? range.getValue() : position;
+    }
+
+    /**
+     * @return The received ranges in ascending order.
+     */
+    synchronized List<ByteRange> toList() {
+        return ranges.entrySet().stream()
+            .map(range -> new ByteRange(range.getKey(), range.getValue()))
+            .toList();
+    }
+}
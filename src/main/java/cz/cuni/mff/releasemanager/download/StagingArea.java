@@ -0,0 +1,182 @@
+package cz.cuni.mff.releasemanager.download;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import cz.cuni.mff.releasemanager.utils.FileUtils;
+
+/**
+ * Directory where assets are downloaded before they are installed.
+ *
+ * <p>Every download gets a directory of its own named {@code stage-<pid>-<suffix>}, so concurrent runs
+ * never write to the same file. The staging area lies on the file system of the installation directory,
+ * so an installer finishes with a single atomic rename instead of a copy.</p>
+ *
+ * <p>A directory whose process is no longer running is stale. It is adopted by the next download of the
+ * same file if it holds an interrupted download that can be resumed, and removed otherwise. Interrupted
+ * downloads are removed as well once they are older than a week.</p>
+ */
+public class StagingArea {
+    private static final String PREFIX = "stage-";
+    private static final String PART_SUFFIX = ".part";
+    private static final Duration MAX_PARTIAL_AGE = Duration.ofDays(7);
+
+    private final Path root;
+    private final Clock clock;
+    private final long pid = ProcessHandle.current().pid();
+    private final AtomicBoolean cleaned = new AtomicBoolean();
+
+    /**
+     * Creates a staging area in the given directory.
+     * @param root Path to the staging directory, created with the first download.
+     */
+    public StagingArea(Path root) {
+        this(root, Clock.systemUTC());
+    }
+
+    /**
+     * Creates a staging area in the given directory.
+     * @param root Path to the staging directory, created with the first download.
+     * @param clock The clock deciding the age of interrupted downloads.
+     */
+    StagingArea(Path root, Clock clock) {
+        this.root = root;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns the path to download the file to, in a directory owned by this process.
+     * An interrupted download of the file left by a finished process is taken over, so it can be resumed.
+     * Stale directories are removed on the first call.
+     * @param filename The name of the downloaded file.
+     * @return Path to the file in its staging directory.
+     * @throws IOException if the staging directory cannot be created
+     */
+    public Path stage(String filename) throws IOException {
+        Files.createDirectories(root);
+        Optional<Path> adopted = adopt(filename);
+        if (cleaned.compareAndSet(false, true)) {
+            removeStale();
+        }
+        Path dir = adopted.isPresent() ? adopted.get() : Files.createTempDirectory(root, PREFIX + pid + "-");
+        return dir.resolve(filename);
+    }
+
+    /**
+     * Removes the staged file together with its download state and its staging directory.
+     * @param file Path to the staged file.
+     */
+    public void discard(Path file) {
+        try {
+            FileUtils.deleteDirectory(file.getParent());
+        } catch (IOException e) {
+            System.out.println("Failed to remove staging directory: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Takes over a stale directory holding an interrupted download of the file.
+     * The directory is renamed to one owned by this process, so no other process can take it as well.
+     * @param filename The name of the downloaded file.
+     * @return Optional containing the adopted directory.
+     */
+    private Optional<Path> adopt(String filename) {
+        for (Path dir : list()) {
+            if (!isStale(dir) || !Downloader.canResume(dir.resolve(filename))) {
+                continue;
+            }
+            Path owned = root.resolve(PREFIX + pid + "-" + dir.getFileName().toString().replaceFirst("^.*-", ""));
+            try {
+                Files.move(dir, owned, StandardCopyOption.ATOMIC_MOVE);
+                return Optional.of(owned);
+            } catch (IOException e) {
+                // taken over by another process in the meantime
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Removes the stale directories, except recent interrupted downloads which may still be resumed.
+     */
+    private void removeStale() {
+        for (Path dir : list()) {
+            if (!isStale(dir) || (hasPartialDownload(dir) && !isOld(dir))) {
+                continue;
+            }
+            try {
+                FileUtils.deleteDirectory(dir);
+            } catch (IOException e) {
+                System.out.println("Failed to remove stale staging directory: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return The staging directories of all processes.
+     */
+    private List<Path> list() {
+        try (Stream<Path> dirs = Files.list(root)) {
+            return dirs.filter(dir -> Files.isDirectory(dir) && dir.getFileName().toString().startsWith(PREFIX))
+                .toList();
+        } catch (IOException | UncheckedIOException e) {
+            return List.of();
+        }
+    }
+
+    /**
+     * @param dir A staging directory.
+     * @return true if the process owning the directory is no longer running.
+     */
+    private boolean isStale(Path dir) {
+        String name = dir.getFileName().toString();
+        int end = name.indexOf('-', PREFIX.length());
+        long owner;
+        try {
+            owner = Long.parseLong(name.substring(PREFIX.length(), end < 0 ? name.length() : end));
+        } catch (NumberFormatException e) {
+            return true;
+        }
+        if (owner == pid) {
+            return false;
+        }
+        return ProcessHandle.of(owner).map(process -> !process.isAlive()).orElse(true);
+    }
+
+    /**
+     * @param dir A staging directory.
+     * @return true if the directory holds an interrupted download.
+     */
+    private static boolean hasPartialDownload(Path dir) {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(file -> file.getFileName().toString())
+                .filter(name -> name.endsWith(PART_SUFFIX))
+                .anyMatch(name -> Downloader.canResume(dir.resolve(name.substring(0, name.length() - PART_SUFFIX.length()))));
+        } catch (IOException | UncheckedIOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param dir A staging directory.
+     * @return true if the directory was last modified longer ago than interrupted downloads are kept.
+     */
+    private boolean isOld(Path dir) {
+        try {
+            Instant modified = Files.getLastModifiedTime(dir).toInstant();
+            return modified.plus(MAX_PARTIAL_AGE).isBefore(clock.instant());
+        } catch (IOException e) {
+            return true;
+        }
+    }
+}
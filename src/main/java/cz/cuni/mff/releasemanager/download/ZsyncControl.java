@@ -0,0 +1,213 @@
+package cz.cuni.mff.releasemanager.download;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A parsed zsync control file ({@code .zsync}), describing a file as a sequence of blocks.
+ *
+ * <p>The control file starts with {@code Key: value} header lines ended by an empty line, followed by
+ * the checksums of every block: the last {@code rsumBytes} bytes of the big-endian rolling checksum and the
+ * first {@code checksumBytes} bytes of the MD4 of the block, the last block padded with zeros.
+ * Compressed targets ({@code Z-URL}) are not supported.</p>
+ */
+public final class ZsyncControl {
+    private static final int MAX_BLOCK_SIZE = 1 << 20;
+
+    private final int blockSize;
+    private final long length;
+    private final String sha1;
+    private final String url;
+    private final int seqMatches;
+    private final int rsumBytes;
+    private final int checksumBytes;
+    private final int[] rsums;
+    private final byte[] checksums;
+
+    /**
+     * Creates a control file from its parts.
+     * @param blockSize The block size, a power of two.
+     * @param length The length of the described file.
+     * @param sha1 The lowercase hex SHA-1 of the described file.
+     * @param url The URL of the described file, relative to the control file, or null.
+     * @param seqMatches The number of consecutive blocks that have to match, 1 or 2.
+     * @param rsumBytes The number of stored bytes of the rolling checksum.
+     * @param checksumBytes The number of stored bytes of the MD4 checksum.
+     * @param rsums The stored rolling checksum of every block.
+     * @param checksums The stored MD4 checksums of all blocks, {@code checksumBytes} per block.
+     */
+    ZsyncControl(int blockSize, long length, String sha1, String url, int seqMatches, int rsumBytes,
+            int checksumBytes, int[] rsums, byte[] checksums) {
+        this.blockSize = blockSize;
+        this.length = length;
+        this.sha1 = sha1;
+        this.url = url;
+        this.seqMatches = seqMatches;
+        this.rsumBytes = rsumBytes;
+        this.checksumBytes = checksumBytes;
+        this.rsums = rsums;
+        this.checksums = checksums;
+    }
+
+    /**
+     * Parses a control file.
+     * @param content The content of the control file.
+     * @return The parsed control file.
+     * @throws IOException if the content is not a supported control file
+     */
+    public static ZsyncControl parse(byte[] content) throws IOException {
+        Map<String, String> headers = new HashMap<>();
+        int position = 0;
+        while (true) {
+            int end = indexOf(content, (byte) '\n', position);
+            if (end < 0) {
+                throw new IOException("Truncated zsync header.");
+            }
+            String line = new String(content, position, end - position, StandardCharsets.ISO_8859_1).strip();
+            position = end + 1;
+            if (line.isEmpty()) {
+                break;
+            }
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).strip().toLowerCase(Locale.ROOT), line.substring(colon + 1).strip());
+            }
+        }
+        if (!headers.containsKey("zsync") || headers.containsKey("z-url")) {
+            throw new IOException("Unsupported zsync control file.");
+        }
+        try {
+            int blockSize = Integer.parseInt(required(headers, "blocksize"));
+            long length = Long.parseLong(required(headers, "length"));
+            String sha1 = required(headers, "sha-1").toLowerCase(Locale.ROOT);
+            String[] hashLengths = headers.getOrDefault("hash-lengths", "1,4,16").split(",");
+            int seqMatches = Integer.parseInt(hashLengths[0].strip());
+            int rsumBytes = Integer.parseInt(hashLengths[1].strip());
+            int checksumBytes = Integer.parseInt(hashLengths[2].strip());
+            if (Integer.bitCount(blockSize) != 1 || blockSize > MAX_BLOCK_SIZE || length < 0
+                    || seqMatches < 1 || seqMatches > 2 || rsumBytes < 1 || rsumBytes > 4
+                    || checksumBytes < 3 || checksumBytes > 16) {
+                throw new IOException("Invalid zsync hash lengths or block size.");
+            }
+            long blocks = (length + blockSize - 1) / blockSize;
+            if (content.length - position < blocks * (rsumBytes + checksumBytes)) {
+                throw new IOException("Truncated zsync block checksums.");
+            }
+            int[] rsums = new int[(int) blocks];
+            byte[] checksums = new byte[(int) blocks * checksumBytes];
+            for (int block = 0; block < blocks; block++) {
+                int rsum = 0;
+                for (int i = 0; i < rsumBytes; i++) {
+                    rsum = rsum << 8 | (content[position++] & 0xff);
+                }
+                rsums[block] = rsum;
+                System.arraycopy(content, position, checksums, block * checksumBytes, checksumBytes);
+                position += checksumBytes;
+            }
+            return new ZsyncControl(blockSize, length, sha1, headers.get("url"), seqMatches, rsumBytes,
+                checksumBytes, rsums, checksums);
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Invalid zsync header: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @param headers The parsed header lines.
+     * @param name The lowercase name of the header.
+     * @return The value of the header.
+     * @throws IOException if the header is missing
+     */
+    private static String required(Map<String, String> headers, String name) throws IOException {
+        String value = headers.get(name);
+        if (value == null) {
+            throw new IOException("Missing zsync header: " + name);
+        }
+        return value;
+    }
+
+    /**
+     * @param content The content to search.
+     * @param value The byte to find.
+     * @param from The first position searched.
+     * @return The position of the byte, or -1 if it is not found.
+     */
+    private static int indexOf(byte[] content, byte value, int from) {
+        for (int i = from; i < content.length; i++) {
+            if (content[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return The block size, a power of two.
+     */
+    public int blockSize() {
+        return blockSize;
+    }
+
+    /**
+     * @return The length of the described file.
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * @return The lowercase hex SHA-1 of the described file.
+     */
+    public String sha1() {
+        return sha1;
+    }
+
+    /**
+     * @return The URL of the described file, relative to the control file, or null.
+     */
+    public String url() {
+        return url;
+    }
+
+    /**
+     * @return The number of consecutive blocks that have to match, 1 or 2.
+     */
+    public int seqMatches() {
+        return seqMatches;
+    }
+
+    /**
+     * @return The number of blocks of the described file.
+     */
+    public int blockCount() {
+        return rsums.length;
+    }
+
+    /**
+     * @param block The index of a block.
+     * @return The stored part of the rolling checksum of the block.
+     */
+    int rsum(int block) {
+        return rsums[block];
+    }
+
+    /**
+     * @return The mask selecting the stored part of a rolling checksum.
+     */
+    int rsumMask() {
+        return rsumBytes == 4 ? -1 : (1 << (8 * rsumBytes)) - 1;
+    }
+
+    /**
+     * @param block The index of a block.
+     * @param md4 The MD4 digest of a candidate block.
+     * @return true if the digest matches the stored checksum of the block.
+     */
+    boolean checksumMatches(int block, byte[] md4) {
+        int from = block * checksumBytes;
+        return Arrays.equals(checksums, from, from + checksumBytes, md4, 0, checksumBytes);
+    }
+}
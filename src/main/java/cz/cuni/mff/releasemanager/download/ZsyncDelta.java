@@ -0,0 +1,328 @@
+package cz.cuni.mff.releasemanager.download;
+
+import java.io.IOException;
+import java.net.http.HttpRequest;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HexFormat;
+import java.util.List;
+
+import cz.cuni.mff.releasemanager.types.ByteRange;
+
+/**
+ * Assembles a new version of a file from the blocks of an old version and the ranges missing from it.
+ *
+ * <p>The old file is scanned with the zsync rolling checksum: for a window of one block starting at
+ * every offset, {@code a} is the sum of the bytes and {@code b} the sum of the bytes weighted by their
+ * distance from the end of the window, both modulo 2<sup>16</sup>. Moving the window by one byte updates
+ * both sums in constant time. A window whose rolling checksum belongs to a block of the new file is
+ * confirmed with MD4 and copied to the offset of that block, and the scan continues after it.</p>
+ *
+ * <p>The blocks not found in the old file are fetched with HTTP {@code Range} requests, ranges separated
+ * by small gaps being merged into one request. The assembled file is verified against the SHA-1 of the
+ * control file before it replaces the destination.</p>
+ */
+public class ZsyncDelta {
+    // fetching a gap this small costs less than a separate request
+    private static final long MERGE_GAP = 64 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String PART_SUFFIX = ".zsync.part";
+
+    private final Downloader downloader;
+
+    /**
+     * Creates a delta updater fetching the missing ranges with the given downloader.
+     * @param downloader The downloader.
+     */
+    public ZsyncDelta(Downloader downloader) {
+        this.downloader = downloader;
+    }
+
+    /**
+     * Assembles the file described by the control file from the old file and the missing ranges.
+     * @param control The control file of the new file.
+     * @param seed Path to the old version of the file.
+     * @param request The request for the whole new file, used as the template of the range requests.
+     * @param destination Path to the file to write, replaced if it exists.
+     * @return The lowercase hex SHA-256 of the assembled file.
+     * @throws IOException if a range cannot be fetched or the assembled file does not match the control file
+     * @throws InterruptedException
+     */
+    public String update(ZsyncControl control, Path seed, HttpRequest request, Path destination)
+            throws IOException, InterruptedException {
+        Path part = destination.resolveSibling(destination.getFileName() + PART_SUFFIX);
+        String sha256;
+        try (FileChannel out = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            BitSet known = copyMatchingBlocks(control, seed, out);
+            List<ByteRange> missing = missingRanges(control, known);
+            long fetched = missing.stream().mapToLong(ByteRange::length).sum();
+            System.out.printf("Reusing %d of %d blocks of %s, downloading %d of %d bytes.%n",
+                known.cardinality(), control.blockCount(), destination.getFileName(), fetched, control.length());
+            long startNanos = System.nanoTime();
+            downloader.fetchRanges(request, out, missing);
+            if (fetched > 0) {
+                Downloader.printRate(destination.getFileName().toString(), fetched, startNanos);
+            }
+
+            MessageDigest sha1 = Checksums.sha1();
+            MessageDigest digest = Checksums.sha256();
+            hash(out, control.length(), sha1, digest);
+            if (!HexFormat.of().formatHex(sha1.digest()).equals(control.sha1())) {
+                throw new IOException("The assembled file does not match the zsync control file.");
+            }
+            sha256 = HexFormat.of().formatHex(digest.digest());
+        } catch (IOException | InterruptedException e) {
+            Files.deleteIfExists(part);
+            throw e;
+        }
+        Files.move(part, destination, StandardCopyOption.REPLACE_EXISTING);
+        return sha256;
+    }
+
+    /**
+     * Finds the blocks of the new file in the old file and writes them at their offsets.
+     * @param control The control file of the new file.
+     * @param seed Path to the old file.
+     * @param out The channel of the new file.
+     * @return The blocks written.
+     * @throws IOException
+     */
+    static BitSet copyMatchingBlocks(ZsyncControl control, Path seed, FileChannel out) throws IOException {
+        BitSet known = new BitSet(control.blockCount());
+        if (seed == null || !Files.isRegularFile(seed)) {
+            return known;
+        }
+        try (FileChannel in = FileChannel.open(seed, StandardOpenOption.READ)) {
+            long size = in.size();
+            // a single mapping is limited to 2 GB, larger files are downloaded whole
+            if (size == 0 || size > Integer.MAX_VALUE || control.blockCount() == 0) {
+                return known;
+            }
+            new Scan(control, in.map(FileChannel.MapMode.READ_ONLY, 0, size), out, known).run();
+        }
+        return known;
+    }
+
+    /**
+     * @param control The control file of the new file.
+     * @param known The blocks already written.
+     * @return The ranges of the new file still to fetch, merged where they are close.
+     */
+    static List<ByteRange> missingRanges(ZsyncControl control, BitSet known) {
+        List<ByteRange> ranges = new ArrayList<>();
+        long blockSize = control.blockSize();
+        for (int block = known.nextClearBit(0); block < control.blockCount(); block = known.nextClearBit(block)) {
+            int end = known.nextSetBit(block) < 0 ? control.blockCount() : known.nextSetBit(block);
+            ByteRange range = new ByteRange(block * blockSize, Math.min(end * blockSize, control.length()));
+            ByteRange last = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1);
+            if (last != null && range.start() - last.end() <= MERGE_GAP) {
+                ranges.set(ranges.size() - 1, new ByteRange(last.start(), range.end()));
+            } else {
+                ranges.add(range);
+            }
+            block = end;
+        }
+        return ranges;
+    }
+
+    /**
+     * Hashes the assembled file.
+     * @param channel The channel of the file.
+     * @param length The length of the file.
+     * @param digests The digests to update.
+     * @throws IOException if the file is shorter than the length
+     */
+    private static void hash(FileChannel channel, long length, MessageDigest... digests) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        for (long position = 0; position < length; ) {
+            buffer.clear().limit((int) Math.min(BUFFER_SIZE, length - position));
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("The assembled file is incomplete.");
+            }
+            buffer.flip();
+            for (MessageDigest digest : digests) {
+                digest.update(buffer);
+                buffer.rewind();
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * A scan of the old file for the blocks of the new file.
+     */
+    private static final class Scan {
+        private final ZsyncControl control;
+        private final MappedByteBuffer data;
+        private final FileChannel out;
+        private final BitSet known;
+        private final int size;
+        private final int blockSize;
+        private final int shift;
+        private final int mask;
+        // hash table from the rolling checksums to the blocks, chained through next
+        private final int[] heads;
+        private final int[] next;
+        private final int bits;
+        private final byte[] window;
+        private final byte[] following;
+        private int remaining;
+
+        /**
+         * @param control The control file of the new file.
+         * @param data The content of the old file.
+         * @param out The channel of the new file.
+         * @param known The blocks written, updated by the scan.
+         */
+        Scan(ZsyncControl control, MappedByteBuffer data, FileChannel out, BitSet known) {
+            this.control = control;
+            this.data = data;
+            this.out = out;
+            this.known = known;
+            this.size = data.limit();
+            this.blockSize = control.blockSize();
+            this.shift = Integer.numberOfTrailingZeros(blockSize);
+            this.mask = control.rsumMask();
+            this.bits = Math.max(4, 33 - Integer.numberOfLeadingZeros(control.blockCount()));
+            this.heads = new int[1 << bits];
+            this.next = new int[control.blockCount()];
+            this.window = new byte[blockSize];
+            this.following = new byte[blockSize];
+            this.remaining = control.blockCount();
+            Arrays.fill(heads, -1);
+            for (int block = control.blockCount() - 1; block >= 0; block--) {
+                int bucket = bucket(control.rsum(block));
+                next[block] = heads[bucket];
+                heads[bucket] = block;
+            }
+        }
+
+        /**
+         * Scans the old file, jumping over every matched block.
+         * @throws IOException if a block cannot be written
+         */
+        void run() throws IOException {
+            int a = 0;
+            int b = 0;
+            boolean fresh = true;
+            for (long position = 0; position < size && remaining > 0; ) {
+                if (fresh) {
+                    a = 0;
+                    b = 0;
+                    for (int i = 0; i < blockSize; i++) {
+                        int c = byteAt(position + i);
+                        a += c;
+                        b += (blockSize - i) * c;
+                    }
+                    fresh = false;
+                }
+                int rsum = ((a & 0xffff) << 16 | (b & 0xffff)) & mask;
+                if (heads[bucket(rsum)] >= 0 && match(position, rsum)) {
+                    position += blockSize;
+                    fresh = true;
+                    continue;
+                }
+                int oldByte = byteAt(position);
+                a += byteAt(position + blockSize) - oldByte;
+                b += a - (oldByte << shift);
+                position++;
+            }
+        }
+
+        /**
+         * Writes every missing block with the rolling checksum whose MD4 matches the window.
+         * @param position The offset of the window in the old file.
+         * @param rsum The rolling checksum of the window.
+         * @return true if a block matched.
+         * @throws IOException if a block cannot be written
+         */
+        private boolean match(long position, int rsum) throws IOException {
+            byte[] md4 = null;
+            boolean matched = false;
+            for (int block = heads[bucket(rsum)]; block >= 0; block = next[block]) {
+                if (known.get(block) || control.rsum(block) != rsum) {
+                    continue;
+                }
+                if (md4 == null) {
+                    read(position, window);
+                    md4 = Md4.digest(window, 0, blockSize);
+                }
+                if (!control.checksumMatches(block, md4) || !followingMatches(position, block)) {
+                    continue;
+                }
+                write(block);
+                matched = true;
+            }
+            return matched;
+        }
+
+        /**
+         * With two sequential matches required, the block after the window has to match as well.
+         * @param position The offset of the window in the old file.
+         * @param block The block matching the window.
+         * @return true if the match is confirmed.
+         */
+        private boolean followingMatches(long position, int block) {
+            if (control.seqMatches() < 2 || block + 1 >= control.blockCount()) {
+                return true;
+            }
+            read(position + blockSize, following);
+            return control.checksumMatches(block + 1, Md4.digest(following, 0, blockSize));
+        }
+
+        /**
+         * Writes the window as the given block of the new file.
+         * @param block The index of the block.
+         * @throws IOException
+         */
+        private void write(int block) throws IOException {
+            long offset = (long) block * blockSize;
+            ByteBuffer buffer = ByteBuffer.wrap(window, 0, (int) Math.min(blockSize, control.length() - offset));
+            while (buffer.hasRemaining()) {
+                offset += out.write(buffer, offset);
+            }
+            known.set(block);
+            remaining--;
+        }
+
+        /**
+         * Copies one block of the old file, padded with zeros past its end.
+         * @param position The offset of the block.
+         * @param target The buffer to fill.
+         */
+        private void read(long position, byte[] target) {
+            int available = (int) Math.max(0, Math.min(blockSize, size - position));
+            if (available > 0) {
+                data.get((int) position, target, 0, available);
+            }
+            Arrays.fill(target, available, blockSize, (byte) 0);
+        }
+
+        /**
+         * @param position An offset in the old file.
+         * @return The unsigned byte at the offset, or 0 past the end of the file.
+         */
+        private int byteAt(long position) {
+            return position < size ? data.get((int) position) & 0xff : 0;
+        }
+
+        /**
+         * @param rsum A rolling checksum.
+         * @return The bucket of the checksum in the hash table.
+         */
+        private int bucket(int rsum) {
+            return (rsum * 0x9e3779b1) >>> (32 - bits);
+        }
+    }
+}
@@ -0,0 +1,5 @@
+/**
+ * This package contains the download pipeline for release assets,
+ * which transfers asset files from Github to the local disk.
+ */
+package cz.cuni.mff.releasemanager.download;
@@ -0,0 +1,164 @@
+package cz.cuni.mff.releasemanager.http;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+
+import cz.cuni.mff.releasemanager.types.Settings;
+
+/**
+ * Per-host circuit breaker failing requests to a degraded host fast.
+ *
+ * <p>After a number of consecutive failures the breaker of the host opens and requests to it fail
+ * immediately instead of waiting for the connect timeout. When the open period passes, a single request
+ * is let through as a probe: its success closes the breaker, its failure opens it again. A probe whose
+ * outcome is never recorded blocks the host for one more open period only, then another probe is let through.</p>
+ */
+public class CircuitBreaker {
+
+    /**
+     * State of the breaker of one host.
+     */
+    public enum State {
+        /**
+         * Requests pass.
+         */
+        CLOSED,
+        /**
+         * Requests fail fast.
+         */
+        OPEN,
+        /**
+         * A single probe request is in flight.
+         */
+        HALF_OPEN
+    }
+
+    /**
+     * Signals that a request was not sent because the breaker of its host is open.
+     */
+    public static class OpenException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * @param message The detail message.
+         */
+        public OpenException(String message) {
+            super(message);
+        }
+    }
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss")
+        .withZone(ZoneId.systemDefault());
+
+    private final int failureThreshold;
+    private final Duration openDuration;
+    private final Clock clock;
+    private final Map<String, HostState> hosts = new HashMap<>();
+
+    /**
+     * @param failureThreshold The number of consecutive failures that open the breaker.
+     * @param openDuration How long the breaker stays open before a probe request is let through.
+     */
+    public CircuitBreaker(int failureThreshold, Duration openDuration) {
+        this(failureThreshold, openDuration, Clock.systemUTC());
+    }
+
+    /**
+     * @param failureThreshold The number of consecutive failures that open the breaker.
+     * @param openDuration How long the breaker stays open before a probe request is let through.
+     * @param clock The clock measuring the open period.
+     */
+    CircuitBreaker(int failureThreshold, Duration openDuration, Clock clock) {
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+        this.clock = clock;
+    }
+
+    /**
+     * Creates the circuit breaker configured in the settings.
+     * @param settings The settings of the application.
+     * @return The circuit breaker.
+     */
+    public static CircuitBreaker of(Settings settings) {
+        return new CircuitBreaker(settings.breakerFailureThreshold(),
+            Duration.ofSeconds(settings.breakerOpenSeconds()));
+    }
+
+    /**
+     * Checks whether a request to the host may be sent.
+     * @param host The host of the request.
+     * @throws OpenException if the breaker of the host is open.
+     */
+    public synchronized void allow(String host) throws OpenException {
+        HostState state = hosts.get(host);
+        if (state == null || state.state == State.CLOSED) {
+            return;
+        }
+        Instant now = clock.instant();
+        if (!now.isBefore(state.openUntil)) {
+            if (state.state == State.OPEN) {
+                System.out.println("Trying " + host + " again after failures.");
+            }
+            state.state = State.HALF_OPEN;
+            // the probe gets one open period to finish before the next one is let through
+            state.openUntil = now.plus(openDuration);
+            return;
+        }
+        if (state.state == State.HALF_OPEN) {
+            throw new OpenException(host + " is failing, skipping requests while it is tried again.");
+        }
+        throw new OpenException(host + " is failing, skipping requests until "
+            + TIME_FORMAT.format(state.openUntil) + ".");
+    }
+
+    /**
+     * Records a successful request, closing the breaker of the host.
+     * @param host The host of the request.
+     */
+    public synchronized void recordSuccess(String host) {
+        HostState state = hosts.remove(host);
+        if (state != null && state.state != State.CLOSED) {
+            System.out.println(host + " recovered.");
+        }
+    }
+
+    /**
+     * Records a failed request, opening the breaker of the host after too many consecutive failures.
+     * @param host The host of the request.
+     */
+    public synchronized void recordFailure(String host) {
+        HostState state = hosts.computeIfAbsent(host, h -> new HostState());
+        state.failures++;
+        if (state.state == State.HALF_OPEN
+                || (state.state == State.CLOSED && state.failures >= failureThreshold)) {
+            state.state = State.OPEN;
+            state.openUntil = clock.instant().plus(openDuration);
+            System.out.printf("%s failed %d times in a row, failing fast for %d s.%n",
+                host, state.failures, openDuration.toSeconds());
+        }
+    }
+
+    /**
+     * @param host The host.
+     * @return The state of the breaker of the host.
+     */
+    public synchronized State getState(String host) {
+        HostState state = hosts.get(host);
+        return state == null ? State.CLOSED : state.state;
+    }
+
+    /**
+     * Mutable state of the breaker of one host, guarded by the breaker.
+     */
+    private static final class HostState {
+        private State state = State.CLOSED;
+        private int failures;
+        private Instant openUntil = Instant.EPOCH;
+    }
+}
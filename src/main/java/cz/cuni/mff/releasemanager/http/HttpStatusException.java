@@ -0,0 +1,28 @@
+package cz.cuni.mff.releasemanager.http;
+
+import java.io.IOException;
+
+/**
+ * Signals that a server answered a request with an unexpected HTTP status code.
+ */
+public class HttpStatusException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+
+    /**
+     * @param statusCode The status code of the response.
+     * @param message The detail message.
+     */
+    public HttpStatusException(int statusCode, String message) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * @return The status code of the response.
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
@@ -0,0 +1,349 @@
+package cz.cuni.mff.releasemanager.http;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import cz.cuni.mff.releasemanager.types.RateLimitBudget;
+
+/**
+ * Schedules requests to the Github API within its rate limit.
+ *
+ * <p>The budget of every API resource ({@code core}, {@code search}, {@code graphql}) is read
+ * from the {@code X-RateLimit-*} and {@code Retry-After} headers of every response and persisted,
+ * so that the next run of the application starts with the known budget. Each token has a budget of its own,
+ * tokens are identified by a hash so that they are never written to disk.
+ * Before a request is sent, {@link #acquire(String, String, Priority)} waits until the budget allows it.
+ * Background requests keep a reserve of the budget for interactive ones, are paced when the budget
+ * runs low and always yield to waiting interactive requests.</p>
+ */
+public class RateLimiter {
+
+    /**
+     * Priority of a request.
+     */
+    public enum Priority {
+        /**
+         * A request the user is waiting for, such as a search.
+         */
+        INTERACTIVE,
+        /**
+         * A request of a batch operation, such as checking all installed releases for updates.
+         */
+        BACKGROUND
+    }
+
+    /**
+     * Signals that a request was not sent because the rate limit does not allow it soon enough.
+     */
+    public static class ExhaustedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * @param message The detail message.
+         */
+        public ExhaustedException(String message) {
+            super(message);
+        }
+    }
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final String CORE = "core";
+    private static final String SEARCH = "search";
+    private static final String GRAPHQL = "graphql";
+    // part of the budget background requests leave for interactive ones
+    private static final double BACKGROUND_RESERVE = 0.1;
+    // below this part of the budget background requests are spread until the reset
+    private static final double PACING_THRESHOLD = 0.25;
+    private static final Duration MAX_INTERACTIVE_WAIT = Duration.ofSeconds(30);
+    private static final Duration MAX_BACKGROUND_WAIT = Duration.ofMinutes(15);
+    // how often a waiting background request checks again for waiting interactive requests
+    private static final long YIELD_MILLIS = 50;
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss")
+        .withZone(ZoneId.systemDefault());
+
+    private final Path file;
+    private final Clock clock;
+    private final Map<String, RateLimitBudget> budgets = new HashMap<>();
+    private final Map<String, Long> lastBackgroundRequest = new HashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private int waitingInteractive;
+
+    /**
+     * Creates a rate limiter persisting the budget in the given file.
+     * @param file Path to the file with the budget, loaded if it exists.
+     */
+    public RateLimiter(Path file) {
+        this(file, Clock.systemUTC());
+    }
+
+    /**
+     * Creates a rate limiter persisting the budget in the given file.
+     * @param file Path to the file with the budget, loaded if it exists.
+     * @param clock The clock used to compare with the reset times.
+     */
+    RateLimiter(Path file, Clock clock) {
+        this.file = file;
+        this.clock = clock;
+        load();
+    }
+
+    /**
+     * Determines the rate limit resource a request to the given URI is counted against.
+     * @param uri The requested URI.
+     * @return The name of the resource.
+     */
+    public static String resourceOf(URI uri) {
+        String path = uri.getPath() == null ? "" : uri.getPath();
+        if (path.startsWith("/search/")) {
+            return SEARCH;
+        }
+        if (path.equals("/graphql")) {
+            return GRAPHQL;
+        }
+        return CORE;
+    }
+
+    /**
+     * @param resource The rate limit resource.
+     * @param tokenId The identifier of the token, or null for anonymous requests.
+     * @return The key of the budget of the resource for the token.
+     */
+    private static String key(String resource, String tokenId) {
+        return tokenId == null ? resource : resource + ":" + tokenId;
+    }
+
+    /**
+     * Waits until a request to the given resource fits in the budget and reserves it.
+     * @param resource The rate limit resource of the request.
+     * @param tokenId The identifier of the token the request is sent with, or null for anonymous requests.
+     * @param priority The priority of the request.
+     * @throws ExhaustedException if the budget would not allow the request for too long.
+     * @throws InterruptedException
+     */
+    public void acquire(String resource, String tokenId, Priority priority) throws IOException, InterruptedException {
+        String key = key(resource, tokenId);
+        boolean interactive = priority == Priority.INTERACTIVE;
+        lock.lock();
+        try {
+            if (interactive) {
+                waitingInteractive++;
+            }
+            boolean announced = false;
+            try {
+                while (true) {
+                    long now = clock.millis();
+                    long wait = waitMillis(key, priority, now);
+                    if (wait <= 0 && (interactive || waitingInteractive == 0)) {
+                        reserve(key, priority, now);
+                        return;
+                    }
+                    Duration maxWait = interactive ? MAX_INTERACTIVE_WAIT : MAX_BACKGROUND_WAIT;
+                    if (wait > maxWait.toMillis()) {
+                        throw new ExhaustedException("Rate limit exceeded. Resets at "
+                            + TIME_FORMAT.format(Instant.ofEpochMilli(now + wait)) + ".");
+                    }
+                    if (wait >= 1000 && !announced) {
+                        System.out.printf("Rate limit low, waiting %d s...%n", TimeUnit.MILLISECONDS.toSeconds(wait));
+                        announced = true;
+                    }
+                    changed.await(wait > 0 ? wait : YIELD_MILLIS, TimeUnit.MILLISECONDS);
+                }
+            } finally {
+                if (interactive) {
+                    waitingInteractive--;
+                    changed.signalAll();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Updates the budget from the headers of a response and persists it.
+     * @param resource The rate limit resource of the request, used if the response does not name it.
+     * @param tokenId The identifier of the token the request was sent with, or null for anonymous requests.
+     * @param headers The headers of the response.
+     */
+    public void update(String resource, String tokenId, HttpHeaders headers) {
+        if (headers == null) {
+            return;
+        }
+        String name = key(headers.firstValue("X-RateLimit-Resource").orElse(resource), tokenId);
+        lock.lock();
+        try {
+            RateLimitBudget previous = budgets.get(name);
+            long limit = headers.firstValueAsLong("X-RateLimit-Limit")
+                .orElse(previous == null ? 0 : previous.limit());
+            long remaining = headers.firstValueAsLong("X-RateLimit-Remaining")
+                .orElse(previous == null ? limit : previous.remaining());
+            long reset = headers.firstValueAsLong("X-RateLimit-Reset")
+                .orElse(previous == null ? 0 : previous.reset());
+            long blockedUntil = previous == null ? 0 : previous.blockedUntil();
+            var retryAfter = headers.firstValueAsLong("Retry-After");
+            if (retryAfter.isPresent()) {
+                blockedUntil = clock.millis() / 1000 + retryAfter.getAsLong();
+            }
+            if (limit == 0 && blockedUntil == 0) {
+                // not an API response, e.g. a redirected download
+                return;
+            }
+            RateLimitBudget budget = new RateLimitBudget(limit, remaining, reset, blockedUntil);
+            if (!budget.equals(previous)) {
+                budgets.put(name, budget);
+                save();
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Checks whether the response was refused because of the rate limit.
+     * @param statusCode The status code of the response.
+     * @param headers The headers of the response.
+     * @return true if the request can be sent again once the budget allows it.
+     */
+    public static boolean isRateLimited(int statusCode, HttpHeaders headers) {
+        if (statusCode == 429) {
+            return true;
+        }
+        return statusCode == 403 && headers != null
+            && (headers.firstValueAsLong("X-RateLimit-Remaining").orElse(-1) == 0
+                || headers.firstValue("Retry-After").isPresent());
+    }
+
+    /**
+     * Returns the known budget of the given resource.
+     * @param resource The rate limit resource.
+     * @param tokenId The identifier of the token, or null for anonymous requests.
+     * @return The budget, or null if no response of the resource was seen yet.
+     */
+    public RateLimitBudget getBudget(String resource, String tokenId) {
+        lock.lock();
+        try {
+            return budgets.get(key(resource, tokenId));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Estimates how many requests to the given resource can be sent right now.
+     * @param resource The rate limit resource.
+     * @param tokenId The identifier of the token, or null for anonymous requests.
+     * @return The remaining budget, {@link Long#MAX_VALUE} if it is unknown or was reset, 0 while blocked.
+     */
+    public long available(String resource, String tokenId) {
+        lock.lock();
+        try {
+            RateLimitBudget budget = budgets.get(key(resource, tokenId));
+            long now = clock.millis();
+            if (budget == null) {
+                return Long.MAX_VALUE;
+            }
+            if (budget.blockedUntil() * 1000 > now) {
+                return 0;
+            }
+            return budget.reset() * 1000 <= now ? Long.MAX_VALUE : budget.remaining();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Computes how long a request has to wait for the budget.
+     * @param key The key of the budget.
+     * @param priority The priority of the request.
+     * @param now The current time in epoch milliseconds.
+     * @return The time to wait in milliseconds, zero or negative if the request can be sent.
+     */
+    private long waitMillis(String key, Priority priority, long now) {
+        RateLimitBudget budget = budgets.get(key);
+        if (budget == null) {
+            return 0;
+        }
+        long wait = budget.blockedUntil() * 1000 - now;
+        long untilReset = budget.reset() * 1000 - now;
+        if (untilReset <= 0) {
+            return wait;
+        }
+        long reserve = priority == Priority.BACKGROUND ? (long) Math.ceil(budget.limit() * BACKGROUND_RESERVE) : 0;
+        long available = budget.remaining() - reserve;
+        if (available <= 0) {
+            return Math.max(wait, untilReset);
+        }
+        if (priority == Priority.BACKGROUND && budget.remaining() < budget.limit() * PACING_THRESHOLD) {
+            long interval = untilReset / available;
+            long last = lastBackgroundRequest.getOrDefault(key, 0L);
+            wait = Math.max(wait, last + interval - now);
+        }
+        return wait;
+    }
+
+    /**
+     * Counts a request against the budget before its response updates it.
+     * @param key The key of the budget.
+     * @param priority The priority of the request.
+     * @param now The current time in epoch milliseconds.
+     */
+    private void reserve(String key, Priority priority, long now) {
+        if (priority == Priority.BACKGROUND) {
+            lastBackgroundRequest.put(key, now);
+        }
+        RateLimitBudget budget = budgets.get(key);
+        if (budget == null) {
+            return;
+        }
+        long remaining = budget.reset() * 1000 > now ? budget.remaining() - 1 : budget.limit() - 1;
+        budgets.put(key, new RateLimitBudget(budget.limit(), Math.max(0, remaining), budget.reset(),
+            budget.blockedUntil()));
+    }
+
+    /**
+     * Loads the persisted budget, ignoring a missing or damaged file.
+     */
+    private void load() {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try {
+            budgets.putAll(mapper.readValue(file.toFile(), new TypeReference<Map<String, RateLimitBudget>>() {}));
+        } catch (IOException e) {
+            System.out.println("Failed to read rate limit budget: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Persists the budget. Called with the lock held.
+     */
+    private void save() {
+        try {
+            Files.createDirectories(file.getParent());
+            Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            mapper.writeValue(temp.toFile(), budgets);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("Failed to save rate limit budget: " + e.getMessage());
+        }
+    }
+}
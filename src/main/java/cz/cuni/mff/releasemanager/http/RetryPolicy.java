@@ -0,0 +1,95 @@
+package cz.cuni.mff.releasemanager.http;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+import cz.cuni.mff.releasemanager.types.Settings;
+
+/**
+ * Decides whether a failed request is retried and how long to wait before the retry.
+ *
+ * <p>Only transient failures are retried: I/O errors such as a reset connection or a connect timeout,
+ * and the server errors 500, 502, 503 and 504. The delay grows exponentially with every attempt,
+ * and a random jitter spreads the retries of concurrent requests so they do not hit the server at once.</p>
+ */
+public class RetryPolicy {
+    private final int maxRetries;
+    private final Duration baseDelay;
+    private final Duration maxDelay;
+
+    /**
+     * @param maxRetries How many times a failed request is retried.
+     * @param baseDelay The delay before the first retry.
+     * @param maxDelay The upper bound of the delay.
+     */
+    public RetryPolicy(int maxRetries, Duration baseDelay, Duration maxDelay) {
+        this.maxRetries = maxRetries;
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+    }
+
+    /**
+     * Creates the retry policy configured in the settings.
+     * @param settings The settings of the application.
+     * @return The retry policy.
+     */
+    public static RetryPolicy of(Settings settings) {
+        return new RetryPolicy(settings.maxRetries(),
+            Duration.ofMillis(settings.retryBaseDelayMillis()),
+            Duration.ofMillis(settings.retryMaxDelayMillis()));
+    }
+
+    /**
+     * @param attempt The number of the failed attempt, starting at 1.
+     * @return true if another attempt is allowed.
+     */
+    public boolean canRetry(int attempt) {
+        return attempt <= maxRetries;
+    }
+
+    /**
+     * @param statusCode The status code of a response.
+     * @return true if the status code signals a transient server error.
+     */
+    public static boolean isRetryable(int statusCode) {
+        return statusCode == 500 || statusCode == 502 || statusCode == 503 || statusCode == 504;
+    }
+
+    /**
+     * @param e The exception the request failed with.
+     * @return true if the failure may be transient.
+     */
+    public static boolean isRetryable(IOException e) {
+        if (e instanceof HttpStatusException statusException) {
+            return isRetryable(statusException.getStatusCode());
+        }
+        return !(e instanceof CircuitBreaker.OpenException || e instanceof RateLimiter.ExhaustedException);
+    }
+
+    /**
+     * Computes the delay before the next attempt, half of it fixed and half random.
+     * @param attempt The number of the failed attempt, starting at 1.
+     * @return The delay.
+     */
+    public Duration delay(int attempt) {
+        long exponential = baseDelay.toMillis() << Math.min(attempt - 1, 20);
+        long cap = Math.min(maxDelay.toMillis(), exponential);
+        long half = cap / 2;
+        return Duration.ofMillis(half + ThreadLocalRandom.current().nextLong(cap - half + 1));
+    }
+
+    /**
+     * Reports the failure and computes the delay before the next attempt.
+     * @param attempt The number of the failed attempt, starting at 1.
+     * @param target Description of the request, e.g. the host.
+     * @param reason Description of the failure.
+     * @return The delay to wait before the next attempt.
+     */
+    public Duration backoff(int attempt, String target, String reason) {
+        Duration delay = delay(attempt);
+        System.out.printf("Request to %s failed (%s), retry %d of %d in %.1f s...%n",
+            target, reason, attempt, maxRetries, delay.toMillis() / 1000.0);
+        return delay;
+    }
+}
@@ -0,0 +1,153 @@
+package cz.cuni.mff.releasemanager.http;
+
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import cz.cuni.mff.releasemanager.types.Settings;
+
+/**
+ * Pool of Github tokens the requests are authenticated with.
+ *
+ * <p>The tokens are read from the {@code GITHUB_TOKENS} (several tokens separated by commas or whitespace),
+ * {@code GITHUB_TOKEN} and {@code GH_TOKEN} environment variables and from the settings.
+ * Every request is sent with the token that has the largest remaining budget for the requested resource,
+ * so the load is spread over all tokens and exhausted tokens are skipped until their budget resets.
+ * Tokens with the same budget are used in turns.</p>
+ */
+public class TokenPool {
+
+    /**
+     * A Github token.
+     * @param value The token.
+     * @param id The identifier of the token, a prefix of its hash, which is safe to log and persist.
+     */
+    public record Token(String value, String id) {
+        @Override
+        public String toString() {
+            return "Token[" + id + "]";
+        }
+    }
+
+    private static final String[] TOKEN_ENVS = {"GITHUB_TOKENS", "GITHUB_TOKEN", "GH_TOKEN"};
+
+    private final List<Token> tokens;
+    private final AtomicInteger next = new AtomicInteger();
+
+    /**
+     * Creates a pool of the given tokens, ignoring blank and duplicate ones.
+     * @param values The tokens.
+     */
+    public TokenPool(List<String> values) {
+        Set<String> distinct = new LinkedHashSet<>();
+        for (String value : values) {
+            if (value != null && !value.isBlank()) {
+                distinct.add(value.strip());
+            }
+        }
+        List<Token> pool = new ArrayList<>();
+        for (String value : distinct) {
+            pool.add(new Token(value, id(value)));
+        }
+        tokens = List.copyOf(pool);
+    }
+
+    /**
+     * Creates the pool of the tokens from the environment and the settings.
+     * @param settings The settings of the application.
+     * @return The token pool, empty if no token is configured.
+     */
+    public static TokenPool of(Settings settings) {
+        return of(System.getenv(), settings);
+    }
+
+    /**
+     * Creates the pool of the tokens from the given environment and the settings.
+     * @param environment The environment variables.
+     * @param settings The settings of the application.
+     * @return The token pool, empty if no token is configured.
+     */
+    static TokenPool of(Map<String, String> environment, Settings settings) {
+        List<String> values = new ArrayList<>();
+        for (String name : TOKEN_ENVS) {
+            String value = environment.get(name);
+            if (value != null) {
+                values.addAll(List.of(value.split("[,\\s]+")));
+            }
+        }
+        values.addAll(settings.tokens());
+        return new TokenPool(values);
+    }
+
+    /**
+     * @return true if no token is configured and requests are anonymous.
+     */
+    public boolean isEmpty() {
+        return tokens.isEmpty();
+    }
+
+    /**
+     * @return The number of tokens in the pool.
+     */
+    public int size() {
+        return tokens.size();
+    }
+
+    /**
+     * Selects the token to send a request to the given resource with.
+     * @param resource The rate limit resource of the request.
+     * @param rateLimiter The rate limiter tracking the budget of the tokens.
+     * @return The token with the largest remaining budget, or empty if the pool is empty.
+     */
+    public Optional<Token> select(String resource, RateLimiter rateLimiter) {
+        if (tokens.isEmpty()) {
+            return Optional.empty();
+        }
+        int start = Math.floorMod(next.getAndIncrement(), tokens.size());
+        Token best = null;
+        long bestAvailable = -1;
+        for (int i = 0; i < tokens.size(); i++) {
+            Token token = tokens.get((start + i) % tokens.size());
+            long available = rateLimiter.available(resource, token.id());
+            if (available > bestAvailable) {
+                best = token;
+                bestAvailable = available;
+            }
+        }
+        return Optional.of(best);
+    }
+
+    /**
+     * Adds the {@code Authorization} header with the token to the request.
+     * @param request The request.
+     * @param token The token.
+     * @return A copy of the request authenticated with the token.
+     */
+    public static HttpRequest authorize(HttpRequest request, Token token) {
+        return HttpRequest.newBuilder(request, (name, value) -> true)
+            .setHeader("Authorization", "Bearer " + token.value())
+            .build();
+    }
+
+    /**
+     * @param value The token.
+     * @return The first eight hex digits of the SHA-256 of the token.
+     */
+    private static String id(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8))).substring(0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
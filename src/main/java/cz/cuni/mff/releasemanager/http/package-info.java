@@ -0,0 +1,5 @@
+/**
+ * This package contains the policies applied to HTTP requests sent to Github,
+ * such as scheduling requests within the rate limit of the Github API.
+ */
+package cz.cuni.mff.releasemanager.http;
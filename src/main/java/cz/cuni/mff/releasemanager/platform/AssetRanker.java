@@ -0,0 +1,248 @@
+package cz.cuni.mff.releasemanager.platform;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import cz.cuni.mff.releasemanager.platform.Platform.Architecture;
+import cz.cuni.mff.releasemanager.platform.Platform.OS;
+import cz.cuni.mff.releasemanager.types.Asset;
+
+/**
+ * Ranks the assets of a release by how well they suit the current platform.
+ *
+ * <p>An asset is a candidate only if its name ends with one of the installable formats, so checksum files,
+ * signatures and zsync control files never are. The name is then searched for architecture, operating system
+ * and libc tokens, such as {@code x86_64}, {@code aarch64}, {@code linux} or {@code musl}, by patterns compiled
+ * once. An asset naming another architecture or operating system, or a glibc build on a musl system, is dropped.
+ * Naming the current architecture scores more than naming the current operating system, which scores more
+ * than naming the current libc. The format is the last criterion, in the order the platform handler lists it.</p>
+ *
+ * <p>An asset is picked without asking when it scores best alone, or when the assets scoring best are the same
+ * build in different formats. The name of the chosen asset is turned into a pattern matching the same asset
+ * of later releases, with the version numbers left open.</p>
+ */
+public final class AssetRanker {
+    /**
+     * C library of a Linux system, which decides whether dynamically linked Linux binaries run.
+     */
+    public enum Libc {
+        GLIBC, MUSL
+    }
+
+    private static final int ARCHITECTURE_SCORE = 100;
+    private static final int SYSTEM_SCORE = 10;
+    private static final int LIBC_SCORE = 1;
+    private static final Map<Architecture, Pattern> ARCHITECTURES = new EnumMap<>(Map.of(
+        Architecture.X86_64, token("x86[_-]?64|amd64|x64"),
+        Architecture.X86_32, token("i[3-6]86|x86(?![_-]?64)|386|ia32"),
+        Architecture.ARM_64, token("aarch64|arm64|armv8[a-z]*"),
+        Architecture.ARM_32, token("armv[5-7][a-z]*|armhf|armel|arm32|arm")
+    ));
+    private static final Pattern OTHER_ARCHITECTURES = token("riscv64|ppc64(?:le)?|s390x|mips[a-z0-9]*|loong(?:arch)?64");
+    private static final Pattern UNIVERSAL = token("universal");
+    private static final Map<OS, Pattern> SYSTEMS = new EnumMap<>(Map.of(
+        OS.LINUX, token("linux"),
+        OS.WINDOWS, token("windows|win(?:32|64)?|msvc|mingw(?:32|64)?"),
+        OS.MAC, token("darwin|macos|mac|osx|apple")
+    ));
+    private static final Pattern OTHER_SYSTEMS = token("freebsd|netbsd|openbsd|android|illumos|solaris");
+    private static final Pattern MUSL = token("musl");
+    private static final Pattern GLIBC = token("gnu|glibc");
+    private static final Pattern VERSION = Pattern.compile("(?<![A-Za-z0-9])v?\\d+(?:[._]\\d+)*(?![A-Za-z0-9])");
+    private static final String VERSION_PATTERN = "v?\\d+(?:[._]\\d+)*";
+
+    private final OS os;
+    private final Architecture architecture;
+    private final Libc libc;
+
+    /**
+     * Creates a ranker for the given platform.
+     * @param os The operating system.
+     * @param architecture The architecture.
+     * @param libc The C library, only used on Linux.
+     */
+    public AssetRanker(OS os, Architecture architecture, Libc libc) {
+        this.os = os;
+        this.architecture = architecture;
+        this.libc = libc;
+    }
+
+    /**
+     * @return A ranker for the platform the application runs on.
+     */
+    public static AssetRanker forCurrentPlatform() {
+        Platform platform = Platform.detectPlatform();
+        return new AssetRanker(platform.getOS(), platform.getArchitecture(), detectLibc(platform.getOS()));
+    }
+
+    /**
+     * Detects musl by its dynamic loader, which glibc systems do not have.
+     * @param os The operating system.
+     * @return The C library of the system.
+     */
+    private static Libc detectLibc(OS os) {
+        if (os != OS.LINUX) {
+            return Libc.GLIBC;
+        }
+        try (Stream<Path> loaders = Files.list(Path.of("/lib"))) {
+            return loaders.anyMatch(path -> path.getFileName().toString().startsWith("ld-musl-")) ? Libc.MUSL : Libc.GLIBC;
+        } catch (IOException e) {
+            return Libc.GLIBC;
+        }
+    }
+
+    /**
+     * @param alternatives Alternatives of a regular expression.
+     * @return A pattern matching the alternatives as whole tokens of a lowercase name.
+     */
+    private static Pattern token(String alternatives) {
+        return Pattern.compile("(?<![a-z0-9])(?:" + alternatives + ")(?![a-z0-9])");
+    }
+
+    /**
+     * Selects the assets suitable for the platform and orders them from the best.
+     * @param assets The assets of a release.
+     * @param formats The installable formats, the preferred first.
+     * @return The suitable assets, the best first. Assets which rank the same keep their order.
+     */
+    public List<Asset> rank(List<Asset> assets, String[] formats) {
+        List<Asset> ranked = new ArrayList<>();
+        for (Asset asset : assets) {
+            if (formatIndex(asset.name(), formats) >= 0 && score(asset.name()).isPresent()) {
+                ranked.add(asset);
+            }
+        }
+        ranked.sort(Comparator.comparingInt((Asset asset) -> -score(asset.name()).getAsInt())
+            .thenComparingInt(asset -> formatIndex(asset.name(), formats)));
+        return ranked;
+    }
+
+    /**
+     * Picks the asset to install without asking, if one clearly suits the platform best.
+     * @param assets The assets of a release.
+     * @param formats The installable formats, the preferred first.
+     * @return Optional containing the asset scoring best alone, or the preferred format of the build scoring best,
+     * empty if several builds score best.
+     */
+    public Optional<Asset> pick(List<Asset> assets, String[] formats) {
+        List<Asset> ranked = rank(assets, formats);
+        if (ranked.isEmpty()) {
+            return Optional.empty();
+        }
+        int best = score(ranked.get(0).name()).getAsInt();
+        List<Asset> contenders = ranked.stream()
+            .filter(asset -> score(asset.name()).getAsInt() == best)
+            .toList();
+        long builds = contenders.stream()
+            .map(asset -> stem(asset.name(), formats))
+            .distinct()
+            .count();
+        return builds == 1 ? Optional.of(contenders.get(0)) : Optional.empty();
+    }
+
+    /**
+     * Scores the name of an asset for the platform.
+     * @param name The name of the asset.
+     * @return The score, higher for a better match, or empty if the asset is for another platform.
+     */
+    OptionalInt score(String name) {
+        String lowerName = name.toLowerCase(Locale.ROOT);
+        int score = 0;
+        if (ARCHITECTURES.get(architecture).matcher(lowerName).find()
+                || (os == OS.MAC && UNIVERSAL.matcher(lowerName).find())) {
+            score += ARCHITECTURE_SCORE;
+        } else if (OTHER_ARCHITECTURES.matcher(lowerName).find() || ARCHITECTURES.entrySet().stream()
+                .anyMatch(entry -> entry.getKey() != architecture && entry.getValue().matcher(lowerName).find())) {
+            return OptionalInt.empty();
+        }
+        if (SYSTEMS.get(os).matcher(lowerName).find()) {
+            score += SYSTEM_SCORE;
+        } else if (OTHER_SYSTEMS.matcher(lowerName).find() || SYSTEMS.entrySet().stream()
+                .anyMatch(entry -> entry.getKey() != os && entry.getValue().matcher(lowerName).find())) {
+            return OptionalInt.empty();
+        }
+        if (os == OS.LINUX) {
+            boolean musl = MUSL.matcher(lowerName).find();
+            boolean glibc = GLIBC.matcher(lowerName).find();
+            if (glibc && !musl && libc == Libc.MUSL) {
+                return OptionalInt.empty();
+            }
+            // musl builds are usually static and run on glibc as well, but a native build is preferred
+            if ((musl && libc == Libc.MUSL) || (glibc && libc == Libc.GLIBC)) {
+                score += LIBC_SCORE;
+            }
+        }
+        return OptionalInt.of(score);
+    }
+
+    /**
+     * @param name The name of an asset.
+     * @param formats The installable formats.
+     * @return The index of the format the name ends with, or -1 if it is not installable.
+     */
+    private static int formatIndex(String name, String[] formats) {
+        String lowerName = name.toLowerCase(Locale.ROOT);
+        for (int i = 0; i < formats.length; i++) {
+            if (lowerName.endsWith(formats[i].toLowerCase(Locale.ROOT))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param name The name of an asset.
+     * @param formats The installable formats.
+     * @return The name without its format, which is the same for one build packaged in several formats.
+     */
+    private static String stem(String name, String[] formats) {
+        int index = formatIndex(name, formats);
+        return index < 0 ? name : name.substring(0, name.length() - formats[index].length());
+    }
+
+    /**
+     * Turns the name of a chosen asset into a pattern matching the same asset of later releases.
+     * Version numbers, which are digits standing apart from letters, match any version.
+     * @param name The name of the asset.
+     * @return A regular expression matching the whole name.
+     */
+    public static String patternOf(String name) {
+        StringBuilder pattern = new StringBuilder();
+        Matcher matcher = VERSION.matcher(name);
+        int position = 0;
+        while (matcher.find()) {
+            pattern.append(Pattern.quote(name.substring(position, matcher.start()))).append(VERSION_PATTERN);
+            position = matcher.end();
+        }
+        return pattern.append(Pattern.quote(name.substring(position))).toString();
+    }
+
+    /**
+     * Finds the asset matching the pattern remembered for a repository.
+     * @param pattern The pattern from {@link #patternOf(String)}, or null.
+     * @param assets The assets of a release.
+     * @return Optional containing the only asset matching the pattern.
+     */
+    public static Optional<Asset> findByPattern(String pattern, List<Asset> assets) {
+        if (pattern == null) {
+            return Optional.empty();
+        }
+        Pattern compiled = Pattern.compile(pattern);
+        List<Asset> matching = assets.stream()
+            .filter(asset -> compiled.matcher(asset.name()).matches())
+            .toList();
+        return matching.size() == 1 ? Optional.of(matching.get(0)) : Optional.empty();
+    }
+}
@@ -1,13 +1,23 @@
 package cz.cuni.mff.releasemanager.platform;
 
 import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileStore;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
 import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
+import cz.cuni.mff.releasemanager.archive.ArchiveFormat;
+import cz.cuni.mff.releasemanager.archive.Archives;
 import cz.cuni.mff.releasemanager.utils.FileUtils;
 
 /**
@@ -15,6 +25,29 @@ import cz.cuni.mff.releasemanager.utils.FileUtils;
  */
 public final class LinuxHandler extends PlatformHandler {
 
+    private static final Set<PosixFilePermission> EXECUTABLE = Set.of(
+        PosixFilePermission.OWNER_READ,
+        PosixFilePermission.OWNER_WRITE,
+        PosixFilePermission.OWNER_EXECUTE,
+        PosixFilePermission.GROUP_READ,
+        PosixFilePermission.GROUP_EXECUTE,
+        PosixFilePermission.OTHERS_READ,
+        PosixFilePermission.OTHERS_EXECUTE
+    );
+    // for files shared with the asset store by a hard link, which must not be modified through the installation
+    private static final Set<PosixFilePermission> READ_ONLY_EXECUTABLE = Set.of(
+        PosixFilePermission.OWNER_READ,
+        PosixFilePermission.OWNER_EXECUTE,
+        PosixFilePermission.GROUP_READ,
+        PosixFilePermission.GROUP_EXECUTE,
+        PosixFilePermission.OTHERS_READ,
+        PosixFilePermission.OTHERS_EXECUTE
+    );
+
+    private static final String APPS_DIR = "apps";
+    private static final String BIN_DIR = "bin";
+    private static final Pattern SHARED_LIBRARY = Pattern.compile("\\.so(\\.\\d+)*$");
+
     private static LinuxHandler instance;
 
     private LinuxHandler() {}
@@ -29,26 +62,34 @@ public final class LinuxHandler extends PlatformHandler {
         return instance;
     }
 
+    /**
+     * Installs the asset to {@code ~/.local/bin}. The staged asset is renamed over the previous version
+     * in one atomic step. An asset staged on another file system is first linked or copied next to the target.
+     * An archive, or the directory it was unpacked into while downloading, is installed by {@link #installArchive(Path)}.
+     */
     @Override
     public Path install(Path assetPath) {
+        if (Files.isDirectory(assetPath) || ArchiveFormat.of(assetPath.getFileName().toString()).isPresent()) {
+            return installArchive(assetPath);
+        }
         try {
-            Files.setPosixFilePermissions(assetPath, Set.of(
-                PosixFilePermission.OWNER_READ,
-                PosixFilePermission.OWNER_WRITE,
-                PosixFilePermission.OWNER_EXECUTE,
-                PosixFilePermission.GROUP_READ,
-                PosixFilePermission.GROUP_EXECUTE,
-                PosixFilePermission.OTHERS_READ,
-                PosixFilePermission.OTHERS_EXECUTE
-            ));
-
-            Path targetDir = Paths.get(System.getProperty("user.home"), ".local/bin");
+            Path targetDir = getInstallDirLocation();
             Files.createDirectories(targetDir);
 
             String shortCut = FileUtils.getShortCut(assetPath);
             Path target = targetDir.resolve(shortCut);
 
-            Files.move(assetPath, target, StandardCopyOption.REPLACE_EXISTING);
+            Files.setPosixFilePermissions(assetPath, executable(assetPath));
+            try {
+                Files.move(assetPath, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Path temp = targetDir.resolve("." + shortCut + ".tmp");
+                Files.deleteIfExists(temp);
+                FileUtils.linkOrCopy(assetPath, temp);
+                Files.setPosixFilePermissions(temp, executable(temp));
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                Files.deleteIfExists(assetPath);
+            }
             System.out.println("Installed to: " + target);
             FileUtils.removeTempDir(assetPath);
             return target;
@@ -59,8 +100,260 @@ public final class LinuxHandler extends PlatformHandler {
         return null;
     }
 
+    /**
+     * @param file Path to the file to make executable.
+     * @return The permissions of the executable, without write permissions if the file has other hard links.
+     * @throws IOException
+     */
+    private static Set<PosixFilePermission> executable(Path file) throws IOException {
+        return (int) Files.getAttribute(file, "unix:nlink") > 1 ? READ_ONLY_EXECUTABLE : EXECUTABLE;
+    }
+
+    /**
+     * Installs an archive to a directory of its own in the application data and links the executables it
+     * contains into {@code ~/.local/bin}. An archive which was not unpacked while downloading is unpacked
+     * next to it first. The content of an archive holding a single directory is installed without that directory.
+     * @param assetPath Path to the archive, or to the directory it was unpacked into.
+     * @return Path to the installed directory, or null if the installation failed.
+     */
+    private Path installArchive(Path assetPath) {
+        try {
+            Path unpacked = assetPath;
+            if (!Files.isDirectory(assetPath)) {
+                String name = assetPath.getFileName().toString();
+                unpacked = assetPath.resolveSibling(ArchiveFormat.of(name).get().stem(name));
+                Archives.unpack(assetPath, unpacked);
+                Files.delete(assetPath);
+            }
+            Path content = singleDirectory(unpacked).orElse(unpacked);
+            String shortCut = FileUtils.getShortCut(unpacked);
+            Path appsDir = getAppsDirLocation();
+            Files.createDirectories(appsDir);
+            Path target = appsDir.resolve(shortCut.isEmpty() ? unpacked.getFileName().toString() : shortCut);
+
+            replaceDirectory(content, target);
+            if (!content.equals(unpacked)) {
+                Files.delete(unpacked);
+            }
+            FileUtils.removeTempDir(unpacked);
+            System.out.println("Installed to: " + target);
+            if (linkExecutables(target).isEmpty()) {
+                System.out.println("No executables found in " + target + ".");
+            }
+            return target;
+
+        } catch (IOException e) {
+            System.out.println("Installation failed: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.out.println("Installation failed");
+        }
+        return null;
+    }
+
+    /**
+     * @param dir Path to an unpacked archive.
+     * @return Optional containing the only entry of the directory, if it is a directory.
+     * @throws IOException
+     */
+    private static Optional<Path> singleDirectory(Path dir) throws IOException {
+        try (Stream<Path> entries = Files.list(dir)) {
+            List<Path> content = entries.limit(2).toList();
+            if (content.size() == 1 && Files.isDirectory(content.get(0), LinkOption.NOFOLLOW_LINKS)) {
+                return Optional.of(content.get(0));
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Renames the directory over the previous version, which is removed afterwards, or restored if the rename fails.
+     * A directory staged on another file system is first copied next to the target.
+     * @param source Path to the new directory.
+     * @param target Path to the installed directory.
+     * @throws IOException
+     */
+    private static void replaceDirectory(Path source, Path target) throws IOException {
+        String name = target.getFileName().toString();
+        Path previous = null;
+        if (Files.exists(target, LinkOption.NOFOLLOW_LINKS)) {
+            previous = target.resolveSibling("." + name + ".old");
+            FileUtils.deleteDirectory(previous);
+            Files.move(target, previous, StandardCopyOption.ATOMIC_MOVE);
+        }
+        try {
+            try {
+                Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Path temp = target.resolveSibling("." + name + ".tmp");
+                FileUtils.deleteDirectory(temp);
+                FileUtils.copyDirectory(source, temp);
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+                FileUtils.deleteDirectory(source);
+            }
+        } catch (IOException e) {
+            if (previous != null) {
+                Files.move(previous, target, StandardCopyOption.ATOMIC_MOVE);
+            }
+            throw e;
+        }
+        if (previous != null) {
+            FileUtils.deleteDirectory(previous);
+        }
+    }
+
+    /**
+     * Links the executables of the installed directory into {@code ~/.local/bin}. A file already there is kept,
+     * unless it is a link into the same directory or a dangling link into another installed archive.
+     * @param appDir Path to the installed directory.
+     * @return The created links.
+     * @throws IOException
+     */
+    private List<Path> linkExecutables(Path appDir) throws IOException {
+        Path binDir = getInstallDirLocation();
+        Files.createDirectories(binDir);
+        List<Path> links = new ArrayList<>();
+        for (Path executable : findExecutables(appDir)) {
+            String name = executable.getFileName().toString();
+            Path link = binDir.resolve(name);
+            boolean replaceable = isLinkInto(link, appDir)
+                || (isLinkInto(link, getAppsDirLocation()) && !Files.exists(link));
+            if (Files.exists(link, LinkOption.NOFOLLOW_LINKS) && !replaceable) {
+                System.out.println("Not linking " + name + ", " + link + " already exists.");
+                continue;
+            }
+            Path temp = binDir.resolve("." + name + ".link");
+            Files.deleteIfExists(temp);
+            Files.createSymbolicLink(temp, executable);
+            Files.move(temp, link, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            System.out.println("Linked " + link + " to " + executable);
+            links.add(link);
+        }
+        return links;
+    }
+
+    /**
+     * Finds the executables of an installed directory, which are the executables in {@code bin} directories,
+     * otherwise the executables at the top of the directory, otherwise all of them. Shared libraries are skipped.
+     * @param appDir Path to the installed directory.
+     * @return Paths to the executables.
+     * @throws IOException
+     */
+    private static List<Path> findExecutables(Path appDir) throws IOException {
+        Path realAppDir = appDir.toRealPath();
+        List<Path> executables;
+        try (Stream<Path> walk = Files.walk(appDir)) {
+            executables = walk
+                .filter(path -> !SHARED_LIBRARY.matcher(path.getFileName().toString()).find())
+                .filter(path -> isExecutableFile(path, realAppDir))
+                .sorted()
+                .toList();
+        }
+        List<Path> inBin = executables.stream()
+            .filter(path -> path.getParent().getFileName().toString().equals(BIN_DIR))
+            .toList();
+        if (!inBin.isEmpty()) {
+            return inBin;
+        }
+        List<Path> topLevel = executables.stream()
+            .filter(path -> path.getParent().equals(appDir))
+            .toList();
+        return topLevel.isEmpty() ? executables : topLevel;
+    }
+
+    /**
+     * @param path Path to a file, or to a link to a file, in an installed directory.
+     * @param realAppDir The real path to the installed directory.
+     * @return true if the path leads to an executable regular file inside the installed directory.
+     */
+    private static boolean isExecutableFile(Path path, Path realAppDir) {
+        try {
+            return Files.isRegularFile(path)
+                && Files.getPosixFilePermissions(path).contains(PosixFilePermission.OWNER_EXECUTE)
+                && path.toRealPath().startsWith(realAppDir);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param link Path to a file in {@code ~/.local/bin}.
+     * @param dir Path to a directory.
+     * @return true if the file is a symbolic link to a path inside the directory.
+     */
+    private static boolean isLinkInto(Path link, Path dir) {
+        try {
+            return Files.isSymbolicLink(link) && Files.readSymbolicLink(link).startsWith(dir);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Stages downloads next to the application data when it shares the file system with {@code ~/.local/bin},
+     * otherwise in a hidden directory inside {@code ~/.local/bin}.
+     */
+    @Override
+    public Path getStagingDirLocation() {
+        Path staging = super.getStagingDirLocation();
+        try {
+            FileStore installStore = Files.getFileStore(existingAncestor(getInstallDirLocation()));
+            if (Files.getFileStore(existingAncestor(staging)).equals(installStore)) {
+                return staging;
+            }
+        } catch (IOException e) {
+            System.out.println("Failed to compare file systems: " + e.getMessage());
+        }
+        return getInstallDirLocation().resolve("." + APP_DATA_DIR + "-" + STAGING_DIR);
+    }
+
+    /**
+     * @return Path to the directory archives are installed to, each to a directory of its own.
+     */
+    private Path getAppsDirLocation() {
+        return getReleasesListDirLocation().resolve(APPS_DIR);
+    }
+
+    /**
+     * @return Path to the directory the applications are installed to.
+     */
+    private Path getInstallDirLocation() {
+        return Paths.get(System.getProperty("user.home"), ".local", "bin");
+    }
+
+    /**
+     * @param path Path to a file which may not exist yet.
+     * @return The nearest existing directory containing the path.
+     */
+    private static Path existingAncestor(Path path) {
+        Path existing = path.toAbsolutePath();
+        while (!Files.exists(existing) && existing.getParent() != null) {
+            existing = existing.getParent();
+        }
+        return existing;
+    }
+
+    /**
+     * Removes the installed file, or the directory of an installed archive together with its links in
+     * {@code ~/.local/bin}.
+     */
     @Override
     public void uninstall(Path asset) {
+        if (Files.isDirectory(asset, LinkOption.NOFOLLOW_LINKS) && asset.startsWith(getAppsDirLocation())) {
+            try {
+                if (Files.isDirectory(getInstallDirLocation())) {
+                    try (Stream<Path> links = Files.list(getInstallDirLocation())) {
+                        for (Path link : links.filter(link -> isLinkInto(link, asset)).toList()) {
+                            Files.delete(link);
+                        }
+                    }
+                }
+                FileUtils.deleteDirectory(asset);
+            } catch (IOException e) {
+                System.out.println("Failed to uninstall: " + e.getMessage());
+            }
+            return;
+        }
         if (Files.isRegularFile(asset)) {
             try {
                 Files.deleteIfExists(asset);
@@ -72,7 +365,7 @@ public final class LinuxHandler extends PlatformHandler {
 
     @Override
     public String[] getFormats() {
-        return new String[] { ".appimage" };
+        return new String[] { ".appimage", ".tar.gz", ".tgz", ".tar.xz", ".txz", ".zip" };
     }
 
 
@@ -11,8 +11,6 @@ public final class Platform {
         WINDOWS, LINUX, MAC
     }
     /**
-     * ARCHITECTURE CHECK IS NOT YET SUPPORTED
-     * 
      * Enum representing the supported architectures.
      */
     public enum Architecture {
@@ -47,8 +45,6 @@ public final class Platform {
     }
 
     /**
-     * ARCHITECTURE CHECK IS NOT YET SUPPORTED
-     * 
      * Detects the current architecture.
      * @return the detected architecture
      */
@@ -57,7 +53,7 @@ public final class Platform {
         if (architecture.contains("x86_64") || architecture.contains("amd64")) {
             return Architecture.X86_64; 
         }
-        else if (architecture.contains("x86")) {
+        else if (architecture.contains("x86") || architecture.matches("i[3-6]86")) {
             return Architecture.X86_32;
         } else if (architecture.contains("arm")) {
             return Architecture.ARM_32;
@@ -77,9 +73,7 @@ public final class Platform {
     }
 
     /**
-     * ARCHITECTURE CHECK IS NOT YET SUPPORTED
-     * 
-     * Returns the current architecture.
+     * Returns the current architecture, which decides the assets suitable for installation.
      * @return the architecture
      */
     public Architecture getArchitecture() {
@@ -12,6 +12,7 @@ import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 
 import cz.cuni.mff.releasemanager.types.ReleaseInfo;
 import cz.cuni.mff.releasemanager.types.ReleasesList;
+import cz.cuni.mff.releasemanager.types.Settings;
 import cz.cuni.mff.releasemanager.utils.FileUtils;
 
 /**
@@ -24,6 +25,10 @@ public abstract class PlatformHandler {
         .enable(SerializationFeature.INDENT_OUTPUT);
     protected static final String RELEASES_LIST_FILE = "releases.json";
     protected static final String APP_DATA_DIR = "github-release-manager";
+    protected static final String CACHE_DIR = "cache";
+    protected static final String STAGING_DIR = "staging";
+    protected static final String PREFETCH_DIR = "prefetch";
+    protected static final String SETTINGS_FILE = "config.json";
     /**
      * * Installs the asset.
      * @param asset Path to the asset to install.
@@ -56,6 +61,46 @@ public abstract class PlatformHandler {
         return getReleasesListDirLocation().resolve(RELEASES_LIST_FILE);
     }
 
+    /**
+     * @return Path to the directory where cached data received from Github is stored.
+     */
+    public Path getCacheDirLocation() {
+        return getReleasesListDirLocation().resolve(CACHE_DIR);
+    }
+
+    /**
+     * @return Path to the directory where assets are downloaded before installation.
+     * It should lie on the file system of the installation directory, so the installation is a rename.
+     */
+    public Path getStagingDirLocation() {
+        return getReleasesListDirLocation().resolve(STAGING_DIR);
+    }
+
+    /**
+     * @return Path to the directory where updates downloaded ahead of time wait for installation,
+     * next to the staging directories so that they are installed by a rename as well.
+     */
+    public Path getPrefetchDirLocation() {
+        return getStagingDirLocation().resolve(PREFETCH_DIR);
+    }
+
+    /**
+     * Loads the user settings from the config file in the application data directory.
+     * @return The settings, or the defaults if the file does not exist or cannot be read.
+     */
+    public Settings loadSettings() {
+        Path settingsFile = getReleasesListDirLocation().resolve(SETTINGS_FILE);
+        if (!Files.exists(settingsFile)) {
+            return Settings.DEFAULT;
+        }
+        try {
+            return mapper.readValue(settingsFile.toFile(), Settings.class);
+        } catch (IOException e) {
+            System.out.println("Failed to read settings, using defaults: " + e.getMessage());
+            return Settings.DEFAULT;
+        }
+    }
+
     /**
      * Adds a release to the list of installed releases.
      * If file does not exist, it creates a new one.
@@ -85,6 +130,17 @@ public abstract class PlatformHandler {
         mapper.writeValue(releasesFile.toFile(), new ReleasesList(currentReleases));
     }
 
+    /**
+     * Replaces the list of installed releases with the given one in a single write.
+     * If file does not exist, it creates a new one.
+     * @param releasesList ReleasesList object containing all installed releases.
+     * @throws IOException
+     */
+    public void saveReleasesList(ReleasesList releasesList) throws IOException {
+        createReleasesListFile();
+        mapper.writeValue(getReleasesListFileLocation().toFile(), releasesList);
+    }
+
     /**
      * Loads the list of installed releases from the config file.
      * @return ReleasesList object containing the list of installed releases.
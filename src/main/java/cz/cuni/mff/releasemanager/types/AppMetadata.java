@@ -0,0 +1,16 @@
+package cz.cuni.mff.releasemanager.types;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+/**
+ * Represents the metadata of an installed application, read from its desktop entry and AppStream file.
+ * @param name The name of the application, or null if unknown.
+ * @param version The version of the application, or null if unknown.
+ * @param summary A short description of the application, or null if unknown.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record AppMetadata(
+    String name,
+    String version,
+    String summary
+) {}
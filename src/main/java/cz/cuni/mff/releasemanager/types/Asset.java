@@ -1,14 +1,130 @@
 package cz.cuni.mff.releasemanager.types;
 
+import java.time.Instant;
+
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
 
 /**
  * Represents an asset of a Github release.
  * @param url The URL of the asset.
  * @param name The name of the asset.
+ * @param browserDownloadUrl The public download URL of the asset, which is the same for the REST and GraphQL APIs.
+ * @param digest The digest of the asset published by Github, e.g. {@code sha256:...}, or null if unknown.
+ * @param checksumUrl The URL of a checksum file published in the same release, such as {@code SHA256SUMS},
+ * or null if there is none.
+ * @param zsyncUrl The URL of the zsync control file of the asset published in the same release, or null if there is none.
+ * @param size The size of the asset in bytes, or 0 if unknown.
+ * @param contentType The media type of the asset, or null if unknown.
+ * @param updatedAt The time the asset was last uploaded, which changes when it is replaced in place, or null if unknown.
+ * @param releaseId The id of the release the asset belongs to, or 0 if unknown.
+ * @param releaseTag The tag of the release the asset belongs to, or null if unknown.
  */
 @JsonIgnoreProperties(ignoreUnknown = true)
 public record Asset(
     String url,
-    String name
-) {}
+    String name,
+    @JsonProperty("browser_download_url") String browserDownloadUrl,
+    String digest,
+    @JsonProperty("checksum_url") String checksumUrl,
+    @JsonProperty("zsync_url") String zsyncUrl,
+    long size,
+    @JsonProperty("content_type") String contentType,
+    @JsonProperty("updated_at") Instant updatedAt,
+    @JsonProperty("release_id") long releaseId,
+    @JsonProperty("release_tag") String releaseTag
+) {
+    /**
+     * Creates an asset without a known public download URL.
+     * @param url The URL of the asset.
+     * @param name The name of the asset.
+     */
+    public Asset(String url, String name) {
+        this(url, name, null);
+    }
+
+    /**
+     * Creates an asset without a known checksum.
+     * @param url The URL of the asset.
+     * @param name The name of the asset.
+     * @param browserDownloadUrl The public download URL of the asset.
+     */
+    public Asset(String url, String name, String browserDownloadUrl) {
+        this(url, name, browserDownloadUrl, null, null, null);
+    }
+
+    /**
+     * Creates an asset without its size, upload time and release.
+     * @param url The URL of the asset.
+     * @param name The name of the asset.
+     * @param browserDownloadUrl The public download URL of the asset.
+     * @param digest The digest of the asset published by Github, or null if unknown.
+     * @param checksumUrl The URL of a checksum file published in the same release, or null if there is none.
+     * @param zsyncUrl The URL of the zsync control file of the asset, or null if there is none.
+     */
+    public Asset(String url, String name, String browserDownloadUrl, String digest, String checksumUrl, String zsyncUrl) {
+        this(url, name, browserDownloadUrl, digest, checksumUrl, zsyncUrl, 0, null, null, 0, null);
+    }
+
+    /**
+     * @param checksumUrl The URL of the checksum file covering this asset.
+     * @return A copy of this asset with the checksum file.
+     */
+    public Asset withChecksumUrl(String checksumUrl) {
+        return new Asset(url, name, browserDownloadUrl, digest, checksumUrl, zsyncUrl, size, contentType, updatedAt,
+            releaseId, releaseTag);
+    }
+
+    /**
+     * @param zsyncUrl The URL of the zsync control file of this asset.
+     * @return A copy of this asset with the zsync control file.
+     */
+    public Asset withZsyncUrl(String zsyncUrl) {
+        return new Asset(url, name, browserDownloadUrl, digest, checksumUrl, zsyncUrl, size, contentType, updatedAt,
+            releaseId, releaseTag);
+    }
+
+    /**
+     * @param id The id of the release the asset belongs to.
+     * @param tag The tag of the release the asset belongs to.
+     * @return A copy of this asset with the release.
+     */
+    public Asset withRelease(long id, String tag) {
+        return new Asset(url, name, browserDownloadUrl, digest, checksumUrl, zsyncUrl, size, contentType, updatedAt,
+            id, tag);
+    }
+
+    /**
+     * Checks whether the other asset is the same file of the same release.
+     * The public download URLs are compared when both are known, since the API URLs differ between the REST and GraphQL APIs.
+     * @param other The asset to compare with.
+     * @return true if both assets refer to the same file.
+     */
+    public boolean isSameAs(Asset other) {
+        if (browserDownloadUrl != null && other.browserDownloadUrl() != null) {
+            return browserDownloadUrl.equals(other.browserDownloadUrl());
+        }
+        return url.equals(other.url());
+    }
+
+    /**
+     * Checks whether the other asset has the same content as this one, without downloading either.
+     * The digests are compared when both are known, so an identical file republished under a new release counts
+     * as unchanged. Otherwise the assets must be the same file, not replaced in place since, which is
+     * detected by a different upload time or size.
+     * @param other The asset to compare with.
+     * @return true if the content of both assets is the same.
+     */
+    public boolean hasSameContentAs(Asset other) {
+        if (digest != null && other.digest() != null) {
+            return digest.equalsIgnoreCase(other.digest());
+        }
+        if (!isSameAs(other)) {
+            return false;
+        }
+        if (updatedAt != null && other.updatedAt() != null && !updatedAt.equals(other.updatedAt())) {
+            return false;
+        }
+        return size == 0 || other.size() == 0 || size == other.size();
+    }
+}
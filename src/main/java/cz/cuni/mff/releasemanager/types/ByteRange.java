@@ -0,0 +1,18 @@
+package cz.cuni.mff.releasemanager.types;
+
+/**
+ * Represents a range of bytes of a file.
+ * @param start The offset of the first byte.
+ * @param end The offset after the last byte (exclusive).
+ */
+public record ByteRange(
+    long start,
+    long end
+) {
+    /**
+     * @return The number of bytes in the range.
+     */
+    public long length() {
+        return end - start;
+    }
+}
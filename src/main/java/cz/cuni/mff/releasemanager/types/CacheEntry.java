@@ -0,0 +1,24 @@
+package cz.cuni.mff.releasemanager.types;
+
+import java.time.Instant;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Represents the metadata of a cached Github API response.
+ * This record class is used to serialize the validators of a response so it can be revalidated with a conditional request.
+ * @param uri The requested URI.
+ * @param etag The value of the {@code ETag} header, or null if the response had none.
+ * @param lastModified The value of the {@code Last-Modified} header, or null if the response had none.
+ * @param link The value of the {@code Link} header with the pagination links, or null if the response had none.
+ * @param storedAt The timestamp when the response was last stored or revalidated.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record CacheEntry(
+    String uri,
+    String etag,
+    @JsonProperty("last_modified") String lastModified,
+    String link,
+    @JsonProperty("stored_at") Instant storedAt
+) {}
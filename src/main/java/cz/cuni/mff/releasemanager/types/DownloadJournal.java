@@ -0,0 +1,25 @@
+package cz.cuni.mff.releasemanager.types;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Represents the state of an interrupted download.
+ * This record class is used to serialize the sidecar file stored next to a {@code .part} file,
+ * so that the download can be resumed with a range request validated by {@code If-Range}.
+ * @param url The requested URL.
+ * @param etag The {@code ETag} of the downloaded resource, or null if the server sent none.
+ * @param lastModified The {@code Last-Modified} date of the downloaded resource, or null if the server sent none.
+ * @param size The total size of the resource in bytes.
+ * @param received The ranges of bytes already written to the {@code .part} file.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record DownloadJournal(
+    String url,
+    String etag,
+    @JsonProperty("last_modified") String lastModified,
+    long size,
+    List<ByteRange> received
+) {}
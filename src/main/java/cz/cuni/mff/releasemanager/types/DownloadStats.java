@@ -0,0 +1,15 @@
+package cz.cuni.mff.releasemanager.types;
+
+/**
+ * Represents the current state of the downloads.
+ * @param bytesPerSecond The recent download throughput.
+ * @param totalBytes The number of bytes downloaded since the start.
+ * @param activeConnections The number of requests currently downloading.
+ * @param concurrencyLimit The number of requests allowed to download at once.
+ */
+public record DownloadStats(
+    long bytesPerSecond,
+    long totalBytes,
+    int activeConnections,
+    int concurrencyLimit
+) {}
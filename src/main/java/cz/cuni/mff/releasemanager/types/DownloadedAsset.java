@@ -0,0 +1,13 @@
+package cz.cuni.mff.releasemanager.types;
+
+import java.nio.file.Path;
+
+/**
+ * Represents a downloaded and verified asset.
+ * @param file The path to the downloaded file.
+ * @param sha256 The lowercase hex SHA-256 of the file, computed while it was written.
+ */
+public record DownloadedAsset(
+    Path file,
+    String sha256
+) {}
@@ -0,0 +1,47 @@
+package cz.cuni.mff.releasemanager.types;
+
+import java.time.Instant;
+import java.util.Objects;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Represents an update downloaded ahead of time, waiting to replace an installed release.
+ * This record class is used to serialize the entries of the prefetch manifest.
+ * @param replaces The installed release the update replaces.
+ * @param asset The asset of the newer release.
+ * @param file The path to the downloaded asset.
+ * @param sha256 The lowercase hex SHA-256 of the downloaded asset.
+ * @param prefetchedAt The timestamp when the asset was downloaded.
+ * @param stamp The size and modification time of the asset when it last matched its hash, or null if unknown.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record PrefetchedUpdate(
+    ReleaseInfo replaces,
+    Asset asset,
+    String file,
+    String sha256,
+    @JsonProperty("prefetched_at") Instant prefetchedAt,
+    StoredAsset stamp
+) {
+    /**
+     * Checks whether the update was prefetched for the given installed release.
+     * A release installed or updated since the prefetch has another installation time, so the update is stale.
+     * @param release The installed release.
+     * @return true if the update replaces exactly this installation of the release.
+     */
+    public boolean isFor(ReleaseInfo release) {
+        return replaces.repo().equals(release.repo())
+            && Objects.equals(replaces.installedAt(), release.installedAt())
+            && Objects.equals(replaces.uninstallPath(), release.uninstallPath());
+    }
+
+    /**
+     * @param stamp The size and modification time of the asset, whose content was just verified.
+     * @return The update with the given stamp.
+     */
+    public PrefetchedUpdate withStamp(StoredAsset stamp) {
+        return new PrefetchedUpdate(replaces, asset, file, sha256, prefetchedAt, stamp);
+    }
+}
@@ -0,0 +1,20 @@
+package cz.cuni.mff.releasemanager.types;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Represents the rate limit budget of one Github API resource (e.g. {@code core} or {@code search}).
+ * This record class is used to persist the budget between runs of the application.
+ * @param limit The maximum number of requests in the current window.
+ * @param remaining The number of requests remaining in the current window.
+ * @param reset The time when the current window resets, in UTC epoch seconds.
+ * @param blockedUntil The time until which no request should be sent because of a {@code Retry-After} header, in UTC epoch seconds.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record RateLimitBudget(
+    long limit,
+    long remaining,
+    long reset,
+    @JsonProperty("blocked_until") long blockedUntil
+) {}
@@ -11,10 +11,38 @@ import com.fasterxml.jackson.annotation.JsonProperty;
  * @param installedAt The timestamp when the release was installed.
  * @param uninstallPath The path to the file for application uninstallation.
  * @param asset The asset installed.
+ * @param sha256 The lowercase hex SHA-256 of the file at the uninstall path when it was installed,
+ * or null if it is not a regular file or the release was installed by an older version.
+ * @param metadata The name, version and summary read from the installed AppImage, or null if they are unknown.
+ * @param assetPattern A regular expression matching the name of the installed asset in later releases,
+ * or null if the release was installed by an older version.
  */
 public record ReleaseInfo(
     String repo,
     @JsonProperty("installed_at") Instant installedAt,
     @JsonProperty("uninstall_path") String uninstallPath,
-    Asset asset
-) {}
+    Asset asset,
+    String sha256,
+    AppMetadata metadata,
+    @JsonProperty("asset_pattern") String assetPattern
+) {
+    /**
+     * Creates the information about an installed release without the digest and the metadata of the installed file
+     * and without the asset pattern.
+     * @param repo The name of the repository where the release is installed.
+     * @param installedAt The timestamp when the release was installed.
+     * @param uninstallPath The path to the file for application uninstallation.
+     * @param asset The asset installed.
+     */
+    public ReleaseInfo(String repo, Instant installedAt, String uninstallPath, Asset asset) {
+        this(repo, installedAt, uninstallPath, asset, null, null, null);
+    }
+
+    /**
+     * @param metadata The metadata read from the installed AppImage.
+     * @return A copy of this release with the metadata.
+     */
+    public ReleaseInfo withMetadata(AppMetadata metadata) {
+        return new ReleaseInfo(repo, installedAt, uninstallPath, asset, sha256, metadata, assetPattern);
+    }
+}
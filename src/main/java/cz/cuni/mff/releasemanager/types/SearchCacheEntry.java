@@ -0,0 +1,20 @@
+package cz.cuni.mff.releasemanager.types;
+
+import java.time.Instant;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Represents a cached result of a repository search.
+ * This record class is used to persist the search cache between runs of the application.
+ * @param query The normalized search query.
+ * @param result The result of the search.
+ * @param storedAt The timestamp when the result was received from Github.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record SearchCacheEntry(
+    String query,
+    SearchResult result,
+    @JsonProperty("stored_at") Instant storedAt
+) {}
@@ -2,14 +2,33 @@ package cz.cuni.mff.releasemanager.types;
 
 import java.util.List;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 /**
  * Represents the result of a repository search query on Github.
  * @param items The list of repositories returned by the search query.
+ * @param totalCount The number of repositories matching the query, or null if unknown.
  */
 @JsonIgnoreProperties(ignoreUnknown = true)
 public record SearchResult(
-    @JsonProperty("items") List<Repo> items
-) {}
\ No newline at end of file
+    @JsonProperty("items") List<Repo> items,
+    @JsonProperty("total_count") Integer totalCount
+) {
+    /**
+     * Creates a search result without the total count.
+     * @param items The list of repositories returned by the search query.
+     */
+    public SearchResult(List<Repo> items) {
+        this(items, null);
+    }
+
+    /**
+     * @return true if the items contain all repositories matching the query.
+     */
+    @JsonIgnore
+    public boolean isComplete() {
+        return totalCount != null && items != null && totalCount <= items.size();
+    }
+}
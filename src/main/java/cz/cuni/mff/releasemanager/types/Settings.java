@@ -0,0 +1,63 @@
+package cz.cuni.mff.releasemanager.types;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Represents the user settings of the application.
+ * This record class is used to deserialize the optional {@code config.json} file in the application data directory.
+ * Settings missing in the file get their default values.
+ * @param maxRetries How many times a failed request is retried.
+ * @param retryBaseDelayMillis The delay before the first retry in milliseconds, doubled with every further retry.
+ * @param retryMaxDelayMillis The upper bound of the delay between retries in milliseconds.
+ * @param breakerFailureThreshold The number of consecutive failures after which requests to a host fail fast.
+ * @param breakerOpenSeconds How long requests to a failing host fail fast before it is tried again.
+ * @param tokens Github tokens used in addition to the ones in the environment.
+ * @param searchCacheTtlSeconds How long the result of a search is reused without asking Github again.
+ * @param assetStoreDir The directory of the downloaded assets store, or null for the cache directory.
+ * It may be shared by several users or machines.
+ * @param assetStoreMaxMegabytes The size of the asset store above which the least recently used assets are removed.
+ * @param maxDownloadKilobytesPerSecond The bandwidth cap shared by all downloads in KiB/s, 0 for no cap.
+ * @param maxDownloadConnections The maximum number of connections all downloads may use at once.
+ * @param maxConnectionsPerHost The maximum number of download connections to a single host.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record Settings(
+    @JsonProperty("max_retries") Integer maxRetries,
+    @JsonProperty("retry_base_delay_ms") Long retryBaseDelayMillis,
+    @JsonProperty("retry_max_delay_ms") Long retryMaxDelayMillis,
+    @JsonProperty("breaker_failure_threshold") Integer breakerFailureThreshold,
+    @JsonProperty("breaker_open_seconds") Long breakerOpenSeconds,
+    List<String> tokens,
+    @JsonProperty("search_cache_ttl_seconds") Long searchCacheTtlSeconds,
+    @JsonProperty("asset_store_dir") String assetStoreDir,
+    @JsonProperty("asset_store_max_mb") Long assetStoreMaxMegabytes,
+    @JsonProperty("max_download_kbps") Long maxDownloadKilobytesPerSecond,
+    @JsonProperty("max_download_connections") Integer maxDownloadConnections,
+    @JsonProperty("max_connections_per_host") Integer maxConnectionsPerHost
+) {
+    /**
+     * The settings used when there is no config file.
+     */
+    public static final Settings DEFAULT = new Settings(null, null, null, null, null, null, null, null, null,
+        null, null, null);
+
+    /**
+     * Replaces the settings missing in the config file with their defaults.
+     */
+    public Settings {
+        maxRetries = maxRetries == null ? 3 : maxRetries;
+        retryBaseDelayMillis = retryBaseDelayMillis == null ? 500L : retryBaseDelayMillis;
+        retryMaxDelayMillis = retryMaxDelayMillis == null ? 8000L : retryMaxDelayMillis;
+        breakerFailureThreshold = breakerFailureThreshold == null ? 5 : breakerFailureThreshold;
+        breakerOpenSeconds = breakerOpenSeconds == null ? 30L : breakerOpenSeconds;
+        tokens = tokens == null ? List.of() : List.copyOf(tokens);
+        searchCacheTtlSeconds = searchCacheTtlSeconds == null ? 600L : searchCacheTtlSeconds;
+        assetStoreMaxMegabytes = assetStoreMaxMegabytes == null ? 2048L : assetStoreMaxMegabytes;
+        maxDownloadKilobytesPerSecond = maxDownloadKilobytesPerSecond == null ? 0L : maxDownloadKilobytesPerSecond;
+        maxDownloadConnections = maxDownloadConnections == null ? 8 : maxDownloadConnections;
+        maxConnectionsPerHost = maxConnectionsPerHost == null ? 6 : maxConnectionsPerHost;
+    }
+}
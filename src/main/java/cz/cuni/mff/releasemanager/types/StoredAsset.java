@@ -0,0 +1,26 @@
+package cz.cuni.mff.releasemanager.types;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Represents a stored file as it was when its content was last known to match its hash.
+ * @param size The size of the file in bytes.
+ * @param modified The modification time of the file in milliseconds since the epoch.
+ */
+public record StoredAsset(
+    long size,
+    long modified
+) {
+    /**
+     * @param file Path to a stored file.
+     * @return The current size and modification time of the file.
+     * @throws IOException if the attributes of the file cannot be read
+     */
+    public static StoredAsset of(Path file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        return new StoredAsset(attributes.size(), attributes.lastModifiedTime().toMillis());
+    }
+}
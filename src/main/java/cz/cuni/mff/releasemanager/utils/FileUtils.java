@@ -1,39 +1,26 @@
 package cz.cuni.mff.releasemanager.utils;
 
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileStore;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 /**
  * Utility class for file operations.
  */
 public class FileUtils {
-    /**
-     * Saves an InputStream to a file with the given filename in the "releases" directory.
-     * @param stream
-     * @param filename
-     * @return
-    */
-    public static Path saveInputStreamToFile(InputStream stream, String filename) {
-        Path dir;
-        try {
-            dir = createDirectory("releases");
-        } catch (IOException ex) {
-            return null;
-        }
-        Path destination = dir.resolve(filename);
-        try {
-            Files.copy(stream, destination, StandardCopyOption.REPLACE_EXISTING);
-        } catch (IOException e) {
-            return null;
-        }
-        return destination.toAbsolutePath();
-    }
+    // file systems on which cp could not clone a file
+    private static final Set<FileStore> noClones = ConcurrentHashMap.newKeySet();
     /**
      * Creates a directory with the given name if it does not already exist.
      * @param directoryName
@@ -60,6 +47,107 @@ public class FileUtils {
         return matcher.find() ? matcher.group().toLowerCase() : "";
     }
 
+    /**
+     * Creates a hard link to the source, or a copy if the file system does not allow the link.
+     * @param source Path to the existing file.
+     * @param target Path to the new file, which must not exist.
+     * @throws IOException
+     */
+    public static void linkOrCopy(Path source, Path target) throws IOException {
+        try {
+            Files.createLink(target, source);
+        } catch (FileAlreadyExistsException e) {
+            throw e;
+        } catch (IOException | UnsupportedOperationException e) {
+            // another file system, or links are not supported
+            Files.copy(source, target);
+        }
+    }
+
+    /**
+     * Creates a copy-on-write clone of the source (a reflink), which shares the data with the source but not
+     * its inode, so changing either file leaves the other one intact. A hard link is created if the file
+     * system cannot clone files, and a copy if it cannot link them either. Files are cloned by
+     * {@code cp --reflink=always}, which is not tried again on a file system where it failed.
+     * @param source Path to the existing file.
+     * @param target Path to the new file, which must not exist.
+     * @throws IOException
+     */
+    public static void cloneOrLink(Path source, Path target) throws IOException {
+        if (Files.exists(target, LinkOption.NOFOLLOW_LINKS)) {
+            throw new FileAlreadyExistsException(target.toString());
+        }
+        FileStore store = Files.getFileStore(source);
+        // a clone cannot leave its file system
+        if (store.equals(Files.getFileStore(target.toAbsolutePath().getParent())) && !noClones.contains(store)) {
+            if (clone(source, target)) {
+                return;
+            }
+            noClones.add(store);
+        }
+        linkOrCopy(source, target);
+    }
+
+    /**
+     * Clones the file with {@code cp}.
+     * @param source Path to the existing file.
+     * @param target Path to the new file, which must not exist.
+     * @return true if the file was cloned, false if {@code cp} is missing or the file system cannot clone files.
+     * @throws IOException if a partial target cannot be removed
+     */
+    private static boolean clone(Path source, Path target) throws IOException {
+        try {
+            Process process = new ProcessBuilder("cp", "--reflink=always", source.toString(), target.toString())
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+            if (process.waitFor() == 0) {
+                return true;
+            }
+        } catch (IOException e) {
+            // no cp, e.g. on Windows
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Files.deleteIfExists(target);
+        return false;
+    }
+
+    /**
+     * Copies the directory with all its content, keeping the attributes of the files and copying links as links.
+     * @param source Path to the directory.
+     * @param target Path to the new directory, which must not exist.
+     * @throws IOException
+     */
+    public static void copyDirectory(Path source, Path target) throws IOException {
+        try (Stream<Path> walk = Files.walk(source)) {
+            for (Path path : walk.toList()) {
+                Path copy = target.resolve(source.relativize(path).toString());
+                if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                    Files.createDirectories(copy);
+                } else {
+                    Files.copy(path, copy, StandardCopyOption.COPY_ATTRIBUTES, LinkOption.NOFOLLOW_LINKS);
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes the directory with all its content, if it exists.
+     * @param dir Path to the directory.
+     * @throws IOException
+     */
+    public static void deleteDirectory(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> walk = Files.walk(dir)) {
+            for (Path path : walk.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
     /**
      * Removes the parent temporary directory if it is empty.
      * @param file Path to the file
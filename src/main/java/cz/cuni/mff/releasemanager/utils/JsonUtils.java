@@ -0,0 +1,34 @@
+package cz.cuni.mff.releasemanager.utils;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import cz.cuni.mff.releasemanager.types.Release;
+import cz.cuni.mff.releasemanager.types.SearchResult;
+
+/**
+ * Utility class holding the shared JSON readers for Github API responses.
+ *
+ * <p>The readers are created once, so the deserializers are built only for the first response.
+ * They bind only the fields declared in {@link Release}, {@link cz.cuni.mff.releasemanager.types.Asset}
+ * and {@link cz.cuni.mff.releasemanager.types.Repo}; all other fields, such as the release notes or
+ * the uploader of an asset, are skipped by the streaming parser without being materialized.</p>
+ */
+public class JsonUtils {
+    /**
+     * The shared mapper for Github API responses, ignoring unknown properties and reading ISO 8601 timestamps.
+     */
+    public static final ObjectMapper MAPPER = new ObjectMapper()
+        .registerModule(new JavaTimeModule())
+        .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    /**
+     * Reader for the response of the latest release endpoint.
+     */
+    public static final ObjectReader RELEASE_READER = MAPPER.readerFor(Release.class);
+    /**
+     * Reader for the response of the repository search endpoint.
+     */
+    public static final ObjectReader SEARCH_RESULT_READER = MAPPER.readerFor(SearchResult.class);
+}
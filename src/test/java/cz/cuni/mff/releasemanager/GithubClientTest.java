@@ -1,30 +1,84 @@
 package cz.cuni.mff.releasemanager;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.lang.reflect.Field;
 import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.GZIPOutputStream;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import cz.cuni.mff.releasemanager.cache.AssetStore;
+import cz.cuni.mff.releasemanager.cache.RepoIndex;
+import cz.cuni.mff.releasemanager.cache.ResponseCache;
+import cz.cuni.mff.releasemanager.cache.SearchCache;
+import cz.cuni.mff.releasemanager.download.Downloader;
+import cz.cuni.mff.releasemanager.download.StagingArea;
+import cz.cuni.mff.releasemanager.http.CircuitBreaker;
+import cz.cuni.mff.releasemanager.http.HttpStatusException;
+import cz.cuni.mff.releasemanager.http.RateLimiter;
+import cz.cuni.mff.releasemanager.http.RateLimiter.Priority;
+import cz.cuni.mff.releasemanager.http.RetryPolicy;
+import cz.cuni.mff.releasemanager.http.TokenPool;
+import cz.cuni.mff.releasemanager.platform.AssetRanker;
+import cz.cuni.mff.releasemanager.platform.AssetRanker.Libc;
+import cz.cuni.mff.releasemanager.platform.Platform.Architecture;
+import cz.cuni.mff.releasemanager.platform.Platform.OS;
 import cz.cuni.mff.releasemanager.platform.PlatformHandler;
 import cz.cuni.mff.releasemanager.types.Asset;
+import cz.cuni.mff.releasemanager.types.CacheEntry;
+import cz.cuni.mff.releasemanager.types.Repo;
 import cz.cuni.mff.releasemanager.types.SearchResult;
+import cz.cuni.mff.releasemanager.utils.FileUtils;
 
 class GithubClientTest {
 
+    private static final HttpHeaders NO_HEADERS = HttpHeaders.of(Map.of(), (name, value) -> true);
+
     private GithubClient githubClient;
     private HttpClient mockHttpClient;
     private PlatformHandler mockPlatformHandler;
+    private ResponseCache mockResponseCache;
+    private RateLimiter mockRateLimiter;
+    private SearchCache mockSearchCache;
+    private RepoIndex mockRepoIndex;
+    private AssetStore mockAssetStore;
+    private Path stagingDir;
 
     @BeforeEach
     void setUp() throws Exception {
@@ -40,10 +94,66 @@ class GithubClientTest {
         Field handlerField = GithubClient.class.getDeclaredField("platformHandler");
         handlerField.setAccessible(true);
         handlerField.set(githubClient, mockPlatformHandler);
+
+        Field rankerField = GithubClient.class.getDeclaredField("assetRanker");
+        rankerField.setAccessible(true);
+        rankerField.set(githubClient, new AssetRanker(OS.LINUX, Architecture.X86_64, Libc.GLIBC));
+
+        mockResponseCache = mock(ResponseCache.class);
+        Field cacheField = GithubClient.class.getDeclaredField("responseCache");
+        cacheField.setAccessible(true);
+        cacheField.set(githubClient, mockResponseCache);
+        when(mockResponseCache.store(any(), any(), any())).thenAnswer(invocation -> invocation.getArgument(2));
+
+        mockRateLimiter = mock(RateLimiter.class);
+        Field rateLimiterField = GithubClient.class.getDeclaredField("rateLimiter");
+        rateLimiterField.setAccessible(true);
+        rateLimiterField.set(githubClient, mockRateLimiter);
+
+        Field retryPolicyField = GithubClient.class.getDeclaredField("retryPolicy");
+        retryPolicyField.setAccessible(true);
+        retryPolicyField.set(githubClient, new RetryPolicy(2, Duration.ZERO, Duration.ZERO));
+
+        mockSearchCache = mock(SearchCache.class);
+        Field searchCacheField = GithubClient.class.getDeclaredField("searchCache");
+        searchCacheField.setAccessible(true);
+        searchCacheField.set(githubClient, mockSearchCache);
+
+        mockRepoIndex = mock(RepoIndex.class);
+        Field repoIndexField = GithubClient.class.getDeclaredField("repoIndex");
+        repoIndexField.setAccessible(true);
+        repoIndexField.set(githubClient, mockRepoIndex);
+
+        mockAssetStore = mock(AssetStore.class);
+        Field assetStoreField = GithubClient.class.getDeclaredField("assetStore");
+        assetStoreField.setAccessible(true);
+        assetStoreField.set(githubClient, mockAssetStore);
+
+        stagingDir = Files.createTempDirectory("github_client_test");
+        Field stagingAreaField = GithubClient.class.getDeclaredField("stagingArea");
+        stagingAreaField.setAccessible(true);
+        stagingAreaField.set(githubClient, new StagingArea(stagingDir));
+
+        setTokens();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        FileUtils.deleteDirectory(stagingDir);
+    }
+
+    private void setTokens(String... tokens) throws Exception {
+        Field tokenPoolField = GithubClient.class.getDeclaredField("tokenPool");
+        tokenPoolField.setAccessible(true);
+        tokenPoolField.set(githubClient, new TokenPool(List.of(tokens)));
+    }
+
+    private InputStream stream(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
     }
 
     @Test
-    void searchRepoByName_returnsSearchResultOnSuccess() throws Exception {
+    void searchRepos_returnsMatchingReposOnSuccess() throws Exception {
         String repoName = "testrepo";
         String json = """
             {
@@ -55,17 +165,262 @@ class GithubClientTest {
               ]
             }
             """;
-        HttpResponse<String> mockResponse = mock(HttpResponse.class);
+        HttpResponse<InputStream> mockResponse = mock(HttpResponse.class);
+        when(mockResponse.statusCode()).thenReturn(200);
+        when(mockResponse.headers()).thenReturn(NO_HEADERS);
+        when(mockResponse.body()).thenReturn(stream(json));
+        when(mockHttpClient.sendAsync(any(HttpRequest.class), eq(HttpResponse.BodyHandlers.ofInputStream())))
+                .thenReturn(CompletableFuture.completedFuture(mockResponse));
+
+        List<Repo> result = githubClient.searchRepos(repoName, 5).toList();
+
+        assertEquals(1, result.size());
+        assertEquals("owner/testrepo", result.get(0).fullName());
+        assertEquals("Test repository", result.get(0).description());
+        verify(mockSearchCache).put(eq(repoName), any(SearchResult.class));
+        verify(mockRepoIndex).add(result);
+    }
+
+    private HttpResponse<InputStream> searchPage(HttpRequest request) {
+        boolean first = !request.uri().getQuery().contains("&page=2");
+        HttpResponse<InputStream> response = mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(200);
+        when(response.headers()).thenReturn(HttpHeaders.of(first
+            ? Map.of("Link", List.of(
+                "<https://api.github.com/search/repositories?q=repo&per_page=2&page=2>; rel=\"next\", "
+                    + "<https://api.github.com/search/repositories?q=repo&per_page=2&page=2>; rel=\"last\""))
+            : Map.of(), (name, value) -> true));
+        when(response.body()).thenReturn(stream(first
+            ? "{ \"total_count\": 3, \"items\": [ { \"full_name\": \"owner/repo1\" }, { \"full_name\": \"owner/repo2\" } ] }"
+            : "{ \"total_count\": 3, \"items\": [ { \"full_name\": \"owner/repo3\" } ] }"));
+        return response;
+    }
+
+    @Test
+    void searchRepos_followsLinkHeader() throws Exception {
+        when(mockHttpClient.sendAsync(any(HttpRequest.class), eq(HttpResponse.BodyHandlers.ofInputStream())))
+                .thenAnswer(invocation -> CompletableFuture.completedFuture(searchPage(invocation.getArgument(0))));
+
+        List<String> all = githubClient.searchRepos("repo", 2).map(Repo::fullName).toList();
+
+        assertEquals(List.of("owner/repo1", "owner/repo2", "owner/repo3"), all);
+        verify(mockHttpClient, times(2)).sendAsync(any(HttpRequest.class), any());
+    }
+
+    @Test
+    void searchRepos_doesNotFetchUnreadPages() throws Exception {
+        when(mockHttpClient.sendAsync(any(HttpRequest.class), eq(HttpResponse.BodyHandlers.ofInputStream())))
+                .thenAnswer(invocation -> CompletableFuture.completedFuture(searchPage(invocation.getArgument(0))));
+
+        List<String> first = githubClient.searchRepos("repo", 2).limit(1).map(Repo::fullName).toList();
+
+        assertEquals(List.of("owner/repo1"), first);
+        verify(mockHttpClient, times(1)).sendAsync(any(HttpRequest.class), any());
+    }
+
+    @Test
+    void installAsset_checksumMismatchAbortsInstall() throws Exception {
+        Downloader mockDownloader = mock(Downloader.class);
+        Field downloaderField = GithubClient.class.getDeclaredField("downloader");
+        downloaderField.setAccessible(true);
+        downloaderField.set(githubClient, mockDownloader);
+        when(mockDownloader.download(any(HttpRequest.class), any(Path.class), anyLong())).thenReturn("0".repeat(64));
+        Asset asset = new Asset("https://example.com/app.exe", "ChecksumTestApp.exe", null, "sha256:" + "f".repeat(64), null, null);
+
+        Path installed = githubClient.installAsset(asset);
+
+        assertNull(installed);
+        verify(mockPlatformHandler, never()).install(any());
+        try (var staged = Files.list(stagingDir)) {
+            assertTrue(staged.findAny().isEmpty());
+        }
+    }
+
+    @Test
+    void installAsset_returnsNullWhenInstallationFails() throws Exception {
+        Downloader mockDownloader = mock(Downloader.class);
+        Field downloaderField = GithubClient.class.getDeclaredField("downloader");
+        downloaderField.setAccessible(true);
+        downloaderField.set(githubClient, mockDownloader);
+        when(mockDownloader.download(any(HttpRequest.class), any(Path.class), anyLong())).thenReturn("0".repeat(64));
+        when(mockPlatformHandler.install(any())).thenThrow(new UncheckedIOException(new IOException("Disk full")));
+        Asset asset = new Asset("https://example.com/app.exe", "FailingApp.exe");
+
+        Path installed = githubClient.installAsset(asset);
+
+        assertNull(installed);
+    }
+
+    @Test
+    void installAsset_unpacksTarballWhileDownloading() throws Exception {
+        Downloader mockDownloader = mock(Downloader.class);
+        Field downloaderField = GithubClient.class.getDeclaredField("downloader");
+        downloaderField.setAccessible(true);
+        downloaderField.set(githubClient, mockDownloader);
+        // an empty archive, just the end-of-archive marker
+        ByteArrayOutputStream tarball = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(tarball)) {
+            gzip.write(new byte[1024]);
+        }
+        when(mockDownloader.stream(any(HttpRequest.class), any())).thenAnswer(invocation -> {
+            invocation.getArgument(1, Downloader.BodyConsumer.class).accept(new ByteArrayInputStream(tarball.toByteArray()));
+            return "0".repeat(64);
+        });
+        when(mockPlatformHandler.install(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        List<byte[]> stored = new ArrayList<>();
+        doAnswer(invocation -> stored.add(Files.readAllBytes(invocation.getArgument(0))))
+            .when(mockAssetStore).put(any(Path.class), eq("0".repeat(64)), eq("https://example.com/tool.tar.gz"));
+        Asset asset = new Asset("https://example.com/tool.tar.gz", "tool-1.0.tar.gz");
+
+        Path installed = githubClient.installAsset(asset);
+
+        assertTrue(Files.isDirectory(installed));
+        assertEquals("tool-1.0", installed.getFileName().toString());
+        verify(mockDownloader, never()).download(any(HttpRequest.class), any(Path.class), anyLong());
+        assertEquals(1, stored.size());
+        assertArrayEquals(tarball.toByteArray(), stored.get(0));
+        assertFalse(Files.exists(installed.resolveSibling("tool-1.0.tar.gz")));
+    }
+
+    @Test
+    void installAsset_restartsTarballStreamAfterFailure() throws Exception {
+        Downloader mockDownloader = mock(Downloader.class);
+        Field downloaderField = GithubClient.class.getDeclaredField("downloader");
+        downloaderField.setAccessible(true);
+        downloaderField.set(githubClient, mockDownloader);
+        ByteArrayOutputStream tarball = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(tarball)) {
+            gzip.write(new byte[1024]);
+        }
+        List<Path> unpacked = new ArrayList<>();
+        when(mockDownloader.stream(any(HttpRequest.class), any()))
+                .thenAnswer(invocation -> {
+                    invocation.getArgument(1, Downloader.BodyConsumer.class).accept(new ByteArrayInputStream(tarball.toByteArray()));
+                    throw new IOException("Connection reset");
+                })
+                .thenAnswer(invocation -> {
+                    invocation.getArgument(1, Downloader.BodyConsumer.class).accept(new ByteArrayInputStream(tarball.toByteArray()));
+                    return "0".repeat(64);
+                });
+        when(mockPlatformHandler.install(any())).thenAnswer(invocation -> {
+            unpacked.add(invocation.getArgument(0));
+            return invocation.getArgument(0);
+        });
+        Asset asset = new Asset("https://example.com/tool.tar.gz", "tool-1.0.tar.gz");
+
+        Path installed = githubClient.installAsset(asset);
+
+        assertTrue(Files.isDirectory(installed));
+        assertEquals(1, unpacked.size());
+        verify(mockDownloader, times(2)).stream(any(HttpRequest.class), any());
+    }
+
+    @Test
+    void downloadAsset_recordsErrorStatusAsAnswerOfHost() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(2, Duration.ofMinutes(1));
+        Field breakerField = GithubClient.class.getDeclaredField("circuitBreaker");
+        breakerField.setAccessible(true);
+        breakerField.set(githubClient, breaker);
+        Downloader mockDownloader = mock(Downloader.class);
+        Field downloaderField = GithubClient.class.getDeclaredField("downloader");
+        downloaderField.setAccessible(true);
+        downloaderField.set(githubClient, mockDownloader);
+        when(mockDownloader.download(any(HttpRequest.class), any(Path.class), anyLong()))
+                .thenThrow(new HttpStatusException(404, "Not Found"));
+        breaker.recordFailure("example.com");
+
+        Path downloaded = githubClient.downloadAsset(new Asset("https://example.com/app.exe", "MissingApp.exe"));
+
+        assertNull(downloaded);
+        verify(mockDownloader, times(1)).download(any(HttpRequest.class), any(Path.class), anyLong());
+        // the 404 reset the failures, so one more failure does not open the breaker
+        breaker.recordFailure("example.com");
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState("example.com"));
+    }
+
+    @Test
+    void downloadAsset_usesStoredAsset() throws Exception {
+        String sha256 = "a".repeat(64);
+        Asset asset = new Asset("https://example.com/app.exe", "StoreTestApp.exe", null, "sha256:" + sha256, null, null);
+        when(mockAssetStore.contains(sha256)).thenReturn(true);
+        when(mockAssetStore.copyTo(eq(sha256), any(Path.class))).thenAnswer(invocation -> invocation.getArgument(1));
+
+        Path downloaded = githubClient.downloadAsset(asset);
+
+        assertEquals("StoreTestApp.exe", downloaded.getFileName().toString());
+        verify(mockHttpClient, never()).sendAsync(any(HttpRequest.class), any());
+        verify(mockAssetStore, never()).put(any(), any(), any());
+    }
+
+    @Test
+    void getLatestReleaseAssets_attachesChecksumFile() throws Exception {
+        String json = """
+            {
+              "assets": [
+                { "name": "app.exe", "url": "https://api.github.com/assets/1" },
+                { "name": "app.exe.sha256", "url": "https://api.github.com/assets/2" }
+              ]
+            }
+            """;
+        HttpResponse<InputStream> mockResponse = mock(HttpResponse.class);
+        when(mockResponse.statusCode()).thenReturn(200);
+        when(mockResponse.body()).thenReturn(stream(json));
+        when(mockPlatformHandler.getFormats()).thenReturn(new String[]{"exe"});
+        when(mockHttpClient.sendAsync(any(HttpRequest.class), eq(HttpResponse.BodyHandlers.ofInputStream())))
+                .thenReturn(CompletableFuture.completedFuture(mockResponse));
+
+        List<Asset> assets = githubClient.getLatestReleaseAssets("owner/repo");
+
+        assertEquals(1, assets.size());
+        assertEquals("https://api.github.com/assets/2", assets.get(0).checksumUrl());
+    }
+
+    @Test
+    void getLatestReleaseAssets_attachesZsyncFile() throws Exception {
+        String json = """
+            {
+              "assets": [
+                { "name": "App-x86_64.AppImage", "url": "https://api.github.com/assets/1" },
+                { "name": "App-x86_64.AppImage.zsync", "url": "https://api.github.com/assets/2" }
+              ]
+            }
+            """;
+        HttpResponse<InputStream> mockResponse = mock(HttpResponse.class);
         when(mockResponse.statusCode()).thenReturn(200);
-        when(mockResponse.body()).thenReturn(json);
-        when(mockHttpClient.send(any(HttpRequest.class), eq(HttpResponse.BodyHandlers.ofString())))
-                .thenReturn(mockResponse);
+        when(mockResponse.body()).thenReturn(stream(json));
+        when(mockPlatformHandler.getFormats()).thenReturn(new String[]{".appimage"});
+        when(mockHttpClient.sendAsync(any(HttpRequest.class), eq(HttpResponse.BodyHandlers.ofInputStream())))
+                .thenReturn(CompletableFuture.completedFuture(mockResponse));
 
-        Optional<SearchResult> result = githubClient.searchRepoByName(repoName);
+        List<Asset> assets = githubClient.getLatestReleaseAssets("owner/repo");
 
-        assertTrue(result.isPresent());
-        assertEquals("owner/testrepo", result.get().items().get(0).fullName());
-        assertEquals("Test repository", result.get().items().get(0).description());
+        assertEquals(1, assets.size());
+        assertEquals("https://api.github.com/assets/2", assets.get(0).zsyncUrl());
+    }
+
+    @Test
+    void getLatestReleaseAssets_ranksAssetsForPlatform() throws Exception {
+        String json = """
+            {
+              "assets": [
+                { "name": "App-aarch64.AppImage", "url": "https://api.github.com/assets/1" },
+                { "name": "App-x86_64.tar.gz", "url": "https://api.github.com/assets/2" },
+                { "name": "App-x86_64.AppImage", "url": "https://api.github.com/assets/3" },
+                { "name": "App-x86_64.AppImage.zsync", "url": "https://api.github.com/assets/4" }
+              ]
+            }
+            """;
+        HttpResponse<InputStream> mockResponse = mock(HttpResponse.class);
+        when(mockResponse.statusCode()).thenReturn(200);
+        when(mockResponse.body()).thenReturn(stream(json));
+        when(mockPlatformHandler.getFormats()).thenReturn(new String[]{".appimage", ".tar.gz"});
+        when(mockHttpClient.sendAsync(any(HttpRequest.class), eq(HttpResponse.BodyHandlers.ofInputStream())))
+                .thenReturn(CompletableFuture.completedFuture(mockResponse));
+
+        List<Asset> assets = githubClient.getLatestReleaseAssets("owner/repo");
+
+        assertEquals(List.of("App-x86_64.AppImage", "App-x86_64.tar.gz"), assets.stream().map(Asset::name).toList());
+        assertEquals("App-x86_64.AppImage", githubClient.pickAsset(assets).orElseThrow().name());
     }
 
     @Test
@@ -73,18 +428,21 @@ class GithubClientTest {
         String repoFullName = "owner/repo";
         String json = """
             {
+              "id": 42,
+              "tag_name": "v1.0",
               "assets": [
-                { "name": "file1.exe", "url": "http://example.com/file1.exe" },
+                { "name": "file1.exe", "url": "http://example.com/file1.exe", "size": 1024,
+                  "content_type": "application/x-msdownload", "updated_at": "2024-05-01T12:00:00Z" },
                 { "name": "file2.msi", "url": "http://example.com/file2.msi" }
               ]
             }
             """;
-        HttpResponse<String> mockResponse = mock(HttpResponse.class);
+        HttpResponse<InputStream> mockResponse = mock(HttpResponse.class);
         when(mockResponse.statusCode()).thenReturn(200);
-        when(mockResponse.body()).thenReturn(json);
+        when(mockResponse.body()).thenReturn(stream(json));
         when(mockPlatformHandler.getFormats()).thenReturn(new String[]{"exe", "msi"});
-        when(mockHttpClient.send(any(HttpRequest.class), eq(HttpResponse.BodyHandlers.ofString())))
-                .thenReturn(mockResponse);
+        when(mockHttpClient.sendAsync(any(HttpRequest.class), eq(HttpResponse.BodyHandlers.ofInputStream())))
+                .thenReturn(CompletableFuture.completedFuture(mockResponse));
 
         List<Asset> assets = githubClient.getLatestReleaseAssets(repoFullName);
 
@@ -93,6 +451,216 @@ class GithubClientTest {
         assertEquals("file2.msi", assets.get(1).name());
         assertEquals("http://example.com/file1.exe", assets.get(0).url());
         assertEquals("http://example.com/file2.msi", assets.get(1).url());
+        assertEquals(1024, assets.get(0).size());
+        assertEquals("application/x-msdownload", assets.get(0).contentType());
+        assertEquals(Instant.parse("2024-05-01T12:00:00Z"), assets.get(0).updatedAt());
+        assertEquals(42, assets.get(1).releaseId());
+        assertEquals("v1.0", assets.get(1).releaseTag());
+    }
+
+    @Test
+    void searchRepos_returnsCachedBodyOnNotModified() throws Exception {
+        String json = """
+            { "items": [ { "full_name": "owner/cached", "description": "Cached repository" } ] }
+            """;
+        CacheEntry entry = new CacheEntry("uri", "\"etag\"", null, null, Instant.now());
+        when(mockResponseCache.get(any(URI.class))).thenReturn(Optional.of(entry));
+        when(mockResponseCache.openBody(any(URI.class))).thenReturn(Optional.of(stream(json)));
+        HttpResponse<InputStream> mockResponse = mock(HttpResponse.class);
+        when(mockResponse.statusCode()).thenReturn(304);
+        when(mockResponse.body()).thenReturn(stream(""));
+        when(mockHttpClient.sendAsync(any(HttpRequest.class), eq(HttpResponse.BodyHandlers.ofInputStream())))
+                .thenReturn(CompletableFuture.completedFuture(mockResponse));
+
+        List<Repo> result = githubClient.searchRepos("cached", 5).toList();
+
+        assertEquals("owner/cached", result.get(0).fullName());
+        verify(mockResponseCache).touch(entry);
+        verify(mockResponseCache, never()).store(any(), any(), any());
+    }
+
+    @Test
+    void searchRepos_usesSearchCache() throws Exception {
+        SearchResult cached = new SearchResult(List.of(new Repo("owner/cached", "Cached repository")), 1);
+        when(mockSearchCache.get("cached")).thenReturn(Optional.of(cached));
+
+        List<Repo> result = githubClient.searchRepos("cached", 5).toList();
+
+        assertEquals(cached.items(), result);
+        verify(mockHttpClient, never()).sendAsync(any(HttpRequest.class), any());
+    }
+
+    @Test
+    void searchRepos_offlineUsesCacheWithoutNetwork() throws Exception {
+        String json = """
+            { "items": [ { "full_name": "owner/cached", "description": "Cached repository" } ] }
+            """;
+        CacheEntry entry = new CacheEntry("uri", "\"etag\"", null, null, Instant.now());
+        when(mockResponseCache.get(any(URI.class))).thenReturn(Optional.of(entry));
+        when(mockResponseCache.openBody(any(URI.class))).thenReturn(Optional.of(stream(json)));
+        githubClient.setOffline(true);
+
+        List<Repo> result = githubClient.searchRepos("cached", 5).toList();
+
+        assertEquals("owner/cached", result.get(0).fullName());
+        verify(mockHttpClient, never()).sendAsync(any(HttpRequest.class), any());
+    }
+
+    @Test
+    void searchRepos_retriesAfterRateLimit() throws Exception {
+        String json = """
+            { "items": [ { "full_name": "owner/repo", "description": "Repository" } ] }
+            """;
+        HttpResponse<InputStream> limitedResponse = mock(HttpResponse.class);
+        when(limitedResponse.statusCode()).thenReturn(403);
+        when(limitedResponse.body()).thenReturn(stream(""));
+        when(limitedResponse.headers()).thenReturn(HttpHeaders.of(
+            Map.of("X-RateLimit-Remaining", List.of("0"), "X-RateLimit-Reset", List.of("1")), (n, v) -> true));
+        HttpResponse<InputStream> mockResponse = mock(HttpResponse.class);
+        when(mockResponse.statusCode()).thenReturn(200);
+        when(mockResponse.headers()).thenReturn(NO_HEADERS);
+        when(mockResponse.body()).thenReturn(stream(json));
+        when(mockHttpClient.sendAsync(any(HttpRequest.class), eq(HttpResponse.BodyHandlers.ofInputStream())))
+                .thenReturn(CompletableFuture.completedFuture(limitedResponse),
+                    CompletableFuture.completedFuture(mockResponse));
+
+        List<Repo> result = githubClient.searchRepos("repo", 5).toList();
+
+        assertEquals("owner/repo", result.get(0).fullName());
+        verify(mockRateLimiter, times(2)).acquire("search", null, Priority.INTERACTIVE);
+        verify(mockRateLimiter).update("search", null, limitedResponse.headers());
+    }
+
+    @Test
+    void searchRepos_retriesTransientFailures() throws Exception {
+        String json = """
+            { "items": [ { "full_name": "owner/repo", "description": "Repository" } ] }
+            """;
+        HttpResponse<InputStream> unavailableResponse = mock(HttpResponse.class);
+        when(unavailableResponse.statusCode()).thenReturn(503);
+        when(unavailableResponse.headers()).thenReturn(NO_HEADERS);
+        when(unavailableResponse.body()).thenReturn(stream(""));
+        HttpResponse<InputStream> mockResponse = mock(HttpResponse.class);
+        when(mockResponse.statusCode()).thenReturn(200);
+        when(mockResponse.headers()).thenReturn(NO_HEADERS);
+        when(mockResponse.body()).thenReturn(stream(json));
+        when(mockHttpClient.sendAsync(any(HttpRequest.class), eq(HttpResponse.BodyHandlers.ofInputStream())))
+                .thenReturn(CompletableFuture.failedFuture(new IOException("Connection reset")),
+                    CompletableFuture.completedFuture(unavailableResponse),
+                    CompletableFuture.completedFuture(mockResponse));
+
+        List<Repo> result = githubClient.searchRepos("repo", 5).toList();
+
+        assertEquals("owner/repo", result.get(0).fullName());
+        verify(mockHttpClient, times(3)).sendAsync(any(HttpRequest.class), any());
+    }
+
+    @Test
+    void searchRepos_givesUpAfterMaxRetries() throws Exception {
+        when(mockHttpClient.sendAsync(any(HttpRequest.class), eq(HttpResponse.BodyHandlers.ofInputStream())))
+                .thenReturn(CompletableFuture.failedFuture(new IOException("Connection reset")));
+
+        assertThrows(UncheckedIOException.class, () -> githubClient.searchRepos("repo", 5).toList());
+
+        verify(mockHttpClient, times(3)).sendAsync(any(HttpRequest.class), any());
+    }
+
+    @Test
+    void getLatestReleaseAssetsAsync_fansOutRequests() throws Exception {
+        when(mockPlatformHandler.getFormats()).thenReturn(new String[]{".appimage"});
+        when(mockHttpClient.sendAsync(any(HttpRequest.class), eq(HttpResponse.BodyHandlers.ofInputStream())))
+                .thenAnswer(invocation -> {
+                    HttpRequest request = invocation.getArgument(0);
+                    String repo = request.uri().getPath().split("/")[3];
+                    HttpResponse<InputStream> response = mock(HttpResponse.class);
+                    when(response.statusCode()).thenReturn(200);
+                    when(response.body()).thenReturn(stream("""
+                        { "assets": [ { "name": "%s.AppImage", "url": "http://example.com/%s" } ] }
+                        """.formatted(repo, repo)));
+                    return CompletableFuture.completedFuture(response);
+                });
+
+        List<CompletableFuture<List<Asset>>> futures = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            futures.add(githubClient.getLatestReleaseAssetsAsync("owner/repo" + i));
+        }
+
+        for (int i = 0; i < 200; i++) {
+            assertEquals("repo" + i + ".AppImage", futures.get(i).get().get(0).name());
+        }
+    }
+
+    @Test
+    void searchRepos_throwsOnError() throws Exception {
+        HttpResponse<InputStream> mockResponse = mock(HttpResponse.class);
+        when(mockResponse.statusCode()).thenReturn(404);
+        when(mockResponse.headers()).thenReturn(NO_HEADERS);
+        when(mockResponse.body()).thenReturn(stream("Not Found"));
+        when(mockHttpClient.sendAsync(any(HttpRequest.class), eq(HttpResponse.BodyHandlers.ofInputStream())))
+                .thenReturn(CompletableFuture.completedFuture(mockResponse));
+
+        UncheckedIOException exception = assertThrows(UncheckedIOException.class,
+            () -> githubClient.searchRepos("missing", 5).toList());
+
+        assertTrue(exception.getCause() instanceof IOException);
+    }
+
+    @Test
+    void getLatestReleaseAssets_batchUsesGraphqlWithToken() throws Exception {
+        setTokens("secret");
+        String json = """
+            {
+              "data": {
+                "r0": { "latestRelease": { "releaseAssets": { "nodes": [
+                  { "name": "app.AppImage", "downloadUrl": "https://github.com/o/app/releases/download/v1/app.AppImage" },
+                  { "name": "app.zip", "downloadUrl": "https://github.com/o/app/releases/download/v1/app.zip" }
+                ] } } },
+                "r1": null
+              }
+            }
+            """;
+        HttpResponse<InputStream> mockResponse = mock(HttpResponse.class);
+        when(mockResponse.statusCode()).thenReturn(200);
+        when(mockResponse.body()).thenReturn(stream(json));
+        when(mockPlatformHandler.getFormats()).thenReturn(new String[]{".appimage"});
+        when(mockHttpClient.sendAsync(any(HttpRequest.class), eq(HttpResponse.BodyHandlers.ofInputStream())))
+                .thenReturn(CompletableFuture.completedFuture(mockResponse));
+
+        Map<String, List<Asset>> assets = githubClient.getLatestReleaseAssets(List.of("o/app", "o/missing"));
+
+        assertEquals(1, assets.get("o/app").size());
+        assertEquals("app.AppImage", assets.get("o/app").get(0).name());
+        assertTrue(assets.get("o/missing").isEmpty());
+        ArgumentCaptor<HttpRequest> request = ArgumentCaptor.forClass(HttpRequest.class);
+        verify(mockHttpClient, times(1)).sendAsync(request.capture(), any());
+        assertEquals(Optional.of("Bearer secret"), request.getValue().headers().firstValue("Authorization"));
+    }
+
+    @Test
+    void searchRepos_rotatesTokensByRemainingBudget() throws Exception {
+        setTokens("first", "second");
+        String json = """
+            { "items": [ { "full_name": "owner/repo", "description": "Repository" } ] }
+            """;
+        HttpResponse<InputStream> mockResponse = mock(HttpResponse.class);
+        when(mockResponse.statusCode()).thenReturn(200);
+        when(mockResponse.headers()).thenReturn(NO_HEADERS);
+        when(mockResponse.body()).thenReturn(stream(json), stream(json), stream(json));
+        when(mockHttpClient.sendAsync(any(HttpRequest.class), eq(HttpResponse.BodyHandlers.ofInputStream())))
+                .thenReturn(CompletableFuture.completedFuture(mockResponse));
+        when(mockRateLimiter.available(eq("search"), any())).thenReturn(Long.MAX_VALUE);
+        when(mockRateLimiter.available("search", new TokenPool(List.of("first")).select("search", mockRateLimiter)
+            .get().id())).thenReturn(0L);
+
+        githubClient.searchRepos("repo", 5).toList();
+        githubClient.searchRepos("repo", 5).toList();
+        githubClient.searchRepos("repo", 5).toList();
+
+        ArgumentCaptor<HttpRequest> requests = ArgumentCaptor.forClass(HttpRequest.class);
+        verify(mockHttpClient, times(3)).sendAsync(requests.capture(), any());
+        for (HttpRequest request : requests.getAllValues()) {
+            assertEquals(Optional.of("Bearer second"), request.headers().firstValue("Authorization"));
+        }
     }
 
     @Test
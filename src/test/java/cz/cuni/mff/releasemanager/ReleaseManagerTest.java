@@ -1,27 +1,41 @@
 package cz.cuni.mff.releasemanager;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.lang.reflect.Field;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Instant;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import cz.cuni.mff.releasemanager.cmd.CmdParser;
 import cz.cuni.mff.releasemanager.cmd.Command;
+import cz.cuni.mff.releasemanager.download.Checksums;
+import cz.cuni.mff.releasemanager.download.PrefetchArea;
 import cz.cuni.mff.releasemanager.platform.PlatformHandler;
 import cz.cuni.mff.releasemanager.types.Asset;
+import cz.cuni.mff.releasemanager.types.DownloadedAsset;
+import cz.cuni.mff.releasemanager.types.PrefetchedUpdate;
 import cz.cuni.mff.releasemanager.types.ReleaseInfo;
 import cz.cuni.mff.releasemanager.types.ReleasesList;
 import cz.cuni.mff.releasemanager.types.Repo;
-import cz.cuni.mff.releasemanager.types.SearchResult;
+import cz.cuni.mff.releasemanager.utils.FileUtils;
 
 
 class ReleaseManagerTest {
@@ -30,6 +44,8 @@ class ReleaseManagerTest {
     private CmdParser mockCmdParser;
     private GithubClient mockGithubClient;
     private PlatformHandler mockPlatformHandler;
+    private PrefetchArea prefetchArea;
+    private Path tempDir;
 
     @BeforeEach
     void setUp() throws Exception {
@@ -51,6 +67,21 @@ class ReleaseManagerTest {
         Field handlerField = ReleaseManager.class.getDeclaredField("platformHandler");
         handlerField.setAccessible(true);  
         handlerField.set(releaseManager, mockPlatformHandler);
+
+        tempDir = Files.createTempDirectory("release_manager_test");
+        prefetchArea = new PrefetchArea(tempDir.resolve("prefetch"));
+        Field prefetchField = ReleaseManager.class.getDeclaredField("prefetchArea");
+        prefetchField.setAccessible(true);
+        prefetchField.set(releaseManager, prefetchArea);
+
+        for (Command command : Command.values()) {
+            command.options.clear();
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        FileUtils.deleteDirectory(tempDir);
     }
 
     @Test
@@ -60,13 +91,49 @@ class ReleaseManagerTest {
         when(mockCmdParser.parse(any())).thenReturn(cmd);
 
         var repo = new Repo("user/example", "Example repo");
-        var searchResult = Optional.of(new SearchResult(List.of(repo)));
+        when(mockGithubClient.searchRepos("example", 5)).thenReturn(Stream.of(repo));
+
+        releaseManager.execute(new String[] {"search", "example"});
+
+        verify(mockGithubClient).searchKnownRepos("example", 5);
+        verify(mockGithubClient).searchRepos("example", 5);
+    }
+
+    @Test
+    void testExecuteSearch_readsOnlyLimit() {
+        Command cmd = Command.SEARCH;
+        cmd.argument = "example";
+        cmd.options.put("limit", "2");
+        when(mockCmdParser.parse(any())).thenReturn(cmd);
+
+        AtomicInteger read = new AtomicInteger();
+        Stream<Repo> repos = Stream.iterate(1, i -> i + 1)
+            .peek(i -> read.incrementAndGet())
+            .map(i -> new Repo("user/example" + i, null));
+        when(mockGithubClient.searchRepos("example", 2)).thenReturn(repos);
 
-        when(mockGithubClient.searchRepoByName("example")).thenReturn(searchResult);
+        releaseManager.execute(new String[] {"search", "example", "--limit=2"});
+
+        assertEquals(2, read.get());
+    }
+
+    @Test
+    void testExecuteSearch_knownReposWithoutNetwork() throws IOException {
+        Command cmd = Command.SEARCH;
+        cmd.argument = "example";
+        when(mockCmdParser.parse(any())).thenReturn(cmd);
+
+        var installed = new ReleaseInfo("user/example", Instant.now(), "/path/uninstall", null);
+        when(mockPlatformHandler.loadReleasesList()).thenReturn(new ReleasesList(List.of(installed)));
+        when(mockGithubClient.searchKnownRepos("example", 5)).thenReturn(List.of(new Repo("user/example", null)));
+        when(mockGithubClient.searchRepos("example", 5)).thenReturn(Stream.generate(() -> {
+            throw new UncheckedIOException(new IOException("Connection error."));
+        }));
 
         releaseManager.execute(new String[] {"search", "example"});
 
-        verify(mockGithubClient).searchRepoByName("example");
+        verify(mockGithubClient).indexRepos(List.of(new Repo("user/example", null)));
+        verify(mockGithubClient).searchKnownRepos("example", 5);
     }
 
     @Test
@@ -114,11 +181,153 @@ class ReleaseManagerTest {
 
         when(mockPlatformHandler.loadReleasesList()).thenReturn(releases);
         when(mockGithubClient.getLatestReleaseAssets("user/example")).thenReturn(List.of(newAsset));
-        when(mockGithubClient.installAsset(newAsset)).thenReturn(Path.of("/ProgramFiles/uninstall.exe"));
+        when(mockGithubClient.stageAsset(newAsset, Path.of("/ProgramFiles/uninstall.exe")))
+            .thenReturn(Path.of("/tmp/example.exe"));
+        when(mockPlatformHandler.install(Path.of("/tmp/example.exe"))).thenReturn(Path.of("/ProgramFiles/uninstall.exe"));
 
         releaseManager.execute(new String[]{"update", "user/example"});
 
-        verify(mockGithubClient).installAsset(newAsset);
+        verify(mockGithubClient).stageAsset(newAsset, Path.of("/ProgramFiles/uninstall.exe"));
+        verify(mockPlatformHandler).uninstall(Path.of("/ProgramFiles/uninstall.exe"));
+    }
+
+    @Test
+    void testExecuteUpdateAll() throws IOException {
+        Command cmd = Command.UPDATE;
+        cmd.argument = null;
+        cmd.options.put("all", "");
+        when(mockCmdParser.parse(any())).thenReturn(cmd);
+
+        Asset oldAsset = new Asset("http://oldurl", "example.AppImage");
+        Asset currentAsset = new Asset("http://currenturl", "current.AppImage");
+        ReleaseInfo outdated = new ReleaseInfo("user/example", Instant.now(), "/bin/example", oldAsset);
+        ReleaseInfo upToDate = new ReleaseInfo("user/current", Instant.now(), "/bin/current", currentAsset);
+        when(mockPlatformHandler.loadReleasesList()).thenReturn(new ReleasesList(List.of(outdated, upToDate)));
+        Asset newAsset = new Asset("http://newurl", "example.AppImage");
+        when(mockGithubClient.getLatestReleaseAssets(List.of("user/example", "user/current")))
+            .thenReturn(Map.of("user/example", List.of(newAsset), "user/current", List.of(currentAsset)));
+        when(mockGithubClient.stageAsset(newAsset, Path.of("/bin/example"))).thenReturn(Path.of("/tmp/example.AppImage"));
+        when(mockPlatformHandler.install(Path.of("/tmp/example.AppImage"))).thenReturn(Path.of("/bin/example"));
+
+        releaseManager.execute(new String[]{"update", "--all"});
+
+        verify(mockGithubClient).stageAsset(newAsset, Path.of("/bin/example"));
+        verify(mockGithubClient, never()).stageAsset(eq(currentAsset), any());
+        verify(mockPlatformHandler).uninstall(Path.of("/bin/example"));
+        verify(mockPlatformHandler, times(1)).saveReleasesList(any());
+        verify(mockPlatformHandler, never()).addReleaseToList(any());
+    }
+
+    @Test
+    void testExecuteUpdateAll_comparesAssetContent() throws IOException {
+        Command cmd = Command.UPDATE;
+        cmd.argument = null;
+        cmd.options.put("all", "");
+        when(mockCmdParser.parse(any())).thenReturn(cmd);
+
+        Instant uploaded = Instant.parse("2024-01-01T00:00:00Z");
+        Asset replacedAsset = new Asset("http://url/tool.AppImage", "tool.AppImage", null, null, null, null,
+            1000, "application/octet-stream", uploaded, 1, "v1.0");
+        Asset republishedAsset = new Asset("http://url/v1/app.AppImage", "app.AppImage", null, "sha256:" + "a".repeat(64),
+            null, null, 2000, "application/octet-stream", uploaded, 1, "v1.0");
+        ReleaseInfo replaced = new ReleaseInfo("user/tool", Instant.now(), "/bin/tool", replacedAsset);
+        ReleaseInfo republished = new ReleaseInfo("user/app", Instant.now(), "/bin/app", republishedAsset);
+        when(mockPlatformHandler.loadReleasesList()).thenReturn(new ReleasesList(List.of(replaced, republished)));
+        // the same URL uploaded again, and the same content in a new release
+        Asset reuploadedAsset = new Asset("http://url/tool.AppImage", "tool.AppImage", null, null, null, null,
+            1000, "application/octet-stream", uploaded.plusSeconds(60), 1, "v1.0");
+        Asset sameContentAsset = new Asset("http://url/v2/app.AppImage", "app.AppImage", null, "sha256:" + "a".repeat(64),
+            null, null, 2000, "application/octet-stream", uploaded.plusSeconds(60), 2, "v2.0");
+        when(mockGithubClient.getLatestReleaseAssets(List.of("user/tool", "user/app")))
+            .thenReturn(Map.of("user/tool", List.of(reuploadedAsset), "user/app", List.of(sameContentAsset)));
+        when(mockGithubClient.stageAsset(reuploadedAsset, Path.of("/bin/tool"))).thenReturn(Path.of("/tmp/tool.AppImage"));
+        when(mockPlatformHandler.install(Path.of("/tmp/tool.AppImage"))).thenReturn(Path.of("/bin/tool"));
+
+        releaseManager.execute(new String[]{"update", "--all"});
+
+        verify(mockGithubClient).stageAsset(reuploadedAsset, Path.of("/bin/tool"));
+        verify(mockGithubClient, never()).stageAsset(eq(sameContentAsset), any());
+        verify(mockPlatformHandler, never()).uninstall(Path.of("/bin/app"));
+    }
+
+    @Test
+    void testExecuteUpdatePrefetch() throws IOException {
+        Command cmd = Command.UPDATE;
+        cmd.argument = "user/example";
+        cmd.options.put("prefetch", "");
+        when(mockCmdParser.parse(any())).thenReturn(cmd);
+
+        Asset oldAsset = new Asset("http://oldurl", "example.AppImage");
+        ReleaseInfo info = new ReleaseInfo("user/example", Instant.now(), "/bin/example", oldAsset);
+        when(mockPlatformHandler.loadReleasesList()).thenReturn(new ReleasesList(List.of(info)));
+        Asset newAsset = new Asset("http://newurl", "example.AppImage");
+        when(mockGithubClient.getLatestReleaseAssets(List.of("user/example")))
+            .thenReturn(Map.of("user/example", List.of(newAsset)));
+        Path download = Files.writeString(Files.createDirectories(tempDir.resolve("stage")).resolve("example.AppImage"), "new");
+        when(mockGithubClient.downloadAsset(newAsset, Path.of("/bin/example")))
+            .thenReturn(new DownloadedAsset(download, Checksums.sha256(download)));
+
+        releaseManager.execute(new String[]{"update", "--prefetch", "user/example"});
+
+        verify(mockPlatformHandler, never()).install(any());
+        verify(mockPlatformHandler, never()).uninstall(any());
+        assertTrue(prefetchArea.find(info).isPresent());
+    }
+
+    @Test
+    void testExecuteUpdate_installsPrefetchedUpdate() throws IOException {
+        Command cmd = Command.UPDATE;
+        cmd.argument = "user/example";
+        when(mockCmdParser.parse(any())).thenReturn(cmd);
+
+        ReleaseInfo info = new ReleaseInfo("user/example", Instant.now(), "/bin/example",
+            new Asset("http://oldurl", "example.AppImage"));
+        when(mockPlatformHandler.loadReleasesList()).thenReturn(new ReleasesList(List.of(info)));
+        Asset newAsset = new Asset("http://newurl", "example.AppImage");
+        Path download = Files.writeString(Files.createDirectories(tempDir.resolve("stage")).resolve("example.AppImage"), "new");
+        PrefetchedUpdate update = prefetchArea.add(info, newAsset, download, Checksums.sha256(download));
+        when(mockPlatformHandler.install(Path.of(update.file()))).thenReturn(Path.of("/bin/example"));
+
+        releaseManager.execute(new String[]{"update", "user/example"});
+
+        verify(mockGithubClient, never()).getLatestReleaseAssets(any(String.class));
+        verify(mockGithubClient, never()).downloadAsset(any(), any());
+        verify(mockGithubClient, never()).stageAsset(any(), any());
+        verify(mockPlatformHandler).uninstall(Path.of("/bin/example"));
+        verify(mockPlatformHandler).addReleaseToList(any());
+        assertTrue(prefetchArea.find(info).isEmpty());
+    }
+
+    @Test
+    void testExecuteVerifyRepair() throws IOException {
+        Command cmd = Command.VERIFY;
+        cmd.options.put("repair", "");
+        when(mockCmdParser.parse(any())).thenReturn(cmd);
+
+        Path intactFile = Files.writeString(tempDir.resolve("intact"), "intact");
+        Path changedFile = Files.writeString(tempDir.resolve("changed"), "changed");
+        Asset intactAsset = new Asset("http://intact", "intact");
+        Asset changedAsset = new Asset("http://changed", "changed");
+        Asset missingAsset = new Asset("http://missing", "missing");
+        ReleaseInfo intact = new ReleaseInfo("user/intact", Instant.now(), intactFile.toString(), intactAsset,
+            Checksums.sha256(intactFile), null, null);
+        ReleaseInfo changed = new ReleaseInfo("user/changed", Instant.now(), changedFile.toString(), changedAsset,
+            "0".repeat(64), null, null);
+        ReleaseInfo missing = new ReleaseInfo("user/missing", Instant.now(), tempDir.resolve("missing").toString(),
+            missingAsset, "0".repeat(64), null, null);
+        when(mockPlatformHandler.loadReleasesList()).thenReturn(new ReleasesList(List.of(intact, changed, missing)));
+        when(mockGithubClient.repairAsset(changedAsset)).thenReturn(changedFile);
+        when(mockGithubClient.repairAsset(missingAsset)).thenReturn(null);
+
+        releaseManager.execute(new String[]{"verify", "--repair"});
+
+        verify(mockGithubClient, never()).repairAsset(intactAsset);
+        verify(mockGithubClient).repairAsset(changedAsset);
+        verify(mockGithubClient).repairAsset(missingAsset);
+        verify(mockPlatformHandler).saveReleasesList(new ReleasesList(List.of(intact,
+            new ReleaseInfo("user/changed", changed.installedAt(), changedFile.toString(), changedAsset,
+                Checksums.sha256(changedFile), null, null),
+            missing)));
     }
 
     @Test
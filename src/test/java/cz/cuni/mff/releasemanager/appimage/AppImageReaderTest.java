@@ -0,0 +1,352 @@
+package cz.cuni.mff.releasemanager.appimage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.zip.Deflater;
+
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import cz.cuni.mff.releasemanager.types.AppMetadata;
+
+class AppImageReaderTest {
+
+    private static final int BLOCK_SIZE = 4096;
+    private static final int SECTION_HEADERS = 3;
+    private static final String DESKTOP = """
+        [Desktop Entry]
+        Name=Example
+        Name[de]=Beispiel
+        Comment=An example application
+        X-AppImage-Version=1.2.3
+        [Desktop Action New]
+        Name=New Window
+        """;
+    private static final String APPSTREAM = """
+        <?xml version="1.0" encoding="UTF-8"?>
+        <component type="desktop-application">
+          <name xml:lang="de">Beispiel</name>
+          <name>Example</name>
+          <summary>Tools &amp; more</summary>
+          <releases>
+            <release version="2.0.1" date="2024-05-01"/>
+            <release version="2.0.0" date="2024-01-01"/>
+          </releases>
+        </component>
+        """;
+
+    private Path tempDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("appimage_reader_test");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (var files = Files.walk(tempDir)) {
+            for (Path file : files.sorted((a, b) -> b.compareTo(a)).toList()) { // files before directories
+                Files.delete(file);
+            }
+        }
+    }
+
+    private Path appImage(Map<String, Object> root, boolean compressed) throws IOException {
+        Path file = tempDir.resolve("Example.AppImage");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(elfHeader());
+        out.write(new byte[64 * SECTION_HEADERS]);
+        out.write(new ImageBuilder(compressed).build(root));
+        return Files.write(file, out.toByteArray());
+    }
+
+    @Test
+    void testRead_desktopEntry() throws IOException {
+        Map<String, Object> root = new TreeMap<>();
+        root.put("example.desktop", DESKTOP);
+        root.put("AppRun", new Link("usr/bin/example"));
+
+        Optional<AppMetadata> metadata = AppImageReader.read(appImage(root, true));
+
+        assertEquals(Optional.of(new AppMetadata("Example", "1.2.3", "An example application")), metadata);
+    }
+
+    @Test
+    void testRead_appStreamThroughSymlinkedDesktopEntry() throws IOException {
+        Map<String, Object> applications = new TreeMap<>();
+        applications.put("example.desktop", "[Desktop Entry]\nName=Example\n");
+        Map<String, Object> metainfo = new TreeMap<>();
+        metainfo.put("org.example.App.appdata.xml", APPSTREAM);
+        Map<String, Object> share = new TreeMap<>();
+        share.put("applications", applications);
+        share.put("metainfo", metainfo);
+        Map<String, Object> root = new TreeMap<>();
+        root.put("example.desktop", new Link("usr/share/applications/example.desktop"));
+        root.put("usr", Map.of("share", share));
+
+        for (boolean compressed : new boolean[] {false, true}) {
+            Optional<AppMetadata> metadata = AppImageReader.read(appImage(root, compressed));
+
+            assertEquals(Optional.of(new AppMetadata("Example", "2.0.1", "Tools & more")), metadata);
+        }
+    }
+
+    @Test
+    void testRead_largeFileAcrossBlocksAndFragment() throws IOException {
+        byte[] large = new byte[3 * BLOCK_SIZE + 123];
+        Arrays.fill(large, (byte) 'x');
+        large[large.length - 1] = 'y';
+        Map<String, Object> root = new TreeMap<>();
+        root.put("large.bin", large);
+        root.put("small.txt", "small");
+        Path file = appImage(root, true);
+
+        try (var channel = FileChannel.open(file)) {
+            long offset = AppImageReader.imageOffset(channel.map(FileChannel.MapMode.READ_ONLY, 0, 64));
+            SquashFs image = SquashFs.open(channel.map(FileChannel.MapMode.READ_ONLY, offset,
+                channel.size() - offset)).orElseThrow();
+
+            assertEquals(List.of("large.bin", "small.txt"), image.list(""));
+            assertArrayEquals(large, image.read("large.bin", Integer.MAX_VALUE).orElseThrow());
+            assertArrayEquals("small".getBytes(StandardCharsets.UTF_8), image.read("small.txt", 100).orElseThrow());
+            assertTrue(image.read("large.bin", 100).isEmpty());
+            assertTrue(image.read("missing", 100).isEmpty());
+        }
+    }
+
+    @Test
+    void testRead_notAnAppImage() throws IOException {
+        Path script = Files.writeString(tempDir.resolve("script.sh"), "#!/bin/sh\necho hello\n".repeat(10));
+
+        assertTrue(AppImageReader.read(script).isEmpty());
+    }
+
+    @Test
+    void testDesktopValue_mainGroupOnly() {
+        assertEquals("Example", AppImageReader.desktopValue(DESKTOP, "Name"));
+        assertEquals(null, AppImageReader.desktopValue(DESKTOP, "Exec"));
+    }
+
+    /**
+     * @return An ELF64 header whose section header table ends where the squashfs image starts.
+     */
+    private static byte[] elfHeader() {
+        ByteBuffer header = ByteBuffer.allocate(64).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(0, 0x464c457f);
+        header.put(4, (byte) 2);
+        header.put(5, (byte) 1);
+        header.put(6, (byte) 1);
+        header.putLong(0x28, 64);
+        header.putShort(0x3a, (short) 64);
+        header.putShort(0x3c, (short) SECTION_HEADERS);
+        return header.array();
+    }
+
+    /**
+     * A symbolic link in the built image.
+     * @param target The target of the link.
+     */
+    private record Link(String target) {}
+
+    /**
+     * Builds a squashfs 4.0 image with single inode, directory and fragment metadata blocks.
+     * Directories are maps from names to directories, contents as strings or byte arrays, or links.
+     */
+    private static final class ImageBuilder {
+        private final boolean compressed;
+        private final List<Object> nodes = new ArrayList<>();
+        private final Map<Object, Integer> inodeOffsets = new HashMap<>();
+        private final Map<Object, Integer> listingOffsets = new HashMap<>();
+        private final Map<Object, Integer> parents = new HashMap<>();
+
+        ImageBuilder(boolean compressed) {
+            this.compressed = compressed;
+        }
+
+        byte[] build(Map<String, Object> root) {
+            collect(root, 0);
+            int inodeOffset = 0;
+            int listingOffset = 0;
+            for (Object node : nodes) {
+                inodeOffsets.put(node, inodeOffset);
+                inodeOffset += inodeSize(node);
+                if (node instanceof Map<?, ?> dir) {
+                    listingOffsets.put(node, listingOffset);
+                    listingOffset += listingSize(dir);
+                }
+            }
+
+            ByteArrayOutputStream image = new ByteArrayOutputStream();
+            image.writeBytes(new byte[96]);
+            Map<Object, Long> blocksStart = new HashMap<>();
+            Map<Object, int[]> blockSizes = new HashMap<>();
+            Map<Object, Integer> tailOffsets = new HashMap<>();
+            ByteArrayOutputStream fragment = new ByteArrayOutputStream();
+            for (Object node : nodes) {
+                byte[] content = content(node);
+                if (content == null) {
+                    continue;
+                }
+                blocksStart.put(node, (long) image.size());
+                int[] sizes = new int[content.length / BLOCK_SIZE];
+                for (int i = 0; i < sizes.length; i++) {
+                    byte[] stored = store(Arrays.copyOfRange(content, i * BLOCK_SIZE, (i + 1) * BLOCK_SIZE));
+                    sizes[i] = stored.length | (compressed ? 0 : 0x1000000);
+                    image.writeBytes(stored);
+                }
+                blockSizes.put(node, sizes);
+                if (content.length % BLOCK_SIZE != 0) {
+                    tailOffsets.put(node, fragment.size());
+                    fragment.writeBytes(Arrays.copyOfRange(content, sizes.length * BLOCK_SIZE, content.length));
+                }
+            }
+            long fragmentStart = image.size();
+            byte[] storedFragment = store(fragment.toByteArray());
+            image.writeBytes(storedFragment);
+
+            ByteBuffer inodes = ByteBuffer.allocate(inodeOffset).order(ByteOrder.LITTLE_ENDIAN);
+            ByteBuffer listings = ByteBuffer.allocate(listingOffset).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < nodes.size(); i++) {
+                Object node = nodes.get(i);
+                int number = i + 1;
+                if (node instanceof Map<?, ?> dir) {
+                    inodes.putShort((short) 1).putShort((short) 0755).putInt(0).putInt(0).putInt(number);
+                    inodes.putInt(0).putInt(2).putShort((short) (listingSize(dir) + 3))
+                        .putShort((short) (int) listingOffsets.get(node)).putInt(parents.getOrDefault(node, nodes.size() + 1));
+                    writeListing(listings, dir);
+                } else if (node instanceof Link link) {
+                    byte[] target = link.target().getBytes(StandardCharsets.UTF_8);
+                    inodes.putShort((short) 3).putShort((short) 0777).putInt(0).putInt(0).putInt(number);
+                    inodes.putInt(1).putInt(target.length).put(target);
+                } else {
+                    byte[] content = content(node);
+                    inodes.putShort((short) 2).putShort((short) 0644).putInt(0).putInt(0).putInt(number);
+                    inodes.putInt((int) (long) blocksStart.get(node))
+                        .putInt(tailOffsets.containsKey(node) ? 0 : 0xffffffff)
+                        .putInt(tailOffsets.getOrDefault(node, 0))
+                        .putInt(content.length);
+                    for (int size : blockSizes.get(node)) {
+                        inodes.putInt(size);
+                    }
+                }
+            }
+
+            long inodeTable = image.size();
+            image.writeBytes(metadata(inodes.array()));
+            long directoryTable = image.size();
+            image.writeBytes(metadata(listings.array()));
+            ByteBuffer fragmentEntry = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN)
+                .putLong(fragmentStart).putInt(storedFragment.length | (compressed ? 0 : 0x1000000)).putInt(0);
+            long fragmentEntries = image.size();
+            image.writeBytes(metadata(fragmentEntry.array()));
+            long fragmentTable = image.size();
+            image.writeBytes(ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putLong(fragmentEntries).array());
+
+            byte[] bytes = image.toByteArray();
+            ByteBuffer superblock = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            superblock.putInt(0, 0x73717368).putInt(4, nodes.size()).putInt(12, BLOCK_SIZE).putInt(16, 1)
+                .putShort(20, (short) 1).putShort(22, (short) 12).putShort(28, (short) 4)
+                .putLong(32, inodeOffsets.get(nodes.get(0))).putLong(40, bytes.length)
+                .putLong(48, -1).putLong(56, -1).putLong(64, inodeTable).putLong(72, directoryTable)
+                .putLong(80, fragmentTable).putLong(88, -1);
+            return bytes;
+        }
+
+        private void collect(Object node, int parent) {
+            nodes.add(node);
+            int number = nodes.size();
+            if (parent > 0) {
+                parents.put(node, parent);
+            }
+            if (node instanceof Map<?, ?> dir) {
+                for (Object child : new TreeMap<>(dir).values()) {
+                    collect(child, number);
+                }
+            }
+        }
+
+        private void writeListing(ByteBuffer listings, Map<?, ?> dir) {
+            if (dir.isEmpty()) {
+                return;
+            }
+            Map<String, Object> children = new TreeMap<>();
+            dir.forEach((name, child) -> children.put((String) name, child));
+            int base = nodes.indexOf(children.values().iterator().next()) + 1;
+            listings.putInt(children.size() - 1).putInt(0).putInt(base);
+            children.forEach((name, child) -> {
+                byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                int type = child instanceof Map ? 1 : child instanceof Link ? 3 : 2;
+                listings.putShort((short) (int) inodeOffsets.get(child))
+                    .putShort((short) (nodes.indexOf(child) + 1 - base))
+                    .putShort((short) type)
+                    .putShort((short) (bytes.length - 1))
+                    .put(bytes);
+            });
+        }
+
+        private int inodeSize(Object node) {
+            if (node instanceof Map) {
+                return 32;
+            }
+            if (node instanceof Link link) {
+                return 24 + link.target().getBytes(StandardCharsets.UTF_8).length;
+            }
+            return 32 + 4 * (content(node).length / BLOCK_SIZE);
+        }
+
+        private static int listingSize(Map<?, ?> dir) {
+            int size = dir.isEmpty() ? 0 : 12;
+            for (Object name : dir.keySet()) {
+                size += 8 + ((String) name).getBytes(StandardCharsets.UTF_8).length;
+            }
+            return size;
+        }
+
+        private static byte[] content(Object node) {
+            if (node instanceof String text) {
+                return text.getBytes(StandardCharsets.UTF_8);
+            }
+            return node instanceof byte[] bytes ? bytes : null;
+        }
+
+        private byte[] metadata(byte[] content) {
+            byte[] stored = store(content);
+            ByteBuffer block = ByteBuffer.allocate(2 + stored.length).order(ByteOrder.LITTLE_ENDIAN);
+            block.putShort((short) (stored.length | (compressed ? 0 : 0x8000))).put(stored);
+            return block.array();
+        }
+
+        private byte[] store(byte[] content) {
+            if (!compressed) {
+                return content;
+            }
+            Deflater deflater = new Deflater();
+            deflater.setInput(content);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[BLOCK_SIZE];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            deflater.end();
+            return out.toByteArray();
+        }
+    }
+}
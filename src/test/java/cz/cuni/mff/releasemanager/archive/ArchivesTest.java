@@ -0,0 +1,267 @@
+package cz.cuni.mff.releasemanager.archive;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import cz.cuni.mff.releasemanager.utils.FileUtils;
+
+class ArchivesTest {
+
+    private static final byte[] ELF = {0x7f, 'E', 'L', 'F', 2, 1, 1, 0};
+    private static final String SCRIPT = "#!/bin/sh\necho tool\n";
+
+    private Path tempDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("archives_test");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        FileUtils.deleteDirectory(tempDir);
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(content);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] sampleTar() {
+        return new TarBuilder()
+            .directory("app-1.0/")
+            .file("app-1.0/bin/tool", 0755, SCRIPT.getBytes(StandardCharsets.UTF_8))
+            .file("app-1.0/README", 0644, "readme".getBytes(StandardCharsets.UTF_8))
+            .symlink("app-1.0/tool", "bin/tool")
+            .pax("path", "app-1.0/share/" + "long/".repeat(30) + "data")
+            .file("ignored", 0644, "data".getBytes(StandardCharsets.UTF_8))
+            .build();
+    }
+
+    @Test
+    void testUnpack_tarGz() throws Exception {
+        Path dir = tempDir.resolve("unpacked");
+        // bytes after the end of the archive are left to the caller
+        byte[] archive = gzip(sampleTar());
+        InputStream in = new ByteArrayInputStream(Arrays.copyOf(archive, archive.length + 100));
+
+        Archives.unpack(ArchiveFormat.TAR_GZ, in, dir);
+
+        Path app = dir.resolve("app-1.0");
+        assertEquals(SCRIPT, Files.readString(app.resolve("bin/tool")));
+        assertTrue(Files.getPosixFilePermissions(app.resolve("bin/tool")).contains(PosixFilePermission.OWNER_EXECUTE));
+        assertFalse(Files.getPosixFilePermissions(app.resolve("README")).contains(PosixFilePermission.OWNER_EXECUTE));
+        assertEquals(Path.of("bin/tool"), Files.readSymbolicLink(app.resolve("tool")));
+        assertEquals("data", Files.readString(app.resolve("share/" + "long/".repeat(30) + "data")));
+        assertFalse(Files.exists(dir.resolve("ignored")));
+    }
+
+    @Test
+    void testUnpack_tarXz() throws Exception {
+        assumeTrue(hasXz(), "xz is not installed");
+        Path dir = tempDir.resolve("unpacked");
+        Process xz = new ProcessBuilder("xz", "-c").start();
+        try (OutputStream in = xz.getOutputStream()) {
+            in.write(sampleTar());
+        }
+        byte[] archive = xz.getInputStream().readAllBytes();
+        assertEquals(0, xz.waitFor());
+
+        Archives.unpack(ArchiveFormat.TAR_XZ, new ByteArrayInputStream(archive), dir);
+
+        assertEquals(SCRIPT, Files.readString(dir.resolve("app-1.0/bin/tool")));
+        assertEquals("readme", Files.readString(dir.resolve("app-1.0/README")));
+    }
+
+    @Test
+    void testUnpack_refusesEntriesOutsideOfTheDirectory() throws Exception {
+        Path dir = tempDir.resolve("unpacked");
+        byte[] links = new TarBuilder()
+            .symlink("etc", "/etc")
+            .symlink("up", "../..")
+            .build();
+        byte[] traversal = new TarBuilder()
+            .file("../escaped", 0644, "data".getBytes(StandardCharsets.UTF_8))
+            .build();
+
+        Archives.unpack(ArchiveFormat.TAR_GZ, new ByteArrayInputStream(gzip(links)), dir);
+
+        assertFalse(Files.exists(dir.resolve("etc"), LinkOption.NOFOLLOW_LINKS));
+        assertFalse(Files.exists(dir.resolve("up"), LinkOption.NOFOLLOW_LINKS));
+        assertThrows(IOException.class,
+            () -> Archives.unpack(ArchiveFormat.TAR_GZ, new ByteArrayInputStream(gzip(traversal)), dir));
+        assertFalse(Files.exists(tempDir.resolve("escaped")));
+    }
+
+    @Test
+    void testUnpack_refusesEntriesThroughChainedLinks() throws Exception {
+        Path dir = tempDir.resolve("unpacked");
+        Files.writeString(tempDir.resolve("secret"), "secret");
+        // every link stays inside lexically, but l1/l2 is created as l2 pointing to the parent of the directory
+        byte[] links = new TarBuilder()
+            .symlink("l1", ".")
+            .symlink("l1/l2", "..")
+            .build();
+        byte[] directory = new TarBuilder()
+            .directory("l2/x/")
+            .build();
+        byte[] hardLink = new TarBuilder()
+            .hardLink("stolen", "l2/secret")
+            .build();
+
+        Archives.unpack(ArchiveFormat.TAR_GZ, new ByteArrayInputStream(gzip(links)), dir);
+
+        assertThrows(IOException.class,
+            () -> Archives.unpack(ArchiveFormat.TAR_GZ, new ByteArrayInputStream(gzip(directory)), dir));
+        assertFalse(Files.exists(tempDir.resolve("x")));
+        assertThrows(IOException.class,
+            () -> Archives.unpack(ArchiveFormat.TAR_GZ, new ByteArrayInputStream(gzip(hardLink)), dir));
+        assertFalse(Files.exists(dir.resolve("stolen")));
+    }
+
+    @Test
+    void testUnpack_truncatedArchive() throws Exception {
+        byte[] archive = gzip(sampleTar());
+        InputStream truncated = new ByteArrayInputStream(Arrays.copyOf(archive, archive.length / 2));
+
+        assertThrows(IOException.class,
+            () -> Archives.unpack(ArchiveFormat.TAR_GZ, truncated, tempDir.resolve("unpacked")));
+    }
+
+    @Test
+    void testUnpack_zip() throws Exception {
+        Path archive = tempDir.resolve("app-1.0.zip");
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(archive))) {
+            zip.putNextEntry(new ZipEntry("app/"));
+            zip.putNextEntry(new ZipEntry("app/tool"));
+            zip.write(ELF);
+            for (int i = 0; i < 50; i++) {
+                zip.putNextEntry(new ZipEntry("app/data/file" + i + ".txt"));
+                zip.write(("content " + i).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        Path dir = tempDir.resolve("unpacked");
+
+        Archives.unpack(archive, dir);
+
+        assertArrayEquals(ELF, Files.readAllBytes(dir.resolve("app/tool")));
+        assertTrue(Files.getPosixFilePermissions(dir.resolve("app/tool")).contains(PosixFilePermission.OWNER_EXECUTE));
+        for (int i = 0; i < 50; i++) {
+            Path file = dir.resolve("app/data/file" + i + ".txt");
+            assertEquals("content " + i, Files.readString(file));
+            assertFalse(Files.getPosixFilePermissions(file).contains(PosixFilePermission.OWNER_EXECUTE));
+        }
+    }
+
+    @Test
+    void testArchiveFormat() {
+        assertEquals(ArchiveFormat.TAR_GZ, ArchiveFormat.of("tool-1.0-linux.TGZ").orElseThrow());
+        assertEquals(ArchiveFormat.TAR_XZ, ArchiveFormat.of("tool.tar.xz").orElseThrow());
+        assertTrue(ArchiveFormat.of("tool.AppImage").isEmpty());
+        assertEquals("tool-1.0-linux", ArchiveFormat.TAR_GZ.stem("tool-1.0-linux.tar.gz"));
+        assertFalse(ArchiveFormat.ZIP.isStreamable());
+    }
+
+    private static boolean hasXz() {
+        try {
+            return new ProcessBuilder("xz", "--version").start().waitFor() == 0;
+        } catch (IOException | InterruptedException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Writes ustar archives with pax extended headers.
+     */
+    private static final class TarBuilder {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        TarBuilder file(String name, int mode, byte[] content) {
+            entry(name, mode, '0', "", content);
+            return this;
+        }
+
+        TarBuilder directory(String name) {
+            entry(name, 0755, '5', "", new byte[0]);
+            return this;
+        }
+
+        TarBuilder symlink(String name, String target) {
+            entry(name, 0777, '2', target, new byte[0]);
+            return this;
+        }
+
+        TarBuilder hardLink(String name, String target) {
+            entry(name, 0644, '1', target, new byte[0]);
+            return this;
+        }
+
+        TarBuilder pax(String key, String value) {
+            String record = " " + key + "=" + value + "\n";
+            int length = record.length() + 1;
+            while (String.valueOf(length).length() + record.length() != length) {
+                length++;
+            }
+            entry("PaxHeader", 0644, 'x', "", (length + record).getBytes(StandardCharsets.UTF_8));
+            return this;
+        }
+
+        byte[] build() {
+            out.writeBytes(new byte[1024]);
+            return out.toByteArray();
+        }
+
+        private void entry(String name, int mode, char type, String link, byte[] content) {
+            byte[] header = new byte[512];
+            put(header, 0, name);
+            put(header, 100, String.format("%07o", mode));
+            put(header, 108, "0000000");
+            put(header, 116, "0000000");
+            put(header, 124, String.format("%011o", content.length));
+            put(header, 136, "00000000000");
+            header[156] = (byte) type;
+            put(header, 157, link);
+            put(header, 257, "ustar");
+            put(header, 263, "00");
+            Arrays.fill(header, 148, 156, (byte) ' ');
+            int sum = 0;
+            for (byte b : header) {
+                sum += b & 0xff;
+            }
+            put(header, 148, String.format("%06o", sum));
+            out.writeBytes(header);
+            out.writeBytes(content);
+            out.writeBytes(new byte[(512 - content.length % 512) % 512]);
+        }
+
+        private static void put(byte[] header, int offset, String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            System.arraycopy(bytes, 0, header, offset, bytes.length);
+        }
+    }
+}
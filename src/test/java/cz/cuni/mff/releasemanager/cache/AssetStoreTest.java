@@ -0,0 +1,127 @@
+package cz.cuni.mff.releasemanager.cache;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.HexFormat;
+import java.util.Optional;
+
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import cz.cuni.mff.releasemanager.download.Checksums;
+
+class AssetStoreTest {
+
+    private static final Instant NOW = Instant.ofEpochSecond(1_700_000_000L);
+
+    private Path tempDir;
+    private Path storeDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("asset_store_test");
+        storeDir = tempDir.resolve("assets");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.walk(tempDir)
+            .sorted((a, b) -> b.compareTo(a)) // files before directories
+            .forEach(p -> {
+                try { Files.deleteIfExists(p); } catch (IOException e) {}
+            });
+    }
+
+    private AssetStore store(Instant now, long maxBytes) {
+        return new AssetStore(storeDir, maxBytes, Clock.fixed(now, ZoneOffset.UTC));
+    }
+
+    private Path file(String name, String content) throws IOException {
+        return Files.writeString(tempDir.resolve(name), content);
+    }
+
+    private Path object(String hash) {
+        return storeDir.resolve("sha256").resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    private static String sha256(String content) {
+        return HexFormat.of().formatHex(Checksums.sha256().digest(content.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void testPut_linksAssetIntoStore() throws IOException {
+        Path downloaded = file("app.AppImage", "binary");
+        String hash = sha256("binary");
+        store(NOW, 1024).put(downloaded, hash, "https://example.com/app.AppImage");
+
+        AssetStore store = store(NOW, 1024);
+        Path restored = store.copyTo(hash, tempDir.resolve("restored"));
+
+        assertEquals(Optional.of(hash), store.lookup("https://example.com/app.AppImage"));
+        assertTrue(store.contains(hash));
+        assertEquals("binary", Files.readString(restored));
+        // the store is on the same file system, so the asset is cloned, or hard linked where it cannot be cloned
+        Path stored = object(hash);
+        assertTrue(Files.isSameFile(downloaded, restored) || !Files.isSameFile(downloaded, stored));
+        assertFalse(Files.getPosixFilePermissions(stored).contains(PosixFilePermission.OWNER_WRITE));
+    }
+
+    @Test
+    void testPut_evictsLeastRecentlyUsed() throws IOException {
+        String first = sha256("aaaa");
+        String second = sha256("bbbb");
+        String third = sha256("cccc");
+        store(NOW, 8).put(file("first", "aaaa"), first, "https://example.com/first");
+        store(NOW.plusSeconds(1), 8).put(file("second", "bbbb"), second, "https://example.com/second");
+        // using the first asset makes the second one the least recently used
+        store(NOW.plusSeconds(2), 8).copyTo(first, tempDir.resolve("restored"));
+        store(NOW.plusSeconds(3), 8).put(file("third", "cccc"), third, "https://example.com/third");
+
+        AssetStore store = store(NOW.plusSeconds(4), 8);
+        assertTrue(store.contains(first));
+        assertFalse(store.contains(second));
+        assertTrue(store.contains(third));
+        assertTrue(store.lookup("https://example.com/second").isEmpty());
+    }
+
+    @Test
+    void testContains_removesCorruptedAsset() throws IOException {
+        String hash = sha256("binary");
+        store(NOW, 1024).put(file("app", "binary"), hash, null);
+        Path stored = object(hash);
+        Files.setPosixFilePermissions(stored, PosixFilePermissions.fromString("rw-r--r--"));
+        Files.writeString(stored, "modified");
+
+        assertFalse(store(NOW, 1024).contains(hash));
+        assertFalse(Files.exists(stored));
+    }
+
+    @Test
+    void testVerify_hashesUnchangedLookingAsset() throws IOException {
+        String hash = sha256("binary");
+        store(NOW, 1024).put(file("app", "binary"), hash, null);
+        Path stored = object(hash);
+        FileTime modified = Files.getLastModifiedTime(stored);
+        Files.setPosixFilePermissions(stored, PosixFilePermissions.fromString("rw-r--r--"));
+        Files.writeString(stored, "BINARY");
+        Files.setLastModifiedTime(stored, modified);
+
+        AssetStore store = store(NOW, 1024);
+        // the size and the modification time did not change, so the lookup does not read the file
+        assertTrue(store.contains(hash));
+        assertFalse(store.verify(hash));
+        assertFalse(Files.exists(stored));
+    }
+}
@@ -0,0 +1,80 @@
+package cz.cuni.mff.releasemanager.cache;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import cz.cuni.mff.releasemanager.types.Repo;
+
+class RepoIndexTest {
+
+    private Path tempDir;
+    private Path file;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("repo_index_test");
+        file = tempDir.resolve("cache").resolve("repos.json");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.walk(tempDir)
+            .sorted((a, b) -> b.compareTo(a)) // files before directories
+            .forEach(p -> {
+                try { Files.deleteIfExists(p); } catch (IOException e) {}
+            });
+    }
+
+    private static List<String> names(List<Repo> repos) {
+        return repos.stream().map(Repo::fullName).toList();
+    }
+
+    @Test
+    void testSearch_nameMatchesFirst() {
+        RepoIndex index = new RepoIndex(file);
+        index.add(List.of(
+            new Repo("obsproject/obs-studio", "Free and open source software for live streaming"),
+            new Repo("other/streamer", "Plugin for obs studio"),
+            new Repo("keepassxreboot/keepassxc", "Cross-platform password manager")));
+
+        assertEquals(List.of("obsproject/obs-studio", "other/streamer"), names(index.search("OBS studio", 5)));
+        assertEquals(List.of("keepassxreboot/keepassxc"), names(index.search("password", 5)));
+        assertTrue(index.search("xyz", 5).isEmpty());
+    }
+
+    @Test
+    void testSearch_shortTerm() {
+        RepoIndex index = new RepoIndex(file);
+        index.add(List.of(new Repo("owner/qt", "Qt tools"), new Repo("owner/other", null)));
+
+        assertEquals(List.of("owner/qt"), names(index.search("qt", 5)));
+    }
+
+    @Test
+    void testAdd_keepsDescriptionAndPersists() {
+        RepoIndex index = new RepoIndex(file);
+        index.add(List.of(new Repo("owner/repo", "Release manager")));
+        index.add(List.of(new Repo("owner/repo", null)));
+
+        RepoIndex reloaded = new RepoIndex(file);
+        assertEquals(List.of(new Repo("owner/repo", "Release manager")), reloaded.search("manager", 5));
+    }
+
+    @Test
+    void testAdd_updatesDescription() {
+        RepoIndex index = new RepoIndex(file);
+        index.add(List.of(new Repo("owner/repo", "Old text")));
+        index.add(List.of(new Repo("owner/repo", "New text")));
+
+        assertTrue(index.search("old", 5).isEmpty());
+        assertEquals(List.of("owner/repo"), names(index.search("new", 5)));
+    }
+}
@@ -0,0 +1,91 @@
+package cz.cuni.mff.releasemanager.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import cz.cuni.mff.releasemanager.types.CacheEntry;
+
+class ResponseCacheTest {
+
+    private static final URI URI_1 = URI.create("https://api.github.com/repos/owner/repo/releases/latest");
+
+    private Path tempDir;
+    private ResponseCache cache;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("responses_test");
+        cache = new ResponseCache(tempDir.resolve("responses"));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.walk(tempDir)
+            .sorted((a, b) -> b.compareTo(a)) // files before directories
+            .forEach(p -> {
+                try { Files.deleteIfExists(p); } catch (IOException e) {}
+            });
+    }
+
+    private InputStream stream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private HttpHeaders headers(Map<String, List<String>> values) {
+        return HttpHeaders.of(values, (name, value) -> true);
+    }
+
+    private String readAndClose(InputStream stream) throws IOException {
+        try (stream) {
+            return new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    void testStoreAndGet() throws IOException {
+        InputStream body = cache.store(URI_1, headers(Map.of("ETag", List.of("\"abc\""))), stream("{}"));
+        assertTrue(cache.get(URI_1).isEmpty());
+        assertEquals("{}", readAndClose(body));
+
+        Optional<CacheEntry> entry = cache.get(URI_1);
+        assertTrue(entry.isPresent());
+        assertEquals("\"abc\"", entry.get().etag());
+        assertEquals("{}", readAndClose(cache.openBody(URI_1).orElseThrow()));
+    }
+
+    @Test
+    void testStore_partiallyReadBodyIsCompleted() throws IOException {
+        InputStream body = cache.store(URI_1, headers(Map.of("ETag", List.of("\"abc\""))), stream("{\"a\": 1}"));
+        body.read(new byte[2]);
+        body.close();
+
+        assertEquals("{\"a\": 1}", readAndClose(cache.openBody(URI_1).orElseThrow()));
+    }
+
+    @Test
+    void testStore_withoutValidatorsIsNotCached() throws IOException {
+        readAndClose(cache.store(URI_1, headers(Map.of()), stream("{}")));
+
+        assertTrue(cache.get(URI_1).isEmpty());
+    }
+
+    @Test
+    void testGet_missingEntry() {
+        assertTrue(cache.get(URI.create("https://api.github.com/other")).isEmpty());
+    }
+}
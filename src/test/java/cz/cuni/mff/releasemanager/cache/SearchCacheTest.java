@@ -0,0 +1,101 @@
+package cz.cuni.mff.releasemanager.cache;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import cz.cuni.mff.releasemanager.types.Repo;
+import cz.cuni.mff.releasemanager.types.SearchResult;
+
+class SearchCacheTest {
+
+    private static final Instant NOW = Instant.ofEpochSecond(1_700_000_000L);
+    private static final Duration TTL = Duration.ofMinutes(10);
+
+    private Path tempDir;
+    private Path file;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("search_cache_test");
+        file = tempDir.resolve("cache").resolve("search.json");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.walk(tempDir)
+            .sorted((a, b) -> b.compareTo(a)) // files before directories
+            .forEach(p -> {
+                try { Files.deleteIfExists(p); } catch (IOException e) {}
+            });
+    }
+
+    private SearchCache cache(Instant now, int maxEntries) {
+        return new SearchCache(file, TTL, maxEntries, Clock.fixed(now, ZoneOffset.UTC));
+    }
+
+    private SearchResult result(int totalCount, String... names) {
+        return new SearchResult(List.of(names).stream().map(name -> new Repo(name, "Repository " + name)).toList(),
+            totalCount);
+    }
+
+    @Test
+    void testGet_normalizedQuery() {
+        SearchResult result = result(10, "owner/keepassxc");
+        cache(NOW, 10).put("KeePassXC ", result);
+
+        assertEquals(Optional.of(result), cache(NOW, 10).get("  keepassxc"));
+    }
+
+    @Test
+    void testGet_expiredResult() {
+        cache(NOW, 10).put("keepassxc", result(10, "owner/keepassxc"));
+
+        assertTrue(cache(NOW.plus(TTL).plusSeconds(1), 10).get("keepassxc").isEmpty());
+    }
+
+    @Test
+    void testPut_evictsLeastRecentlyUsed() {
+        SearchCache cache = cache(NOW, 2);
+        cache.put("a", result(10, "o/a"));
+        cache.put("b", result(10, "o/b"));
+        cache.get("a");
+        cache.put("c", result(10, "o/c"));
+
+        assertTrue(cache.get("a").isPresent());
+        assertTrue(cache.get("b").isEmpty());
+        assertTrue(cache.get("c").isPresent());
+    }
+
+    @Test
+    void testGet_narrowerQueryFromCompleteResult() {
+        SearchCache cache = cache(NOW, 10);
+        cache.put("obs", result(3, "obsproject/obs-studio", "obsproject/obs-websocket", "other/obs-plugins"));
+
+        Optional<SearchResult> result = cache.get("obs studio");
+
+        assertTrue(result.isPresent());
+        assertEquals(List.of("obsproject/obs-studio"), result.get().items().stream().map(Repo::fullName).toList());
+    }
+
+    @Test
+    void testGet_noNarrowerQueryFromIncompleteResult() {
+        SearchCache cache = cache(NOW, 10);
+        cache.put("obs", result(500, "obsproject/obs-studio", "obsproject/obs-websocket"));
+
+        assertTrue(cache.get("obs studio").isEmpty());
+        assertTrue(cache.get("obs language:c").isEmpty());
+    }
+}
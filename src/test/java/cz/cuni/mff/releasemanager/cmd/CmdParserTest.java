@@ -1,7 +1,9 @@
 package cz.cuni.mff.releasemanager.cmd;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -51,4 +53,23 @@ class CmdParserTest {
         Command result = cmdParser.parse(args);
         assertEquals(Command.HELP, result);
     }
-}
\ No newline at end of file
+
+    @Test
+    void testParseOptions() {
+        String[] args = {"--offline", "update", "owner/repo", "--jobs=4"};
+        Command result = cmdParser.parse(args);
+
+        assertEquals(Command.UPDATE, result);
+        assertEquals("owner/repo", result.argument);
+        assertTrue(result.hasOption("offline"));
+        assertEquals("4", result.getOption("jobs").orElseThrow());
+    }
+
+    @Test
+    void testParseClearsPreviousOptions() {
+        cmdParser.parse(new String[] {"list", "--offline"});
+        Command result = cmdParser.parse(new String[] {"list"});
+
+        assertFalse(result.hasOption("offline"));
+    }
+}
@@ -0,0 +1,67 @@
+package cz.cuni.mff.releasemanager.download;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import cz.cuni.mff.releasemanager.types.Asset;
+
+class ChecksumsTest {
+
+    private static final String HASH_A = "a".repeat(64);
+    private static final String HASH_B = "B".repeat(64);
+
+    @Test
+    void testParse_sumsFile() {
+        String content = HASH_A + "  app-x86_64.AppImage\n" + HASH_B + " *app-arm64.AppImage\n";
+
+        assertEquals(Optional.of(HASH_A), Checksums.parse(content, "app-x86_64.AppImage"));
+        assertEquals(Optional.of(HASH_B.toLowerCase()), Checksums.parse(content, "app-arm64.AppImage"));
+        assertTrue(Checksums.parse(content, "app.exe").isEmpty());
+    }
+
+    @Test
+    void testSha256_file() throws IOException {
+        Path file = Files.createTempFile("checksums_test", ".bin");
+        try {
+            assertEquals("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855", Checksums.sha256(file));
+            Files.write(file, "abc".getBytes(StandardCharsets.US_ASCII));
+            assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", Checksums.sha256(file));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void testParse_bareHash() {
+        assertEquals(Optional.of(HASH_A), Checksums.parse(HASH_A + "\n", "app.exe"));
+    }
+
+    @Test
+    void testPublishedDigest() {
+        Asset asset = new Asset("url", "app.exe", null, "sha256:" + HASH_A, null, null);
+
+        assertEquals(Optional.of(HASH_A), Checksums.publishedDigest(asset));
+        assertTrue(Checksums.publishedDigest(new Asset("url", "app.exe")).isEmpty());
+    }
+
+    @Test
+    void testFindChecksumFile() {
+        Asset asset = new Asset("url/app", "app.exe");
+        Asset own = new Asset("url/own", "app.exe.sha256");
+        Asset sums = new Asset("url/sums", "SHA256SUMS");
+
+        assertEquals(Optional.of(own), Checksums.findChecksumFile(asset, List.of(asset, sums, own)));
+        assertEquals(Optional.of(sums), Checksums.findChecksumFile(asset, List.of(asset, sums)));
+        assertTrue(Checksums.isChecksumFile("app.exe.sha256"));
+        assertFalse(Checksums.isChecksumFile("app.exe"));
+    }
+}
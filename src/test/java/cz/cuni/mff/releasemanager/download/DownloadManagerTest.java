@@ -0,0 +1,110 @@
+package cz.cuni.mff.releasemanager.download;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import cz.cuni.mff.releasemanager.download.DownloadManager.Connection;
+
+class DownloadManagerTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    void testReserve_waitsForDebtAboveCap() {
+        DownloadManager manager = new DownloadManager(1000, 4, 4, now::get);
+
+        assertEquals(0, manager.reserve(600, 0));
+        assertEquals(SECOND / 2, manager.reserve(900, 0));
+        // half a second refills the debt, the bucket never holds more than one second of bytes
+        assertEquals(0, manager.reserve(0, 5 * SECOND));
+        assertEquals(SECOND / 10, manager.reserve(1100, 5 * SECOND));
+    }
+
+    @Test
+    void testReserve_unlimitedNeverWaits() {
+        DownloadManager manager = new DownloadManager(0, 4, 4, now::get);
+
+        assertEquals(0, manager.reserve(Integer.MAX_VALUE, 0));
+    }
+
+    @Test
+    void testRelease_increasesLimitWhileThroughputImproves() throws InterruptedException {
+        DownloadManager manager = new DownloadManager(0, 8, 8, now::get);
+        assertEquals(4, manager.stats().concurrencyLimit());
+
+        now.addAndGet(SECOND);
+        manager.received(1_000_000, 0);
+        finish(manager, 4);
+        assertEquals(5, manager.stats().concurrencyLimit());
+
+        // the same throughput does not justify another connection
+        now.addAndGet(SECOND);
+        manager.received(1_000_000, 0);
+        finish(manager, 5);
+        assertEquals(5, manager.stats().concurrencyLimit());
+        assertEquals(2_000_000, manager.stats().totalBytes());
+    }
+
+    @Test
+    void testStats_reportsDownloadShorterThanWindow() throws InterruptedException {
+        DownloadManager manager = new DownloadManager(0, 4, 4, now::get);
+
+        now.addAndGet(SECOND / 4);
+        manager.received(500_000, 0);
+
+        assertEquals(2_000_000, manager.stats().bytesPerSecond());
+    }
+
+    @Test
+    void testRelease_congestionHalvesLimit() throws InterruptedException {
+        DownloadManager manager = new DownloadManager(0, 8, 8, now::get);
+
+        try (Connection connection = manager.open("example.com")) {
+            connection.congested();
+        }
+        assertEquals(2, manager.stats().concurrencyLimit());
+
+        manager.received(10, TimeUnit.SECONDS.toNanos(30));
+        assertEquals(1, manager.stats().concurrencyLimit());
+        assertEquals(0, manager.stats().activeConnections());
+    }
+
+    @Test
+    void testOpen_waitsForConnectionToSameHost() throws Exception {
+        DownloadManager manager = new DownloadManager(0, 8, 1, now::get);
+        Connection first = manager.open("example.com");
+
+        CompletableFuture<Connection> blocked = new CompletableFuture<>();
+        Thread.ofVirtual().start(() -> {
+            try {
+                blocked.complete(manager.open("example.com"));
+            } catch (InterruptedException e) {
+                blocked.completeExceptionally(e);
+            }
+        });
+        try (Connection other = manager.open("example.org")) {
+            assertEquals(2, manager.stats().activeConnections());
+        }
+        Thread.sleep(100);
+        assertFalse(blocked.isDone());
+
+        first.close();
+        blocked.get(5, TimeUnit.SECONDS).close();
+        assertTrue(blocked.isDone());
+        assertEquals(0, manager.stats().activeConnections());
+    }
+
+    private static void finish(DownloadManager manager, int requests) throws InterruptedException {
+        for (int i = 0; i < requests; i++) {
+            manager.open("example.com").close();
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package cz.cuni.mff.releasemanager.download;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+class DownloaderTest {
+
+    private static final String ETAG = "\"v1\"";
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d*)");
+    private static final byte[] CONTENT = new byte[20 * 1024 * 1024 + 123];
+
+    private HttpServer server;
+    private Path tempDir;
+    private final AtomicInteger rangeRequests = new AtomicInteger();
+    private final AtomicBoolean failing = new AtomicBoolean();
+    private final List<String> ranges = new CopyOnWriteArrayList<>();
+    private final List<String> ifRanges = new CopyOnWriteArrayList<>();
+    private final List<String> authorizations = new CopyOnWriteArrayList<>();
+    private final CountDownLatch stalled = new CountDownLatch(1);
+
+    @BeforeEach
+    void setUp() throws IOException {
+        new Random(42).nextBytes(CONTENT);
+        tempDir = Files.createTempDirectory("downloader_test");
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/ranges", exchange -> serve(exchange, true));
+        server.createContext("/plain", exchange -> serve(exchange, false));
+        server.createContext("/redirect", exchange -> {
+            exchange.getResponseHeaders().add("Location",
+                "http://localhost:" + server.getAddress().getPort() + "/ranges");
+            exchange.sendResponseHeaders(302, -1);
+            exchange.close();
+        });
+        server.createContext("/stalled", exchange -> {
+            // the headers arrive, the body never does
+            exchange.getResponseHeaders().add("Content-Range", "bytes 0-1023/" + CONTENT.length);
+            exchange.sendResponseHeaders(206, 1024);
+            try {
+                stalled.await(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.close();
+        });
+        server.createContext("/missing", exchange -> {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        stalled.countDown();
+        server.stop(0);
+        Files.walk(tempDir)
+            .sorted((a, b) -> b.compareTo(a)) // files before directories
+            .forEach(p -> {
+                try { Files.deleteIfExists(p); } catch (IOException e) {}
+            });
+    }
+
+    private void serve(HttpExchange exchange, boolean supportsRanges) throws IOException {
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        Matcher matcher = range == null ? null : RANGE.matcher(range);
+        OutputStream body = exchange.getResponseBody();
+        if (!supportsRanges || matcher == null || !matcher.matches()) {
+            exchange.sendResponseHeaders(200, CONTENT.length);
+            body.write(CONTENT);
+            body.close();
+            return;
+        }
+        rangeRequests.incrementAndGet();
+        ranges.add(range);
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        if (authorization != null) {
+            authorizations.add(authorization);
+        }
+        String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+        if (ifRange != null) {
+            ifRanges.add(ifRange);
+        }
+        int start = Integer.parseInt(matcher.group(1));
+        int end = matcher.group(2).isEmpty()
+            ? CONTENT.length - 1
+            : Math.min(CONTENT.length - 1, Integer.parseInt(matcher.group(2)));
+        exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+        exchange.getResponseHeaders().add("ETag", ETAG);
+        exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + end + "/" + CONTENT.length);
+        exchange.sendResponseHeaders(206, end - start + 1);
+        if (failing.get() && start > 0) {
+            // drop the connection halfway through the range
+            body.write(CONTENT, start, (end - start + 1) / 2);
+            body.flush();
+            throw new IOException("Connection dropped");
+        }
+        body.write(CONTENT, start, end - start + 1);
+        body.close();
+    }
+
+    private static String sha256(byte[] content) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+    }
+
+    private HttpRequest request(String path) {
+        return HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.getAddress().getPort() + path)).build();
+    }
+
+    @Test
+    void testDownload_withRanges() throws Exception {
+        Path destination = tempDir.resolve("asset");
+        String sha256 = new Downloader(HttpClient.newHttpClient()).download(request("/ranges"), destination);
+
+        assertArrayEquals(CONTENT, Files.readAllBytes(destination));
+        assertTrue(rangeRequests.get() > 1);
+        assertEquals(sha256(CONTENT), sha256);
+    }
+
+    @Test
+    void testDownload_withoutRangeSupport() throws Exception {
+        Path destination = tempDir.resolve("asset");
+        String sha256 = new Downloader(HttpClient.newHttpClient()).download(request("/plain"), destination);
+
+        assertArrayEquals(CONTENT, Files.readAllBytes(destination));
+        assertEquals(0, rangeRequests.get());
+        assertEquals(sha256(CONTENT), sha256);
+    }
+
+    @Test
+    void testDownload_dropsAuthorizationOnRedirectToOtherHost() throws Exception {
+        Path destination = tempDir.resolve("asset");
+        HttpRequest request = HttpRequest.newBuilder(request("/redirect"), (name, value) -> true)
+            .header("Authorization", "Bearer secret")
+            .build();
+        new Downloader(HttpClient.newHttpClient()).download(request, destination);
+
+        assertArrayEquals(CONTENT, Files.readAllBytes(destination));
+        assertTrue(rangeRequests.get() > 1);
+        assertTrue(authorizations.isEmpty());
+    }
+
+    @Test
+    void testDownload_keepsAuthorizationOnSameHost() throws Exception {
+        Path destination = tempDir.resolve("asset");
+        HttpRequest request = HttpRequest.newBuilder(request("/ranges"), (name, value) -> true)
+            .header("Authorization", "Bearer secret")
+            .build();
+        new Downloader(HttpClient.newHttpClient()).download(request, destination);
+
+        assertArrayEquals(CONTENT, Files.readAllBytes(destination));
+        assertEquals(rangeRequests.get(), authorizations.size());
+    }
+
+    @Test
+    void testDownload_checksFreeSpaceBeforeRequest() {
+        Path destination = tempDir.resolve("asset");
+
+        assertThrows(Downloader.InsufficientSpaceException.class,
+            () -> new Downloader(HttpClient.newHttpClient()).download(request("/ranges"), destination, Long.MAX_VALUE));
+        assertEquals(0, rangeRequests.get());
+        assertFalse(Files.exists(destination));
+    }
+
+    @Test
+    void testStream_hashesUnreadBytes() throws Exception {
+        byte[][] head = new byte[1][];
+        String sha256 = new Downloader(HttpClient.newHttpClient())
+            .stream(request("/plain"), body -> head[0] = body.readNBytes(1024));
+
+        assertArrayEquals(Arrays.copyOf(CONTENT, 1024), head[0]);
+        assertEquals(sha256(CONTENT), sha256);
+    }
+
+    @Test
+    void testDownload_cancelsStalledBody() throws Exception {
+        Path destination = tempDir.resolve("asset");
+        DownloadManager manager = new DownloadManager(0, 4, 4, System::nanoTime, TimeUnit.MILLISECONDS.toNanos(200));
+        Downloader downloader = new Downloader(HttpClient.newHttpClient(), manager);
+
+        IOException e = assertTimeoutPreemptively(Duration.ofSeconds(10),
+            () -> assertThrows(IOException.class, () -> downloader.download(request("/stalled"), destination)));
+        assertTrue(e.getMessage().contains("stalled"));
+        // the stalled connection is released as congested
+        assertEquals(0, manager.stats().activeConnections());
+        assertEquals(2, manager.stats().concurrencyLimit());
+    }
+
+    @Test
+    void testDownload_httpError() {
+        Path destination = tempDir.resolve("asset");
+        Downloader downloader = new Downloader(HttpClient.newHttpClient());
+
+        assertThrows(IOException.class, () -> downloader.download(request("/missing"), destination));
+    }
+
+    @Test
+    void testDownload_resumesInterruptedDownload() throws Exception {
+        Path destination = tempDir.resolve("asset");
+        Downloader downloader = new Downloader(HttpClient.newHttpClient(), 1);
+        failing.set(true);
+
+        assertThrows(IOException.class, () -> downloader.download(request("/ranges"), destination));
+        assertTrue(Downloader.canResume(destination));
+        assertFalse(Files.exists(destination));
+
+        failing.set(false);
+        ranges.clear();
+        String sha256 = downloader.download(request("/ranges"), destination);
+
+        assertArrayEquals(CONTENT, Files.readAllBytes(destination));
+        assertEquals(sha256(CONTENT), sha256);
+        assertFalse(Downloader.canResume(destination));
+        assertTrue(ranges.stream().noneMatch(range -> range.startsWith("bytes=0-")));
+        assertTrue(ifRanges.contains(ETAG));
+    }
+}
@@ -0,0 +1,122 @@
+package cz.cuni.mff.releasemanager.download;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import cz.cuni.mff.releasemanager.utils.FileUtils;
+
+class FileSinkTest {
+
+    private static final byte[] CONTENT = new byte[3 * 1024 * 1024 + 777];
+
+    private Path tempDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        new Random(7).nextBytes(CONTENT);
+        tempDir = Files.createTempDirectory("file_sink_test");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        FileUtils.deleteDirectory(tempDir);
+    }
+
+    private FileChannel open(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Splits the content into buffers of the size the HTTP client delivers.
+     */
+    private static List<ByteBuffer> chunks(byte[] content) {
+        List<ByteBuffer> chunks = new ArrayList<>();
+        for (int offset = 0; offset < content.length; offset += 16 * 1024) {
+            chunks.add(ByteBuffer.wrap(content, offset, Math.min(16 * 1024, content.length - offset)));
+        }
+        return chunks;
+    }
+
+    @Test
+    void testSubscriber_writesBodyAtOffset() throws Exception {
+        Path file = tempDir.resolve("asset");
+        List<Long> starts = new ArrayList<>();
+        long[] listened = new long[1];
+        List<Long> requested = new ArrayList<>();
+        int deliveries = 0;
+        try (FileChannel channel = open(file)) {
+            FileSink.preallocate(channel, 100 + CONTENT.length);
+            FileSink sink = new FileSink(channel, 100, null, (start, data) -> {
+                starts.add(start);
+                listened[0] += data.remaining();
+            });
+            sink.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                    requested.add(n);
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            List<ByteBuffer> chunks = chunks(CONTENT);
+            for (int i = 0; i < chunks.size(); i += 3) {
+                sink.onNext(chunks.subList(i, Math.min(chunks.size(), i + 3)));
+                deliveries++;
+            }
+            sink.onComplete();
+
+            assertEquals(CONTENT.length, sink.getBody().toCompletableFuture().get(1, TimeUnit.SECONDS).longValue());
+        }
+
+        byte[] written = Files.readAllBytes(file);
+        assertEquals(100 + CONTENT.length, written.length);
+        assertArrayEquals(CONTENT, Arrays.copyOfRange(written, 100, written.length));
+        assertEquals(List.of(100L, 100L + 1024 * 1024, 100L + 2 * 1024 * 1024, 100L + 3 * 1024 * 1024), starts);
+        assertEquals(CONTENT.length, listened[0]);
+        // one buffer list at a time, after the subscription and after every delivery
+        assertEquals(deliveries + 1, requested.size());
+    }
+
+    @Test
+    void testSubscriber_failsWhenChannelIsClosed() throws Exception {
+        FileChannel channel = open(tempDir.resolve("asset"));
+        FileSink sink = new FileSink(channel, 0);
+        boolean[] cancelled = new boolean[1];
+        sink.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+            }
+
+            @Override
+            public void cancel() {
+                cancelled[0] = true;
+            }
+        });
+        channel.close();
+
+        sink.onNext(List.of(ByteBuffer.wrap(CONTENT)));
+
+        assertTrue(cancelled[0]);
+        assertThrows(Exception.class, () -> sink.getBody().toCompletableFuture().get(1, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,31 @@
+package cz.cuni.mff.releasemanager.download;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+
+class Md4Test {
+
+    private static String md4(String message) {
+        byte[] data = message.getBytes(StandardCharsets.US_ASCII);
+        return HexFormat.of().formatHex(Md4.digest(data, 0, data.length));
+    }
+
+    @Test
+    void testDigest_rfc1320Vectors() {
+        assertEquals("31d6cfe0d16ae931b73c59d7e0c089c0", md4(""));
+        assertEquals("a448017aaf21d8525fc10ae87aa6729d", md4("abc"));
+        assertEquals("d9130a8164549fe818874806e1c7014b", md4("message digest"));
+        assertEquals("e33b4ddc9c38f2199c3e7b164fcc0536",
+            md4("12345678901234567890123456789012345678901234567890123456789012345678901234567890"));
+    }
+
+    @Test
+    void testDigest_offsetInBuffer() {
+        byte[] data = "xxabcxx".getBytes(StandardCharsets.US_ASCII);
+
+        assertEquals("a448017aaf21d8525fc10ae87aa6729d", HexFormat.of().formatHex(Md4.digest(data, 2, 3)));
+    }
+}
@@ -0,0 +1,120 @@
+package cz.cuni.mff.releasemanager.download;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Optional;
+
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import cz.cuni.mff.releasemanager.types.Asset;
+import cz.cuni.mff.releasemanager.types.PrefetchedUpdate;
+import cz.cuni.mff.releasemanager.types.ReleaseInfo;
+import cz.cuni.mff.releasemanager.utils.FileUtils;
+
+class PrefetchAreaTest {
+
+    private static final Asset OLD_ASSET = new Asset("http://oldurl", "app.AppImage");
+    private static final Asset NEW_ASSET = new Asset("http://newurl", "app.AppImage");
+
+    private Path tempDir;
+    private PrefetchArea prefetchArea;
+    private ReleaseInfo installed;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("prefetch_area_test");
+        prefetchArea = new PrefetchArea(tempDir.resolve("prefetch"));
+        installed = new ReleaseInfo("user/app", Instant.ofEpochSecond(1_700_000_000L), "/bin/app", OLD_ASSET);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        FileUtils.deleteDirectory(tempDir);
+    }
+
+    private Path download(String content) throws IOException {
+        Path dir = Files.createTempDirectory(tempDir, "stage-");
+        return Files.writeString(dir.resolve("app.AppImage"), content);
+    }
+
+    private PrefetchedUpdate prefetch(String content) throws IOException {
+        Path download = download(content);
+        return prefetchArea.add(installed, NEW_ASSET, download, Checksums.sha256(download));
+    }
+
+    @Test
+    void testFind_returnsPrefetchedUpdateOfInstalledRelease() throws IOException {
+        Path download = download("new version");
+        prefetchArea.add(installed, NEW_ASSET, download, Checksums.sha256(download));
+
+        Optional<PrefetchedUpdate> found = new PrefetchArea(tempDir.resolve("prefetch")).find(installed);
+
+        assertTrue(found.isPresent());
+        assertEquals(NEW_ASSET, found.get().asset());
+        assertFalse(Files.exists(download));
+        assertEquals("new version", Files.readString(Path.of(found.get().file())));
+
+        prefetchArea.remove("user/app");
+        assertFalse(Files.exists(Path.of(found.get().file())));
+        assertTrue(prefetchArea.find(installed).isEmpty());
+    }
+
+    @Test
+    void testFind_dropsUpdateOfReplacedInstallation() throws IOException {
+        PrefetchedUpdate update = prefetch("new version");
+        ReleaseInfo reinstalled = new ReleaseInfo("user/app", installed.installedAt().plusSeconds(60), "/bin/app", NEW_ASSET);
+
+        assertTrue(prefetchArea.find(reinstalled).isEmpty());
+        assertFalse(Files.exists(Path.of(update.file())));
+        assertTrue(prefetchArea.find(installed).isEmpty());
+    }
+
+    @Test
+    void testFind_dropsModifiedAsset() throws IOException {
+        PrefetchedUpdate update = prefetch("new version");
+        Files.writeString(Path.of(update.file()), "tampered");
+
+        assertTrue(prefetchArea.find(installed).isEmpty());
+        assertFalse(Files.exists(Path.of(update.file())));
+    }
+
+    @Test
+    void testFind_trustsUnchangedSizeAndModificationTime() throws IOException {
+        PrefetchedUpdate update = prefetch("new version");
+        Path file = Path.of(update.file());
+        FileTime modified = Files.getLastModifiedTime(file);
+        Files.writeString(file, "same length");
+        Files.setLastModifiedTime(file, modified);
+
+        assertTrue(prefetchArea.find(installed).isPresent());
+    }
+
+    @Test
+    void testFind_rehashesTouchedAsset() throws IOException {
+        PrefetchedUpdate update = prefetch("new version");
+        Path file = Path.of(update.file());
+        Files.setLastModifiedTime(file, FileTime.fromMillis(update.stamp().modified() + 60_000));
+
+        PrefetchedUpdate found = prefetchArea.find(installed).orElseThrow();
+
+        assertEquals(update.stamp().modified() + 60_000, found.stamp().modified());
+        assertEquals(found, prefetchArea.find(installed).orElseThrow());
+    }
+
+    @Test
+    void testAdd_replacesEarlierPrefetch() throws IOException {
+        PrefetchedUpdate first = prefetch("first");
+        PrefetchedUpdate second = prefetch("second");
+
+        assertFalse(Files.exists(Path.of(first.file())));
+        assertEquals(second, prefetchArea.find(installed).orElseThrow());
+    }
+}
@@ -0,0 +1,36 @@
+package cz.cuni.mff.releasemanager.download;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+
+import cz.cuni.mff.releasemanager.types.ByteRange;
+
+class ReceivedRangesTest {
+
+    @Test
+    void testAdd_mergesAdjacentAndOverlappingRanges() {
+        ReceivedRanges ranges = new ReceivedRanges(null);
+        ranges.add(0, 10);
+        ranges.add(20, 30);
+        ranges.add(10, 15);
+        ranges.add(14, 22);
+
+        assertEquals(List.of(new ByteRange(0, 30)), ranges.toList());
+    }
+
+    @Test
+    void testMissing() {
+        ReceivedRanges ranges = new ReceivedRanges(List.of(new ByteRange(10, 20), new ByteRange(30, 40)));
+
+        assertEquals(List.of(new ByteRange(0, 10), new ByteRange(20, 30), new ByteRange(40, 50)), ranges.missing(50));
+    }
+
+    @Test
+    void testMissing_complete() {
+        ReceivedRanges ranges = new ReceivedRanges(List.of(new ByteRange(0, 50)));
+
+        assertEquals(List.of(), ranges.missing(50));
+    }
+}
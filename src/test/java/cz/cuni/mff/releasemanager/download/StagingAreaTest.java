@@ -0,0 +1,91 @@
+package cz.cuni.mff.releasemanager.download;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import cz.cuni.mff.releasemanager.utils.FileUtils;
+
+class StagingAreaTest {
+
+    // above the largest pid Linux hands out, so never a running process
+    private static final long DEAD_PID = 999_999_999L;
+    private static final Instant NOW = Instant.ofEpochSecond(1_700_000_000L);
+
+    private Path tempDir;
+    private final long pid = ProcessHandle.current().pid();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("staging_area_test");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        FileUtils.deleteDirectory(tempDir);
+    }
+
+    private StagingArea staging(Instant now) {
+        return new StagingArea(tempDir, Clock.fixed(now, ZoneOffset.UTC));
+    }
+
+    private Path partialDownload(long owner, String filename) throws IOException {
+        Path dir = Files.createDirectories(tempDir.resolve("stage-" + owner + "-123"));
+        Files.writeString(dir.resolve(filename + ".part"), "partial");
+        Files.writeString(dir.resolve(filename + ".part.json"), "{}");
+        return dir;
+    }
+
+    @Test
+    void testStage_uniqueDirectoryPerDownload() throws IOException {
+        StagingArea staging = staging(NOW);
+        Path first = staging.stage("app.AppImage");
+        Path second = staging.stage("app.AppImage");
+
+        assertNotEquals(first.getParent(), second.getParent());
+        assertTrue(first.getParent().getFileName().toString().startsWith("stage-" + pid + "-"));
+        assertEquals(tempDir, first.getParent().getParent());
+    }
+
+    @Test
+    void testStage_adoptsInterruptedDownloadOfFinishedProcess() throws IOException {
+        Path stale = partialDownload(DEAD_PID, "app.AppImage");
+
+        Path staged = staging(NOW).stage("app.AppImage");
+
+        assertFalse(Files.exists(stale));
+        assertTrue(Downloader.canResume(staged));
+        assertEquals("stage-" + pid + "-123", staged.getParent().getFileName().toString());
+    }
+
+    @Test
+    void testStage_removesStaleDirectories() throws IOException {
+        Path empty = Files.createDirectories(tempDir.resolve("stage-" + DEAD_PID + "-1"));
+        Path recent = partialDownload(DEAD_PID, "other.AppImage");
+        Path running = Files.createDirectories(tempDir.resolve("stage-" + pid + "-2"));
+        Files.setLastModifiedTime(recent, FileTime.from(NOW));
+
+        staging(NOW.plus(Duration.ofDays(1))).stage("app.AppImage");
+
+        assertFalse(Files.exists(empty));
+        assertTrue(Files.exists(recent));
+        assertTrue(Files.exists(running));
+
+        staging(NOW.plus(Duration.ofDays(8))).stage("app.AppImage");
+
+        assertFalse(Files.exists(recent));
+    }
+}
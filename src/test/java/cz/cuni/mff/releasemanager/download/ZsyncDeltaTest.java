@@ -0,0 +1,178 @@
+package cz.cuni.mff.releasemanager.download;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+class ZsyncDeltaTest {
+
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+    private static final int BLOCK_SIZE = 2048;
+
+    private HttpServer server;
+    private Path tempDir;
+    private byte[] oldContent;
+    private byte[] newContent;
+    private final AtomicLong servedBytes = new AtomicLong();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Random random = new Random(42);
+        oldContent = new byte[1024 * 1024 + 100];
+        random.nextBytes(oldContent);
+        // the new version inserts a few bytes, changes a region and keeps the rest
+        ByteArrayOutputStream changed = new ByteArrayOutputStream();
+        changed.write(oldContent, 0, 300_000);
+        changed.write("inserted".getBytes(StandardCharsets.US_ASCII));
+        changed.write(oldContent, 300_000, 400_000);
+        byte[] region = new byte[10_000];
+        random.nextBytes(region);
+        changed.write(region);
+        changed.write(oldContent, 710_000, oldContent.length - 710_000);
+        newContent = changed.toByteArray();
+
+        tempDir = Files.createTempDirectory("zsync_delta_test");
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/new", this::serve);
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        server.stop(0);
+        Files.walk(tempDir)
+            .sorted((a, b) -> b.compareTo(a)) // files before directories
+            .forEach(p -> {
+                try { Files.deleteIfExists(p); } catch (IOException e) {}
+            });
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        Matcher matcher = RANGE.matcher(exchange.getRequestHeaders().getFirst("Range"));
+        OutputStream body = exchange.getResponseBody();
+        if (!matcher.matches()) {
+            exchange.sendResponseHeaders(416, -1);
+            exchange.close();
+            return;
+        }
+        int start = Integer.parseInt(matcher.group(1));
+        int end = Math.min(newContent.length - 1, Integer.parseInt(matcher.group(2)));
+        exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + end + "/" + newContent.length);
+        exchange.sendResponseHeaders(206, end - start + 1);
+        body.write(newContent, start, end - start + 1);
+        body.close();
+        servedBytes.addAndGet(end - start + 1);
+    }
+
+    /**
+     * Writes a control file the way zsyncmake does.
+     */
+    private static byte[] control(byte[] content, int seqMatches, int rsumBytes, int checksumBytes) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        String sha1 = HexFormat.of().formatHex(Checksums.sha1().digest(content));
+        out.write(("zsync: 0.6.2\nFilename: new\nBlocksize: " + BLOCK_SIZE + "\nLength: " + content.length
+            + "\nHash-Lengths: " + seqMatches + "," + rsumBytes + "," + checksumBytes
+            + "\nURL: new\nSHA-1: " + sha1 + "\n\n").getBytes(StandardCharsets.US_ASCII));
+        for (int offset = 0; offset < content.length; offset += BLOCK_SIZE) {
+            byte[] block = Arrays.copyOfRange(content, offset, offset + BLOCK_SIZE);
+            int a = 0;
+            int b = 0;
+            for (int i = 0; i < BLOCK_SIZE; i++) {
+                a += block[i] & 0xff;
+                b += (BLOCK_SIZE - i) * (block[i] & 0xff);
+            }
+            int rsum = (a & 0xffff) << 16 | (b & 0xffff);
+            for (int i = rsumBytes - 1; i >= 0; i--) {
+                out.write(rsum >>> (8 * i));
+            }
+            out.write(Md4.digest(block, 0, BLOCK_SIZE), 0, checksumBytes);
+        }
+        return out.toByteArray();
+    }
+
+    private HttpRequest request() {
+        return HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/new")).build();
+    }
+
+    @Test
+    void testParse_readsHeaderAndBlocks() throws Exception {
+        ZsyncControl control = ZsyncControl.parse(control(newContent, 2, 3, 5));
+
+        assertEquals(BLOCK_SIZE, control.blockSize());
+        assertEquals(newContent.length, control.length());
+        assertEquals((newContent.length + BLOCK_SIZE - 1) / BLOCK_SIZE, control.blockCount());
+        assertEquals(2, control.seqMatches());
+        assertEquals("new", control.url());
+    }
+
+    @Test
+    void testParse_rejectsTruncatedChecksums() throws Exception {
+        byte[] content = control(newContent, 1, 4, 16);
+
+        assertThrows(IOException.class, () -> ZsyncControl.parse(Arrays.copyOf(content, content.length - 10)));
+    }
+
+    @Test
+    void testUpdate_fetchesOnlyChangedBlocks() throws Exception {
+        Path seed = Files.write(tempDir.resolve("old.AppImage"), oldContent);
+        Path destination = tempDir.resolve("new.AppImage");
+        ZsyncControl control = ZsyncControl.parse(control(newContent, 2, 3, 5));
+
+        String sha256 = new ZsyncDelta(new Downloader(HttpClient.newHttpClient())).update(control, seed, request(), destination);
+
+        assertArrayEquals(newContent, Files.readAllBytes(destination));
+        assertEquals(HexFormat.of().formatHex(Checksums.sha256().digest(newContent)), sha256);
+        assertTrue(servedBytes.get() < newContent.length / 10, "served " + servedBytes.get() + " bytes");
+    }
+
+    @Test
+    void testUpdate_withoutSeedFetchesWholeFile() throws Exception {
+        Path destination = tempDir.resolve("new.AppImage");
+        ZsyncControl control = ZsyncControl.parse(control(newContent, 1, 4, 16));
+
+        new ZsyncDelta(new Downloader(HttpClient.newHttpClient()))
+            .update(control, tempDir.resolve("missing"), request(), destination);
+
+        assertArrayEquals(newContent, Files.readAllBytes(destination));
+        assertEquals(newContent.length, servedBytes.get());
+    }
+
+    @Test
+    void testUpdate_mismatchingFileFails() throws Exception {
+        Path seed = Files.write(tempDir.resolve("old.AppImage"), oldContent);
+        Path destination = tempDir.resolve("new.AppImage");
+        String controlFile = new String(control(newContent, 1, 4, 16), StandardCharsets.ISO_8859_1)
+            .replaceFirst("SHA-1: [0-9a-f]+", "SHA-1: " + "0".repeat(40));
+        ZsyncControl control = ZsyncControl.parse(controlFile.getBytes(StandardCharsets.ISO_8859_1));
+
+        assertThrows(IOException.class, () -> new ZsyncDelta(new Downloader(HttpClient.newHttpClient()))
+            .update(control, seed, request(), destination));
+        assertFalse(Files.exists(destination));
+        assertFalse(Files.exists(tempDir.resolve("new.AppImage.zsync.part")));
+    }
+}
@@ -0,0 +1,117 @@
+package cz.cuni.mff.releasemanager.http;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import cz.cuni.mff.releasemanager.http.CircuitBreaker.State;
+
+class CircuitBreakerTest {
+
+    private static final String HOST = "api.github.com";
+
+    private MutableClock clock;
+    private CircuitBreaker breaker;
+
+    @BeforeEach
+    void setUp() {
+        clock = new MutableClock(Instant.ofEpochSecond(1_700_000_000L));
+        breaker = new CircuitBreaker(3, Duration.ofSeconds(30), clock);
+    }
+
+    @Test
+    void testOpensAfterConsecutiveFailures() {
+        breaker.recordFailure(HOST);
+        breaker.recordFailure(HOST);
+        assertDoesNotThrow(() -> breaker.allow(HOST));
+
+        breaker.recordFailure(HOST);
+
+        assertEquals(State.OPEN, breaker.getState(HOST));
+        assertThrows(CircuitBreaker.OpenException.class, () -> breaker.allow(HOST));
+        assertDoesNotThrow(() -> breaker.allow("objects.githubusercontent.com"));
+    }
+
+    @Test
+    void testSuccessResetsFailures() {
+        breaker.recordFailure(HOST);
+        breaker.recordFailure(HOST);
+        breaker.recordSuccess(HOST);
+        breaker.recordFailure(HOST);
+
+        assertEquals(State.CLOSED, breaker.getState(HOST));
+    }
+
+    @Test
+    void testHalfOpenProbe() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            breaker.recordFailure(HOST);
+        }
+        clock.advance(Duration.ofSeconds(31));
+
+        breaker.allow(HOST);
+        assertEquals(State.HALF_OPEN, breaker.getState(HOST));
+        assertThrows(CircuitBreaker.OpenException.class, () -> breaker.allow(HOST));
+
+        breaker.recordFailure(HOST);
+        assertEquals(State.OPEN, breaker.getState(HOST));
+
+        clock.advance(Duration.ofSeconds(31));
+        breaker.allow(HOST);
+        breaker.recordSuccess(HOST);
+        assertEquals(State.CLOSED, breaker.getState(HOST));
+    }
+
+    @Test
+    void testProbeWithoutOutcomeExpires() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            breaker.recordFailure(HOST);
+        }
+        clock.advance(Duration.ofSeconds(31));
+
+        // the probe fails with an error that is recorded neither as a success nor as a failure
+        breaker.allow(HOST);
+        clock.advance(Duration.ofSeconds(29));
+        assertThrows(CircuitBreaker.OpenException.class, () -> breaker.allow(HOST));
+
+        clock.advance(Duration.ofSeconds(1));
+        assertDoesNotThrow(() -> breaker.allow(HOST));
+        assertEquals(State.HALF_OPEN, breaker.getState(HOST));
+        assertThrows(CircuitBreaker.OpenException.class, () -> breaker.allow(HOST));
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package cz.cuni.mff.releasemanager.http;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import cz.cuni.mff.releasemanager.http.RateLimiter.Priority;
+import cz.cuni.mff.releasemanager.types.RateLimitBudget;
+
+class RateLimiterTest {
+
+    private static final long NOW = 1_700_000_000L;
+    private static final Clock CLOCK = Clock.fixed(Instant.ofEpochSecond(NOW), ZoneOffset.UTC);
+
+    private Path tempDir;
+    private Path file;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("ratelimit_test");
+        file = tempDir.resolve("cache").resolve("ratelimit.json");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.walk(tempDir)
+            .sorted((a, b) -> b.compareTo(a)) // files before directories
+            .forEach(p -> {
+                try { Files.deleteIfExists(p); } catch (IOException e) {}
+            });
+    }
+
+    private HttpHeaders headers(long limit, long remaining, long reset) {
+        return HttpHeaders.of(Map.of(
+            "X-RateLimit-Limit", List.of(String.valueOf(limit)),
+            "X-RateLimit-Remaining", List.of(String.valueOf(remaining)),
+            "X-RateLimit-Reset", List.of(String.valueOf(reset))
+        ), (name, value) -> true);
+    }
+
+    @Test
+    void testResourceOf() {
+        assertEquals("search", RateLimiter.resourceOf(URI.create("https://api.github.com/search/repositories?q=a")));
+        assertEquals("graphql", RateLimiter.resourceOf(URI.create("https://api.github.com/graphql")));
+        assertEquals("core", RateLimiter.resourceOf(URI.create("https://api.github.com/repos/o/r/releases/latest")));
+    }
+
+    @Test
+    void testUpdate_persistsBudget() {
+        RateLimiter limiter = new RateLimiter(file, CLOCK);
+        limiter.update("core", null, headers(60, 42, NOW + 600));
+
+        RateLimitBudget budget = new RateLimiter(file, CLOCK).getBudget("core", null);
+        assertEquals(new RateLimitBudget(60, 42, NOW + 600, 0), budget);
+    }
+
+    @Test
+    void testUpdate_ignoresResponseWithoutRateLimit() {
+        RateLimiter limiter = new RateLimiter(file, CLOCK);
+        limiter.update("core", null, HttpHeaders.of(Map.of(), (name, value) -> true));
+
+        assertNull(limiter.getBudget("core", null));
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    void testAcquire_reservesBudget() throws Exception {
+        RateLimiter limiter = new RateLimiter(file, CLOCK);
+        limiter.update("core", null, headers(60, 42, NOW + 600));
+
+        limiter.acquire("core", null, Priority.INTERACTIVE);
+
+        assertEquals(41, limiter.getBudget("core", null).remaining());
+    }
+
+    @Test
+    void testAcquire_exhaustedBudgetFailsFast() {
+        RateLimiter limiter = new RateLimiter(file, CLOCK);
+        limiter.update("core", null, headers(60, 0, NOW + 3600));
+
+        assertThrows(IOException.class, () -> limiter.acquire("core", null, Priority.INTERACTIVE));
+    }
+
+    @Test
+    void testAcquire_backgroundLeavesReserveForInteractive() {
+        RateLimiter limiter = new RateLimiter(file, CLOCK);
+        limiter.update("core", null, headers(5000, 100, NOW + 3600));
+
+        assertThrows(IOException.class, () -> limiter.acquire("core", null, Priority.BACKGROUND));
+        assertDoesNotThrow(() -> limiter.acquire("core", null, Priority.INTERACTIVE));
+    }
+
+    @Test
+    void testAcquire_budgetRefreshedAfterReset() {
+        RateLimiter limiter = new RateLimiter(file, CLOCK);
+        limiter.update("core", null, headers(60, 0, NOW - 1));
+
+        assertDoesNotThrow(() -> limiter.acquire("core", null, Priority.BACKGROUND));
+        assertEquals(59, limiter.getBudget("core", null).remaining());
+    }
+
+    @Test
+    void testAcquire_respectsRetryAfter() {
+        RateLimiter limiter = new RateLimiter(file, CLOCK);
+        limiter.update("search", null, HttpHeaders.of(Map.of("Retry-After", List.of("120")), (name, value) -> true));
+
+        assertEquals(NOW + 120, limiter.getBudget("search", null).blockedUntil());
+        assertThrows(IOException.class, () -> limiter.acquire("search", null, Priority.INTERACTIVE));
+    }
+
+    @Test
+    void testIsRateLimited() {
+        assertTrue(RateLimiter.isRateLimited(429, null));
+        assertTrue(RateLimiter.isRateLimited(403, headers(60, 0, NOW)));
+        assertFalse(RateLimiter.isRateLimited(403, headers(60, 10, NOW)));
+        assertFalse(RateLimiter.isRateLimited(200, headers(60, 0, NOW)));
+    }
+}
@@ -0,0 +1,46 @@
+package cz.cuni.mff.releasemanager.http;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import cz.cuni.mff.releasemanager.types.Settings;
+
+class RetryPolicyTest {
+
+    @Test
+    void testDelayGrowsWithinBounds() {
+        RetryPolicy policy = new RetryPolicy(5, Duration.ofMillis(100), Duration.ofMillis(1000));
+
+        for (int i = 0; i < 20; i++) {
+            long first = policy.delay(1).toMillis();
+            long third = policy.delay(3).toMillis();
+            long tenth = policy.delay(10).toMillis();
+            assertTrue(first >= 50 && first <= 100);
+            assertTrue(third >= 200 && third <= 400);
+            assertTrue(tenth >= 500 && tenth <= 1000);
+        }
+    }
+
+    @Test
+    void testCanRetry() {
+        RetryPolicy policy = RetryPolicy.of(Settings.DEFAULT);
+
+        assertTrue(policy.canRetry(3));
+        assertFalse(policy.canRetry(4));
+    }
+
+    @Test
+    void testIsRetryable() {
+        assertTrue(RetryPolicy.isRetryable(503));
+        assertFalse(RetryPolicy.isRetryable(404));
+        assertTrue(RetryPolicy.isRetryable(new ConnectException()));
+        assertTrue(RetryPolicy.isRetryable(new HttpStatusException(502, "Bad Gateway")));
+        assertFalse(RetryPolicy.isRetryable(new HttpStatusException(404, "Not Found")));
+        assertFalse(RetryPolicy.isRetryable((IOException) new CircuitBreaker.OpenException("open")));
+    }
+}
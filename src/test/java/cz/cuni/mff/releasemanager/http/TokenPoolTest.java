@@ -0,0 +1,96 @@
+package cz.cuni.mff.releasemanager.http;
+
+import java.io.IOException;
+import java.net.http.HttpHeaders;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import cz.cuni.mff.releasemanager.http.TokenPool.Token;
+import cz.cuni.mff.releasemanager.types.Settings;
+
+class TokenPoolTest {
+
+    private Path tempDir;
+    private RateLimiter rateLimiter;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("tokenpool_test");
+        rateLimiter = new RateLimiter(tempDir.resolve("ratelimit.json"));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.walk(tempDir)
+            .sorted((a, b) -> b.compareTo(a)) // files before directories
+            .forEach(p -> {
+                try { Files.deleteIfExists(p); } catch (IOException e) {}
+            });
+    }
+
+    private void budget(Token token, long remaining) {
+        long reset = Instant.now().getEpochSecond() + 3600;
+        rateLimiter.update("core", token.id(), HttpHeaders.of(Map.of(
+            "X-RateLimit-Limit", List.of("5000"),
+            "X-RateLimit-Remaining", List.of(String.valueOf(remaining)),
+            "X-RateLimit-Reset", List.of(String.valueOf(reset))
+        ), (name, value) -> true));
+    }
+
+    @Test
+    void testOf_readsEnvironmentAndSettings() {
+        Settings settings = new Settings(null, null, null, null, null, List.of("d", "a"), null, null, null, null, null, null);
+        TokenPool pool = TokenPool.of(Map.of("GITHUB_TOKENS", "a, b\nc", "GH_TOKEN", "b"), settings);
+
+        assertEquals(4, pool.size());
+        assertTrue(TokenPool.of(Map.of(), Settings.DEFAULT).isEmpty());
+    }
+
+    @Test
+    void testSelect_rotatesTokensWithSameBudget() {
+        TokenPool pool = new TokenPool(List.of("a", "b", "c"));
+
+        Set<String> used = new HashSet<>();
+        for (int i = 0; i < 3; i++) {
+            used.add(pool.select("core", rateLimiter).get().value());
+        }
+
+        assertEquals(Set.of("a", "b", "c"), used);
+    }
+
+    @Test
+    void testSelect_prefersLargestBudgetAndSkipsExhausted() {
+        TokenPool pool = new TokenPool(List.of("a", "b", "c"));
+        Token a = new TokenPool(List.of("a")).select("core", rateLimiter).get();
+        Token b = new TokenPool(List.of("b")).select("core", rateLimiter).get();
+        Token c = new TokenPool(List.of("c")).select("core", rateLimiter).get();
+        budget(a, 0);
+        budget(b, 4000);
+        budget(c, 100);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals("b", pool.select("core", rateLimiter).get().value());
+        }
+        assertFalse(rateLimiter.available("core", a.id()) > 0);
+    }
+
+    @Test
+    void testTokenIsNotPrinted() {
+        Token token = new TokenPool(List.of("secret")).select("core", rateLimiter).get();
+
+        assertFalse(token.toString().contains("secret"));
+        assertFalse(token.id().contains("secret"));
+    }
+}
@@ -0,0 +1,82 @@
+package cz.cuni.mff.releasemanager.platform;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import cz.cuni.mff.releasemanager.platform.AssetRanker.Libc;
+import cz.cuni.mff.releasemanager.platform.Platform.Architecture;
+import cz.cuni.mff.releasemanager.platform.Platform.OS;
+import cz.cuni.mff.releasemanager.types.Asset;
+
+class AssetRankerTest {
+
+    private static final String[] LINUX_FORMATS = { ".appimage", ".tar.gz", ".tgz", ".tar.xz", ".txz", ".zip" };
+
+    private final AssetRanker linux = new AssetRanker(OS.LINUX, Architecture.X86_64, Libc.GLIBC);
+
+    private static List<Asset> assets(String... names) {
+        return Arrays.stream(names).map(name -> new Asset("https://example.com/" + name, name)).toList();
+    }
+
+    private static List<String> names(List<Asset> assets) {
+        return assets.stream().map(Asset::name).toList();
+    }
+
+    @Test
+    void testRank_dropsOtherPlatformsAndSidecarFiles() {
+        List<Asset> ranked = linux.rank(assets(
+            "tool-1.0-aarch64.AppImage",
+            "tool-1.0-x86_64.AppImage.zsync",
+            "tool-1.0-x86_64.AppImage.sha256",
+            "tool-1.0-windows-x64.zip",
+            "tool-1.0-x86_64-apple-darwin.tar.gz",
+            "tool-1.0-i686.AppImage",
+            "tool-1.0-linux-amd64.tar.gz",
+            "tool-1.0-x86_64.AppImage",
+            "tool-1.0.tar.gz"
+        ), LINUX_FORMATS);
+
+        assertEquals(List.of("tool-1.0-linux-amd64.tar.gz", "tool-1.0-x86_64.AppImage", "tool-1.0.tar.gz"), names(ranked));
+    }
+
+    @Test
+    void testPick_prefersNativeLibc() {
+        List<Asset> assets = assets("tool-x86_64-unknown-linux-musl.tar.gz", "tool-x86_64-unknown-linux-gnu.tar.gz");
+
+        assertEquals(Optional.of("tool-x86_64-unknown-linux-gnu.tar.gz"),
+            linux.pick(assets, LINUX_FORMATS).map(Asset::name));
+        assertEquals(Optional.of("tool-x86_64-unknown-linux-musl.tar.gz"),
+            new AssetRanker(OS.LINUX, Architecture.X86_64, Libc.MUSL).pick(assets, LINUX_FORMATS).map(Asset::name));
+    }
+
+    @Test
+    void testPick_prefersFormatOfTheSameBuild() {
+        List<Asset> assets = assets("tool-1.0-x86_64.tar.gz", "tool-1.0-x86_64.AppImage");
+
+        assertEquals(Optional.of("tool-1.0-x86_64.AppImage"), linux.pick(assets, LINUX_FORMATS).map(Asset::name));
+    }
+
+    @Test
+    void testPick_asksBetweenDifferentBuilds() {
+        List<Asset> assets = assets("tool-cli-1.0-x86_64.AppImage", "tool-gui-1.0-x86_64.AppImage");
+
+        assertTrue(linux.pick(assets, LINUX_FORMATS).isEmpty());
+    }
+
+    @Test
+    void testPatternOf_matchesLaterVersions() {
+        String pattern = AssetRanker.patternOf("tool-v1.2.3-x86_64-linux-musl.tar.gz");
+
+        List<Asset> later = assets("tool-v1.10.0-x86_64-linux-gnu.tar.gz", "tool-v1.10.0-x86_64-linux-musl.tar.gz");
+
+        assertEquals(Optional.of("tool-v1.10.0-x86_64-linux-musl.tar.gz"),
+            AssetRanker.findByPattern(pattern, later).map(Asset::name));
+        assertTrue(AssetRanker.findByPattern(pattern, assets("tool-v1.10.0-aarch64-linux-musl.tar.gz")).isEmpty());
+        assertTrue(AssetRanker.findByPattern(null, later).isEmpty());
+    }
+}
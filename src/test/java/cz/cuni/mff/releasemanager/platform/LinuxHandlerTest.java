@@ -0,0 +1,87 @@
+package cz.cuni.mff.releasemanager.platform;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import cz.cuni.mff.releasemanager.utils.FileUtils;
+
+class LinuxHandlerTest {
+
+    private Path home;
+    private String previousHome;
+    private final LinuxHandler handler = LinuxHandler.getInstance();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        home = Files.createTempDirectory("linux_handler_test");
+        previousHome = System.getProperty("user.home");
+        System.setProperty("user.home", home.toString());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        System.setProperty("user.home", previousHome);
+        FileUtils.deleteDirectory(home);
+    }
+
+    private Path binDir() {
+        return home.resolve(".local/bin");
+    }
+
+    @Test
+    void testInstall_unpackedArchiveLinksExecutablesInBin() throws IOException {
+        Path unpacked = Files.createDirectories(home.resolve("stage/tool-1.0-linux"));
+        Path content = Files.createDirectories(unpacked.resolve("tool-1.0/bin"));
+        Files.writeString(content.resolve("tool"), "#!/bin/sh\n");
+        Files.setPosixFilePermissions(content.resolve("tool"), PosixFilePermissions.fromString("rwxr-xr-x"));
+        Files.writeString(content.resolve("libtool.so.1"), "library");
+        Files.setPosixFilePermissions(content.resolve("libtool.so.1"), PosixFilePermissions.fromString("rwxr-xr-x"));
+        Files.writeString(unpacked.resolve("tool-1.0/README"), "readme");
+
+        Path installed = handler.install(unpacked);
+
+        assertEquals("tool", installed.getFileName().toString());
+        assertEquals("readme", Files.readString(installed.resolve("README")));
+        assertEquals(installed.resolve("bin/tool"), Files.readSymbolicLink(binDir().resolve("tool")));
+        assertFalse(Files.exists(binDir().resolve("libtool.so.1"), LinkOption.NOFOLLOW_LINKS));
+        assertFalse(Files.exists(home.resolve("stage")));
+
+        handler.uninstall(installed);
+
+        assertFalse(Files.exists(installed));
+        assertFalse(Files.exists(binDir().resolve("tool"), LinkOption.NOFOLLOW_LINKS));
+    }
+
+    @Test
+    void testInstall_zipKeepsForeignFilesInBin() throws IOException {
+        Path archive = Files.createDirectories(home.resolve("stage")).resolve("app-2.0.zip");
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(archive))) {
+            zip.putNextEntry(new ZipEntry("app"));
+            zip.write("#!/bin/sh\n".getBytes(StandardCharsets.UTF_8));
+            zip.putNextEntry(new ZipEntry("other"));
+            zip.write("#!/bin/sh\n".getBytes(StandardCharsets.UTF_8));
+        }
+        Files.createDirectories(binDir());
+        Files.writeString(binDir().resolve("other"), "foreign");
+
+        Path installed = handler.install(archive);
+
+        assertEquals(installed.resolve("app"), Files.readSymbolicLink(binDir().resolve("app")));
+        assertEquals("foreign", Files.readString(binDir().resolve("other")));
+        assertTrue(Files.isExecutable(installed.resolve("other")));
+        assertFalse(Files.exists(archive));
+    }
+}
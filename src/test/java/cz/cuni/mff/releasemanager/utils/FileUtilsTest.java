@@ -1,15 +1,12 @@
 package cz.cuni.mff.releasemanager.utils;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
-import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.Test;
 
@@ -20,22 +17,6 @@ public class FileUtilsTest {
 
     private static final String TEST_FILE = "TestFile123.txt";
     private static final String TEST_DIR = "tempTestDir";
-    private static final String TEMP_DIR = "releases";
-
-    @Test
-    public void testSaveInputStreamToFile() throws IOException {
-        String content = "Hello, world!";
-        InputStream stream = new ByteArrayInputStream(content.getBytes());
-        Path savedPath = FileUtils.saveInputStreamToFile(stream, TEST_FILE);
-
-        assertNotNull(savedPath);
-        assertTrue(Files.exists(savedPath));
-        assertTrue(savedPath.getParent().getFileName().toString().equals(TEMP_DIR));
-        assertEquals(content, new String(Files.readAllBytes(savedPath)));
-
-        Files.deleteIfExists(savedPath);
-        Files.deleteIfExists(Paths.get(TEMP_DIR));
-    }
 
     @Test
     public void testCreateDirectory_createsAndReturnsPath() throws IOException {